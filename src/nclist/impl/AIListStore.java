@@ -0,0 +1,361 @@
+package nclist.impl;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import nclist.api.IntervalI;
+import nclist.api.IntervalStoreI;
+
+/**
+ * An immutable interval store implementing the Augmented Interval List
+ * (AIList) of Feng, Ratan and Sheffield (Bioinformatics 35(23), 2019).
+ * <p>
+ * Intervals sorted by start position are decomposed into a few components, by
+ * repeatedly extracting those intervals which contain at least half of the
+ * intervals that follow them in a short window. Each component then has
+ * limited nesting, and holds a running maximum of end positions, so an overlap
+ * query on a component is a scan between two binary searches: for the first
+ * interval whose running maximum end reaches the query start, and the last
+ * interval starting before the query end.
+ * This is efficient for deeply nested data, where the recursion in NCList
+ * queries dominates.
+ * <p>
+ * Results of <code>findOverlaps</code> are in start position order within each
+ * component, but not overall. Attempts to add or remove intervals throw
+ * <code>UnsupportedOperationException</code>.
+ *
+ * @param <T>
+ *          any type providing <code>getBegin()</code> and <code>getEnd()</code>
+ */
+public class AIListStore<T extends IntervalI> extends AbstractCollection<T>
+        implements IntervalStoreI<T>
+{
+  /*
+   * number of following intervals checked for containment
+   */
+  private static final int COVERAGE_LENGTH = 20;
+
+  /*
+   * an interval containing at least this many of the following
+   * COVERAGE_LENGTH intervals is moved to a later component
+   */
+  private static final int MIN_COVERAGE = COVERAGE_LENGTH / 2;
+
+  private static final int MAX_COMPONENTS = 10;
+
+  /*
+   * no further decomposition is done for fewer intervals than this
+   */
+  private static final int MIN_COMPONENT_SIZE = 64;
+
+  /**
+   * One component of the decomposed list: intervals in start position order,
+   * with their start, end and running maximum end positions
+   */
+  private static class Component<T extends IntervalI>
+  {
+    final List<T> intervals;
+
+    final int[] begins;
+
+    final int[] ends;
+
+    final int[] maxEnds;
+
+    Component(List<T> sorted)
+    {
+      intervals = sorted;
+      int n = sorted.size();
+      begins = new int[n];
+      ends = new int[n];
+      maxEnds = new int[n];
+      int maxEnd = Integer.MIN_VALUE;
+      for (int i = 0; i < n; i++)
+      {
+        T range = sorted.get(i);
+        begins[i] = range.getBegin();
+        ends[i] = range.getEnd();
+        maxEnd = Math.max(maxEnd, ends[i]);
+        maxEnds[i] = maxEnd;
+      }
+    }
+
+    /**
+     * Adds any overlapping intervals to the result, in start position order
+     *
+     * @param from
+     * @param to
+     * @param result
+     */
+    void findOverlaps(long from, long to, List<T> result)
+    {
+      int last = lastStartingBefore(to);
+
+      /*
+       * running maximum end is nondecreasing, so binary search for
+       * the first interval which could reach the query start
+       */
+      int first = 0;
+      int high = last + 1;
+      while (first < high)
+      {
+        int mid = (first + high) >>> 1;
+        if (maxEnds[mid] < from)
+        {
+          first = mid + 1;
+        }
+        else
+        {
+          high = mid;
+        }
+      }
+      for (int i = first; i <= last; i++)
+      {
+        if (ends[i] >= from)
+        {
+          result.add(intervals.get(i));
+        }
+      }
+    }
+
+    /**
+     * Answers the index of the last interval whose start is not after the
+     * given position, or -1 if there is none
+     *
+     * @param pos
+     * @return
+     */
+    int lastStartingBefore(long pos)
+    {
+      int low = 0;
+      int high = begins.length;
+      while (low < high)
+      {
+        int mid = (low + high) >>> 1;
+        if (begins[mid] <= pos)
+        {
+          low = mid + 1;
+        }
+        else
+        {
+          high = mid;
+        }
+      }
+      return low - 1;
+    }
+
+    boolean contains(IntervalI entry)
+    {
+      int begin = entry.getBegin();
+      for (int i = lastStartingBefore(begin); i >= 0
+              && begins[i] == begin; i--)
+      {
+        if (intervals.get(i).equals(entry))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private final List<Component<T>> components;
+
+  private final int size;
+
+  /**
+   * Constructor given a list of intervals, which is copied (and not modified).
+   * Null entries are ignored.
+   *
+   * @param ranges
+   */
+  public AIListStore(List<T> ranges)
+  {
+    List<T> sorted = new ArrayList<>(ranges.size());
+    for (T range : ranges)
+    {
+      if (range != null)
+      {
+        sorted.add(range);
+      }
+    }
+    RadixSorter.sort(sorted);
+    size = sorted.size();
+    components = new ArrayList<>();
+
+    while (components.size() < MAX_COMPONENTS - 1
+            && sorted.size() > MIN_COMPONENT_SIZE)
+    {
+      List<T> kept = new ArrayList<>(sorted.size());
+      List<T> extracted = new ArrayList<>();
+      decompose(sorted, kept, extracted);
+      if (extracted.isEmpty())
+      {
+        break;
+      }
+      components.add(new Component<>(kept));
+      sorted = extracted;
+    }
+    if (!sorted.isEmpty())
+    {
+      components.add(new Component<>(sorted));
+    }
+  }
+
+  /**
+   * Adds intervals that cover (contain the ends of) at least MIN_COVERAGE of
+   * the following COVERAGE_LENGTH intervals to <code>extracted</code>, and all
+   * others to <code>kept</code>, preserving their order
+   *
+   * @param sorted
+   * @param kept
+   * @param extracted
+   */
+  private static <T extends IntervalI> void decompose(List<T> sorted,
+          List<T> kept, List<T> extracted)
+  {
+    int n = sorted.size();
+    for (int i = 0; i < n; i++)
+    {
+      T range = sorted.get(i);
+      int end = range.getEnd();
+      int covered = 0;
+      int limit = Math.min(n, i + 1 + COVERAGE_LENGTH);
+      for (int j = i + 1; j < limit && covered < MIN_COVERAGE; j++)
+      {
+        if (sorted.get(j).getEnd() <= end)
+        {
+          covered++;
+        }
+      }
+      if (covered >= MIN_COVERAGE)
+      {
+        extracted.add(range);
+      }
+      else
+      {
+        kept.add(range);
+      }
+    }
+  }
+
+  @Override
+  public List<T> findOverlaps(long from, long to)
+  {
+    List<T> result = new ArrayList<>();
+    for (Component<T> component : components)
+    {
+      component.findOverlaps(from, to, result);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean contains(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    for (Component<T> component : components)
+    {
+      if (component.contains((IntervalI) o))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Answers an iterator over the intervals in start position order. The
+   * iterator does not support the optional <code>remove</code> operation.
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    List<Iterator<? extends T>> iterators = new ArrayList<>();
+    for (Component<T> component : components)
+    {
+      iterators.add(Collections.unmodifiableList(component.intervals)
+              .iterator());
+    }
+    return new MergeIterator<>(iterators,
+            RangeComparator.BY_START_POSITION);
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Answers the number of components the intervals were decomposed into
+   *
+   * @return
+   */
+  public int getComponentCount()
+  {
+    return components.size();
+  }
+
+  @Override
+  public String prettyPrint()
+  {
+    return Containment.prettyPrint(iterator());
+  }
+
+  /**
+   * Answers the level of nesting of the intervals, as it would be for an
+   * NCList holding them
+   */
+  @Override
+  public int getDepth()
+  {
+    return Containment.getDepth(iterator());
+  }
+
+  /**
+   * Answers true if each component is in start position order with correct
+   * running maximum end positions, and the components hold all intervals, else
+   * false
+   */
+  @Override
+  public boolean isValid()
+  {
+    int count = 0;
+    for (Component<T> component : components)
+    {
+      int maxEnd = Integer.MIN_VALUE;
+      for (int i = 0; i < component.intervals.size(); i++)
+      {
+        T range = component.intervals.get(i);
+        if (i > 0 && RangeComparator.BY_START_POSITION
+                .compare(component.intervals.get(i - 1), range) > 0)
+        {
+          System.err.println("AIListStore " + range + " out of order");
+          return false;
+        }
+        maxEnd = Math.max(maxEnd, range.getEnd());
+        if (component.begins[i] != range.getBegin()
+                || component.ends[i] != range.getEnd()
+                || component.maxEnds[i] != maxEnd)
+        {
+          System.err.println("AIListStore invalid positions for " + range);
+          return false;
+        }
+      }
+      count += component.intervals.size();
+    }
+    if (count != size)
+    {
+      System.err.println("AIListStore size " + size + " but found " + count);
+      return false;
+    }
+    return true;
+  }
+}
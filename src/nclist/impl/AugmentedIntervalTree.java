@@ -0,0 +1,531 @@
+package nclist.impl;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import nclist.api.IntervalI;
+import nclist.api.IntervalStoreI;
+
+/**
+ * A classic augmented interval tree: a self-balancing (AVL) binary search tree
+ * of intervals keyed by start position (as ordered by
+ * <code>RangeComparator.BY_START_POSITION</code>), where each node also records
+ * the greatest end position in its subtree. Insertion and deletion are O(log
+ * N), and overlap queries O(log N + K) for K results, regardless of how the
+ * intervals nest. Accepts duplicate entries but not null values.
+ * <p>
+ * This provides an alternative engine to <code>IntervalStore</code> for
+ * comparison on data with pathological nesting.
+ *
+ * @param <T>
+ *          any type providing <code>getBegin()</code> and <code>getEnd()</code>
+ */
+public class AugmentedIntervalTree<T extends IntervalI>
+        extends AbstractCollection<T> implements IntervalStoreI<T>
+{
+  private static final Comparator<IntervalI> ORDER = RangeComparator.BY_START_POSITION;
+
+  /**
+   * A node of the tree
+   */
+  private static final class Node<T extends IntervalI>
+  {
+    final T interval;
+
+    Node<T> left;
+
+    Node<T> right;
+
+    /*
+     * greatest end position of any interval in the subtree rooted here
+     */
+    int maxEnd;
+
+    int height;
+
+    Node(T interval)
+    {
+      this.interval = interval;
+      this.maxEnd = interval.getEnd();
+      this.height = 1;
+    }
+  }
+
+  /**
+   * An in-order iterator over the tree. The optional <code>remove</code>
+   * operation is not supported.
+   */
+  private class TreeIterator implements Iterator<T>
+  {
+    private final List<Node<T>> stack = new ArrayList<>();
+
+    TreeIterator()
+    {
+      pushLeft(root);
+    }
+
+    private void pushLeft(Node<T> node)
+    {
+      while (node != null)
+      {
+        stack.add(node);
+        node = node.left;
+      }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return !stack.isEmpty();
+    }
+
+    @Override
+    public T next()
+    {
+      if (stack.isEmpty())
+      {
+        throw new NoSuchElementException();
+      }
+      Node<T> node = stack.remove(stack.size() - 1);
+      pushLeft(node.right);
+      return node.interval;
+    }
+  }
+
+  private Node<T> root;
+
+  private int size;
+
+  /*
+   * set by remove(Node, T) when it finds and removes a matching node
+   */
+  private boolean removed;
+
+  /**
+   * Constructor
+   */
+  public AugmentedIntervalTree()
+  {
+  }
+
+  @Override
+  public synchronized boolean add(T interval)
+  {
+    if (interval == null)
+    {
+      return false;
+    }
+    root = add(root, new Node<>(interval));
+    size++;
+    return true;
+  }
+
+  /**
+   * Adds a node to the subtree and answers the (rebalanced) subtree root.
+   * Intervals that compare equal are added to the right of existing ones.
+   *
+   * @param node
+   * @param newNode
+   * @return
+   */
+  private Node<T> add(Node<T> node, Node<T> newNode)
+  {
+    if (node == null)
+    {
+      return newNode;
+    }
+    if (ORDER.compare(newNode.interval, node.interval) < 0)
+    {
+      node.left = add(node.left, newNode);
+    }
+    else
+    {
+      node.right = add(node.right, newNode);
+    }
+    return rebalance(node);
+  }
+
+  @Override
+  public synchronized boolean remove(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    removed = false;
+    root = remove(root, (IntervalI) o);
+    if (removed)
+    {
+      size--;
+    }
+    return removed;
+  }
+
+  /**
+   * Removes the first node found whose interval is equal to the entry from the
+   * subtree, and answers the (rebalanced) subtree root. Sets field
+   * <code>removed</code> to true if a node is removed.
+   *
+   * @param node
+   * @param entry
+   * @return
+   */
+  private Node<T> remove(Node<T> node, IntervalI entry)
+  {
+    if (node == null)
+    {
+      return null;
+    }
+    int compare = ORDER.compare(entry, node.interval);
+    if (compare < 0)
+    {
+      node.left = remove(node.left, entry);
+    }
+    else if (compare > 0)
+    {
+      node.right = remove(node.right, entry);
+    }
+    else if (node.interval.equals(entry))
+    {
+      removed = true;
+      if (node.left == null)
+      {
+        return node.right;
+      }
+      if (node.right == null)
+      {
+        return node.left;
+      }
+
+      /*
+       * replace the node with its in-order successor
+       */
+      Node<T> successor = node.right;
+      while (successor.left != null)
+      {
+        successor = successor.left;
+      }
+      successor.right = removeMin(node.right);
+      successor.left = node.left;
+      return rebalance(successor);
+    }
+    else
+    {
+      /*
+       * same position but not equal; intervals at the same position
+       * may lie in either subtree
+       */
+      node.left = remove(node.left, entry);
+      if (!removed)
+      {
+        node.right = remove(node.right, entry);
+      }
+    }
+    return rebalance(node);
+  }
+
+  /**
+   * Removes the leftmost node of the subtree and answers the (rebalanced)
+   * subtree root
+   *
+   * @param node
+   * @return
+   */
+  private Node<T> removeMin(Node<T> node)
+  {
+    if (node.left == null)
+    {
+      return node.right;
+    }
+    node.left = removeMin(node.left);
+    return rebalance(node);
+  }
+
+  @Override
+  public boolean contains(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    return contains(root, (IntervalI) o);
+  }
+
+  /**
+   * Answers true if the subtree holds an interval equal to the entry
+   *
+   * @param node
+   * @param entry
+   * @return
+   */
+  private boolean contains(Node<T> node, IntervalI entry)
+  {
+    while (node != null)
+    {
+      int compare = ORDER.compare(entry, node.interval);
+      if (compare < 0)
+      {
+        node = node.left;
+      }
+      else if (compare > 0)
+      {
+        node = node.right;
+      }
+      else
+      {
+        return node.interval.equals(entry) || contains(node.left, entry)
+                || contains(node.right, entry);
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public List<T> findOverlaps(long from, long to)
+  {
+    List<T> result = new ArrayList<>();
+    findOverlaps(root, from, to, result);
+    return result;
+  }
+
+  /**
+   * Adds intervals in the subtree which overlap the range to the result, in
+   * start position order. Subtrees whose greatest end position precedes the
+   * range, or which start after it, are skipped.
+   *
+   * @param node
+   * @param from
+   * @param to
+   * @param result
+   */
+  private void findOverlaps(Node<T> node, long from, long to,
+          List<T> result)
+  {
+    while (node != null && node.maxEnd >= from)
+    {
+      findOverlaps(node.left, from, to, result);
+      T interval = node.interval;
+      if (interval.getBegin() > to)
+      {
+        return;
+      }
+      if (interval.getEnd() >= from)
+      {
+        result.add(interval);
+      }
+      node = node.right;
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    root = null;
+    size = 0;
+  }
+
+  /**
+   * Answers an iterator over the intervals in start position order. The
+   * iterator does not support the optional <code>remove</code> operation.
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    return new TreeIterator();
+  }
+
+  @Override
+  public String prettyPrint()
+  {
+    return Containment.prettyPrint(iterator());
+  }
+
+  /**
+   * Answers the level of nesting of the intervals, as it would be for an
+   * NCList holding them (not the height of the tree)
+   */
+  @Override
+  public int getDepth()
+  {
+    return Containment.getDepth(iterator());
+  }
+
+  /**
+   * Answers true if the tree is correctly ordered, balanced and augmented, and
+   * its size is correct, else false
+   */
+  @Override
+  public boolean isValid()
+  {
+    int[] count = new int[1];
+    if (!isValid(root, count))
+    {
+      return false;
+    }
+    if (count[0] != size)
+    {
+      System.err.println("AugmentedIntervalTree size " + size
+              + " but found " + count[0]);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Validates the subtree, adding its node count to count[0]
+   *
+   * @param node
+   * @param count
+   * @return
+   */
+  private boolean isValid(Node<T> node, int[] count)
+  {
+    if (node == null)
+    {
+      return true;
+    }
+    count[0]++;
+    int maxEnd = node.interval.getEnd();
+    if (node.left != null)
+    {
+      if (ORDER.compare(node.left.interval, node.interval) > 0)
+      {
+        System.err.println("AugmentedIntervalTree " + node.left.interval
+                + " left of " + node.interval);
+        return false;
+      }
+      maxEnd = Math.max(maxEnd, node.left.maxEnd);
+    }
+    if (node.right != null)
+    {
+      if (ORDER.compare(node.right.interval, node.interval) < 0)
+      {
+        System.err.println("AugmentedIntervalTree " + node.right.interval
+                + " right of " + node.interval);
+        return false;
+      }
+      maxEnd = Math.max(maxEnd, node.right.maxEnd);
+    }
+    if (maxEnd != node.maxEnd)
+    {
+      System.err.println("AugmentedIntervalTree wrong maxEnd at "
+              + node.interval);
+      return false;
+    }
+    int balance = height(node.left) - height(node.right);
+    if (balance < -1 || balance > 1
+            || node.height != 1 + Math.max(height(node.left),
+                    height(node.right)))
+    {
+      System.err.println(
+              "AugmentedIntervalTree unbalanced at " + node.interval);
+      return false;
+    }
+    return isValid(node.left, count) && isValid(node.right, count);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder(10 * size);
+    sb.append("[");
+    boolean first = true;
+    for (T t : this)
+    {
+      if (!first)
+      {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(t.toString());
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+
+  private static int height(Node<?> node)
+  {
+    return node == null ? 0 : node.height;
+  }
+
+  /**
+   * Recomputes the height and greatest end position of the node from its
+   * children
+   *
+   * @param node
+   */
+  private static void update(Node<?> node)
+  {
+    node.height = 1 + Math.max(height(node.left), height(node.right));
+    int maxEnd = node.interval.getEnd();
+    if (node.left != null)
+    {
+      maxEnd = Math.max(maxEnd, node.left.maxEnd);
+    }
+    if (node.right != null)
+    {
+      maxEnd = Math.max(maxEnd, node.right.maxEnd);
+    }
+    node.maxEnd = maxEnd;
+  }
+
+  /**
+   * Restores the AVL balance condition at the node, if necessary by rotation,
+   * and answers the new subtree root
+   *
+   * @param node
+   * @return
+   */
+  private static <T extends IntervalI> Node<T> rebalance(Node<T> node)
+  {
+    update(node);
+    int balance = height(node.left) - height(node.right);
+    if (balance > 1)
+    {
+      if (height(node.left.left) < height(node.left.right))
+      {
+        node.left = rotateLeft(node.left);
+      }
+      return rotateRight(node);
+    }
+    if (balance < -1)
+    {
+      if (height(node.right.right) < height(node.right.left))
+      {
+        node.right = rotateRight(node.right);
+      }
+      return rotateLeft(node);
+    }
+    return node;
+  }
+
+  private static <T extends IntervalI> Node<T> rotateRight(Node<T> node)
+  {
+    Node<T> left = node.left;
+    node.left = left.right;
+    left.right = node;
+    update(node);
+    update(left);
+    return left;
+  }
+
+  private static <T extends IntervalI> Node<T> rotateLeft(Node<T> node)
+  {
+    Node<T> right = node.right;
+    node.right = right.left;
+    right.left = node;
+    update(node);
+    update(right);
+    return right;
+  }
+}
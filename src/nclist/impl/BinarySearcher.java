@@ -26,7 +26,26 @@ public class BinarySearcher
       @Override
       public int compareTo(IntervalI entry)
       {
-        return (int) (entry.getBegin() - target);
+        return Long.compare(entry.getBegin(), target);
+      }
+    };
+  }
+
+  /**
+   * serves a search condition for finding the first interval whose start
+   * position is after a given target location
+   *
+   * @param target
+   * @return
+   */
+  static Comparable<IntervalI> byStartAfter(final long target)
+  {
+    return new Comparable<IntervalI>()
+    {
+      @Override
+      public int compareTo(IntervalI entry)
+      {
+        return entry.getBegin() > target ? 1 : -1;
       }
     };
   }
@@ -45,7 +64,7 @@ public class BinarySearcher
       @Override
       public int compareTo(IntervalI entry)
       {
-        return (int) (entry.getEnd() - target);
+        return Long.compare(entry.getEnd(), target);
       }
     };
   }
@@ -83,6 +102,10 @@ public class BinarySearcher
   protected static int binarySearch(List<? extends IntervalI> intervals,
           Comparable<IntervalI> sc)
   {
+    if (intervals instanceof ChunkedList)
+    {
+      return ((ChunkedList<? extends IntervalI>) intervals).binarySearch(sc);
+    }
     int start = 0;
     int end = intervals.size() - 1;
     int matched = intervals.size();
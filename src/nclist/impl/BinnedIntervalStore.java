@@ -0,0 +1,351 @@
+package nclist.impl;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import nclist.api.IntervalI;
+import nclist.api.IntervalStoreI;
+
+/**
+ * An interval store using the hierarchical binning scheme of the UCSC genome
+ * browser and the SAM/BAM specification. Positions 0 to 2<sup>29</sup>-1 are
+ * covered by one bin of 512Mb, 8 bins of 64Mb, 64 of 8Mb, 512 of 1Mb, 4096 of
+ * 128kb, and 32768 of 16kb. Each interval is held in the smallest bin that
+ * wholly encloses it (as computed by <code>reg2bin</code>); intervals that are
+ * outside the binned range are held in bin 0. Each bin holds a list of its
+ * intervals in start position order.
+ * <p>
+ * Add and remove are a binary search in one bin, so are O(log B) for bin size
+ * B irrespective of how intervals nest. An overlap query visits only the bins
+ * (as listed by <code>reg2bins</code>) that could hold overlapping intervals.
+ * This suits short intervals of fairly uniform length, which fall in small
+ * bins; long intervals fall in large bins, which every query must scan.
+ * Results of <code>findOverlaps</code> are in start position order within each
+ * bin, but not overall.
+ *
+ * @param <T>
+ *          any type providing <code>getBegin()</code> and <code>getEnd()</code>
+ */
+public class BinnedIntervalStore<T extends IntervalI>
+        extends AbstractCollection<T> implements IntervalStoreI<T>
+{
+  /*
+   * positions binned are 0 to 2^MAX_SHIFT - 1
+   */
+  private static final int MAX_SHIFT = 29;
+
+  /*
+   * log2 of the smallest bin size (16kb)
+   */
+  private static final int MIN_SHIFT = 14;
+
+  /*
+   * first bin number at each level from the smallest (16kb) bins upwards
+   */
+  private static final int[] LEVEL_OFFSETS = { 4681, 585, 73, 9, 1, 0 };
+
+  /*
+   * intervals in each (non-empty) bin, in start position order
+   */
+  private final Map<Integer, List<T>> bins = new HashMap<>();
+
+  private int size;
+
+  /**
+   * Constructor
+   */
+  public BinnedIntervalStore()
+  {
+  }
+
+  /**
+   * Constructor given a collection of intervals
+   *
+   * @param intervals
+   */
+  public BinnedIntervalStore(Iterable<? extends T> intervals)
+  {
+    for (T interval : intervals)
+    {
+      add(interval);
+    }
+  }
+
+  /**
+   * Answers the number of the smallest bin that wholly encloses the given
+   * (inclusive) range, or 0 if it is outside the range of binned positions
+   *
+   * @param begin
+   * @param end
+   * @return
+   */
+  static int reg2bin(long begin, long end)
+  {
+    if (begin < 0 || end >= 1L << MAX_SHIFT || end < begin)
+    {
+      return 0;
+    }
+    int shift = MIN_SHIFT;
+    for (int level = 0; level < LEVEL_OFFSETS.length - 1; level++)
+    {
+      if (begin >> shift == end >> shift)
+      {
+        return LEVEL_OFFSETS[level] + (int) (begin >> shift);
+      }
+      shift += 3;
+    }
+    return 0;
+  }
+
+  /**
+   * Answers the numbers of all bins that may hold intervals overlapping the
+   * given (inclusive) range
+   *
+   * @param from
+   * @param to
+   * @return
+   */
+  static List<Integer> reg2bins(long from, long to)
+  {
+    List<Integer> result = new ArrayList<>();
+    result.add(0);
+    long maxPos = (1L << MAX_SHIFT) - 1;
+    if (to < 0 || from > maxPos || to < from)
+    {
+      return result;
+    }
+    from = Math.max(from, 0);
+    to = Math.min(to, maxPos);
+    int shift = MAX_SHIFT - 3;
+    for (int level = LEVEL_OFFSETS.length - 2; level >= 0; level--)
+    {
+      int offset = LEVEL_OFFSETS[level];
+      for (long bin = from >> shift; bin <= to >> shift; bin++)
+      {
+        result.add(offset + (int) bin);
+      }
+      shift -= 3;
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized boolean add(T interval)
+  {
+    if (interval == null)
+    {
+      return false;
+    }
+    Integer bin = reg2bin(interval.getBegin(), interval.getEnd());
+    List<T> intervals = bins.get(bin);
+    if (intervals == null)
+    {
+      intervals = new ArrayList<>();
+      bins.put(bin, intervals);
+    }
+    else
+    {
+      /*
+       * switch a large bin to a list with O(log n) insertion
+       */
+      List<T> scalable = ChunkedList.scalable(intervals);
+      if (scalable != intervals)
+      {
+        intervals = scalable;
+        bins.put(bin, intervals);
+      }
+    }
+    int pos = BinarySearcher.binarySearch(intervals, BinarySearcher
+            .byInterval(interval, RangeComparator.BY_START_POSITION));
+    intervals.add(pos, interval);
+    size++;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean remove(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    IntervalI entry = (IntervalI) o;
+    Integer bin = reg2bin(entry.getBegin(), entry.getEnd());
+    List<T> intervals = bins.get(bin);
+    int pos = indexOf(intervals, entry);
+    if (pos < 0)
+    {
+      return false;
+    }
+    intervals.remove(pos);
+    if (intervals.isEmpty())
+    {
+      bins.remove(bin);
+    }
+    size--;
+    return true;
+  }
+
+  @Override
+  public boolean contains(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    IntervalI entry = (IntervalI) o;
+    return indexOf(bins.get(reg2bin(entry.getBegin(), entry.getEnd())),
+            entry) >= 0;
+  }
+
+  /**
+   * Answers the index of an interval equal to the given entry in the sorted
+   * list, or -1 if there is none (or the list is null)
+   *
+   * @param intervals
+   * @param entry
+   * @return
+   */
+  private int indexOf(List<T> intervals, IntervalI entry)
+  {
+    if (intervals == null)
+    {
+      return -1;
+    }
+    int pos = BinarySearcher.binarySearch(intervals, BinarySearcher
+            .byInterval(entry, RangeComparator.BY_START_POSITION));
+    for (int i = pos; i < intervals.size(); i++)
+    {
+      T interval = intervals.get(i);
+      if (RangeComparator.BY_START_POSITION.compare(interval, entry) != 0)
+      {
+        break;
+      }
+      if (interval.equals(entry))
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public List<T> findOverlaps(long from, long to)
+  {
+    List<T> result = new ArrayList<>();
+    for (Integer bin : reg2bins(from, to))
+    {
+      List<T> intervals = bins.get(bin);
+      if (intervals != null)
+      {
+        for (T interval : intervals)
+        {
+          if (interval.getBegin() > to)
+          {
+            break;
+          }
+          if (interval.getEnd() >= from)
+          {
+            result.add(interval);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    bins.clear();
+    size = 0;
+  }
+
+  /**
+   * Answers an iterator over the intervals in start position order. The
+   * iterator does not support the optional <code>remove</code> operation.
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    List<Iterator<? extends T>> iterators = new ArrayList<>();
+    for (List<T> intervals : bins.values())
+    {
+      iterators.add(intervals.iterator());
+    }
+    return new MergeIterator<>(iterators,
+            RangeComparator.BY_START_POSITION);
+  }
+
+  @Override
+  public String prettyPrint()
+  {
+    return Containment.prettyPrint(iterator());
+  }
+
+  /**
+   * Answers the level of nesting of the intervals, as it would be for an
+   * NCList holding them
+   */
+  @Override
+  public int getDepth()
+  {
+    return Containment.getDepth(iterator());
+  }
+
+  /**
+   * Answers true if every interval is held in the correct bin, each bin is in
+   * start position order, and the size is correct, else false
+   */
+  @Override
+  public boolean isValid()
+  {
+    int count = 0;
+    for (Entry<Integer, List<T>> bin : bins.entrySet())
+    {
+      List<T> intervals = bin.getValue();
+      if (intervals.isEmpty())
+      {
+        System.err.println("BinnedIntervalStore empty bin " + bin.getKey());
+        return false;
+      }
+      for (int i = 0; i < intervals.size(); i++)
+      {
+        T interval = intervals.get(i);
+        if (reg2bin(interval.getBegin(), interval.getEnd()) != bin
+                .getKey())
+        {
+          System.err.println("BinnedIntervalStore " + interval
+                  + " in wrong bin " + bin.getKey());
+          return false;
+        }
+        if (i > 0 && RangeComparator.BY_START_POSITION
+                .compare(intervals.get(i - 1), interval) > 0)
+        {
+          System.err.println("BinnedIntervalStore " + interval
+                  + " out of order");
+          return false;
+        }
+      }
+      count += intervals.size();
+    }
+    if (count != size)
+    {
+      System.err.println(
+              "BinnedIntervalStore size " + size + " but found " + count);
+      return false;
+    }
+    return true;
+  }
+}
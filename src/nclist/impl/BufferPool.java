@@ -0,0 +1,352 @@
+package nclist.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A bounded cache of fixed-size pages read from files, shared by any number of
+ * files. When the cache is full, a page is evicted to make room for the next
+ * one read, chosen by the eviction policy:
+ * <ul>
+ * <li>LRU evicts the least recently used page</li>
+ * <li>CLOCK approximates LRU more cheaply: cached pages are arranged in a
+ * circle, each with a flag set when it is used; the 'hand' sweeps round,
+ * clearing set flags, and evicts the first page whose flag is clear</li>
+ * </ul>
+ * Hits (pages found in the cache), misses (pages read from file) and
+ * evictions are counted. Methods are synchronized, so the pool may be shared
+ * by threads; pages must only be read by absolute <code>get</code> methods,
+ * which don't modify the buffer.
+ */
+public class BufferPool
+{
+  public enum EvictionPolicy
+  {
+    LRU, CLOCK
+  }
+
+  /*
+   * default size of a page in bytes
+   */
+  public static final int DEFAULT_PAGE_SIZE = 1 << 13;
+
+  /**
+   * The identity of a page of a file
+   */
+  private static final class PageKey
+  {
+    final Object file;
+
+    final long page;
+
+    PageKey(Object file, long page)
+    {
+      this.file = file;
+      this.page = page;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof PageKey))
+      {
+        return false;
+      }
+      PageKey key = (PageKey) o;
+      return file == key.file && page == key.page;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * System.identityHashCode(file) + Long.hashCode(page);
+    }
+  }
+
+  private final int pageSize;
+
+  private final int capacity;
+
+  private final EvictionPolicy policy;
+
+  /*
+   * cached pages, in access order, for LRU
+   */
+  private final LinkedHashMap<PageKey, ByteBuffer> lru;
+
+  /*
+   * for CLOCK, cached pages in a circle of slots, their keys and 'used'
+   * flags, and the slot number of each key
+   */
+  private final ByteBuffer[] slots;
+
+  private final PageKey[] keys;
+
+  private final boolean[] used;
+
+  private final Map<PageKey, Integer> slotsByKey;
+
+  private int hand;
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  /**
+   * Constructor
+   *
+   * @param pageSize
+   *          the size of a page in bytes
+   * @param capacityBytes
+   *          the size of the cache in bytes (at least one page)
+   * @param policy
+   *          the policy for choosing the page to evict
+   */
+  public BufferPool(int pageSize, long capacityBytes, EvictionPolicy policy)
+  {
+    if (pageSize < Long.BYTES)
+    {
+      throw new IllegalArgumentException("Page size too small: " + pageSize);
+    }
+    this.pageSize = pageSize;
+    this.capacity = (int) Math.max(1,
+            Math.min(Integer.MAX_VALUE - 8, capacityBytes / pageSize));
+    this.policy = policy;
+    if (policy == EvictionPolicy.LRU)
+    {
+      lru = new LinkedHashMap<PageKey, ByteBuffer>(16, 0.75f, true)
+      {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+                Entry<PageKey, ByteBuffer> eldest)
+        {
+          if (size() > capacity)
+          {
+            evictions++;
+            return true;
+          }
+          return false;
+        }
+      };
+      slots = null;
+      keys = null;
+      used = null;
+      slotsByKey = null;
+    }
+    else
+    {
+      lru = null;
+      slots = new ByteBuffer[capacity];
+      keys = new PageKey[capacity];
+      used = new boolean[capacity];
+      slotsByKey = new HashMap<>();
+    }
+  }
+
+  /**
+   * Answers the given page of the file, from the cache if held, else read from
+   * the file (and cached). The page is shorter than the page size if it is the
+   * last page of the file.
+   *
+   * @param file
+   *          an object identifying the file (compared by identity)
+   * @param channel
+   *          the channel to read the file
+   * @param page
+   *          the page number (from 0)
+   * @return
+   * @throws IOException
+   */
+  synchronized ByteBuffer getPage(Object file, FileChannel channel,
+          long page) throws IOException
+  {
+    PageKey key = new PageKey(file, page);
+    ByteBuffer buffer;
+    if (policy == EvictionPolicy.LRU)
+    {
+      buffer = lru.get(key);
+    }
+    else
+    {
+      Integer slot = slotsByKey.get(key);
+      buffer = null;
+      if (slot != null)
+      {
+        used[slot] = true;
+        buffer = slots[slot];
+      }
+    }
+    if (buffer != null)
+    {
+      hits++;
+      return buffer;
+    }
+
+    misses++;
+    buffer = read(channel, page);
+    if (policy == EvictionPolicy.LRU)
+    {
+      lru.put(key, buffer);
+    }
+    else
+    {
+      int slot = findFreeSlot();
+      slots[slot] = buffer;
+      keys[slot] = key;
+      used[slot] = true;
+      slotsByKey.put(key, slot);
+    }
+    return buffer;
+  }
+
+  /**
+   * Answers an empty slot for CLOCK, evicting a page if none is empty
+   *
+   * @return
+   */
+  private int findFreeSlot()
+  {
+    while (keys[hand] != null && used[hand])
+    {
+      used[hand] = false;
+      hand = (hand + 1) % capacity;
+    }
+    int slot = hand;
+    hand = (hand + 1) % capacity;
+    if (keys[slot] != null)
+    {
+      slotsByKey.remove(keys[slot]);
+      evictions++;
+    }
+    return slot;
+  }
+
+  /**
+   * Reads a page from the file
+   *
+   * @param channel
+   * @param page
+   * @return
+   * @throws IOException
+   */
+  private ByteBuffer read(FileChannel channel, long page) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+    long position = page * pageSize;
+    while (buffer.hasRemaining())
+    {
+      int read = channel.read(buffer, position);
+      if (read < 0)
+      {
+        break;
+      }
+      position += read;
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Removes all pages of the given file from the cache (for example, when it
+   * is closed)
+   *
+   * @param file
+   */
+  public synchronized void invalidate(Object file)
+  {
+    if (policy == EvictionPolicy.LRU)
+    {
+      Iterator<PageKey> it = lru.keySet().iterator();
+      while (it.hasNext())
+      {
+        if (it.next().file == file)
+        {
+          it.remove();
+        }
+      }
+      return;
+    }
+    for (int slot = 0; slot < capacity; slot++)
+    {
+      if (keys[slot] != null && keys[slot].file == file)
+      {
+        slotsByKey.remove(keys[slot]);
+        keys[slot] = null;
+        slots[slot] = null;
+        used[slot] = false;
+      }
+    }
+  }
+
+  public int getPageSize()
+  {
+    return pageSize;
+  }
+
+  /**
+   * Answers the maximum number of pages held
+   *
+   * @return
+   */
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  public EvictionPolicy getPolicy()
+  {
+    return policy;
+  }
+
+  /**
+   * Answers the number of pages currently held
+   *
+   * @return
+   */
+  public synchronized int getPageCount()
+  {
+    return policy == EvictionPolicy.LRU ? lru.size() : slotsByKey.size();
+  }
+
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  public synchronized long getEvictions()
+  {
+    return evictions;
+  }
+
+  /**
+   * Resets the hit, miss and eviction counts to zero
+   */
+  public synchronized void resetCounts()
+  {
+    hits = 0;
+    misses = 0;
+    evictions = 0;
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return String.format("%s pages %d/%d hits %d misses %d evictions %d",
+            policy, getPageCount(), capacity, hits, misses, evictions);
+  }
+}
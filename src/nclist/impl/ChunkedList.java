@@ -0,0 +1,667 @@
+package nclist.impl;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * A list held as a sequence of blocks of at most a few hundred entries, with a
+ * (Fenwick tree) index of block sizes above them, in the manner of the leaf
+ * level of a B+tree. Positional get and binary search are O(log N), and
+ * inserting or removing an element shifts at most one block, and is O(log N)
+ * unless a block is split, merged or emptied. That happens at most once per
+ * few hundred updates in one place, and costs O(N / MAX_BLOCK_SIZE) to shift
+ * the list of blocks and rebuild the index. Appending a new block extends the
+ * index incrementally, so appending is amortised O(log N). This makes it
+ * suitable for large ordered lists which are updated by insertion in the
+ * middle, where an <code>ArrayList</code> is O(N) per update.
+ * <p>
+ * Sequential access (as in a scan following a binary search) is O(1) per
+ * element. Not thread-safe for concurrent modification.
+ *
+ * @param <E>
+ */
+class ChunkedList<E> extends AbstractList<E> implements RandomAccess
+{
+  /**
+   * Lists are worth converting to a ChunkedList once they reach this size
+   */
+  static final int THRESHOLD = 4096;
+
+  /*
+   * the maximum number of entries held in a block
+   */
+  static final int MAX_BLOCK_SIZE = 512;
+
+  /*
+   * the initial capacity of a new block
+   */
+  private static final int INITIAL_BLOCK_CAPACITY = 16;
+
+  /**
+   * A block of contiguous entries of the list
+   */
+  private static final class Block
+  {
+    Object[] items;
+
+    int size;
+
+    Block(int capacity)
+    {
+      items = new Object[capacity];
+    }
+
+    /**
+     * Ensures there is room for one more item
+     */
+    void ensureCapacity()
+    {
+      if (size == items.length)
+      {
+        Object[] newItems = new Object[Math.min(MAX_BLOCK_SIZE,
+                items.length * 2)];
+        System.arraycopy(items, 0, newItems, 0, size);
+        items = newItems;
+      }
+    }
+  }
+
+  /**
+   * The position in the list of the last block accessed, to make sequential
+   * access O(1). This is immutable so can be swapped in a single write.
+   */
+  private static final class Position
+  {
+    final int blockIndex;
+
+    final int start;
+
+    final int end;
+
+    Position(int blockIndex, int start, int end)
+    {
+      this.blockIndex = blockIndex;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  private final List<Block> blocks;
+
+  /*
+   * Fenwick (binary indexed) tree of block sizes, indexed from 1
+   */
+  private int[] tree;
+
+  private int size;
+
+  private volatile Position lastPosition;
+
+  /**
+   * Constructor
+   */
+  ChunkedList()
+  {
+    blocks = new ArrayList<>();
+    tree = new int[1];
+  }
+
+  /**
+   * Constructor given initial contents (which are copied)
+   *
+   * @param c
+   */
+  ChunkedList(Collection<? extends E> c)
+  {
+    this();
+    addAll(c);
+  }
+
+  /**
+   * Answers a list with the same contents as the given list that is suitable
+   * for frequent insertion and removal. This is the list itself if it is small,
+   * or already a ChunkedList, else a ChunkedList copy of it.
+   *
+   * @param list
+   * @return
+   */
+  static <E> List<E> scalable(List<E> list)
+  {
+    if (list.size() < THRESHOLD || list instanceof ChunkedList)
+    {
+      return list;
+    }
+    return new ChunkedList<>(list);
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E get(int index)
+  {
+    checkIndex(index, size);
+    Position p = locate(index);
+    return (E) blocks.get(p.blockIndex).items[index - p.start];
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E set(int index, E element)
+  {
+    checkIndex(index, size);
+    Position p = locate(index);
+    Object[] items = blocks.get(p.blockIndex).items;
+    E old = (E) items[index - p.start];
+    items[index - p.start] = element;
+    return old;
+  }
+
+  @Override
+  public void add(int index, E element)
+  {
+    checkIndex(index, size + 1);
+    modCount++;
+    lastPosition = null;
+
+    if (blocks.isEmpty())
+    {
+      appendBlock();
+    }
+
+    int blockIndex;
+    int offset;
+    if (index == size)
+    {
+      blockIndex = blocks.size() - 1;
+      offset = blocks.get(blockIndex).size;
+    }
+    else
+    {
+      Position p = locate(index);
+      blockIndex = p.blockIndex;
+      offset = index - p.start;
+    }
+
+    Block block = blocks.get(blockIndex);
+    if (block.size == MAX_BLOCK_SIZE && index == size)
+    {
+      /*
+       * appending to a full last block - start a new one
+       */
+      block = appendBlock();
+      blockIndex++;
+      offset = 0;
+    }
+    else if (block.size == MAX_BLOCK_SIZE)
+    {
+      /*
+       * split a full block in two halves before inserting
+       */
+      Block newBlock = split(blockIndex, MAX_BLOCK_SIZE / 2);
+      if (offset > block.size)
+      {
+        offset -= block.size;
+        block = newBlock;
+        blockIndex++;
+      }
+    }
+
+    block.ensureCapacity();
+    System.arraycopy(block.items, offset, block.items, offset + 1,
+            block.size - offset);
+    block.items[offset] = element;
+    block.size++;
+    size++;
+    updateIndex(blockIndex, 1);
+    lastPosition = null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E remove(int index)
+  {
+    checkIndex(index, size);
+    modCount++;
+    Position p = locate(index);
+    lastPosition = null;
+    int blockIndex = p.blockIndex;
+    int offset = index - p.start;
+    Block block = blocks.get(blockIndex);
+    E old = (E) block.items[offset];
+    System.arraycopy(block.items, offset + 1, block.items, offset,
+            block.size - offset - 1);
+    block.items[--block.size] = null;
+    size--;
+
+    if (block.size == 0)
+    {
+      blocks.remove(blockIndex);
+      rebuildIndex();
+    }
+    else if (block.size < MAX_BLOCK_SIZE / 4 && blockIndex > 0
+            && blocks.get(blockIndex - 1).size
+                    + block.size <= MAX_BLOCK_SIZE / 2)
+    {
+      /*
+       * merge an underfull block into its predecessor
+       */
+      Block previous = blocks.get(blockIndex - 1);
+      previous.items = copyOf(previous, previous.size + block.size);
+      System.arraycopy(block.items, 0, previous.items, previous.size,
+              block.size);
+      previous.size += block.size;
+      blocks.remove(blockIndex);
+      rebuildIndex();
+    }
+    else
+    {
+      updateIndex(blockIndex, -1);
+    }
+    return old;
+  }
+
+  /**
+   * Removes elements <code>fromIndex</code> (inclusive) to
+   * <code>toIndex</code> (exclusive), shifting only the blocks affected
+   */
+  @Override
+  protected void removeRange(int fromIndex, int toIndex)
+  {
+    if (fromIndex >= toIndex)
+    {
+      return;
+    }
+    modCount++;
+    lastPosition = null;
+    int count = toIndex - fromIndex;
+    Position p = locate(fromIndex);
+    int blockIndex = p.blockIndex;
+    int offset = fromIndex - p.start;
+
+    while (count > 0)
+    {
+      Block block = blocks.get(blockIndex);
+      int n = Math.min(count, block.size - offset);
+      System.arraycopy(block.items, offset + n, block.items, offset,
+              block.size - offset - n);
+      for (int i = block.size - n; i < block.size; i++)
+      {
+        block.items[i] = null;
+      }
+      block.size -= n;
+      count -= n;
+      size -= n;
+      if (block.size == 0)
+      {
+        blocks.remove(blockIndex);
+      }
+      else
+      {
+        blockIndex++;
+      }
+      offset = 0;
+    }
+    rebuildIndex();
+    lastPosition = null;
+  }
+
+  /**
+   * Inserts all elements of the collection at the given index, in new blocks
+   * spliced into the list
+   */
+  @Override
+  public boolean addAll(int index, Collection<? extends E> c)
+  {
+    checkIndex(index, size + 1);
+    if (c.isEmpty())
+    {
+      return false;
+    }
+    modCount++;
+    lastPosition = null;
+
+    /*
+     * find the block boundary to insert at, splitting a block if necessary
+     */
+    int blockIndex = blocks.size();
+    if (index < size)
+    {
+      Position p = locate(index);
+      blockIndex = p.blockIndex;
+      int offset = index - p.start;
+      if (offset > 0)
+      {
+        split(blockIndex, offset);
+        blockIndex++;
+      }
+    }
+
+    /*
+     * fill new blocks to three-quarters, leaving room for insertions
+     */
+    int fill = MAX_BLOCK_SIZE * 3 / 4;
+    Block block = null;
+    for (E e : c)
+    {
+      if (block == null || block.size == fill)
+      {
+        block = new Block(Math.min(fill, c.size()));
+        blocks.add(blockIndex++, block);
+      }
+      block.ensureCapacity();
+      block.items[block.size++] = e;
+      size++;
+    }
+    rebuildIndex();
+    lastPosition = null;
+    return true;
+  }
+
+  @Override
+  public void clear()
+  {
+    modCount++;
+    blocks.clear();
+    size = 0;
+    rebuildIndex();
+    lastPosition = null;
+  }
+
+  /**
+   * Answers an array of the list's entries, copied a block at a time
+   */
+  @Override
+  public Object[] toArray()
+  {
+    Object[] result = new Object[size];
+    int copied = 0;
+    for (Block block : blocks)
+    {
+      System.arraycopy(block.items, 0, result, copied, block.size);
+      copied += block.size;
+    }
+    return result;
+  }
+
+  @Override
+  public Iterator<E> iterator()
+  {
+    return new Iterator<E>()
+    {
+      int blockIndex = 0;
+
+      int offset = 0;
+
+      int returned = 0;
+
+      int expectedModCount = modCount;
+
+      @Override
+      public boolean hasNext()
+      {
+        return returned < size;
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public E next()
+      {
+        if (modCount != expectedModCount)
+        {
+          throw new ConcurrentModificationException();
+        }
+        if (returned >= size)
+        {
+          throw new NoSuchElementException();
+        }
+        while (offset >= blocks.get(blockIndex).size)
+        {
+          blockIndex++;
+          offset = 0;
+        }
+        returned++;
+        return (E) blocks.get(blockIndex).items[offset++];
+      }
+    };
+  }
+
+  /**
+   * Performs a binary search of the list (which should be sorted compatibly
+   * with the search criterion) to find the index of the first entry which
+   * satisfies <code>sc.compareTo(entry) &gt;= 0</code>. Returns the size of the
+   * list if there is no such entry.
+   *
+   * @param sc
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  int binarySearch(Comparable<? super E> sc)
+  {
+    /*
+     * find the first block whose last entry satisfies the condition
+     */
+    int start = 0;
+    int end = blocks.size() - 1;
+    int matched = blocks.size();
+    while (start <= end)
+    {
+      int mid = (start + end) >>> 1;
+      Block block = blocks.get(mid);
+      if (sc.compareTo((E) block.items[block.size - 1]) >= 0)
+      {
+        matched = mid;
+        end = mid - 1;
+      }
+      else
+      {
+        start = mid + 1;
+      }
+    }
+    if (matched == blocks.size())
+    {
+      return size;
+    }
+
+    /*
+     * then the first entry in that block that does
+     */
+    Block block = blocks.get(matched);
+    start = 0;
+    end = block.size - 1;
+    int offset = end;
+    while (start <= end)
+    {
+      int mid = (start + end) >>> 1;
+      if (sc.compareTo((E) block.items[mid]) >= 0)
+      {
+        offset = mid;
+        end = mid - 1;
+      }
+      else
+      {
+        start = mid + 1;
+      }
+    }
+    return prefixSum(matched) + offset;
+  }
+
+  /**
+   * Answers the position of the block holding the element at the given index
+   *
+   * @param index
+   * @return
+   */
+  private Position locate(int index)
+  {
+    Position p = lastPosition;
+    if (p != null && index >= p.start && index < p.end)
+    {
+      return p;
+    }
+
+    /*
+     * descend the Fenwick tree to find the block
+     */
+    int n = blocks.size();
+    int blockIndex = 0;
+    int remaining = index;
+    for (int step = Integer.highestOneBit(n); step > 0; step >>= 1)
+    {
+      int next = blockIndex + step;
+      if (next <= n && tree[next] <= remaining)
+      {
+        blockIndex = next;
+        remaining -= tree[next];
+      }
+    }
+    int start = index - remaining;
+    p = new Position(blockIndex, start,
+            start + blocks.get(blockIndex).size);
+    lastPosition = p;
+    return p;
+  }
+
+  /**
+   * Splits the block at the given index, moving its entries from
+   * <code>offset</code> onwards to a new block which follows it. Answers the
+   * new block.
+   *
+   * @param blockIndex
+   * @param offset
+   * @return
+   */
+  private Block split(int blockIndex, int offset)
+  {
+    Block block = blocks.get(blockIndex);
+    int moved = block.size - offset;
+    Block newBlock = new Block(Math.max(INITIAL_BLOCK_CAPACITY, moved));
+    System.arraycopy(block.items, offset, newBlock.items, 0, moved);
+    for (int i = offset; i < block.size; i++)
+    {
+      block.items[i] = null;
+    }
+    newBlock.size = moved;
+    block.size = offset;
+    blocks.add(blockIndex + 1, newBlock);
+    rebuildIndex();
+    return newBlock;
+  }
+
+  /**
+   * Answers a copy of the block's items array with at least the given capacity
+   *
+   * @param block
+   * @param capacity
+   * @return
+   */
+  private static Object[] copyOf(Block block, int capacity)
+  {
+    if (block.items.length >= capacity)
+    {
+      return block.items;
+    }
+    Object[] items = new Object[capacity];
+    System.arraycopy(block.items, 0, items, 0, block.size);
+    return items;
+  }
+
+  /**
+   * Answers the number of entries in blocks before the given block index
+   *
+   * @param blockIndex
+   * @return
+   */
+  private int prefixSum(int blockIndex)
+  {
+    int sum = 0;
+    for (int i = blockIndex; i > 0; i -= i & -i)
+    {
+      sum += tree[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Adjusts the indexed size of the given block by delta
+   *
+   * @param blockIndex
+   * @param delta
+   */
+  private void updateIndex(int blockIndex, int delta)
+  {
+    int n = blocks.size();
+    for (int i = blockIndex + 1; i <= n; i += i & -i)
+    {
+      tree[i] += delta;
+    }
+  }
+
+  /**
+   * Adds an empty block to the end of the list, and extends the index to
+   * include it without rebuilding it (the index array grows by doubling, so
+   * entries beyond the last block are unused)
+   *
+   * @return
+   */
+  private Block appendBlock()
+  {
+    Block block = new Block(INITIAL_BLOCK_CAPACITY);
+    blocks.add(block);
+    int i = blocks.size();
+    if (i >= tree.length)
+    {
+      tree = Arrays.copyOf(tree, 2 * i);
+    }
+
+    /*
+     * node i sums blocks i - lowbit(i) + 1 to i, of which block i is empty
+     */
+    tree[i] = prefixSum(i - 1) - prefixSum(i - (i & -i));
+    return block;
+  }
+
+  /**
+   * Rebuilds the index of block sizes, after blocks are added or removed
+   */
+  private void rebuildIndex()
+  {
+    int n = blocks.size();
+    tree = new int[n + 1];
+    for (int i = 1; i <= n; i++)
+    {
+      tree[i] += blocks.get(i - 1).size;
+      int parent = i + (i & -i);
+      if (parent <= n)
+      {
+        tree[parent] += tree[i];
+      }
+    }
+  }
+
+  /**
+   * Throws IndexOutOfBoundsException unless 0 &lt;= index &lt; bound
+   *
+   * @param index
+   * @param bound
+   */
+  private void checkIndex(int index, int bound)
+  {
+    if (index < 0 || index >= bound)
+    {
+      throw new IndexOutOfBoundsException(
+              "Index: " + index + ", Size: " + size);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package nclist.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import nclist.api.IntervalI;
+
+/**
+ * Helper methods that analyse the containment (nesting) of intervals presented
+ * in start position order (as defined by
+ * <code>RangeComparator.BY_START_POSITION</code>), for use by store
+ * implementations that are not themselves structured by containment
+ */
+final class Containment
+{
+  private Containment()
+  {
+  }
+
+  /**
+   * Answers the depth of nesting of the intervals, as it would be for an
+   * NCList holding them, where 1 means there are no contained intervals (and 0
+   * that there are no intervals)
+   * 
+   * @param sorted
+   *          an iterator over intervals in start position order
+   * @return
+   */
+  static int getDepth(Iterator<? extends IntervalI> sorted)
+  {
+    List<IntervalI> enclosing = new ArrayList<>();
+    int depth = 0;
+    while (sorted.hasNext())
+    {
+      IntervalI next = sorted.next();
+      pop(enclosing, next);
+      enclosing.add(next);
+      depth = Math.max(depth, enclosing.size());
+    }
+    return depth;
+  }
+
+  /**
+   * Answers a string representation of the intervals, one per line, where
+   * containment is shown by indentation, in the same format as
+   * <code>NCList.prettyPrint()</code>
+   * 
+   * @param sorted
+   *          an iterator over intervals in start position order
+   * @return
+   */
+  static String prettyPrint(Iterator<? extends IntervalI> sorted)
+  {
+    StringBuilder sb = new StringBuilder(512);
+    List<IntervalI> enclosing = new ArrayList<>();
+    boolean first = true;
+    while (sorted.hasNext())
+    {
+      IntervalI next = sorted.next();
+      pop(enclosing, next);
+      if (!first)
+      {
+        sb.append(System.lineSeparator());
+      }
+      first = false;
+      for (int i = 0; i < 2 * enclosing.size(); i++)
+      {
+        sb.append(" ");
+      }
+      sb.append(next.toString());
+      enclosing.add(next);
+    }
+    sb.append(System.lineSeparator());
+    return sb.toString();
+  }
+
+  /**
+   * Removes intervals from the end of the list until the last one properly
+   * contains the given interval (or the list is empty)
+   * 
+   * @param enclosing
+   * @param next
+   */
+  private static void pop(List<IntervalI> enclosing, IntervalI next)
+  {
+    while (!enclosing.isEmpty() && !enclosing.get(enclosing.size() - 1)
+            .properlyContainsInterval(next))
+    {
+      enclosing.remove(enclosing.size() - 1);
+    }
+  }
+}
@@ -0,0 +1,622 @@
+package nclist.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+import nclist.api.IntervalI;
+import nclist.api.IntervalStoreI;
+
+/**
+ * An immutable interval store held on disk, for more intervals than will fit
+ * in memory. The NCList is held in an NCList file, as written by
+ * <code>ExternalNCListBuilder</code>, and each interval's payload in a
+ * payload file, at the offset recorded as the interval's identifier. Both
+ * files are read a page at a time through a <code>BufferPool</code>, which
+ * bounds the memory used, and may be shared with other stores.
+ * <p>
+ * A query binary searches each subrange list it visits, so reads only the
+ * pages along the search path, and the pages of the overlapping entries and
+ * their payloads. Results are in start position order, as is iteration.
+ * Attempts to add or remove intervals throw
+ * <code>UnsupportedOperationException</code>. I/O errors while querying are
+ * thrown as <code>UncheckedIOException</code>.
+ *
+ * @param <T>
+ *          any type providing <code>getBegin()</code> and <code>getEnd()</code>
+ */
+public class DiskIntervalStore<T extends IntervalI>
+        extends AbstractCollection<T> implements IntervalStoreI<T>, Closeable
+{
+  /*
+   * offsets of the fields of an entry
+   */
+  private static final int END_FIELD = 4;
+
+  private static final int ID_FIELD = 8;
+
+  private static final int GROUP_FIELD = 16;
+
+  /**
+   * Converts the payload of an interval to and from bytes. The begin and end
+   * positions are stored by the store, so need not be in the payload.
+   *
+   * @param <T>
+   */
+  public interface Codec<T extends IntervalI>
+  {
+    byte[] encode(T interval);
+
+    T decode(int begin, int end, byte[] payload);
+  }
+
+  /**
+   * An iterator over the intervals overlapping a range, depth-first through
+   * the NCList file, so in start position order
+   */
+  private class OverlapIterator implements Iterator<T>
+  {
+    private final long from;
+
+    private final long to;
+
+    /*
+     * the next entry and limit in each group being read
+     */
+    private long[] indices = new long[16];
+
+    private long[] limits = new long[16];
+
+    private int depth;
+
+    private T next;
+
+    OverlapIterator(long from, long to)
+    {
+      this.from = from;
+      this.to = to;
+      try
+      {
+        if (entryCount > 0)
+        {
+          pushGroup(0);
+        }
+        next = advance();
+      } catch (IOException e)
+      {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Pushes a group onto the stack, from its first entry that ends at or
+     * after the start of the range
+     *
+     * @param group
+     * @throws IOException
+     */
+    private void pushGroup(long group) throws IOException
+    {
+      long position = directoryOffset
+              + group * ExternalNCListBuilder.GROUP_SIZE;
+      long first = index.readLong(position);
+      long limit = first + index.readLong(position + Long.BYTES);
+      if (depth == indices.length)
+      {
+        indices = Arrays.copyOf(indices, 2 * depth);
+        limits = Arrays.copyOf(limits, 2 * depth);
+      }
+      indices[depth] = firstEndingAtOrAfter(first, limit, from);
+      limits[depth] = limit;
+      depth++;
+    }
+
+    /**
+     * Answers the next overlapping interval, or null if there are no more
+     *
+     * @return
+     * @throws IOException
+     */
+    private T advance() throws IOException
+    {
+      while (depth > 0)
+      {
+        int top = depth - 1;
+        long i = indices[top];
+        if (i == limits[top])
+        {
+          depth--;
+          continue;
+        }
+        long position = entryPosition(i);
+        int begin = index.readInt(position);
+        if (begin > to)
+        {
+          depth--;
+          continue;
+        }
+        indices[top]++;
+        T interval = readInterval(position, begin);
+        long group = index.readLong(position + GROUP_FIELD);
+        if (group != -1)
+        {
+          pushGroup(group);
+        }
+        return interval;
+      }
+      return null;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return next != null;
+    }
+
+    @Override
+    public T next()
+    {
+      if (next == null)
+      {
+        throw new NoSuchElementException();
+      }
+      T result = next;
+      try
+      {
+        next = advance();
+      } catch (IOException e)
+      {
+        throw new UncheckedIOException(e);
+      }
+      return result;
+    }
+  }
+
+  private final PagedFile index;
+
+  private final PagedFile payloads;
+
+  private final Codec<T> codec;
+
+  private final long entryCount;
+
+  private final long groupCount;
+
+  private final long directoryOffset;
+
+  private final int depth;
+
+  /**
+   * Writes the NCList file and payload file for the given intervals, using
+   * default memory and threads for sorting, and answers the number of
+   * intervals written
+   *
+   * @param intervals
+   * @param codec
+   * @param indexFile
+   * @param payloadFile
+   * @return
+   * @throws IOException
+   */
+  public static <T extends IntervalI> long write(
+          Iterator<? extends T> intervals, Codec<? super T> codec,
+          File indexFile, File payloadFile) throws IOException
+  {
+    try (ExternalNCListBuilder builder = new ExternalNCListBuilder())
+    {
+      return write(intervals, codec, indexFile, payloadFile, builder);
+    }
+  }
+
+  /**
+   * Writes the NCList file and payload file for the given intervals, using
+   * the given (new) builder, and answers the number of intervals written. The
+   * payloads are written in the order of the intervals.
+   *
+   * @param intervals
+   * @param codec
+   * @param indexFile
+   * @param payloadFile
+   * @param builder
+   * @return
+   * @throws IOException
+   */
+  public static <T extends IntervalI> long write(
+          Iterator<? extends T> intervals, Codec<? super T> codec,
+          File indexFile, File payloadFile, ExternalNCListBuilder builder)
+          throws IOException
+  {
+    try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(payloadFile))))
+    {
+      long offset = 0;
+      while (intervals.hasNext())
+      {
+        T interval = intervals.next();
+        if (interval == null)
+        {
+          continue;
+        }
+        byte[] payload = codec.encode(interval);
+        builder.add(interval.getBegin(), interval.getEnd(), offset);
+        out.writeInt(payload.length);
+        out.write(payload);
+        offset += Integer.BYTES + payload.length;
+      }
+    }
+    return builder.build(indexFile);
+  }
+
+  /**
+   * Opens a store on an NCList file and payload file, reading pages through
+   * the given buffer pool
+   *
+   * @param indexFile
+   * @param payloadFile
+   * @param codec
+   * @param pool
+   * @throws IOException
+   *           if the files can't be read, or the NCList file is not valid
+   */
+  public DiskIntervalStore(File indexFile, File payloadFile, Codec<T> codec,
+          BufferPool pool) throws IOException
+  {
+    this.codec = codec;
+    index = new PagedFile(indexFile, pool);
+    try
+    {
+      payloads = new PagedFile(payloadFile, pool);
+    } catch (IOException e)
+    {
+      index.close();
+      throw e;
+    }
+    try
+    {
+      if (index.length() < ExternalNCListBuilder.HEADER_SIZE
+              || index.readInt(0) != ExternalNCListBuilder.MAGIC)
+      {
+        throw new IOException("Not an NCList file: " + indexFile);
+      }
+      if (index.readInt(Integer.BYTES) != ExternalNCListBuilder.VERSION)
+      {
+        throw new IOException("Unsupported NCList file version "
+                + index.readInt(Integer.BYTES) + ": " + indexFile);
+      }
+      entryCount = index
+              .readLong(ExternalNCListBuilder.ENTRY_COUNT_OFFSET);
+      groupCount = index
+              .readLong(ExternalNCListBuilder.GROUP_COUNT_OFFSET);
+      directoryOffset = index
+              .readLong(ExternalNCListBuilder.DIRECTORY_OFFSET);
+      depth = index.readInt(ExternalNCListBuilder.DEPTH_OFFSET);
+      if (index.length() != directoryOffset
+              + groupCount * ExternalNCListBuilder.GROUP_SIZE)
+      {
+        throw new IOException("NCList file truncated: " + indexFile);
+      }
+    } catch (IOException e)
+    {
+      close();
+      throw e;
+    }
+  }
+
+  private static long entryPosition(long i)
+  {
+    return ExternalNCListBuilder.HEADER_SIZE
+            + i * ExternalNCListBuilder.ENTRY_SIZE;
+  }
+
+  /**
+   * Answers the index of the first entry from first (inclusive) to limit
+   * (exclusive) whose end is at or after the target position, or limit if
+   * there is none. The entries of a group are in end position order.
+   *
+   * @param first
+   * @param limit
+   * @param target
+   * @return
+   * @throws IOException
+   */
+  private long firstEndingAtOrAfter(long first, long limit, long target)
+          throws IOException
+  {
+    long low = first;
+    long high = limit;
+    while (low < high)
+    {
+      long mid = (low + high) >>> 1;
+      if (index.readInt(entryPosition(mid) + END_FIELD) < target)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Reads the interval at the given entry position, decoding its payload
+   *
+   * @param position
+   * @param begin
+   * @return
+   * @throws IOException
+   */
+  private T readInterval(long position, int begin) throws IOException
+  {
+    int end = index.readInt(position + END_FIELD);
+    long offset = index.readLong(position + ID_FIELD);
+    byte[] payload = new byte[payloads.readInt(offset)];
+    payloads.readBytes(offset + Integer.BYTES, payload);
+    return codec.decode(begin, end, payload);
+  }
+
+  @Override
+  public List<T> findOverlaps(long from, long to)
+  {
+    List<T> result = new ArrayList<>();
+    Iterator<T> it = new OverlapIterator(from, to);
+    while (it.hasNext())
+    {
+      result.add(it.next());
+    }
+    return result;
+  }
+
+  /**
+   * Answers an iterator over the intervals in start position order, reading
+   * them from file as it proceeds. The iterator does not support the optional
+   * <code>remove</code> operation.
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    return new OverlapIterator(Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Answers true if the store holds an interval equal to the given object
+   */
+  @Override
+  public boolean contains(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    IntervalI entry = (IntervalI) o;
+    for (T interval : findOverlaps(entry.getBegin(), entry.getEnd()))
+    {
+      if (interval.equals(o))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Not supported, as the store is read-only. This and the other mutators
+   * throw at once, rather than (as inherited) after reading the file to find
+   * what to change.
+   */
+  @Override
+  public boolean add(T interval)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends T> c)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean remove(Object o)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super T> filter)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c)
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear()
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Answers the number of intervals, or <code>Integer.MAX_VALUE</code> if
+   * there are more than that (see <code>getEntryCount</code>)
+   */
+  @Override
+  public int size()
+  {
+    return (int) Math.min(Integer.MAX_VALUE, entryCount);
+  }
+
+  /**
+   * Answers the number of intervals held
+   *
+   * @return
+   */
+  public long getEntryCount()
+  {
+    return entryCount;
+  }
+
+  @Override
+  public String prettyPrint()
+  {
+    return Containment.prettyPrint(iterator());
+  }
+
+  /**
+   * Answers the depth of nesting, as recorded when the file was built
+   */
+  @Override
+  public int getDepth()
+  {
+    return depth;
+  }
+
+  /**
+   * Answers true if every group of entries is in start and end position
+   * order, every entry with subranges properly contains them, and the number
+   * of entries and groups reached is as recorded, else false. This reads the
+   * whole NCList file.
+   */
+  @Override
+  public boolean isValid()
+  {
+    try
+    {
+      return validate();
+    } catch (IOException e)
+    {
+      System.err.println("DiskIntervalStore " + e.getMessage());
+      return false;
+    }
+  }
+
+  private boolean validate() throws IOException
+  {
+    if (entryCount == 0)
+    {
+      return groupCount == 0;
+    }
+
+    /*
+     * visit the groups depth-first, with the begin and end of the
+     * entry that encloses each one
+     */
+    long[] groups = new long[16];
+    int[] begins = new int[16];
+    int[] ends = new int[16];
+    int top = 0;
+    groups[top] = 0;
+    begins[top] = Integer.MIN_VALUE;
+    ends[top++] = Integer.MAX_VALUE;
+    long entries = 0;
+    long groupsFound = 0;
+    while (top > 0)
+    {
+      top--;
+      long group = groups[top];
+      int parentBegin = begins[top];
+      int parentEnd = ends[top];
+      groupsFound++;
+      long position = directoryOffset
+              + group * ExternalNCListBuilder.GROUP_SIZE;
+      long first = index.readLong(position);
+      long count = index.readLong(position + Long.BYTES);
+      if (count < 1)
+      {
+        System.err.println("DiskIntervalStore empty group " + group);
+        return false;
+      }
+      entries += count;
+      for (long i = first; i < first + count; i++)
+      {
+        long pos = entryPosition(i);
+        int begin = index.readInt(pos);
+        int end = index.readInt(pos + END_FIELD);
+        boolean contained = parentBegin <= begin && end <= parentEnd
+                && (group == 0 || parentBegin < begin || end < parentEnd);
+        if (begin > end || !contained)
+        {
+          System.err.println("DiskIntervalStore " + begin + "-" + end
+                  + " not properly contained in group " + group);
+          return false;
+        }
+        long previous = pos - ExternalNCListBuilder.ENTRY_SIZE;
+        if (i > first && (index.readInt(previous) > begin
+                || index.readInt(previous + END_FIELD) > end))
+        {
+          System.err.println("DiskIntervalStore " + begin + "-" + end
+                  + " out of order in group " + group);
+          return false;
+        }
+        long subgroup = index.readLong(pos + GROUP_FIELD);
+        if (subgroup != -1)
+        {
+          if (subgroup <= group || subgroup >= groupCount)
+          {
+            System.err.println(
+                    "DiskIntervalStore invalid subgroup " + subgroup);
+            return false;
+          }
+          if (top == groups.length)
+          {
+            groups = Arrays.copyOf(groups, 2 * top);
+            begins = Arrays.copyOf(begins, 2 * top);
+            ends = Arrays.copyOf(ends, 2 * top);
+          }
+          groups[top] = subgroup;
+          begins[top] = begin;
+          ends[top++] = end;
+        }
+      }
+    }
+    if (entries != entryCount || groupsFound != groupCount)
+    {
+      System.err.println("DiskIntervalStore found " + entries
+              + " entries in " + groupsFound + " groups, expected "
+              + entryCount + " in " + groupCount);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Closes the files, and removes their pages from the buffer pool
+   */
+  @Override
+  public void close() throws IOException
+  {
+    try
+    {
+      index.close();
+    } finally
+    {
+      if (payloads != null)
+      {
+        payloads.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,406 @@
+package nclist.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import nclist.impl.ExternalSorter.RecordIterator;
+
+/**
+ * Builds an NCList file from more intervals than will fit in memory. Each
+ * interval is given as its begin and end positions, and a <code>long</code>
+ * identifier of its payload (such as a record number, or a file offset), so
+ * no objects are held per interval.
+ * <p>
+ * The intervals are sorted externally (see <code>ExternalSorter</code>) into
+ * start position order, and read back in one pass to find the nesting: each
+ * interval is a subrange of the innermost preceding interval that properly
+ * contains it, as for <code>NCList</code>. A second external sort groups the
+ * intervals by the subrange list they belong to, and the groups are written to
+ * the file. The two sorts are both live while nesting, as the first is read
+ * while the second is filled, so each is given half the memory. Heap use is
+ * then bounded by (about) the memory given to the constructor, plus the
+ * enclosing intervals of the current one (the depth of nesting). Runs are
+ * sorted and written on several threads.
+ * <p>
+ * The file layout (all values big-endian) is
+ * <ul>
+ * <li>a header of <code>HEADER_SIZE</code> bytes: magic number (int), version
+ * (int), number of entries (long), number of groups (long), offset of the
+ * group directory (long), depth of nesting (int)</li>
+ * <li>the entries, each of <code>ENTRY_SIZE</code> bytes: begin (int), end
+ * (int), identifier (long), and the group number of the entry's subranges, or
+ * -1 if it has none (long)</li>
+ * <li>the group directory, one per group of <code>GROUP_SIZE</code> bytes:
+ * index of the group's first entry (long), number of entries (long)</li>
+ * </ul>
+ * Group 0 is the top level of the NCList. The entries of each group are
+ * contiguous, and in start position order, which is also end position order,
+ * so a query can binary search each group it visits, just as
+ * <code>NCList</code> searches its subranges.
+ */
+public class ExternalNCListBuilder implements Closeable
+{
+  /*
+   * default memory for sorting, in bytes
+   */
+  public static final long DEFAULT_MEMORY = 64L << 20;
+
+  static final int MAGIC = 0x4E434C46; // "NCLF"
+
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 64;
+
+  static final int ENTRY_SIZE = 24;
+
+  static final int GROUP_SIZE = 16;
+
+  /*
+   * offsets of header fields
+   */
+  static final int ENTRY_COUNT_OFFSET = 8;
+
+  static final int GROUP_COUNT_OFFSET = 16;
+
+  static final int DIRECTORY_OFFSET = 24;
+
+  static final int DEPTH_OFFSET = 32;
+
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+  private final long memoryBytes;
+
+  private final int threads;
+
+  private final File tempDir;
+
+  /*
+   * records of interval key and identifier
+   */
+  private final ExternalSorter intervals;
+
+  private final long[] record = new long[2];
+
+  private boolean built;
+
+  /**
+   * Constructor with default memory, one thread per processor, and the system
+   * temporary directory
+   */
+  public ExternalNCListBuilder()
+  {
+    this(DEFAULT_MEMORY, Runtime.getRuntime().availableProcessors(), null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param memoryBytes
+   *          the memory to use for sorting, in bytes, shared equally by the
+   *          two sorts
+   * @param threads
+   *          the number of threads to sort and write runs of intervals
+   * @param tempDir
+   *          the directory for temporary files, or null for the system default
+   */
+  public ExternalNCListBuilder(long memoryBytes, int threads, File tempDir)
+  {
+    this.memoryBytes = memoryBytes;
+    this.threads = threads;
+    this.tempDir = tempDir;
+    intervals = new ExternalSorter(record.length, memoryBytes / 2, threads,
+            tempDir);
+  }
+
+  /**
+   * Adds an interval
+   *
+   * @param begin
+   * @param end
+   * @param id
+   *          an identifier for the interval's payload
+   * @throws IOException
+   *           if writing to a temporary file fails
+   * @throws IllegalArgumentException
+   *           if end is less than begin
+   * @throws IllegalStateException
+   *           if the file has already been built
+   */
+  public void add(int begin, int end, long id) throws IOException
+  {
+    if (built)
+    {
+      throw new IllegalStateException("NCList file already built");
+    }
+    if (end < begin)
+    {
+      throw new IllegalArgumentException(
+              "Reverse range " + begin + "-" + end);
+    }
+    record[0] = RadixSorter.getKey(begin, end);
+    record[1] = id;
+    intervals.add(record);
+  }
+
+  /**
+   * Answers the number of intervals added
+   *
+   * @return
+   */
+  public long size()
+  {
+    return intervals.size();
+  }
+
+  /**
+   * Writes the NCList file of the intervals added, replacing any existing
+   * file, and answers the number of intervals written. Temporary files are
+   * deleted.
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   * @throws IllegalStateException
+   *           if the file has already been built
+   */
+  public long build(File file) throws IOException
+  {
+    if (built)
+    {
+      throw new IllegalStateException("NCList file already built");
+    }
+    built = true;
+    try (ExternalSorter grouped = new ExternalSorter(4,
+            memoryBytes - memoryBytes / 2, threads, tempDir))
+    {
+      long[] nesting = nest(intervals.sort(), grouped);
+      intervals.close();
+      write(grouped.sort(), file, grouped.size(), nesting[0],
+              (int) nesting[1]);
+      return grouped.size();
+    } finally
+    {
+      intervals.close();
+    }
+  }
+
+  /**
+   * Reads intervals in start position order, and adds to the
+   * <code>grouped</code> sorter a record for each of: the number of the group
+   * it belongs to, its key, its identifier, and the number of the group of its
+   * subranges (or -1). Answers the number of groups and the depth of nesting.
+   *
+   * @param sorted
+   * @param grouped
+   * @return
+   * @throws IOException
+   */
+  private static long[] nest(RecordIterator sorted, ExternalSorter grouped)
+          throws IOException
+  {
+    /*
+     * the enclosing intervals of the current one, and their groups;
+     * an interval is given a group for its subranges when its first
+     * subrange is found, which is always the next interval read, so
+     * records are added one behind to set that group first
+     */
+    int[] begins = new int[16];
+    int[] ends = new int[16];
+    long[] groups = new long[16];
+    int depth = 0;
+    int maxDepth = 0;
+    long nextGroup = 1;
+    long[] pending = new long[4];
+    boolean hasPending = false;
+
+    while (sorted.next())
+    {
+      long key = sorted.get(0);
+      int begin = RadixSorter.getBegin(key);
+      int end = RadixSorter.getEnd(key);
+      while (depth > 0 && !(begins[depth - 1] <= begin
+              && end <= ends[depth - 1]
+              && (begins[depth - 1] < begin || end < ends[depth - 1])))
+      {
+        depth--;
+      }
+      long group = 0;
+      if (depth > 0)
+      {
+        if (groups[depth - 1] == -1)
+        {
+          groups[depth - 1] = nextGroup++;
+          pending[3] = groups[depth - 1];
+        }
+        group = groups[depth - 1];
+      }
+      if (hasPending)
+      {
+        grouped.add(pending);
+      }
+      pending[0] = group;
+      pending[1] = key;
+      pending[2] = sorted.get(1);
+      pending[3] = -1;
+      hasPending = true;
+
+      if (depth == begins.length)
+      {
+        begins = Arrays.copyOf(begins, 2 * depth);
+        ends = Arrays.copyOf(ends, 2 * depth);
+        groups = Arrays.copyOf(groups, 2 * depth);
+      }
+      begins[depth] = begin;
+      ends[depth] = end;
+      groups[depth] = -1;
+      depth++;
+      maxDepth = Math.max(maxDepth, depth);
+    }
+    if (hasPending)
+    {
+      grouped.add(pending);
+    }
+    return new long[] { hasPending ? nextGroup : 0, maxDepth };
+  }
+
+  /**
+   * Writes the NCList file from records in group order
+   *
+   * @param records
+   * @param file
+   * @param entryCount
+   * @param groupCount
+   * @param depth
+   * @throws IOException
+   */
+  private static void write(RecordIterator records, File file,
+          long entryCount, long groupCount, int depth) throws IOException
+  {
+    long directoryOffset = HEADER_SIZE + entryCount * ENTRY_SIZE;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel())
+    {
+      channel.truncate(0);
+      ByteBuffer entries = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+      ByteBuffer directory = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+      long entryPosition = HEADER_SIZE;
+      long groupPosition = directoryOffset;
+      long group = -1;
+      long groupStart = 0;
+      long index = 0;
+      while (records.next())
+      {
+        long g = records.get(0);
+        if (g != group)
+        {
+          if (g != group + 1)
+          {
+            throw new IllegalStateException(
+                    "Group " + g + " follows group " + group);
+          }
+          if (group >= 0)
+          {
+            groupPosition = putGroup(channel, directory, groupPosition,
+                    groupStart, index - groupStart);
+          }
+          group = g;
+          groupStart = index;
+        }
+        if (entries.remaining() < ENTRY_SIZE)
+        {
+          entryPosition = flush(channel, entries, entryPosition);
+        }
+        long key = records.get(1);
+        entries.putInt(RadixSorter.getBegin(key));
+        entries.putInt(RadixSorter.getEnd(key));
+        entries.putLong(records.get(2));
+        entries.putLong(records.get(3));
+        index++;
+      }
+      if (group >= 0)
+      {
+        groupPosition = putGroup(channel, directory, groupPosition,
+                groupStart, index - groupStart);
+      }
+      flush(channel, entries, entryPosition);
+      flush(channel, directory, groupPosition);
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putLong(ENTRY_COUNT_OFFSET, entryCount);
+      header.putLong(GROUP_COUNT_OFFSET, groupCount);
+      header.putLong(DIRECTORY_OFFSET, directoryOffset);
+      header.putInt(DEPTH_OFFSET, depth);
+      header.clear();
+      flushFully(channel, header, 0);
+    }
+  }
+
+  /**
+   * Adds a group directory entry to the buffer, first writing the buffer if
+   * full, and answers the file position for the next write of the buffer
+   *
+   * @param channel
+   * @param directory
+   * @param position
+   * @param first
+   * @param count
+   * @return
+   * @throws IOException
+   */
+  private static long putGroup(FileChannel channel, ByteBuffer directory,
+          long position, long first, long count) throws IOException
+  {
+    if (directory.remaining() < GROUP_SIZE)
+    {
+      position = flush(channel, directory, position);
+    }
+    directory.putLong(first);
+    directory.putLong(count);
+    return position;
+  }
+
+  /**
+   * Writes the contents of the buffer to the file at the given position, and
+   * answers the position following them
+   *
+   * @param channel
+   * @param buffer
+   * @param position
+   * @return
+   * @throws IOException
+   */
+  private static long flush(FileChannel channel, ByteBuffer buffer,
+          long position) throws IOException
+  {
+    buffer.flip();
+    position = flushFully(channel, buffer, position);
+    buffer.clear();
+    return position;
+  }
+
+  private static long flushFully(FileChannel channel, ByteBuffer buffer,
+          long position) throws IOException
+  {
+    while (buffer.hasRemaining())
+    {
+      position += channel.write(buffer, position);
+    }
+    return position;
+  }
+
+  /**
+   * Deletes any temporary files, and stops the sorting threads
+   */
+  @Override
+  public void close() throws IOException
+  {
+    intervals.close();
+  }
+}
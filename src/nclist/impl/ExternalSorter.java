@@ -0,0 +1,597 @@
+package nclist.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An external merge sort of records of a fixed number of <code>long</code>
+ * fields, by the unsigned value of the first field (the key), for more
+ * records than will fit in memory.
+ * <p>
+ * Records are added to a buffer; each full buffer is radix sorted and written
+ * to a temporary file as a sorted run, on a pool of worker threads, while
+ * further records are added to another buffer. The runs are then merged, at
+ * most <code>MAX_FAN_IN</code> at a time, to read back all the records in key
+ * order. The sort is stable: records with equal keys are read back in the
+ * order added.
+ * <p>
+ * Heap use is bounded by the memory given to the constructor, which is shared
+ * between one buffer per worker thread, and one being filled. If all records
+ * fit in one buffer, they are sorted in memory, and no files are written.
+ * Not thread-safe.
+ */
+final class ExternalSorter implements Closeable
+{
+  /**
+   * An iterator over sorted records, which answers the fields of the current
+   * record
+   */
+  interface RecordIterator
+  {
+    /**
+     * Advances to the next record, answering false if there are no more
+     *
+     * @return
+     * @throws IOException
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Answers the given field of the current record
+     *
+     * @param field
+     * @return
+     */
+    long get(int field);
+  }
+
+  /*
+   * the most runs merged at once
+   */
+  static final int MAX_FAN_IN = 64;
+
+  /*
+   * size of the read or write buffer of a run file
+   */
+  private static final int IO_BUFFER_SIZE = 1 << 16;
+
+  /*
+   * memory used by the radix sort for each record, for its keys,
+   * indices, and their copies
+   */
+  private static final int SORT_BYTES_PER_RECORD = 2
+          * (Long.BYTES + Integer.BYTES);
+
+  private final int width;
+
+  private final int capacity;
+
+  private final File tempDir;
+
+  private final ExecutorService executor;
+
+  /*
+   * buffers not in use, limiting the buffers in memory at once
+   */
+  private final BlockingQueue<long[]> freeBuffers;
+
+  private final int maxBuffers;
+
+  /*
+   * the number of buffers allocated so far
+   */
+  private int allocated;
+
+  /*
+   * runs being (or already) written, in the order their records were added
+   */
+  private final List<Future<File>> runs = new ArrayList<>();
+
+  /*
+   * temporary files, and merge iterators, to close
+   */
+  private final List<File> files = new ArrayList<>();
+
+  private final List<Closeable> closeables = new ArrayList<>();
+
+  private long[] buffer;
+
+  private int count;
+
+  private long size;
+
+  /**
+   * Constructor
+   *
+   * @param width
+   *          the number of fields in a record
+   * @param memoryBytes
+   *          the memory to use for buffering records
+   * @param threads
+   *          the number of threads sorting and writing runs
+   * @param tempDir
+   *          the directory for temporary files, or null for the system default
+   * @throws IllegalArgumentException
+   *           if the memory is too little to buffer two records per buffer
+   */
+  ExternalSorter(int width, long memoryBytes, int threads, File tempDir)
+  {
+    if (width < 1 || threads < 1)
+    {
+      throw new IllegalArgumentException(
+              "Invalid width " + width + " or threads " + threads);
+    }
+    this.width = width;
+    this.tempDir = tempDir;
+    long perBuffer = memoryBytes / (threads + 1);
+    long records = perBuffer / (width * Long.BYTES + SORT_BYTES_PER_RECORD);
+    if (records < 2)
+    {
+      throw new IllegalArgumentException(
+              "Too little memory to sort: " + memoryBytes);
+    }
+    capacity = (int) Math.min(records, Integer.MAX_VALUE / width);
+    maxBuffers = threads + 1;
+    freeBuffers = new ArrayBlockingQueue<>(maxBuffers);
+    executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "ExternalSorter");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Adds a record, whose first <code>width</code> fields are copied
+   *
+   * @param record
+   * @throws IOException
+   *           if writing a sorted run fails
+   */
+  void add(long[] record) throws IOException
+  {
+    if (buffer == null)
+    {
+      buffer = takeBuffer();
+    }
+    System.arraycopy(record, 0, buffer, count * width, width);
+    count++;
+    size++;
+    if (count == capacity)
+    {
+      spill();
+    }
+  }
+
+  /**
+   * Answers the number of records added
+   *
+   * @return
+   */
+  long size()
+  {
+    return size;
+  }
+
+  /**
+   * Answers the number of sorted runs written to file so far
+   *
+   * @return
+   */
+  int getRunCount()
+  {
+    return runs.size();
+  }
+
+  /**
+   * Answers the maximum number of records held in one buffer
+   *
+   * @return
+   */
+  int getCapacity()
+  {
+    return capacity;
+  }
+
+  /**
+   * Answers a buffer to fill, waiting for one to be freed if all are in use
+   *
+   * @return
+   * @throws IOException
+   */
+  private long[] takeBuffer() throws IOException
+  {
+    long[] free = freeBuffers.poll();
+    if (free != null)
+    {
+      return free;
+    }
+    if (allocated < maxBuffers)
+    {
+      allocated++;
+      return new long[capacity * width];
+    }
+    try
+    {
+      return freeBuffers.take();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for a sort buffer", e);
+    }
+  }
+
+  /**
+   * Hands the current buffer to a worker thread to sort and write as a run
+   *
+   * @throws IOException
+   */
+  private void spill() throws IOException
+  {
+    final long[] records = buffer;
+    final int n = count;
+    buffer = null;
+    count = 0;
+    final File file = File.createTempFile("nclist", ".run", tempDir);
+    files.add(file);
+    runs.add(executor.submit(new Callable<File>()
+    {
+      @Override
+      public File call() throws IOException
+      {
+        try
+        {
+          writeRun(records, n, file);
+        } finally
+        {
+          freeBuffers.offer(records);
+        }
+        return file;
+      }
+    }));
+  }
+
+  /**
+   * Sorts the first n records in the buffer, and writes them to the file
+   *
+   * @param records
+   * @param n
+   * @param file
+   * @throws IOException
+   */
+  private void writeRun(long[] records, int n, File file) throws IOException
+  {
+    int[] order = sort(records, n);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file), IO_BUFFER_SIZE)))
+    {
+      for (int i = 0; i < n; i++)
+      {
+        int from = order[i] * width;
+        for (int f = 0; f < width; f++)
+        {
+          out.writeLong(records[from + f]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Answers the indices of the first n records in the buffer, in (stable)
+   * order of their keys
+   *
+   * @param records
+   * @param n
+   * @return
+   */
+  private int[] sort(long[] records, int n)
+  {
+    long[] keys = new long[n];
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+      keys[i] = records[i * width];
+      order[i] = i;
+    }
+    if (n > 1)
+    {
+      RadixSorter.sort(keys, order);
+    }
+    return order;
+  }
+
+  /**
+   * Answers an iterator over all the records added, in key order. No more
+   * records may be added after this.
+   *
+   * @return
+   * @throws IOException
+   */
+  RecordIterator sort() throws IOException
+  {
+    if (runs.isEmpty())
+    {
+      /*
+       * everything fits in memory
+       */
+      long[] records = buffer == null ? new long[0] : buffer;
+      int n = count;
+      buffer = null;
+      count = 0;
+      return new BufferIterator(records, sort(records, n), width);
+    }
+    if (count > 0)
+    {
+      spill();
+    }
+    List<File> sorted = new ArrayList<>();
+    for (Future<File> run : runs)
+    {
+      sorted.add(await(run));
+    }
+    runs.clear();
+    freeBuffers.clear();
+
+    /*
+     * merge consecutive runs (to keep the sort stable) until few enough
+     * remain to merge at once
+     */
+    while (sorted.size() > MAX_FAN_IN)
+    {
+      List<File> merged = new ArrayList<>();
+      for (int i = 0; i < sorted.size(); i += MAX_FAN_IN)
+      {
+        List<File> group = sorted.subList(i,
+                Math.min(sorted.size(), i + MAX_FAN_IN));
+        File file = File.createTempFile("nclist", ".run", tempDir);
+        files.add(file);
+        try (MergeIterator it = new MergeIterator(group, width);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(file),
+                                IO_BUFFER_SIZE)))
+        {
+          while (it.next())
+          {
+            for (int f = 0; f < width; f++)
+            {
+              out.writeLong(it.get(f));
+            }
+          }
+        }
+        for (File done : group)
+        {
+          done.delete();
+        }
+        merged.add(file);
+      }
+      sorted = merged;
+    }
+    MergeIterator merge = new MergeIterator(sorted, width);
+    closeables.add(merge);
+    return merge;
+  }
+
+  /**
+   * Waits for a run to be written, answering its file
+   *
+   * @param run
+   * @return
+   * @throws IOException
+   */
+  private static File await(Future<File> run) throws IOException
+  {
+    try
+    {
+      return run.get();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted writing a sorted run", e);
+    } catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof IOException)
+      {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed writing a sorted run", e.getCause());
+    }
+  }
+
+  /**
+   * Stops the worker threads, and deletes any temporary files
+   */
+  @Override
+  public void close() throws IOException
+  {
+    executor.shutdownNow();
+    for (Closeable c : closeables)
+    {
+      c.close();
+    }
+    closeables.clear();
+    for (File file : files)
+    {
+      file.delete();
+    }
+    files.clear();
+    buffer = null;
+    freeBuffers.clear();
+  }
+
+  /**
+   * An iterator over records sorted in memory
+   */
+  private static final class BufferIterator implements RecordIterator
+  {
+    private final long[] records;
+
+    private final int[] order;
+
+    private final int width;
+
+    private int next;
+
+    private int current = -1;
+
+    BufferIterator(long[] records, int[] order, int width)
+    {
+      this.records = records;
+      this.order = order;
+      this.width = width;
+    }
+
+    @Override
+    public boolean next()
+    {
+      if (next == order.length)
+      {
+        return false;
+      }
+      current = order[next++] * width;
+      return true;
+    }
+
+    @Override
+    public long get(int field)
+    {
+      return records[current + field];
+    }
+  }
+
+  /**
+   * A k-way merge of sorted run files, preferring the earlier run where keys
+   * are equal
+   */
+  private static final class MergeIterator
+          implements RecordIterator, Closeable
+  {
+    private static final class Run
+    {
+      final DataInputStream in;
+
+      final int index;
+
+      final long[] record;
+
+      Run(DataInputStream in, int index, int width)
+      {
+        this.in = in;
+        this.index = index;
+        this.record = new long[width];
+      }
+
+      /**
+       * Reads the next record, answering false at the end of the run
+       *
+       * @return
+       * @throws IOException
+       */
+      boolean read() throws IOException
+      {
+        try
+        {
+          record[0] = in.readLong();
+        } catch (EOFException e)
+        {
+          return false;
+        }
+        for (int f = 1; f < record.length; f++)
+        {
+          record[f] = in.readLong();
+        }
+        return true;
+      }
+    }
+
+    private final PriorityQueue<Run> queue;
+
+    private final List<Run> open = new ArrayList<>();
+
+    private Run current;
+
+    MergeIterator(List<File> files, int width) throws IOException
+    {
+      queue = new PriorityQueue<>(Math.max(1, files.size()),
+              new Comparator<Run>()
+              {
+                @Override
+                public int compare(Run r1, Run r2)
+                {
+                  int order = Long.compareUnsigned(r1.record[0],
+                          r2.record[0]);
+                  return order != 0 ? order
+                          : Integer.compare(r1.index, r2.index);
+                }
+              });
+      try
+      {
+        for (int i = 0; i < files.size(); i++)
+        {
+          Run run = new Run(new DataInputStream(new BufferedInputStream(
+                  new FileInputStream(files.get(i)), IO_BUFFER_SIZE)), i,
+                  width);
+          open.add(run);
+          if (run.read())
+          {
+            queue.add(run);
+          }
+        }
+      } catch (IOException e)
+      {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public boolean next() throws IOException
+    {
+      if (current != null && current.read())
+      {
+        queue.add(current);
+      }
+      current = queue.poll();
+      return current != null;
+    }
+
+    @Override
+    public long get(int field)
+    {
+      return current.record[field];
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      for (Run run : open)
+      {
+        run.in.close();
+      }
+      open.clear();
+    }
+  }
+}
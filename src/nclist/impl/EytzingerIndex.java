@@ -0,0 +1,106 @@
+package nclist.impl;
+
+/**
+ * An index over a nondecreasing array of positions, holding a copy of them in
+ * Eytzinger (breadth-first) order: the children of the key at (1-based) index k
+ * are at 2k and 2k+1. A binary search then walks down the array from the front,
+ * so that the first few levels share a few cache lines, and each step is a
+ * branch-free index calculation with a single load (rather than a
+ * <code>List.get</code> followed by <code>getEnd()</code>).
+ * <p>
+ * Results are identical to a binary search of the sorted positions.
+ */
+class EytzingerIndex extends PositionIndex
+{
+  /*
+   * keys in Eytzinger order, from index 1 (index 0 is unused), padded with
+   * Integer.MAX_VALUE to a perfect binary tree
+   */
+  private final int[] tree;
+
+  /*
+   * number of levels in the tree
+   */
+  private final int height;
+
+  /**
+   * Constructor
+   * 
+   * @param keys
+   *          keys in nondecreasing order
+   */
+  EytzingerIndex(int[] keys)
+  {
+    this(keys, null);
+  }
+
+  /**
+   * Constructor given also the begin positions of the intervals
+   * 
+   * @param keys
+   *          keys in nondecreasing order
+   * @param begins
+   *          begin positions in nondecreasing order, or null
+   */
+  EytzingerIndex(int[] keys, int[] begins)
+  {
+    super(keys, begins);
+    height = 32 - Integer.numberOfLeadingZeros(keys.length);
+    tree = new int[1 << height];
+    fill(0, 1);
+  }
+
+  /**
+   * Fills the subtree rooted at (1-based) index k with keys in order from index
+   * i of the sorted keys, and answers the index of the next key
+   * 
+   * @param i
+   * @param k
+   * @return
+   */
+  private int fill(int i, int k)
+  {
+    if (k < tree.length)
+    {
+      i = fill(i, 2 * k);
+      tree[k] = i < keys.length ? keys[i] : Integer.MAX_VALUE;
+      i = fill(i + 1, 2 * k + 1);
+    }
+    return i;
+  }
+
+  @Override
+  int firstAtOrAfter(long target)
+  {
+    int k = 1;
+    for (int level = 0; level < height; level++)
+    {
+      k = 2 * k + (tree[k] < target ? 1 : 0);
+    }
+
+    /*
+     * the answer is where the search last went left, found by
+     * removing the trailing 1 bits (right turns) and one 0 bit
+     */
+    k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+    if (k == 0)
+    {
+      return keys.length;
+    }
+
+    /*
+     * the sorted index of node k at depth d in a perfect tree, which may be
+     * a padding entry (after all the keys)
+     */
+    int depth = 31 - Integer.numberOfLeadingZeros(k);
+    int offset = k - (1 << depth);
+    int rank = ((2 * offset + 1) << (height - 1 - depth)) - 1;
+    return Math.min(rank, keys.length);
+  }
+
+  @Override
+  SearchIndex getKind()
+  {
+    return SearchIndex.EYTZINGER;
+  }
+}
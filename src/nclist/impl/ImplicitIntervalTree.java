@@ -0,0 +1,307 @@
+package nclist.impl;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import nclist.api.IntervalI;
+import nclist.api.IntervalStoreI;
+
+/**
+ * An immutable interval store for data that does not change after loading.
+ * Intervals are held in an array sorted by start position (as ordered by
+ * <code>RangeComparator.BY_START_POSITION</code>), which doubles as an implicit
+ * balanced binary tree: the node at level k has index with k trailing 1 bits,
+ * and its children are at index &plusmn; 2<sup>k-1</sup>. The greatest end
+ * position in each subtree is stored in place, in a parallel array, so there
+ * are no per-node objects or pointers to follow. This is the layout used by
+ * cgranges (Heng Li, https://github.com/lh3/cgranges).
+ * <p>
+ * Overlap queries are O(log N + K) for K results, and return results in start
+ * position order. Attempts to add or remove intervals throw
+ * <code>UnsupportedOperationException</code>.
+ *
+ * @param <T>
+ *          any type providing <code>getBegin()</code> and <code>getEnd()</code>
+ */
+public class ImplicitIntervalTree<T extends IntervalI>
+        extends AbstractCollection<T> implements IntervalStoreI<T>
+{
+  /*
+   * below this level, a subtree is scanned linearly rather than descended
+   */
+  private static final int SCAN_LEVEL = 3;
+
+  /*
+   * intervals sorted by start position
+   */
+  private final List<T> intervals;
+
+  /*
+   * start, end, and greatest subtree end, by index in intervals
+   */
+  private final int[] begins;
+
+  private final int[] ends;
+
+  private final int[] maxEnds;
+
+  /*
+   * level of the root node (or -1 if empty)
+   */
+  private final int maxLevel;
+
+  /**
+   * Constructor given a list of intervals, which is copied (and not modified).
+   * Null entries are ignored.
+   *
+   * @param ranges
+   */
+  public ImplicitIntervalTree(List<T> ranges)
+  {
+    List<T> sorted = new ArrayList<>(ranges.size());
+    for (T range : ranges)
+    {
+      if (range != null)
+      {
+        sorted.add(range);
+      }
+    }
+    RadixSorter.sort(sorted);
+    intervals = Collections.unmodifiableList(sorted);
+
+    int n = sorted.size();
+    begins = new int[n];
+    ends = new int[n];
+    maxEnds = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+      T range = sorted.get(i);
+      begins[i] = range.getBegin();
+      ends[i] = range.getEnd();
+    }
+    maxLevel = index(maxEnds);
+  }
+
+  /**
+   * Computes the greatest end position of each node's subtree, bottom up, into
+   * the given array, and answers the level of the root node. Where the tree is
+   * incomplete, the missing right child of a node takes the greatest end of
+   * the last node.
+   *
+   * @param maxEnds
+   * @return
+   */
+  private int index(int[] maxEnds)
+  {
+    int n = begins.length;
+    if (n == 0)
+    {
+      return -1;
+    }
+    int lastIndex = 0;
+    int lastMax = 0;
+    for (int i = 0; i < n; i += 2)
+    {
+      lastIndex = i;
+      lastMax = maxEnds[i] = ends[i];
+    }
+    int k = 1;
+    for (; 1L << k <= n; k++)
+    {
+      int x = 1 << (k - 1);
+      int first = (x << 1) - 1;
+      int step = x << 2;
+      for (int i = first; i < n; i += step)
+      {
+        int leftMax = maxEnds[i - x];
+        int rightMax = i + x < n ? maxEnds[i + x] : lastMax;
+        maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+      }
+
+      /*
+       * move lastIndex to its parent, and update lastMax if it is in range
+       */
+      lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x
+              : lastIndex + x;
+      if (lastIndex < n && maxEnds[lastIndex] > lastMax)
+      {
+        lastMax = maxEnds[lastIndex];
+      }
+    }
+    return k - 1;
+  }
+
+  @Override
+  public List<T> findOverlaps(long from, long to)
+  {
+    List<T> result = new ArrayList<>();
+    if (maxLevel < 0)
+    {
+      return result;
+    }
+    int n = begins.length;
+
+    /*
+     * top-down traversal with an explicit stack of (level, index, whether
+     * left child has been visited); tree height is at most 31 so the
+     * stack can't exceed 64 entries
+     */
+    int[] levels = new int[64];
+    int[] indices = new int[64];
+    boolean[] leftDone = new boolean[64];
+    int top = 0;
+    levels[top] = maxLevel;
+    indices[top] = (1 << maxLevel) - 1;
+    leftDone[top++] = false;
+
+    while (top > 0)
+    {
+      top--;
+      int k = levels[top];
+      int x = indices[top];
+      if (k <= SCAN_LEVEL)
+      {
+        /*
+         * small subtree: scan all of it
+         */
+        int i0 = x >> k << k;
+        int i1 = Math.min(n, i0 + (1 << (k + 1)) - 1);
+        for (int i = i0; i < i1 && begins[i] <= to; i++)
+        {
+          if (ends[i] >= from)
+          {
+            result.add(intervals.get(i));
+          }
+        }
+      }
+      else if (!leftDone[top])
+      {
+        /*
+         * revisit this node after its left child; push the left child
+         * if it is (as the root of an incomplete tree may be) out of range,
+         * or could hold an overlap
+         */
+        int left = x - (1 << (k - 1));
+        leftDone[top++] = true;
+        if (left >= n || maxEnds[left] >= from)
+        {
+          levels[top] = k - 1;
+          indices[top] = left;
+          leftDone[top++] = false;
+        }
+      }
+      else if (x < n && begins[x] <= to)
+      {
+        if (ends[x] >= from)
+        {
+          result.add(intervals.get(x));
+        }
+        levels[top] = k - 1;
+        indices[top] = x + (1 << (k - 1));
+        leftDone[top++] = false;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Answers true if the store holds an interval equal to the given object
+   */
+  @Override
+  public boolean contains(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    int begin = ((IntervalI) o).getBegin();
+
+    /*
+     * binary search for the first interval with the same start
+     */
+    int low = 0;
+    int high = begins.length;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (begins[mid] < begin)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    for (int i = low; i < begins.length && begins[i] == begin; i++)
+    {
+      if (intervals.get(i).equals(o))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Answers an iterator over the intervals in start position order. The
+   * iterator does not support the optional <code>remove</code> operation.
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    return intervals.iterator();
+  }
+
+  @Override
+  public int size()
+  {
+    return intervals.size();
+  }
+
+  @Override
+  public String prettyPrint()
+  {
+    return Containment.prettyPrint(iterator());
+  }
+
+  /**
+   * Answers the level of nesting of the intervals, as it would be for an
+   * NCList holding them (not the height of the tree)
+   */
+  @Override
+  public int getDepth()
+  {
+    return Containment.getDepth(iterator());
+  }
+
+  /**
+   * Answers true if the intervals are in start position order and the
+   * greatest end position recorded for each subtree is correct, else false
+   */
+  @Override
+  public boolean isValid()
+  {
+    for (int i = 1; i < intervals.size(); i++)
+    {
+      if (RangeComparator.BY_START_POSITION.compare(intervals.get(i - 1),
+              intervals.get(i)) > 0)
+      {
+        System.err.println("ImplicitIntervalTree " + intervals.get(i)
+                + " out of order");
+        return false;
+      }
+    }
+    int[] expected = new int[maxEnds.length];
+    if (index(expected) != maxLevel || !Arrays.equals(expected, maxEnds))
+    {
+      System.err.println("ImplicitIntervalTree index is invalid");
+      return false;
+    }
+    return true;
+  }
+}
@@ -2,9 +2,12 @@ package nclist.impl;
 
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 
 import nclist.api.IntervalI;
 import nclist.api.IntervalStoreI;
@@ -44,6 +47,11 @@ public class IntervalStore<T extends IntervalI>
      */
     Iterator<? extends IntervalI> nestedIterator;
 
+    /*
+     * iterator over point intervals
+     */
+    Iterator<? extends IntervalI> pointIterator;
+
     /**
      * Constructor initialises iterators over the top level list and any nested
      * NCList
@@ -58,13 +66,15 @@ public class IntervalStore<T extends IntervalI>
       {
         nestedIterator = nested.iterator();
       }
+      pointIterator = points.iterator();
     }
 
     @Override
     public boolean hasNext()
     {
       return topLevelIterator.hasNext() ? true
-              : (nestedIterator != null && nestedIterator.hasNext());
+              : (nestedIterator != null && nestedIterator.hasNext())
+                      || pointIterator.hasNext();
     }
 
     @Override
@@ -74,25 +84,220 @@ public class IntervalStore<T extends IntervalI>
       {
         return (V) topLevelIterator.next();
       }
-      if (nestedIterator != null)
+      if (nestedIterator != null && nestedIterator.hasNext())
       {
         return (V) nestedIterator.next();
       }
+      if (pointIterator.hasNext())
+      {
+        @SuppressWarnings("unchecked")
+        V point = (V) pointIterator.next();
+        return point;
+      }
       throw new NoSuchElementException();
     }
 
   }
 
+  /**
+   * A count of the instances of one (distinct by equals) interval held in each
+   * tier of the store
+   */
+  private static final class TierCounts
+  {
+    int nonNested;
+
+    int nested;
+
+    int points;
+  }
+
+  /*
+   * the least capacity to presize a list of query results
+   */
+  private static final int MIN_RESULT_CAPACITY = 10;
+
   private List<T> nonNested;
 
   private NCList<T> nested;
 
+  /*
+   * zero-length intervals (begin == end), held apart from the others as
+   * they need no nesting structure, and would otherwise crowd the NCList
+   * (a point within a longer interval is always nested)
+   */
+  private final PointList<T> points;
+
+  /*
+   * optional index from each distinct (by equals) interval to the number of
+   * its instances held in the non-nested, nested and point tiers; null if
+   * not indexed
+   */
+  private Map<T, TierCounts> index;
+
+  /*
+   * optional index over the end positions of nonNested, discarded
+   * whenever nonNested is modified
+   */
+  private volatile PositionIndex searchIndex;
+
   /**
    * Constructor
    */
   public IntervalStore()
   {
-    nonNested = new ArrayList<>();
+    this(false);
+  }
+
+  /**
+   * Constructor. If <code>indexed</code> is true, a hashed side-index is
+   * maintained which records which tier holds each interval. This makes
+   * <code>contains</code> run in expected O(1) time, and lets
+   * <code>remove</code> answer false immediately for an absent interval, or
+   * go directly to the tier that holds it, at the cost of a map entry per
+   * distinct interval. The index relies on the stored type having
+   * <code>hashCode</code> consistent with <code>equals</code>.
+   * 
+   * @param indexed
+   */
+  public IntervalStore(boolean indexed)
+  {
+    nonNested = new ChunkedList<>();
+    points = new PointList<>();
+    if (indexed)
+    {
+      index = new HashMap<>();
+    }
+  }
+
+  /**
+   * Answers a new store holding intervals presented in start position order
+   * (as defined by <code>RangeComparator.BY_START_POSITION</code>), such as
+   * those read from a sorted BED or GFF file
+   * 
+   * @param sorted
+   * @return
+   * @see #fromSorted(Iterator, boolean)
+   */
+  public static <T extends IntervalI> IntervalStore<T> fromSorted(
+          Iterator<? extends T> sorted)
+  {
+    return fromSorted(sorted, false);
+  }
+
+  /**
+   * Answers a new store holding intervals presented in start position order
+   * (as defined by <code>RangeComparator.BY_START_POSITION</code>). The order
+   * is checked as the store is built, in a single O(n) pass with no sorting or
+   * searching: each interval is appended to the non-nested intervals unless the
+   * last of them properly contains it (as then, being in order, no other can),
+   * in which case it is nested. The nested intervals, being in order too, are
+   * then built into an NCList in one pass. If an interval is found out of
+   * order, all the intervals are instead sorted, and then routed in one pass,
+   * as for <code>NCList.fromSorted</code>.
+   * 
+   * @param sorted
+   * @param indexed
+   *          if true, the store maintains a side-index (see
+   *          {@link #IntervalStore(boolean)})
+   * @return
+   */
+  public static <T extends IntervalI> IntervalStore<T> fromSorted(
+          Iterator<? extends T> sorted, boolean indexed)
+  {
+    IntervalStore<T> store = new IntervalStore<>(indexed);
+    List<T> nestedRanges = new ArrayList<>();
+    T outOfOrder = store.routeSorted(sorted, nestedRanges);
+    if (outOfOrder != null)
+    {
+      /*
+       * gather the intervals routed so far and the rest, sort them all,
+       * and route them again into a new store
+       */
+      List<T> all = new ArrayList<>(store.nonNested);
+      all.addAll(nestedRanges);
+      Iterator<T> points = store.points.iterator();
+      while (points.hasNext())
+      {
+        all.add(points.next());
+      }
+      all.add(outOfOrder);
+      while (sorted.hasNext())
+      {
+        T interval = sorted.next();
+        if (interval != null)
+        {
+          all.add(interval);
+        }
+      }
+      RadixSorter.sort(all);
+      store = new IntervalStore<>(indexed);
+      nestedRanges.clear();
+      store.routeSorted(all.iterator(), nestedRanges);
+    }
+
+    if (!nestedRanges.isEmpty())
+    {
+      store.nested = NCList.fromSorted(nestedRanges.iterator());
+      if (store.index != null)
+      {
+        for (T interval : nestedRanges)
+        {
+          store.getTierCounts(interval).nested++;
+        }
+      }
+    }
+    return store;
+  }
+
+  /**
+   * Routes intervals presented in start position order to the point tier or
+   * the non-nested list, or adds them to <code>nestedRanges</code> (in order)
+   * if the last non-nested interval properly contains them. Answers the first
+   * interval found out of order (having routed those before it), or null if
+   * all were in order.
+   * 
+   * @param sorted
+   * @param nestedRanges
+   * @return
+   */
+  private T routeSorted(Iterator<? extends T> sorted, List<T> nestedRanges)
+  {
+    T previous = null;
+    T lastNonNested = null;
+    while (sorted.hasNext())
+    {
+      T interval = sorted.next();
+      if (interval == null)
+      {
+        continue;
+      }
+      if (previous != null && RangeComparator.BY_START_POSITION
+              .compare(previous, interval) > 0)
+      {
+        return interval;
+      }
+      previous = interval;
+      if (interval.getBegin() == interval.getEnd())
+      {
+        addPoint(interval);
+      }
+      else if (lastNonNested != null
+              && lastNonNested.properlyContainsInterval(interval))
+      {
+        nestedRanges.add(interval);
+      }
+      else
+      {
+        nonNested.add(interval);
+        lastNonNested = interval;
+        if (index != null)
+        {
+          getTierCounts(interval).nonNested++;
+        }
+      }
+    }
+    return null;
   }
 
   /**
@@ -107,6 +312,11 @@ public class IntervalStore<T extends IntervalI>
     {
       return false;
     }
+    if (interval.getBegin() == interval.getEnd())
+    {
+      addPoint(interval);
+      return true;
+    }
     if (!addNonNestedInterval(interval))
     {
       /*
@@ -120,6 +330,17 @@ public class IntervalStore<T extends IntervalI>
   @Override
   public boolean contains(Object entry)
   {
+    if (index != null)
+    {
+      return index.containsKey(entry);
+    }
+    if (isPoint(entry))
+    {
+      synchronized (points)
+      {
+        return points.contains(entry);
+      }
+    }
     if (listContains(nonNested, entry))
     {
       return true;
@@ -128,6 +349,35 @@ public class IntervalStore<T extends IntervalI>
     return nested == null ? false : nested.contains(entry);
   }
 
+  /**
+   * Answers true if the object is a zero-length interval, else false
+   * 
+   * @param o
+   * @return
+   */
+  private static boolean isPoint(Object o)
+  {
+    return o instanceof IntervalI
+            && ((IntervalI) o).getBegin() == ((IntervalI) o).getEnd();
+  }
+
+  /**
+   * Adds one zero-length interval to the point tier
+   * 
+   * @param point
+   */
+  protected void addPoint(T point)
+  {
+    synchronized (points)
+    {
+      points.add(point);
+      if (index != null)
+      {
+        getTierCounts(point).points++;
+      }
+    }
+  }
+
   protected boolean addNonNestedInterval(T entry)
   {
     synchronized (nonNested)
@@ -161,24 +411,141 @@ public class IntervalStore<T extends IntervalI>
       /*
        * checks passed - add the interval
        */
+      searchIndex = null;
       nonNested.add(insertPosition, entry);
+      if (index != null)
+      {
+        getTierCounts(entry).nonNested++;
+      }
 
       return true;
     }
   }
 
+  /**
+   * Answers a list of the intervals that overlap the given range. The query is
+   * planned from the extent of the store: a range that misses it answers an
+   * empty list at once, and one that covers it answers a copy of the whole
+   * store, without searching. Otherwise, the result list is presized for the
+   * number of overlaps expected if intervals were spread evenly over the
+   * extent.
+   */
   @Override
   public List<T> findOverlaps(long from, long to)
   {
-    List<T> result = new ArrayList<>();
+    long[] extent = getExtent();
+    if (extent == null || from > extent[1] || to < extent[0])
+    {
+      return new ArrayList<>();
+    }
+    if (from <= extent[0] && to >= extent[1])
+    {
+      return getEntries();
+    }
+
+    List<T> result = new ArrayList<>(estimateOverlaps(from, to, extent));
 
     findNonNestedOverlaps(from, to, result);
 
     if (nested != null)
     {
-      result.addAll(nested.findOverlaps(from, to));
+      nested.findOverlaps(from, to, result);
     }
 
+    if (!points.isEmpty())
+    {
+      synchronized (points)
+      {
+        points.findOverlaps(from, to, result);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Answers the least start position and greatest end position of the
+   * intervals in the store, or null if it is empty. As neither the non-nested
+   * intervals, nor the top level of the nested intervals, contain one another,
+   * each is ordered by end as well as start position, so this needs only the
+   * first and last of each tier.
+   * 
+   * @return
+   */
+  long[] getExtent()
+  {
+    long begin = Long.MAX_VALUE;
+    long end = Long.MIN_VALUE;
+    synchronized (nonNested)
+    {
+      if (!nonNested.isEmpty())
+      {
+        begin = nonNested.get(0).getBegin();
+        end = nonNested.get(nonNested.size() - 1).getEnd();
+      }
+    }
+    NCList<T> nestedList = nested;
+    if (nestedList != null && !nestedList.isEmpty())
+    {
+      begin = Math.min(begin, nestedList.getMinBegin());
+      end = Math.max(end, nestedList.getMaxEnd());
+    }
+    synchronized (points)
+    {
+      if (!points.isEmpty())
+      {
+        begin = Math.min(begin, points.firstPosition());
+        end = Math.max(end, points.lastPosition());
+      }
+    }
+    return begin > end ? null : new long[] { begin, end };
+  }
+
+  /**
+   * Answers the number of intervals expected to overlap the from-to range, if
+   * they are spread evenly over the given extent of the store (so ignoring
+   * their lengths), as a capacity for the result list
+   * 
+   * @param from
+   * @param to
+   * @param extent
+   * @return
+   */
+  private int estimateOverlaps(long from, long to, long[] extent)
+  {
+    double width = extent[1] - extent[0] + 1d;
+    double covered = Math.min(to, extent[1]) - Math.max(from, extent[0])
+            + 1d;
+    int size = size();
+    return (int) Math.min(size,
+            Math.max(MIN_RESULT_CAPACITY, size * covered / width));
+  }
+
+  /**
+   * Answers a list of all intervals in the store, in the order in which
+   * <code>findOverlaps</code> would return them. The list is presized, and the
+   * non-nested intervals, and large nested subtrees, are copied in bulk.
+   * 
+   * @return
+   */
+  List<T> getEntries()
+  {
+    List<T> result = new ArrayList<>(size());
+    synchronized (nonNested)
+    {
+      result.addAll(nonNested);
+    }
+    if (nested != null)
+    {
+      /*
+       * covers every subtree, so copies any large one in bulk
+       */
+      nested.findOverlaps(Long.MIN_VALUE, Long.MAX_VALUE, result);
+    }
+    synchronized (points)
+    {
+      points.findOverlaps(Long.MIN_VALUE, Long.MAX_VALUE, result);
+    }
     return result;
   }
 
@@ -190,6 +557,10 @@ public class IntervalStore<T extends IntervalI>
     {
       pp += System.lineSeparator() + nested.prettyPrint();
     }
+    if (!points.isEmpty())
+    {
+      pp += System.lineSeparator() + points.toString();
+    }
     return pp;
   }
 
@@ -214,13 +585,51 @@ public class IntervalStore<T extends IntervalI>
         return false;
       }
     }
+    if (!points.isValid())
+    {
+      return false;
+    }
+    if (index != null && !isIndexValid())
+    {
+      return false;
+    }
     return nested == null ? true : nested.isValid();
   }
 
+  /**
+   * Answers true if the side-index counts agree with the number of intervals
+   * held in each tier, else false
+   * 
+   * @return
+   */
+  private boolean isIndexValid()
+  {
+    int nonNestedCount = 0;
+    int nestedCount = 0;
+    int pointCount = 0;
+    for (TierCounts counts : index.values())
+    {
+      nonNestedCount += counts.nonNested;
+      nestedCount += counts.nested;
+      pointCount += counts.points;
+    }
+    int nestedSize = nested == null ? 0 : nested.size();
+    if (nonNestedCount != nonNested.size() || nestedCount != nestedSize
+            || pointCount != points.size())
+    {
+      System.err.println("index counts " + nonNestedCount + "/"
+              + nestedCount + "/" + pointCount
+              + " do not match store sizes " + nonNested.size() + "/"
+              + nestedSize + "/" + points.size());
+      return false;
+    }
+    return true;
+  }
+
   @Override
   public int size()
   {
-    int i = nonNested.size();
+    int i = nonNested.size() + points.size();
     if (nested != null)
     {
       i += nested.size();
@@ -231,15 +640,29 @@ public class IntervalStore<T extends IntervalI>
   @Override
   public boolean remove(Object o)
   {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
     try
     {
       @SuppressWarnings("unchecked")
       T entry = (T) o;
 
+      if (index != null)
+      {
+        return removeIndexed(entry);
+      }
+
+      if (isPoint(entry))
+      {
+        return removePoint(entry);
+      }
+
       /*
        * try the non-nested positional intervals first
        */
-      boolean removed = nonNested.remove(entry);
+      boolean removed = removeNonNested(entry);
 
       /*
        * if not found, try nested intervals
@@ -256,6 +679,266 @@ public class IntervalStore<T extends IntervalI>
     }
   }
 
+  /**
+   * Removes all intervals that lie entirely within the given range. Answers
+   * true if any interval is removed, else false.
+   * 
+   * @param from
+   *          start of range (inclusive)
+   * @param to
+   *          end of range (inclusive)
+   * @return
+   */
+  public boolean removeRange(final long from, final long to)
+  {
+    return removeIf(from, to, new Predicate<T>()
+    {
+      @Override
+      public boolean test(T t)
+      {
+        return t.getBegin() >= from && t.getEnd() <= to;
+      }
+    });
+  }
+
+  /**
+   * Removes all intervals that overlap the given range. Answers true if any
+   * interval is removed, else false.
+   * 
+   * @param from
+   *          start of overlap range (inclusive)
+   * @param to
+   *          end of overlap range (inclusive)
+   * @return
+   */
+  public boolean removeOverlapping(final long from, final long to)
+  {
+    return removeIf(from, to, new Predicate<T>()
+    {
+      @Override
+      public boolean test(T t)
+      {
+        return t.getBegin() <= to && t.getEnd() >= from;
+      }
+    });
+  }
+
+  /**
+   * Removes all intervals which satisfy the given filter, with a single pass
+   * over each tier of the store. Answers true if any interval is removed, else
+   * false.
+   * 
+   * @param filter
+   * @return
+   */
+  @Override
+  public boolean removeIf(Predicate<? super T> filter)
+  {
+    return removeIf(Long.MIN_VALUE, Long.MAX_VALUE, filter);
+  }
+
+  /**
+   * Removes all intervals which overlap the given range and satisfy the given
+   * filter. Answers true if any interval is removed, else false.
+   * 
+   * @param from
+   * @param to
+   * @param filter
+   * @return
+   */
+  protected boolean removeIf(long from, long to,
+          Predicate<? super T> filter)
+  {
+    int removedCount = 0;
+    synchronized (nonNested)
+    {
+      /*
+       * compact the overlapping run of non-nested intervals in place,
+       * then close the gap with a single shift of the list
+       */
+      int startIndex = BinarySearcher.binarySearch(nonNested,
+              BinarySearcher.byEnd(from));
+      int endIndex = BinarySearcher.binarySearch(nonNested,
+              BinarySearcher.byStartAfter(to));
+      searchIndex = null;
+      int kept = startIndex;
+      for (int i = startIndex; i < endIndex; i++)
+      {
+        T entry = nonNested.get(i);
+        if (filter.test(entry))
+        {
+          removedCount++;
+          if (index != null)
+          {
+            decrementTierCounts(entry, true);
+          }
+        }
+        else
+        {
+          nonNested.set(kept++, entry);
+        }
+      }
+      nonNested.subList(kept, endIndex).clear();
+    }
+
+    if (nested != null)
+    {
+      List<T> removed = new ArrayList<>();
+      removedCount += nested.removeIf(from, to, filter, removed);
+      if (index != null)
+      {
+        for (T entry : removed)
+        {
+          decrementTierCounts(entry, false);
+        }
+      }
+    }
+
+    if (!points.isEmpty())
+    {
+      List<T> removed = new ArrayList<>();
+      synchronized (points)
+      {
+        removedCount += points.removeIf(from, to, filter, removed);
+      }
+      if (index != null)
+      {
+        for (T entry : removed)
+        {
+          TierCounts counts = index.get(entry);
+          if (counts != null && --counts.points == 0)
+          {
+            index.remove(entry);
+          }
+        }
+      }
+    }
+
+    return removedCount > 0;
+  }
+
+  /**
+   * Decrements the side-index count for one instance of the entry in the
+   * non-nested or nested tier, removing the index entry when no instances
+   * remain
+   * 
+   * @param entry
+   * @param isNonNested
+   */
+  private void decrementTierCounts(T entry, boolean isNonNested)
+  {
+    TierCounts counts = index.get(entry);
+    if (counts == null)
+    {
+      return;
+    }
+    if (isNonNested)
+    {
+      counts.nonNested--;
+    }
+    else
+    {
+      counts.nested--;
+    }
+    if (counts.nonNested == 0 && counts.nested == 0)
+    {
+      index.remove(entry);
+    }
+  }
+
+  /**
+   * Removes one zero-length interval equal to the entry, answering true if
+   * found, else false
+   * 
+   * @param entry
+   * @return
+   */
+  protected boolean removePoint(T entry)
+  {
+    synchronized (points)
+    {
+      boolean removed = points.remove(entry);
+      if (removed && index != null)
+      {
+        TierCounts counts = index.get(entry);
+        if (counts != null && --counts.points == 0)
+        {
+          index.remove(entry);
+        }
+      }
+      return removed;
+    }
+  }
+
+  /**
+   * Removes one instance of the entry, using the side-index to determine which
+   * tier (if any) holds it. Answers true if an instance was removed, else
+   * false.
+   * 
+   * @param entry
+   * @return
+   */
+  protected boolean removeIndexed(T entry)
+  {
+    TierCounts counts = index.get(entry);
+    if (counts == null)
+    {
+      return false;
+    }
+    if (counts.points > 0)
+    {
+      return removePoint(entry);
+    }
+    boolean isNonNested = counts.nonNested > 0;
+    boolean removed = isNonNested ? removeNonNested(entry)
+            : (nested != null && nested.remove(entry));
+    if (removed)
+    {
+      decrementTierCounts(entry, isNonNested);
+    }
+    return removed;
+  }
+
+  /**
+   * Removes the first non-nested interval that is equal to the entry, locating
+   * it by binary search. Answers true if an interval was removed, else false.
+   * 
+   * @param entry
+   * @return
+   */
+  protected boolean removeNonNested(T entry)
+  {
+    synchronized (nonNested)
+    {
+      int pos = listIndexOf(nonNested, entry);
+      if (pos == -1)
+      {
+        return false;
+      }
+      searchIndex = null;
+      nonNested.remove(pos);
+      return true;
+    }
+  }
+
+  /**
+   * Answers the index record for the interval, creating it if not already
+   * present
+   * 
+   * @param entry
+   * @return
+   */
+  private TierCounts getTierCounts(T entry)
+  {
+    TierCounts counts = index.get(entry);
+    if (counts == null)
+    {
+      counts = new TierCounts();
+      index.put(entry, counts);
+    }
+    return counts;
+  }
+
   @Override
   public int getDepth()
   {
@@ -273,6 +956,10 @@ public class IntervalStore<T extends IntervalI>
       nested = new NCList<>();
     }
     nested.add(interval);
+    if (index != null)
+    {
+      getTierCounts(interval).nested++;
+    }
   }
 
   /**
@@ -285,10 +972,25 @@ public class IntervalStore<T extends IntervalI>
    * @return
    */
   protected boolean listContains(List<T> intervals, Object entry)
+  {
+    return listIndexOf(intervals, entry) != -1;
+  }
+
+  /**
+   * Answers the index in the list of the first interval that is equal to the
+   * entry, or -1 if there is none. This method is optimised for the condition
+   * that the list is sorted on interval start position ascending, and will give
+   * unreliable results if this does not hold.
+   * 
+   * @param intervals
+   * @param entry
+   * @return
+   */
+  protected int listIndexOf(List<T> intervals, Object entry)
   {
     if (intervals == null || entry == null || !(entry instanceof IntervalI))
     {
-      return false;
+      return -1;
     }
 
     IntervalI interval = (IntervalI) entry;
@@ -306,15 +1008,15 @@ public class IntervalStore<T extends IntervalI>
       T sf = intervals.get(pos);
       if (sf.getBegin() > interval.getBegin())
       {
-        return false; // no match found
+        return -1; // no match found
       }
       if (sf.equals(interval))
       {
-        return true;
+        return pos;
       }
       pos++;
     }
-    return false;
+    return -1;
   }
 
   /**
@@ -329,11 +1031,75 @@ public class IntervalStore<T extends IntervalI>
     return new IntervalIterator<>(this);
   }
 
+  /**
+   * Answers an iterator over all intervals in the store, in start position
+   * order (as defined by <code>RangeComparator.BY_START_POSITION</code>). The
+   * non-nested and nested intervals are merged lazily, without copying or
+   * sorting the contents of the store. The optional <code>remove</code>
+   * operation is not supported.
+   * 
+   * @return
+   */
+  public Iterator<T> orderedIterator()
+  {
+    return orderedIterator(Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Answers an iterator over the intervals in the store that overlap the given
+   * range, in start position order (as defined by
+   * <code>RangeComparator.BY_START_POSITION</code>). The optional
+   * <code>remove</code> operation is not supported.
+   * 
+   * @param from
+   *          start of overlap range (inclusive)
+   * @param to
+   *          end of overlap range (inclusive)
+   * @return
+   */
+  public Iterator<T> orderedIterator(long from, long to)
+  {
+    List<Iterator<? extends T>> iterators = new ArrayList<>(3);
+
+    /*
+     * non-nested intervals are ordered by both start and end position,
+     * so overlapping intervals are a contiguous run of the list
+     */
+    int startIndex = BinarySearcher.binarySearch(nonNested,
+            BinarySearcher.byEnd(from));
+    int endIndex = BinarySearcher.binarySearch(nonNested,
+            BinarySearcher.byStartAfter(to));
+    if (startIndex < endIndex)
+    {
+      iterators.add(nonNested.subList(startIndex, endIndex).iterator());
+    }
+    if (nested != null)
+    {
+      iterators.add(nested.orderedIterator(from, to));
+    }
+    if (!points.isEmpty())
+    {
+      iterators.add(points.iterator(from, to));
+    }
+
+    return new MergeIterator<>(iterators,
+            RangeComparator.BY_START_POSITION);
+  }
+
   @Override
   public void clear()
   {
+    searchIndex = null;
     this.nonNested.clear();
     this.nested = new NCList<>();
+    synchronized (points)
+    {
+      points.clear();
+    }
+    if (index != null)
+    {
+      index.clear();
+    }
   }
 
   /**
@@ -351,9 +1117,24 @@ public class IntervalStore<T extends IntervalI>
      * find the first interval whose end position is
      * after the target range start
      */
+    PositionIndex topIndex = searchIndex;
+    if (topIndex != null)
+    {
+      /*
+       * the overlaps are the run of intervals up to the first that
+       * starts after the range, found without testing each one
+       */
+      int first = topIndex.firstAtOrAfter(from);
+      int last = topIndex.firstBeginAfter(to, first);
+      for (int i = first; i < last; i++)
+      {
+        result.add(nonNested.get(i));
+      }
+      return;
+    }
     int startIndex = BinarySearcher.binarySearch(nonNested,
             BinarySearcher.byEnd(from));
-  
+
     final int startIndex1 = startIndex;
     int i = startIndex1;
     while (i < nonNested.size())
@@ -371,6 +1152,38 @@ public class IntervalStore<T extends IntervalI>
     }
   }
 
+  /**
+   * Builds an index of the given kind over the non-nested intervals, and the
+   * top level of the nested intervals, to speed up the search for the first
+   * interval that may overlap a query. This is intended for a store that is no
+   * longer modified; any modification discards the index, reverting to binary
+   * search.
+   * 
+   * @param kind
+   */
+  public void buildSearchIndex(SearchIndex kind)
+  {
+    synchronized (nonNested)
+    {
+      searchIndex = PositionIndex.build(kind, nonNested);
+    }
+    if (nested != null)
+    {
+      nested.buildSearchIndex(kind);
+    }
+  }
+
+  /**
+   * Answers the kind of search index in use for the non-nested intervals
+   * 
+   * @return
+   */
+  public SearchIndex getSearchIndex()
+  {
+    PositionIndex topIndex = searchIndex;
+    return topIndex == null ? SearchIndex.BINARY : topIndex.getKind();
+  }
+
   @Override
   public String toString()
   {
@@ -379,6 +1192,10 @@ public class IntervalStore<T extends IntervalI>
     {
       s = s + System.lineSeparator() + nested.toString();
     }
+    if (!points.isEmpty())
+    {
+      s = s + System.lineSeparator() + points.toString();
+    }
     return s;
   }
 }
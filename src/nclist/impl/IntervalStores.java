@@ -0,0 +1,421 @@
+package nclist.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import nclist.api.IntervalI;
+import nclist.api.IntervalStoreI;
+
+/**
+ * A factory that chooses an interval store implementation to suit the data,
+ * from statistics of a sample of it: the proportion of zero-length (point)
+ * intervals, the distribution of lengths, the estimated depth of nesting (as
+ * given by <code>getDepth()</code>), and whether further additions or removals
+ * are expected.
+ * <p>
+ * The statistics and the engine chosen are available from
+ * <code>analyse</code>, for logging, and the choice may be overridden by
+ * calling <code>create</code> with a specified engine.
+ */
+public final class IntervalStores
+{
+  /**
+   * The interval store implementations that may be chosen
+   */
+  public enum Engine
+  {
+    /**
+     * IntervalStore: a list of non-nested intervals with an NCList of nested
+     * ones, and a tier of point intervals; best for shallow nesting, or
+     * mostly point intervals
+     */
+    NCLIST,
+
+    /**
+     * AugmentedIntervalTree: an AVL tree, unaffected by depth of nesting
+     */
+    AUGMENTED_TREE,
+
+    /**
+     * BinnedIntervalStore: UCSC hierarchical bins, for short intervals that
+     * are frequently added and removed
+     */
+    BINNED,
+
+    /**
+     * StratifiedIntervalStore: intervals held in classes by length, for short
+     * intervals mixed with a few very long ones
+     */
+    STRATIFIED,
+
+    /**
+     * ImplicitIntervalTree: immutable, compact sorted array tree
+     */
+    IMPLICIT_TREE,
+
+    /**
+     * AIListStore: immutable, for deeply nested data
+     */
+    AILIST;
+
+    /**
+     * Answers true if the engine supports adding and removing intervals
+     * after construction
+     *
+     * @return
+     */
+    public boolean isMutable()
+    {
+      return this == NCLIST || this == AUGMENTED_TREE || this == BINNED
+              || this == STRATIFIED;
+    }
+  }
+
+  /**
+   * Statistics of a sample of intervals, and the engine recommended for them
+   */
+  public static final class Statistics
+  {
+    private final int size;
+
+    private final int sampleSize;
+
+    private final double pointFraction;
+
+    private final int medianLength;
+
+    private final int length90;
+
+    private final int maxLength;
+
+    private final boolean binnable;
+
+    private final int estimatedDepth;
+
+    private final boolean mutable;
+
+    private final Engine engine;
+
+    Statistics(int size, int sampleSize, double pointFraction,
+            int medianLength, int length90, int maxLength,
+            boolean binnable, int estimatedDepth, boolean mutable)
+    {
+      this.size = size;
+      this.sampleSize = sampleSize;
+      this.pointFraction = pointFraction;
+      this.medianLength = medianLength;
+      this.length90 = length90;
+      this.maxLength = maxLength;
+      this.binnable = binnable;
+      this.estimatedDepth = estimatedDepth;
+      this.mutable = mutable;
+      this.engine = choose(this);
+    }
+
+    /**
+     * Answers the number of intervals analysed
+     *
+     * @return
+     */
+    public int getSize()
+    {
+      return size;
+    }
+
+    /**
+     * Answers the number of intervals sampled for statistics
+     *
+     * @return
+     */
+    public int getSampleSize()
+    {
+      return sampleSize;
+    }
+
+    /**
+     * Answers the fraction of sampled intervals which have zero length (start
+     * equal to end)
+     *
+     * @return
+     */
+    public double getPointFraction()
+    {
+      return pointFraction;
+    }
+
+    /**
+     * Answers the median length (end - start) of sampled intervals
+     *
+     * @return
+     */
+    public int getMedianLength()
+    {
+      return medianLength;
+    }
+
+    /**
+     * Answers the 90th percentile length (end - start) of sampled intervals
+     *
+     * @return
+     */
+    public int getLength90()
+    {
+      return length90;
+    }
+
+    /**
+     * Answers the greatest length (end - start) of sampled intervals
+     *
+     * @return
+     */
+    public int getMaxLength()
+    {
+      return maxLength;
+    }
+
+    /**
+     * Answers true if all sampled intervals lie within the range of positions
+     * handled by binning
+     *
+     * @return
+     */
+    public boolean isBinnable()
+    {
+      return binnable;
+    }
+
+    /**
+     * Answers the depth of nesting of the sampled intervals (which is a lower
+     * bound on the depth of all the intervals)
+     *
+     * @return
+     */
+    public int getEstimatedDepth()
+    {
+      return estimatedDepth;
+    }
+
+    /**
+     * Answers true if intervals are expected to be added or removed after
+     * construction
+     *
+     * @return
+     */
+    public boolean isMutable()
+    {
+      return mutable;
+    }
+
+    /**
+     * Answers the engine recommended for the data
+     *
+     * @return
+     */
+    public Engine getEngine()
+    {
+      return engine;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format(
+              "size=%d, sampled=%d, points=%.1f%%, median length=%d, "
+                      + "90%% length=%d, max length=%d, binnable=%b, "
+                      + "depth=%d, mutable=%b, engine=%s",
+              size, sampleSize, pointFraction * 100, medianLength, length90,
+              maxLength, binnable, estimatedDepth, mutable, engine);
+    }
+  }
+
+  /*
+   * maximum number of intervals sampled to compute statistics
+   */
+  static final int SAMPLE_SIZE = 10000;
+
+  /*
+   * nesting depth above which NCList queries lose out to other engines
+   */
+  static final int DEEP_NESTING = 8;
+
+  /*
+   * intervals up to this length (the smallest bin size) fall in the cheapest
+   * bins of a BinnedIntervalStore
+   */
+  static final int SHORT_LENGTH = 1 << 14;
+
+  /*
+   * fraction of point intervals that favours IntervalStore's point tier
+   */
+  static final double POINT_FRACTION = 0.5;
+
+  private IntervalStores()
+  {
+  }
+
+  /**
+   * Answers a new store holding the given intervals, of a type chosen to suit
+   * them, and which supports adding and removing intervals
+   *
+   * @param intervals
+   * @return
+   */
+  public static <T extends IntervalI> IntervalStoreI<T> create(
+          Collection<T> intervals)
+  {
+    return create(intervals, true);
+  }
+
+  /**
+   * Answers a new store holding the given intervals, of a type chosen to suit
+   * them. If <code>mutable</code> is false, the store may not support adding
+   * or removing intervals.
+   *
+   * @param intervals
+   * @param mutable
+   * @return
+   */
+  public static <T extends IntervalI> IntervalStoreI<T> create(
+          Collection<T> intervals, boolean mutable)
+  {
+    return create(intervals, analyse(intervals, mutable).getEngine());
+  }
+
+  /**
+   * Answers a new store of the given type holding the given intervals
+   *
+   * @param intervals
+   * @param engine
+   * @return
+   */
+  public static <T extends IntervalI> IntervalStoreI<T> create(
+          Collection<T> intervals, Engine engine)
+  {
+    switch (engine)
+    {
+    case AUGMENTED_TREE:
+      AugmentedIntervalTree<T> tree = new AugmentedIntervalTree<>();
+      tree.addAll(intervals);
+      return tree;
+    case BINNED:
+      return new BinnedIntervalStore<>(intervals);
+    case STRATIFIED:
+      return new StratifiedIntervalStore<>(intervals);
+    case IMPLICIT_TREE:
+      return new ImplicitIntervalTree<>(new ArrayList<>(intervals));
+    case AILIST:
+      return new AIListStore<>(new ArrayList<>(intervals));
+    case NCLIST:
+    default:
+      IntervalStore<T> store = new IntervalStore<>();
+      store.addAll(intervals);
+      return store;
+    }
+  }
+
+  /**
+   * Computes statistics for (a sample of up to SAMPLE_SIZE of) the given
+   * intervals, and the engine recommended for them
+   *
+   * @param intervals
+   * @param mutable
+   *          true if intervals are to be added or removed after construction
+   * @return
+   */
+  public static <T extends IntervalI> Statistics analyse(
+          Collection<T> intervals, boolean mutable)
+  {
+    /*
+     * take evenly spaced intervals, so as to sample the full range
+     */
+    int size = intervals.size();
+    int step = Math.max(1, (size + SAMPLE_SIZE - 1) / SAMPLE_SIZE);
+    List<IntervalI> sample = new ArrayList<>(Math.min(size, SAMPLE_SIZE));
+    int i = 0;
+    for (T interval : intervals)
+    {
+      if (i++ % step == 0 && interval != null)
+      {
+        sample.add(interval);
+      }
+    }
+
+    int n = sample.size();
+    int[] lengths = new int[n];
+    int points = 0;
+    boolean binnable = true;
+    for (int j = 0; j < n; j++)
+    {
+      IntervalI interval = sample.get(j);
+      lengths[j] = interval.getEnd() - interval.getBegin();
+      if (lengths[j] == 0)
+      {
+        points++;
+      }
+      if (BinnedIntervalStore.reg2bin(interval.getBegin(),
+              interval.getEnd()) == 0)
+      {
+        binnable = false;
+      }
+    }
+    Arrays.sort(lengths);
+    int median = n == 0 ? 0 : lengths[n / 2];
+    int length90 = n == 0 ? 0 : lengths[(int) (n * 0.9)];
+    int maxLength = n == 0 ? 0 : lengths[n - 1];
+
+    Collections.sort(sample, RangeComparator.BY_START_POSITION);
+    int depth = Containment.getDepth(sample.iterator());
+
+    return new Statistics(size, n, n == 0 ? 0d : points / (double) n,
+            median, length90, maxLength, binnable, depth, mutable);
+  }
+
+  /**
+   * Answers the engine recommended for data with the given statistics
+   *
+   * @param stats
+   * @return
+   */
+  static Engine choose(Statistics stats)
+  {
+    boolean deep = stats.getEstimatedDepth() > DEEP_NESTING;
+    if (!stats.isMutable())
+    {
+      return deep ? Engine.AILIST : Engine.IMPLICIT_TREE;
+    }
+
+    /*
+     * IntervalStore holds point intervals in a tier of their own, apart
+     * from the nesting, and answers queries of them much faster than bins
+     */
+    if (stats.getPointFraction() >= POINT_FRACTION)
+    {
+      return Engine.NCLIST;
+    }
+
+    /*
+     * deeply nested short intervals all fall in small bins, where insertion
+     * and queries are cheap
+     */
+    boolean shortIntervals = stats.isBinnable()
+            && stats.getMaxLength() < SHORT_LENGTH;
+    if (shortIntervals && deep)
+    {
+      return Engine.BINNED;
+    }
+
+    /*
+     * mostly short intervals with a few long ones, which would otherwise
+     * nest the short ones, are best held apart
+     */
+    if (stats.getLength90() < SHORT_LENGTH
+            && stats.getMaxLength() >= SHORT_LENGTH)
+    {
+      return Engine.STRATIFIED;
+    }
+    return deep ? Engine.AUGMENTED_TREE : Engine.NCLIST;
+  }
+}
@@ -0,0 +1,196 @@
+package nclist.impl;
+
+import java.util.Arrays;
+
+/**
+ * A learned index, after the PGM-index of Ferragina and Vinciguerra (VLDB
+ * 2020), over a nondecreasing array of positions. The array index of the first
+ * occurrence of each distinct position is modelled by a piecewise linear
+ * function of the position, built in one pass by the 'shrinking cone'
+ * algorithm, such that each prediction is within EPSILON of the true index. A
+ * search finds the model segment for the target (a binary search of the few
+ * segment start keys), predicts the index, and finishes with a binary search
+ * of the 2*EPSILON+1 keys around the prediction.
+ * <p>
+ * Where the target falls after a long run of duplicate keys, the true index
+ * may lie outside the error window; this is detected, and the window extended
+ * by exponential search, so results are always exact.
+ */
+class LearnedIndex extends PositionIndex
+{
+  /*
+   * maximum error of a predicted index
+   */
+  static final int EPSILON = 16;
+
+  /*
+   * first key modelled by each segment, in ascending order
+   */
+  private final int[] segmentKeys;
+
+  /*
+   * index of the first key, and slope, of each segment
+   */
+  private final int[] segmentIndices;
+
+  private final double[] segmentSlopes;
+
+  /**
+   * Constructor
+   *
+   * @param keys
+   *          keys in nondecreasing order
+   */
+  LearnedIndex(int[] keys)
+  {
+    this(keys, null);
+  }
+
+  /**
+   * Constructor given also the begin positions of the intervals
+   *
+   * @param keys
+   *          keys in nondecreasing order
+   * @param begins
+   *          begin positions in nondecreasing order, or null
+   */
+  LearnedIndex(int[] keys, int[] begins)
+  {
+    super(keys, begins);
+    int n = keys.length;
+    int[] firstKeys = new int[Math.max(1, n)];
+    int[] firstIndices = new int[firstKeys.length];
+    double[] slopes = new double[firstKeys.length];
+    int count = 0;
+
+    int i = 0;
+    while (i < n)
+    {
+      /*
+       * start a new segment at key i; widen it over each following distinct
+       * key while a slope remains that predicts all their indices to within
+       * EPSILON
+       */
+      long x0 = keys[i];
+      int y0 = i;
+      double low = 0d;
+      double high = Double.POSITIVE_INFINITY;
+      int j = i + 1;
+      while (j < n)
+      {
+        if (keys[j] == keys[j - 1])
+        {
+          j++;
+          continue;
+        }
+        double dx = keys[j] - x0;
+        double slope = (j - y0) / dx;
+        if (slope < low || slope > high)
+        {
+          break;
+        }
+        high = Math.min(high, (j + EPSILON - y0) / dx);
+        low = Math.max(low, (j - EPSILON - y0) / dx);
+        j++;
+      }
+      firstKeys[count] = (int) x0;
+      firstIndices[count] = y0;
+      slopes[count] = high == Double.POSITIVE_INFINITY ? low
+              : (low + high) / 2;
+      count++;
+      i = j;
+    }
+    segmentKeys = Arrays.copyOf(firstKeys, count);
+    segmentIndices = Arrays.copyOf(firstIndices, count);
+    segmentSlopes = Arrays.copyOf(slopes, count);
+  }
+
+  @Override
+  int firstAtOrAfter(long target)
+  {
+    int n = keys.length;
+    if (n == 0 || target <= keys[0])
+    {
+      return 0;
+    }
+
+    /*
+     * find the last segment starting at or before the target
+     */
+    int segment = lastSegmentAtOrBefore(target);
+    long predicted = segmentIndices[segment] + (long) (segmentSlopes[segment]
+            * (target - segmentKeys[segment]));
+    if (segment < segmentKeys.length - 1)
+    {
+      /*
+       * a target in the gap after a segment's last key belongs at the
+       * start of the next segment
+       */
+      predicted = Math.min(predicted, segmentIndices[segment + 1]);
+    }
+
+    /*
+     * search the error window around the prediction, extending it
+     * if the answer might lie outside it
+     */
+    int low = (int) Math.max(0, Math.min(n, predicted - EPSILON));
+    int high = (int) Math.max(0, Math.min(n, predicted + EPSILON + 1));
+    int step = EPSILON;
+    while (low > 0 && keys[low - 1] >= target)
+    {
+      high = low;
+      low = Math.max(0, low - step);
+      step *= 2;
+    }
+    step = EPSILON;
+    while (high < n && (high == 0 || keys[high - 1] < target))
+    {
+      low = high;
+      high = (int) Math.min(n, (long) high + step);
+      step *= 2;
+    }
+    return binarySearch(target, low, high);
+  }
+
+  /**
+   * Answers the index of the last segment whose first key is not after the
+   * target (the target is known not to precede the first key)
+   *
+   * @param target
+   * @return
+   */
+  private int lastSegmentAtOrBefore(long target)
+  {
+    int low = 0;
+    int high = segmentKeys.length;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (segmentKeys[mid] <= target)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low - 1;
+  }
+
+  @Override
+  SearchIndex getKind()
+  {
+    return SearchIndex.LEARNED;
+  }
+
+  /**
+   * Answers the number of linear segments in the model
+   *
+   * @return
+   */
+  int getSegmentCount()
+  {
+    return segmentKeys.length;
+  }
+}
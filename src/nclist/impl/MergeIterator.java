@@ -0,0 +1,91 @@
+package nclist.impl;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import nclist.api.IntervalI;
+
+/**
+ * An iterator that lazily merges a number of iterators, each of which returns
+ * intervals in the order of the given comparator, into a single iterator in
+ * that same order. The optional <code>remove</code> operation is not
+ * supported.
+ * 
+ * @param <T>
+ */
+class MergeIterator<T extends IntervalI> implements Iterator<T>
+{
+  /**
+   * One of the merged iterators, together with its next (head) value
+   */
+  private static class Source<T>
+  {
+    final Iterator<? extends T> iterator;
+
+    T head;
+
+    Source(Iterator<? extends T> it)
+    {
+      iterator = it;
+      head = it.next();
+    }
+  }
+
+  /*
+   * the merged iterators which have a next value, ordered by that value
+   */
+  private final PriorityQueue<Source<T>> sources;
+
+  /**
+   * Constructor given the iterators to be merged, and their common ordering
+   * 
+   * @param iterators
+   * @param comparator
+   */
+  MergeIterator(List<Iterator<? extends T>> iterators,
+          final Comparator<? super T> comparator)
+  {
+    sources = new PriorityQueue<>(Math.max(1, iterators.size()),
+            new Comparator<Source<T>>()
+            {
+              @Override
+              public int compare(Source<T> o1, Source<T> o2)
+              {
+                return comparator.compare(o1.head, o2.head);
+              }
+            });
+    for (Iterator<? extends T> it : iterators)
+    {
+      if (it.hasNext())
+      {
+        sources.add(new Source<T>(it));
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext()
+  {
+    return !sources.isEmpty();
+  }
+
+  @Override
+  public T next()
+  {
+    Source<T> source = sources.poll();
+    if (source == null)
+    {
+      throw new NoSuchElementException();
+    }
+    T result = source.head;
+    if (source.iterator.hasNext())
+    {
+      source.head = source.iterator.next();
+      sources.add(source);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,154 @@
+package nclist.impl;
+
+import nclist.api.IntervalI;
+
+/**
+ * A summary of a chain of NCList nodes, each of which (except the last) has
+ * just one subregion, the next node in the chain. This arises where intervals
+ * nest like onion layers, and would otherwise make a query descend one level
+ * per layer.
+ * <p>
+ * Each layer encloses the next, so begin positions are ascending and end
+ * positions descending along the chain, and the layers overlapping a range are
+ * always a leading run of the chain. Its length is found by binary search of
+ * the begin and end positions, in O(log n) for a chain of n layers.
+ * <p>
+ * The summary is read-only, and is held by the first node of the chain; it
+ * must be discarded if any node in the chain is modified.
+ *
+ * @param <T>
+ */
+final class NCChain<T extends IntervalI>
+{
+  /*
+   * the shortest chain worth summarising
+   */
+  static final int MIN_LENGTH = 8;
+
+  /*
+   * the nodes of the chain, outermost first
+   */
+  private final NCNode<T>[] layers;
+
+  private final int[] begins;
+
+  private final int[] ends;
+
+  /**
+   * Constructor
+   *
+   * @param layers
+   */
+  private NCChain(NCNode<T>[] layers)
+  {
+    this.layers = layers;
+    begins = new int[layers.length];
+    ends = new int[layers.length];
+    for (int i = 0; i < layers.length; i++)
+    {
+      begins[i] = layers[i].getBegin();
+      ends[i] = layers[i].getEnd();
+    }
+  }
+
+  /**
+   * Answers a summary of the chain of single nested nodes starting at the
+   * given node, or null if it is shorter than MIN_LENGTH. Any summaries held by
+   * the inner nodes of the chain are discarded, as this one supersedes them.
+   *
+   * @param head
+   * @return
+   */
+  static <T extends IntervalI> NCChain<T> detect(NCNode<T> head)
+  {
+    int length = 1;
+    NCNode<T> node = head;
+    while ((node = node.getOnlySubRegion()) != null)
+    {
+      length++;
+    }
+    if (length < MIN_LENGTH)
+    {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    NCNode<T>[] layers = (NCNode<T>[]) new NCNode<?>[length];
+    layers[0] = head;
+    for (int i = 1; i < length; i++)
+    {
+      layers[i] = layers[i - 1].getOnlySubRegion();
+      layers[i].setChain(null);
+    }
+    return new NCChain<>(layers);
+  }
+
+  /**
+   * Answers the number of layers of the chain, from the outermost, that
+   * overlap the from-to range
+   *
+   * @param from
+   * @param to
+   * @return
+   */
+  int countOverlaps(long from, long to)
+  {
+    /*
+     * find the first layer that starts after the range
+     */
+    int low = 0;
+    int high = begins.length;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (begins[mid] <= to)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+
+    /*
+     * and the first before it that ends before the range
+     */
+    high = low;
+    low = 0;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (ends[mid] >= from)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Answers the number of layers in the chain
+   *
+   * @return
+   */
+  int length()
+  {
+    return layers.length;
+  }
+
+  /**
+   * Answers the node at the given layer of the chain (0 is the outermost)
+   *
+   * @param i
+   * @return
+   */
+  NCNode<T> getLayer(int i)
+  {
+    return layers[i];
+  }
+}
@@ -22,10 +22,15 @@ package nclist.impl;
 
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import nclist.api.IntervalI;
 
@@ -41,71 +46,323 @@ import nclist.api.IntervalI;
  */
 public class NCList<T extends IntervalI> extends AbstractCollection<T>
 {
+  /**
+   * A stack of positions in nested levels of the NCList, used to traverse it
+   * without recursion, so that any depth of nesting can be handled. Each entry
+   * holds a level, the node whose subregions it is (or null for the top
+   * level), the index of the next subrange to visit, and the index at which to
+   * stop.
+   */
+  private static final class LevelStack<T extends IntervalI>
+  {
+    private Object[] levels = new Object[16];
+
+    private Object[] owners = new Object[16];
+
+    private int[] indices = new int[16];
+
+    private int[] limits = new int[16];
+
+    private int depth;
+
+    /**
+     * Pushes a position in a level onto the stack
+     * 
+     * @param level
+     * @param owner
+     *          the node whose subregions are <code>level</code>, or null
+     * @param index
+     *          the index of the first subrange to visit
+     * @param limit
+     *          the index after the last subrange to visit
+     */
+    void push(NCList<T> level, NCNode<T> owner, int index, int limit)
+    {
+      if (depth == levels.length)
+      {
+        int capacity = 2 * depth;
+        levels = Arrays.copyOf(levels, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+        indices = Arrays.copyOf(indices, capacity);
+        limits = Arrays.copyOf(limits, capacity);
+      }
+      levels[depth] = level;
+      owners[depth] = owner;
+      indices[depth] = index;
+      limits[depth] = limit;
+      depth++;
+    }
+
+    /**
+     * Pushes the whole of a level onto the stack
+     * 
+     * @param level
+     * @param owner
+     */
+    void pushAll(NCList<T> level, NCNode<T> owner)
+    {
+      push(level, owner, 0, level.subranges.size());
+    }
+
+    void pop()
+    {
+      depth--;
+      levels[depth] = null;
+      owners[depth] = null;
+    }
+
+    boolean isEmpty()
+    {
+      return depth == 0;
+    }
+
+    /**
+     * Answers the number of levels on the stack
+     * 
+     * @return
+     */
+    int depth()
+    {
+      return depth;
+    }
+
+    /**
+     * Answers true if the top level has a subrange still to visit
+     * 
+     * @return
+     */
+    boolean hasCurrent()
+    {
+      return indices[depth - 1] < limits[depth - 1];
+    }
+
+    /**
+     * Answers the next subrange to visit in the top level
+     * 
+     * @return
+     */
+    NCNode<T> current()
+    {
+      return level().subranges.get(indices[depth - 1]);
+    }
+
+    /**
+     * Answers the next subrange to visit in the top level, and advances past it
+     * 
+     * @return
+     */
+    NCNode<T> next()
+    {
+      return level().subranges.get(indices[depth - 1]++);
+    }
+
+    /**
+     * Answers the index of the next subrange to visit in the top level
+     * 
+     * @return
+     */
+    int index()
+    {
+      return indices[depth - 1];
+    }
+
+    NCList<T> level()
+    {
+      return level(depth - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    NCList<T> level(int i)
+    {
+      return (NCList<T>) levels[i];
+    }
+
+    NCNode<T> owner()
+    {
+      return owner(depth - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    NCNode<T> owner(int i)
+    {
+      return (NCNode<T>) owners[i];
+    }
+  }
+
   /**
    * A depth-first iterator over the elements stored in the NCList
    */
   private class NCListIterator implements Iterator<T>
   {
-    int subrangeIndex;
+    /*
+     * position in each level being traversed; levels are popped
+     * as soon as they are exhausted, so empty when iteration is done
+     */
+    final LevelStack<T> stack = new LevelStack<>();
+
+    NCListIterator()
+    {
+      if (!subranges.isEmpty())
+      {
+        stack.pushAll(NCList.this, null);
+      }
+    }
 
-    Iterator<T> nodeIterator;
+    @Override
+    public boolean hasNext()
+    {
+      return !stack.isEmpty();
+    }
 
     /**
-     * Constructor bootstraps a pointer to an iterator over the first subrange
-     * (if any)
+     * Answers the next element, and advances to the first of its subregions
+     * (if any), else to its next sibling, or that of the nearest enclosing
+     * node which has one
      */
-    NCListIterator()
+    @Override
+    public T next()
+    {
+      if (stack.isEmpty())
+      {
+        throw new NoSuchElementException();
+      }
+      NCNode<T> node = stack.next();
+      NCList<T> subRegions = node.getSubRegions();
+      if (subRegions != null && !subRegions.isEmpty())
+      {
+        stack.pushAll(subRegions, node);
+      }
+      else
+      {
+        while (!stack.isEmpty() && !stack.hasCurrent())
+        {
+          stack.pop();
+        }
+      }
+      return node.getRegion();
+    }
+  }
+
+  /**
+   * An iterator over the elements stored in the NCList that overlap a given
+   * range, in start position order (as defined by
+   * <code>RangeComparator.BY_START_POSITION</code>). This is a lazy merge of
+   * one cursor per NCList level currently being traversed, so needs extra
+   * memory only in proportion to the number of levels (not entries) that are
+   * open at one time.
+   */
+  private class OrderedIterator implements Iterator<T>
+  {
+    /**
+     * A position in the subranges of one level of the NCList
+     */
+    private class LevelCursor
     {
-      subrangeIndex = nextSubrange(-1);
+      final List<NCNode<T>> nodes;
+
+      int index;
+
+      LevelCursor(NCList<T> level)
+      {
+        nodes = level.subranges;
+        index = level.findFirstOverlap(from);
+      }
+
+      NCNode<T> current()
+      {
+        return nodes.get(index);
+      }
+
+      /**
+       * Answers true if the cursor is positioned on a node which starts at or
+       * before the end of the range
+       * 
+       * @return
+       */
+      boolean hasCurrent()
+      {
+        return index < nodes.size() && nodes.get(index).getBegin() <= to;
+      }
     }
 
+    final long from;
+
+    final long to;
+
+    /*
+     * cursors on all levels being traversed, ordered by their current node
+     */
+    final PriorityQueue<LevelCursor> cursors;
+
     /**
-     * Moves the subrange iterator to the next subrange which is not empty, or
-     * sets to null if none found. Answers the index of the corresponding
-     * subrange in the list.
+     * Constructor given the (inclusive) range to be overlapped
      * 
-     * @return
+     * @param from
+     * @param to
      */
-    private int nextSubrange(int after)
+    OrderedIterator(long from, long to)
     {
-      for (int i = after + 1; i < subranges.size(); i++)
+      this.from = from;
+      this.to = to;
+      cursors = new PriorityQueue<>(new Comparator<LevelCursor>()
       {
-        if (subranges.get(i).size() > 0)
+        @Override
+        public int compare(LevelCursor o1, LevelCursor o2)
         {
-          nodeIterator = subranges.get(i).iterator();
-          return i;
+          return RangeComparator.BY_START_POSITION.compare(o1.current(),
+                  o2.current());
         }
+      });
+      addCursor(NCList.this);
+    }
+
+    /**
+     * Adds a cursor on the given level, provided it has at least one node that
+     * overlaps the range
+     * 
+     * @param level
+     */
+    private void addCursor(NCList<T> level)
+    {
+      LevelCursor cursor = new LevelCursor(level);
+      if (cursor.hasCurrent())
+      {
+        cursors.add(cursor);
       }
-      nodeIterator = null;
-      return -1;
     }
 
     @Override
     public boolean hasNext()
     {
-      return nodeIterator != null && nodeIterator.hasNext();
+      return !cursors.isEmpty();
     }
 
     /**
-     * Answers the next element returned by the current NCNode's iterator, and
-     * advances the iterator (to the next NCNode if necessary)
+     * Answers the region of the least node at the head of any cursor, and
+     * advances that cursor. If the node has subregions, a cursor on them is
+     * added to the merge.
      */
     @Override
     public T next()
     {
-      if (nodeIterator == null || !nodeIterator.hasNext())
+      LevelCursor cursor = cursors.poll();
+      if (cursor == null)
       {
         throw new NoSuchElementException();
       }
-      T result = nodeIterator.next();
-
-      if (!nodeIterator.hasNext())
+      NCNode<T> node = cursor.current();
+      cursor.index++;
+      if (cursor.hasCurrent())
+      {
+        cursors.add(cursor);
+      }
+      NCList<T> subRegions = node.getSubRegions();
+      if (subRegions != null)
       {
-        subrangeIndex = nextSubrange(subrangeIndex);
+        addCursor(subRegions);
       }
-      return result;
+      return node.getRegion();
     }
-
   }
 
   /*
@@ -113,6 +370,12 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
    */
   private int size;
 
+  /*
+   * optional index over the end positions of subranges, discarded
+   * whenever subranges is modified
+   */
+  private volatile PositionIndex searchIndex;
+
   /*
    * a list, in start position order, of sublists of ranges ordered so 
    * that each contains (or is the same as) the one that follows it
@@ -146,21 +409,220 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
      * sort by start ascending so that contained intervals 
      * follow their containing interval
      */
-    Collections.sort(ranges, RangeComparator.BY_START_POSITION);
+    RadixSorter.sort(ranges);
+
+    buildSorted(ranges.iterator());
+  }
+
+  /**
+   * Answers a new NCList built from intervals presented in start position
+   * order (as defined by <code>RangeComparator.BY_START_POSITION</code>), such
+   * as those read from a sorted BED or GFF file. The order is checked as the
+   * NCList is built, in a single O(n) pass with no sorting. If an interval is
+   * found out of order, the NCList is instead built by sorting all the
+   * intervals.
+   * 
+   * @param sorted
+   * @return
+   */
+  public static <T extends IntervalI> NCList<T> fromSorted(
+          Iterator<? extends T> sorted)
+  {
+    NCList<T> ncl = new NCList<>();
+    T unsorted = ncl.buildSorted(sorted);
+    if (unsorted != null)
+    {
+      List<T> ranges = ncl.getEntries();
+      ranges.add(unsorted);
+      while (sorted.hasNext())
+      {
+        ranges.add(sorted.next());
+      }
+      ncl = new NCList<>(ranges);
+    }
+    return ncl;
+  }
+
+  /**
+   * Answers a new NCList, built lazily from the given intervals. Only the top
+   * level is built, after sorting; the intervals contained by each top level
+   * interval are held unbuilt (in start position order) by its node, and
+   * built, a level at a time, when first needed by a query, iterator or
+   * modification. This makes the time to the first query little more than that
+   * to sort the intervals, where only part of the NCList is then searched.
+   * <p>
+   * Chains of single nested nodes are not summarised when built lazily. Note
+   * that this method may reorder the list.
+   * 
+   * @param ranges
+   * @return
+   */
+  public static <T extends IntervalI> NCList<T> lazy(List<T> ranges)
+  {
+    RadixSorter.sort(ranges);
+
+    /*
+     * hold a copy, as unbuilt nodes refer to it for their contents
+     */
+    return buildLevel(new ArrayList<>(ranges));
+  }
 
-    List<Range> sublists = buildSubranges(ranges);
+  /**
+   * Answers a new NCList holding the given intervals, which must be in start
+   * position order. Only the top level is built; each of its nodes holds the
+   * intervals it contains unbuilt.
+   * 
+   * @param sorted
+   * @return
+   */
+  static <T extends IntervalI> NCList<T> buildLevel(List<T> sorted)
+  {
+    NCList<T> ncl = new NCList<>();
+    for (Range sublist : ncl.buildSubranges(sorted))
+    {
+      int first = sublist.getBegin();
+      int last = sublist.getEnd();
+      ncl.subranges.add(new NCNode<>(sorted.get(first),
+              sorted.subList(first + 1, last + 1)));
+    }
+    ncl.size = sorted.size();
+    return ncl;
+  }
 
+  /**
+   * Builds the (empty) NCList from intervals presented in start position order,
+   * in a single pass. If an interval is found out of order, building stops,
+   * and the interval is returned (the NCList then holds the intervals before
+   * it). Otherwise, answers null.
+   * 
+   * @param sorted
+   * @return
+   */
+  private T buildSorted(Iterator<? extends T> sorted)
+  {
     /*
-     * convert each subrange to an NCNode consisting of a range and
-     * (possibly) its contained NCList
+     * keep a stack of the nodes that enclose the current range, and the
+     * index of each in the input; the range is added as the last subregion
+     * of the innermost node that properly contains it, or at the top level
      */
-    for (IntervalI sublist : sublists)
+    List<NCNode<T>> enclosing = new ArrayList<>();
+    int[] positions = new int[16];
+    T previous = null;
+    T outOfOrder = null;
+    int i = 0;
+    for (; sorted.hasNext(); i++)
+    {
+      T range = sorted.next();
+      if (previous != null && RangeComparator.BY_START_POSITION
+              .compare(previous, range) > 0)
+      {
+        outOfOrder = range;
+        break;
+      }
+      previous = range;
+      while (!enclosing.isEmpty() && !enclosing.get(enclosing.size() - 1)
+              .getRegion().properlyContainsInterval(range))
+      {
+        close(enclosing, positions, i);
+      }
+      NCNode<T> node = new NCNode<>(range);
+      if (enclosing.isEmpty())
+      {
+        subranges.add(node);
+      }
+      else
+      {
+        enclosing.get(enclosing.size() - 1).getOrCreateSubRegions().subranges
+                .add(node);
+      }
+      if (enclosing.size() == positions.length)
+      {
+        positions = Arrays.copyOf(positions, 2 * positions.length);
+      }
+      positions[enclosing.size()] = i;
+      enclosing.add(node);
+    }
+    while (!enclosing.isEmpty())
     {
-      subranges.add(new NCNode<>(
-              ranges.subList(sublist.getBegin(), sublist.getEnd() + 1)));
+      close(enclosing, positions, i);
     }
 
-    size = ranges.size();
+    size = i;
+    detectChains();
+    return outOfOrder;
+  }
+
+  /**
+   * Summarises each chain of at least <code>NCChain.MIN_LENGTH</code> single
+   * nested nodes, so that queries can find the overlapping layers of the chain
+   * by binary search, rather than by descending one level at a time
+   */
+  private void detectChains()
+  {
+    LevelStack<T> stack = new LevelStack<>();
+    stack.pushAll(this, null);
+    while (!stack.isEmpty())
+    {
+      if (!stack.hasCurrent())
+      {
+        stack.pop();
+        continue;
+      }
+      NCNode<T> node = stack.next();
+      NCChain<T> chain = NCChain.detect(node);
+      node.setChain(chain);
+      if (chain != null)
+      {
+        /*
+         * skip over the inner nodes of the chain
+         */
+        node = chain.getLayer(chain.length() - 1);
+      }
+      NCList<T> subRegions = node.getSubRegions();
+      if (subRegions != null)
+      {
+        stack.pushAll(subRegions, node);
+      }
+    }
+  }
+
+  /**
+   * Summarises any chain of at least <code>NCChain.MIN_LENGTH</code> single
+   * nested nodes that starts at one of the given nodes, each of which is the
+   * parent of the next, skipping nodes within a chain already found
+   * 
+   * @param path
+   */
+  private static <T extends IntervalI> void detectChains(
+          List<NCNode<T>> path)
+  {
+    int i = 0;
+    while (i < path.size())
+    {
+      NCNode<T> node = path.get(i);
+      NCChain<T> chain = NCChain.detect(node);
+      node.setChain(chain);
+      i += chain == null ? 1 : chain.length();
+    }
+  }
+
+  /**
+   * Pops the innermost enclosing node off the stack, setting the size of its
+   * subregions (if any). As ranges are added in order, these are all the
+   * ranges added after the node, up to (not including) the given index.
+   * 
+   * @param enclosing
+   * @param positions
+   * @param index
+   */
+  private void close(List<NCNode<T>> enclosing, int[] positions, int index)
+  {
+    int top = enclosing.size() - 1;
+    NCList<T> subRegions = enclosing.remove(top).getSubRegions();
+    if (subRegions != null)
+    {
+      subRegions.size = index - positions[top] - 1;
+    }
   }
 
   public NCList()
@@ -225,14 +687,43 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
   /**
    * Adds one NCNode to this NCList
    * <p>
-   * This method does not update the <code>size</code> (interval count) of this
-   * NCList, as it may be used to rearrange nodes without changing their count.
-   * Callers should increment the count if needed.
+   * This method adds the node's interval count to the <code>size</code> of
+   * this NCList, and of each nested NCList it descends into, so callers should
+   * not increment the count themselves.
+   * <p>
+   * Where the node belongs inside an existing subrange, this descends a level
+   * at a time in a loop (rather than by recursion), so any depth of nesting can
+   * be handled. Chains of single nested nodes along the way are then
+   * summarised afresh.
    * 
    * @param newNode
    */
   protected void addNode(final NCNode<T> newNode)
   {
+    List<NCNode<T>> path = new ArrayList<>();
+    NCList<T> level = this;
+    NCNode<T> parent;
+    while ((parent = level.addNodeToLevel(newNode)) != null)
+    {
+      path.add(parent);
+      level = parent.getOrCreateSubRegions();
+    }
+    path.add(newNode);
+    detectChains(path);
+  }
+
+  /**
+   * Adds one NCNode to this level of the NCList, and answers null, or if it
+   * belongs inside one of the subranges at this level, answers that subrange,
+   * to whose subregions it should be added
+   * 
+   * @param newNode
+   * @return
+   */
+  private NCNode<T> addNodeToLevel(final NCNode<T> newNode)
+  {
+    searchIndex = null;
+    subranges = ChunkedList.scalable(subranges);
     final long start = newNode.getBegin();
     final long end = newNode.getEnd();
     size += newNode.size();
@@ -270,7 +761,7 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
          * matching interval - insert adjacent
          */
         subranges.add(j, newNode);
-        return;
+        return null;
       }
 
       if (end < subrange.getBegin() && !enclosing)
@@ -279,7 +770,7 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
          * new entry lies between subranges j-1 j
          */
         subranges.add(j, newNode);
-        return;
+        return null;
       }
 
       if (subrange.properlyContainsInterval(newNode))
@@ -287,8 +778,7 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
         /*
          * push new entry inside this subrange as it encloses it
          */
-        subrange.addNode(newNode);
-        return;
+        return subrange;
       }
 
       if (start <= subrange.getBegin())
@@ -327,7 +817,7 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
              */
             subranges.add(j, newNode);
           }
-          return;
+          return null;
         }
       }
     }
@@ -344,6 +834,7 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
     {
       subranges.add(newNode);
     }
+    return null;
   }
 
   @Override
@@ -354,29 +845,34 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
       return false;
     }
     IntervalI interval = (IntervalI) entry;
+    int to = interval.getEnd();
 
     /*
-     * find the first sublist that might overlap, i.e. 
-     * the first whose end position is >= from
+     * search depth-first among subranges that overlap the entry
      */
-    int candidateIndex = findFirstOverlap(interval.getBegin());
-
-    int to = interval.getEnd();
-
-    for (int i = candidateIndex; i < subranges.size(); i++)
+    LevelStack<T> stack = new LevelStack<>();
+    pushOverlapRun(stack, null, interval.getBegin(), to);
+    while (!stack.isEmpty())
     {
-      NCNode<T> candidate = subranges.get(i);
-      if (candidate.getBegin() > to)
+      if (!stack.hasCurrent() || stack.current().getBegin() > to)
       {
         /*
          * we are past the end of our target range
          */
-        break;
+        stack.pop();
+        continue;
       }
-      if (candidate.contains(interval))
+      NCNode<T> candidate = stack.next();
+      if (interval.equals(candidate.getRegion()))
       {
         return true;
       }
+      NCList<T> subRegions = candidate.getSubRegions();
+      if (subRegions != null)
+      {
+        subRegions.pushOverlapRun(stack, candidate, interval.getBegin(),
+                to);
+      }
     }
     return false;
   }
@@ -406,11 +902,8 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
       node.addNode(n);
     }
 
-    for (int k = j; k >= i; k--)
-    {
-      subranges.remove(k);
-    }
-    subranges.add(i, node);
+    subranges.set(i, node);
+    subranges.subList(i + 1, j + 1).clear();
   }
 
   /**
@@ -430,7 +923,7 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
   }
 
   /**
-   * Recursively searches the NCList adding any items that overlap the from-to
+   * Searches the NCList depth-first, adding any items that overlap the from-to
    * range to the result list
    * 
    * @param from
@@ -439,30 +932,150 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
    */
   protected void findOverlaps(long from, long to, List<T> result)
   {
-    /*
-     * find the first sublist that might overlap, i.e. 
-     * the first whose end position is >= from
-     */
-    int candidateIndex = findFirstOverlap(from);
-
-    // if (candidateIndex == -1)
-    // {
-    // return;
-    // }
-
-    for (int i = candidateIndex; i < subranges.size(); i++)
-    {
-      NCNode<T> candidate = subranges.get(i);
-      if (candidate.getBegin() > to)
-      {
-        /*
-         * we are past the end of our target range
-         */
-        break;
-      }
-      candidate.findOverlaps(from, to, result);
-    }
-
+    findOverlaps(from, to, result, null);
+  }
+
+  /**
+   * Passes each interval that overlaps the given range to the visitor, in the
+   * same order as <code>findOverlaps</code>, without constructing a result
+   * list
+   * 
+   * @param from
+   *          start of overlap range (inclusive)
+   * @param to
+   *          end of overlap range (inclusive)
+   * @param visitor
+   */
+  public void visitOverlaps(long from, long to, Consumer<? super T> visitor)
+  {
+    findOverlaps(from, to, null, visitor);
+  }
+
+  /**
+   * Searches the NCList depth-first, adding any items that overlap the from-to
+   * range to the result list, or if it is null, passing them to the visitor.
+   * Where the range covers a node, all its contained regions overlap it too; if
+   * there are enough of them, they are added by a bulk copy, without further
+   * tests.
+   * 
+   * @param from
+   * @param to
+   * @param result
+   * @param visitor
+   */
+  private void findOverlaps(long from, long to, List<T> result,
+          Consumer<? super T> visitor)
+  {
+    LevelStack<T> stack = new LevelStack<>();
+    pushOverlapRun(stack, null, from, to);
+    while (!stack.isEmpty())
+    {
+      if (!stack.hasCurrent() || stack.current().getBegin() > to)
+      {
+        /*
+         * we are past the end of our target range at this level
+         */
+        stack.pop();
+        continue;
+      }
+      NCNode<T> candidate = stack.next();
+      if (candidate.isCoveredBy(from, to)
+              && candidate.size() >= NCNode.MIN_FLATTEN_SIZE)
+      {
+        if (result != null)
+        {
+          candidate.addAllEntries(result);
+        }
+        else
+        {
+          candidate.visitAllEntries(visitor);
+        }
+        continue;
+      }
+      NCChain<T> chain = candidate.getChain();
+      if (chain == null)
+      {
+        emit(candidate.getRegion(), result, visitor);
+      }
+      else
+      {
+        /*
+         * add the overlapping layers of a chain of single nested nodes,
+         * continuing inside the innermost only if it overlaps
+         */
+        int layers = chain.countOverlaps(from, to);
+        for (int i = 0; i < layers; i++)
+        {
+          emit(chain.getLayer(i).getRegion(), result, visitor);
+        }
+        if (layers < chain.length())
+        {
+          continue;
+        }
+        candidate = chain.getLayer(layers - 1);
+      }
+      NCList<T> subRegions = candidate.getSubRegions();
+      if (subRegions != null)
+      {
+        subRegions.pushOverlapRun(stack, candidate, from, to);
+      }
+    }
+  }
+
+  /**
+   * Adds the interval to the result list, or if it is null, passes it to the
+   * visitor
+   * 
+   * @param interval
+   * @param result
+   * @param visitor
+   */
+  private static <T> void emit(T interval, List<T> result,
+          Consumer<? super T> visitor)
+  {
+    if (result != null)
+    {
+      result.add(interval);
+    }
+    else
+    {
+      visitor.accept(interval);
+    }
+  }
+
+  /**
+   * Pushes onto the stack the run of subranges that may overlap the from-to
+   * range, if not empty. The run starts at the first subrange whose end
+   * position is >= from. If there is a search index, the run ends before the
+   * first subrange that starts after to; otherwise it extends to the end of the
+   * list, and callers must check start positions.
+   * 
+   * @param stack
+   * @param owner
+   * @param from
+   * @param to
+   */
+  private void pushOverlapRun(LevelStack<T> stack, NCNode<T> owner,
+          long from, long to)
+  {
+    PositionIndex index = searchIndex;
+    int first;
+    int limit;
+    if (index != null)
+    {
+      first = index.firstAtOrAfter(from);
+      limit = index.firstBeginAfter(to, first);
+    }
+    else
+    {
+      first = BinarySearcher.binarySearch(subranges,
+              BinarySearcher.byEnd(from));
+      limit = subranges.size();
+    }
+    if (first < limit)
+    {
+      stack.push(this, owner, first, limit);
+    }
   }
 
   /**
@@ -476,6 +1089,11 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
    */
   protected int findFirstOverlap(long from)
   {
+    PositionIndex index = searchIndex;
+    if (index != null)
+    {
+      return index.firstAtOrAfter(from);
+    }
     return BinarySearcher.binarySearch(subranges,
             BinarySearcher.byEnd(from));
   }
@@ -490,7 +1108,32 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
   @Override
   public String toString()
   {
-    return subranges.toString();
+    StringBuilder sb = new StringBuilder(10 * size);
+    LevelStack<T> stack = new LevelStack<>();
+    stack.pushAll(this, null);
+    sb.append("[");
+    while (!stack.isEmpty())
+    {
+      if (!stack.hasCurrent())
+      {
+        sb.append("]");
+        stack.pop();
+        continue;
+      }
+      if (stack.index() > 0)
+      {
+        sb.append(", ");
+      }
+      NCNode<T> node = stack.next();
+      sb.append(node.getRegion().toString());
+      NCList<T> subRegions = node.getSubRegions();
+      if (subRegions != null)
+      {
+        sb.append(" [");
+        stack.pushAll(subRegions, node);
+      }
+    }
+    return sb.toString();
   }
 
   /**
@@ -515,15 +1158,32 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
    */
   void prettyPrint(StringBuilder sb, int offset, int indent)
   {
+    LevelStack<T> stack = new LevelStack<>();
+    stack.pushAll(this, null);
     boolean first = true;
-    for (NCNode<T> subrange : subranges)
+    while (!stack.isEmpty())
     {
+      if (!stack.hasCurrent())
+      {
+        stack.pop();
+        continue;
+      }
       if (!first)
       {
         sb.append(System.lineSeparator());
       }
       first = false;
-      subrange.prettyPrint(sb, offset, indent);
+      NCNode<T> subrange = stack.next();
+      for (int i = 0, n = offset + 2 * (stack.depth() - 1); i < n; i++)
+      {
+        sb.append(" ");
+      }
+      sb.append(subrange.getRegion().toString());
+      NCList<T> subRegions = subrange.getSubRegions();
+      if (subRegions != null)
+      {
+        stack.pushAll(subRegions, subrange);
+      }
     }
   }
 
@@ -562,20 +1222,36 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
    */
   boolean isValid(final int start, final int end)
   {
-    NCNode<T> lastRange = null;
-
-    for (NCNode<T> subrange : subranges)
+    LevelStack<T> stack = new LevelStack<>();
+    stack.pushAll(this, null);
+    while (!stack.isEmpty())
     {
-      if (subrange.getBegin() < start)
+      if (!stack.hasCurrent())
+      {
+        stack.pop();
+        continue;
+      }
+
+      /*
+       * each level is bounded by the node that encloses it
+       */
+      NCNode<T> owner = stack.owner();
+      int levelStart = owner == null ? start : owner.getBegin();
+      int levelEnd = owner == null ? end : owner.getEnd();
+      NCNode<T> lastRange = stack.index() == 0 ? null
+              : stack.level().subranges.get(stack.index() - 1);
+      NCNode<T> subrange = stack.next();
+
+      if (subrange.getBegin() < levelStart)
       {
         System.err.println("error in NCList: range " + subrange.toString()
-                + " starts before " + end);
+                + " starts before " + levelEnd);
         return false;
       }
-      if (subrange.getEnd() > end)
+      if (subrange.getEnd() > levelEnd)
       {
         System.err.println("error in NCList: range " + subrange.toString()
-                + " ends after " + end);
+                + " ends after " + levelEnd);
         return false;
       }
 
@@ -600,16 +1276,62 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
           return false;
         }
       }
-      lastRange = subrange;
 
-      if (!subrange.isValid())
+      /*
+       * we don't handle reverse ranges, and expect 
+       * empty subregions to be nulled
+       */
+      if (subrange.getBegin() > subrange.getEnd())
       {
         return false;
       }
+      NCList<T> subRegions = subrange.getSubRegions();
+      if (subRegions != null)
+      {
+        if (subRegions.isEmpty())
+        {
+          return false;
+        }
+        stack.pushAll(subRegions, subrange);
+      }
     }
     return true;
   }
 
+  /**
+   * Answers the least start position of any interval, which is that of the
+   * first subrange (the list must not be empty)
+   * 
+   * @return
+   */
+  int getMinBegin()
+  {
+    return subranges.get(0).getBegin();
+  }
+
+  /**
+   * Answers the greatest end position of any interval, which is that of the
+   * last subrange, as subranges are not nested in each other (the list must
+   * not be empty)
+   * 
+   * @return
+   */
+  int getMaxEnd()
+  {
+    return subranges.get(subranges.size() - 1).getEnd();
+  }
+
+  /**
+   * Answers the only subrange at this level, or null if there is not exactly
+   * one
+   * 
+   * @return
+   */
+  NCNode<T> getOnlySubrange()
+  {
+    return subranges.size() == 1 ? subranges.get(0) : null;
+  }
+
   /**
    * Answers the number of intervals stored
    * 
@@ -638,9 +1360,10 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
    */
   void getEntries(List<T> result)
   {
-    for (NCNode<T> subrange : subranges)
+    Iterator<T> it = iterator();
+    while (it.hasNext())
     {
-      subrange.getEntries(result);
+      result.add(it.next());
     }
   }
 
@@ -658,54 +1381,370 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
     {
       return false;
     }
-    int i = findFirstOverlap(entry.getBegin());
-    // if (i == -1)
-    // {
-    // /*
-    // * it's not here!
-    // */
-    // return false;
-    // }
 
-    for (; i < subranges.size(); i++)
+    /*
+     * search depth-first among subranges that start no later than the entry
+     */
+    LevelStack<T> stack = new LevelStack<>();
+    stack.push(this, null, findFirstOverlap(entry.getBegin()),
+            subranges.size());
+    while (!stack.isEmpty())
     {
-      NCNode<T> subrange = subranges.get(i);
-      if (subrange.getBegin() > entry.getBegin())
+      if (!stack.hasCurrent()
+              || stack.current().getBegin() > entry.getBegin())
       {
         /*
-         * not found
+         * not found at this level
          */
-        return false;
+        stack.pop();
+        continue;
       }
-      NCList<T> subRegions = subrange.getSubRegions();
-
+      NCList<T> level = stack.level();
+      int i = stack.index();
+      NCNode<T> subrange = stack.next();
       if (subrange.getRegion().equals(entry))
       {
+        level.removeAt(i);
+
         /*
-         * if the subrange is rooted on this entry, remove it,
-         * and remove and promote its subregions (if any)  
+         * reduce the count of each enclosing level, discard the chain
+         * summaries and flattened subtrees of enclosing nodes, and drop
+         * the level from its node if it is now empty
          */
-        subranges.remove(i);
-        size -= subrange.size();
-        if (subRegions != null)
+        for (int d = 0; d < stack.depth() - 1; d++)
         {
-          for (NCNode<T> r : subRegions.subranges)
+          stack.level(d).size--;
+          if (stack.owner(d + 1) != null)
           {
-            addNode(r);
+            stack.owner(d + 1).clearCaches();
           }
         }
+        if (stack.owner() != null)
+        {
+          stack.owner().pruneSubRegions();
+        }
         return true;
       }
-      else
+      NCList<T> subRegions = subrange.getSubRegions();
+      if (subRegions != null)
       {
-        if (subrange.remove(entry))
+        stack.push(subRegions, subrange,
+                subRegions.findFirstOverlap(entry.getBegin()),
+                subRegions.subranges.size());
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Removes the region of the subrange at the given index, promoting its
+   * subregions (if any) to take its place
+   * 
+   * @param i
+   */
+  private void removeAt(int i)
+  {
+    searchIndex = null;
+    subranges = ChunkedList.scalable(subranges);
+    NCList<T> subRegions = subranges.get(i).getSubRegions();
+    size--;
+    if (subRegions == null)
+    {
+      subranges.remove(i);
+    }
+    else
+    {
+      promote(i, subRegions.subranges);
+    }
+  }
+
+  /**
+   * Removes all intervals that lie entirely within the given range. Answers
+   * true if any interval is removed, else false. This method is synchronized so
+   * thread-safe.
+   * 
+   * @param from
+   *          start of range (inclusive)
+   * @param to
+   *          end of range (inclusive)
+   * @return
+   */
+  public synchronized boolean removeRange(final long from, final long to)
+  {
+    return removeIf(from, to, new Predicate<T>()
+    {
+      @Override
+      public boolean test(T t)
+      {
+        return t.getBegin() >= from && t.getEnd() <= to;
+      }
+    }, new ArrayList<T>()) > 0;
+  }
+
+  /**
+   * Removes all intervals that overlap the given range. Answers true if any
+   * interval is removed, else false. This method is synchronized so
+   * thread-safe.
+   * 
+   * @param from
+   *          start of overlap range (inclusive)
+   * @param to
+   *          end of overlap range (inclusive)
+   * @return
+   */
+  public synchronized boolean removeOverlapping(final long from,
+          final long to)
+  {
+    return removeIf(from, to, new Predicate<T>()
+    {
+      @Override
+      public boolean test(T t)
+      {
+        return t.getBegin() <= to && t.getEnd() >= from;
+      }
+    }, new ArrayList<T>()) > 0;
+  }
+
+  /**
+   * Removes all intervals which satisfy the given filter, in a single traversal
+   * of the NCList. Answers true if any interval is removed, else false. This
+   * method is synchronized so thread-safe.
+   * 
+   * @param filter
+   * @return
+   */
+  @Override
+  public synchronized boolean removeIf(Predicate<? super T> filter)
+  {
+    return removeIf(Long.MIN_VALUE, Long.MAX_VALUE, filter,
+            new ArrayList<T>()) > 0;
+  }
+
+  /**
+   * Removes intervals which overlap the given range and satisfy the given
+   * filter, adding them to the <code>removed</code> list, and answers the
+   * number removed. Nodes which don't overlap the range are not tested.
+   * <p>
+   * Removals are done in one traversal. Where a removed interval has contained
+   * intervals, they are promoted to take its place, and the affected run of
+   * subranges is rebuilt with a single splice, rather than by removing and
+   * re-adding nodes one at a time.
+   * <p>
+   * The levels holding candidate nodes are first listed, each after the level
+   * that encloses it, and then processed in reverse order, so that removals
+   * from a node's subregions are made before the node itself is tested. This
+   * avoids recursion, so any depth of nesting can be handled.
+   * 
+   * @param from
+   * @param to
+   * @param filter
+   * @param removed
+   * @return
+   */
+  int removeIf(long from, long to, Predicate<? super T> filter,
+          List<T> removed)
+  {
+    List<NCList<T>> levels = new ArrayList<>();
+    List<NCNode<T>> owners = new ArrayList<>();
+    List<Integer> parents = new ArrayList<>();
+    levels.add(this);
+    owners.add(null);
+    parents.add(-1);
+    for (int k = 0; k < levels.size(); k++)
+    {
+      NCList<T> level = levels.get(k);
+      List<NCNode<T>> nodes = level.subranges;
+      for (int i = level.findFirstOverlap(from); i < nodes.size()
+              && nodes.get(i).getBegin() <= to; i++)
+      {
+        NCList<T> subRegions = nodes.get(i).getSubRegions();
+        if (subRegions != null)
         {
-          size--;
-          return true;
+          levels.add(subRegions);
+          owners.add(nodes.get(i));
+          parents.add(k);
         }
       }
     }
-    return false;
+
+    /*
+     * count of intervals removed from within each level
+     */
+    int[] counts = new int[levels.size()];
+    for (int k = levels.size() - 1; k >= 0; k--)
+    {
+      NCList<T> level = levels.get(k);
+      counts[k] += level.removeIfFromLevel(from, to, filter, removed);
+      level.size -= counts[k];
+      if (k > 0)
+      {
+        counts[parents.get(k)] += counts[k];
+        if (counts[k] > 0)
+        {
+          owners.get(k).pruneSubRegions();
+        }
+      }
+    }
+    return counts[0];
+  }
+
+  /**
+   * Removes subranges at this level (not their subregions) which overlap the
+   * given range and whose regions satisfy the filter, adding them to the
+   * <code>removed</code> list, and answers the number removed. This does not
+   * change the size (interval count) of this NCList.
+   * 
+   * @param from
+   * @param to
+   * @param filter
+   * @param removed
+   * @return
+   */
+  private int removeIfFromLevel(long from, long to,
+          Predicate<? super T> filter, List<T> removed)
+  {
+    searchIndex = null;
+    int first = findFirstOverlap(from);
+    int last = first;
+    while (last < subranges.size() && subranges.get(last).getBegin() <= to)
+    {
+      last++;
+    }
+
+    /*
+     * replacement for subranges first..last-1, only
+     * constructed if some node in the range is removed
+     */
+    List<NCNode<T>> replacement = null;
+    int removedCount = 0;
+    int maxPromotedBegin = Integer.MIN_VALUE;
+
+    for (int i = first; i < last; i++)
+    {
+      NCNode<T> node = subranges.get(i);
+      if (filter.test(node.getRegion()))
+      {
+        removed.add(node.getRegion());
+        removedCount++;
+        if (replacement == null)
+        {
+          replacement = new ArrayList<>(subranges.subList(first, i));
+        }
+        NCList<T> subRegions = node.getSubRegions();
+        if (subRegions != null)
+        {
+          replacement.addAll(subRegions.subranges);
+          maxPromotedBegin = Math.max(maxPromotedBegin, subRegions.subranges
+                  .get(subRegions.subranges.size() - 1).getBegin());
+        }
+      }
+      else if (replacement != null)
+      {
+        replacement.add(node);
+      }
+    }
+    if (replacement != null)
+    {
+      /*
+       * promoted nodes may sort after following siblings; extend the 
+       * rebuilt run to include any such siblings
+       */
+      while (last < subranges.size()
+              && subranges.get(last).getBegin() <= maxPromotedBegin)
+      {
+        replacement.add(subranges.get(last));
+        last++;
+      }
+      Collections.sort(replacement, RangeComparator.BY_START_POSITION);
+      splice(first, last, replacement);
+    }
+
+    return removedCount;
+  }
+
+  /**
+   * Replaces the subrange at the given index with the given nodes, which were
+   * contained by it. The nodes are already ordered and non-nested relative to
+   * each other, so are merged with any following subranges they sort among,
+   * and the result spliced into the list in one step, rather than added one at
+   * a time. This does not change the size (interval count) of this NCList.
+   * 
+   * @param index
+   * @param nodes
+   */
+  protected void promote(int index, List<NCNode<T>> nodes)
+  {
+    /*
+     * find the run of following siblings that the promoted nodes sort among
+     */
+    int maxBegin = nodes.get(nodes.size() - 1).getBegin();
+    int last = index + 1;
+    while (last < subranges.size()
+            && subranges.get(last).getBegin() <= maxBegin)
+    {
+      last++;
+    }
+
+    /*
+     * merge the promoted nodes with the following siblings
+     */
+    List<NCNode<T>> merged = new ArrayList<>(nodes.size() + last - index);
+    int i = 0;
+    int j = index + 1;
+    while (i < nodes.size() || j < last)
+    {
+      if (j == last || (i < nodes.size() && RangeComparator.BY_START_POSITION
+              .compare(nodes.get(i), subranges.get(j)) <= 0))
+      {
+        merged.add(nodes.get(i++));
+      }
+      else
+      {
+        merged.add(subranges.get(j++));
+      }
+    }
+
+    splice(index, last, merged);
+  }
+
+  /**
+   * Replaces subranges <code>first</code> to <code>last - 1</code> with the
+   * given nodes, which must be in start position order. Any node which is
+   * properly contained by the node kept before it is added inside that node
+   * instead. This does not change the size (interval count) of this NCList.
+   * <p>
+   * This is valid provided no replacement node properly contains a node
+   * outside of the replaced run, as holds for nodes promoted from a removed
+   * node which lay within the run.
+   * 
+   * @param first
+   * @param last
+   * @param nodes
+   */
+  protected void splice(int first, int last, List<NCNode<T>> nodes)
+  {
+    searchIndex = null;
+    subranges = ChunkedList.scalable(subranges);
+    List<NCNode<T>> kept = new ArrayList<>(nodes.size());
+    NCNode<T> lastKept = first > 0 ? subranges.get(first - 1) : null;
+    for (NCNode<T> node : nodes)
+    {
+      if (lastKept != null && lastKept.properlyContainsInterval(node))
+      {
+        /*
+         * nodes at one level have ascending end positions, so if any
+         * preceding node encloses this one, the last one kept does
+         */
+        lastKept.addNode(node);
+      }
+      else
+      {
+        kept.add(node);
+        lastKept = node;
+      }
+    }
+    subranges.subList(first, last).clear();
+    subranges.addAll(first, kept);
   }
 
   /**
@@ -716,13 +1755,25 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
    */
   public int getDepth()
   {
-    int subDepth = 0;
-    for (NCNode<T> subrange : subranges)
+    int depth = 0;
+    LevelStack<T> stack = new LevelStack<>();
+    stack.pushAll(this, null);
+    while (!stack.isEmpty())
     {
-      subDepth = Math.max(subDepth, subrange.getDepth());
+      if (!stack.hasCurrent())
+      {
+        stack.pop();
+        continue;
+      }
+      depth = Math.max(depth, stack.depth());
+      NCNode<T> subrange = stack.next();
+      NCList<T> subRegions = subrange.getSubRegions();
+      if (subRegions != null)
+      {
+        stack.pushAll(subRegions, subrange);
+      }
     }
-
-    return subDepth;
+    return depth;
   }
 
   @Override
@@ -731,10 +1782,64 @@ public class NCList<T extends IntervalI> extends AbstractCollection<T>
     return new NCListIterator();
   }
 
+  /**
+   * Answers an iterator over all intervals in the NCList, in start position
+   * order (as defined by <code>RangeComparator.BY_START_POSITION</code>). The
+   * optional <code>remove</code> operation is not supported.
+   * 
+   * @return
+   */
+  public Iterator<T> orderedIterator()
+  {
+    return orderedIterator(Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Answers an iterator over the intervals in the NCList that overlap the given
+   * range, in start position order (as defined by
+   * <code>RangeComparator.BY_START_POSITION</code>). The optional
+   * <code>remove</code> operation is not supported.
+   * 
+   * @param from
+   *          start of overlap range (inclusive)
+   * @param to
+   *          end of overlap range (inclusive)
+   * @return
+   */
+  public Iterator<T> orderedIterator(long from, long to)
+  {
+    return new OrderedIterator(from, to);
+  }
+
   @Override
   public synchronized void clear()
   {
+    searchIndex = null;
     subranges.clear();
     size = 0;
   }
+
+  /**
+   * Builds an index of the given kind over the top level of the NCList, to
+   * speed up the search for the first interval that may overlap a query. This
+   * is intended for an NCList that is no longer modified; any modification
+   * discards the index, reverting to binary search.
+   * 
+   * @param kind
+   */
+  public synchronized void buildSearchIndex(SearchIndex kind)
+  {
+    searchIndex = PositionIndex.build(kind, subranges);
+  }
+
+  /**
+   * Answers the kind of search index in use
+   * 
+   * @return
+   */
+  public SearchIndex getSearchIndex()
+  {
+    PositionIndex index = searchIndex;
+    return index == null ? SearchIndex.BINARY : index.getKind();
+  }
 }
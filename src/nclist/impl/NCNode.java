@@ -20,9 +20,11 @@
  */
 package nclist.impl;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import nclist.api.IntervalI;
 
@@ -34,46 +36,11 @@ import nclist.api.IntervalI;
  */
 class NCNode<T extends IntervalI> implements IntervalI
 {
-  /**
-   * A depth-first iterator over the intervals stored in the NCNode. The
-   * optional <code>remove</code> operation is not supported.
-   * 
-   * @author gmcarstairs
-   *
+  /*
+   * the smallest subtree (region and all contained regions) worth
+   * caching as an array for queries that cover it
    */
-  private class NCNodeIterator implements Iterator<T>
-  {
-    boolean first = true;
-    Iterator<T> subregionIterator;
-
-    @Override
-    public boolean hasNext()
-    {
-      return first
-              || (subregionIterator != null && subregionIterator.hasNext());
-    }
-
-    /**
-     * Answers the next interval - initially the top level interval for this
-     * node, thereafter the intervals returned by the NCList's iterator
-     */
-    @Override
-    public T next()
-    {
-      if (first)
-      {
-        subregionIterator = subregions == null ? null
-                : subregions.iterator();
-        first = false;
-        return region;
-      }
-      if (subregionIterator == null || !subregionIterator.hasNext())
-      {
-        throw new NoSuchElementException();
-      }
-      return subregionIterator.next();
-    }
-  }
+  static final int MIN_FLATTEN_SIZE = 8;
 
   private T region;
 
@@ -82,6 +49,25 @@ class NCNode<T extends IntervalI> implements IntervalI
    */
   private NCList<T> subregions;
 
+  /*
+   * null, or the contained regions (in start position order) of a node
+   * built lazily, not yet built into subregions
+   */
+  private volatile List<T> unbuilt;
+
+  /*
+   * null, or a summary of the chain of single nested nodes starting
+   * at this one; discarded when the node's subregions are modified
+   */
+  private NCChain<T> chain;
+
+  /*
+   * null, or this node's region and all contained regions, depth-first,
+   * built when a query first covers the node; discarded when the node's
+   * subregions are modified
+   */
+  private volatile Object[] flattened;
+
   /**
    * Constructor given a list of ranges
    * 
@@ -109,6 +95,24 @@ class NCNode<T extends IntervalI> implements IntervalI
     region = range;
   }
 
+  /**
+   * Constructor given a range, and the ranges it contains in start position
+   * order (as defined by <code>RangeComparator.BY_START_POSITION</code>). The
+   * contained ranges are only built into subregions when first needed, which
+   * is thread-safe.
+   * 
+   * @param range
+   * @param contained
+   */
+  NCNode(T range, List<T> contained)
+  {
+    region = range;
+    if (!contained.isEmpty())
+    {
+      unbuilt = contained;
+    }
+  }
+
   @Override
   public int getBegin()
   {
@@ -135,44 +139,86 @@ class NCNode<T extends IntervalI> implements IntervalI
   {
     StringBuilder sb = new StringBuilder(10 * size());
     sb.append(region.toString());
-    if (subregions != null)
+    NCList<T> subRegions = getSubRegions();
+    if (subRegions != null)
     {
-      sb.append(" ").append(subregions.toString());
+      sb.append(" ").append(subRegions.toString());
     }
     return sb.toString();
   }
 
-  void prettyPrint(StringBuilder sb, int offset, int indent)
+  /**
+   * Answers true if the from-to range covers this node's region, and so (as
+   * they are contained by it) all of its subregions, else false
+   * 
+   * @param from
+   * @param to
+   * @return
+   */
+  boolean isCoveredBy(long from, long to)
   {
-    for (int i = 0; i < offset; i++)
-    {
-      sb.append(" ");
-    }
-    sb.append(region.toString());
-    if (subregions != null)
+    return from <= region.getBegin() && region.getEnd() <= to;
+  }
+
+  /**
+   * Adds this node's region and all its contained regions, depth-first, to the
+   * result list, as a bulk copy of an array of them. The array is built on
+   * first use and retained until the subregions are modified, so this is
+   * intended for subtrees of at least <code>MIN_FLATTEN_SIZE</code>.
+   * 
+   * @param result
+   */
+  @SuppressWarnings("unchecked")
+  void addAllEntries(List<T> result)
+  {
+    result.addAll((List<T>) (List<?>) Arrays.asList(getFlattened()));
+  }
+
+  /**
+   * Passes this node's region and all its contained regions, depth-first, to
+   * the visitor, from an array of them. The array is built on first use and
+   * retained until the subregions are modified, so this is intended for
+   * subtrees of at least <code>MIN_FLATTEN_SIZE</code>.
+   * 
+   * @param visitor
+   */
+  @SuppressWarnings("unchecked")
+  void visitAllEntries(Consumer<? super T> visitor)
+  {
+    for (Object entry : getFlattened())
     {
-      sb.append(System.lineSeparator());
-      subregions.prettyPrint(sb, offset + 2, indent);
+      visitor.accept((T) entry);
     }
   }
 
   /**
-   * Add any ranges that overlap the from-to range to the result list
+   * Answers this node's region and all its contained regions, depth-first,
+   * building and retaining the array if not already held
    * 
-   * @param from
-   * @param to
-   * @param result
+   * @return
    */
-  void findOverlaps(long from, long to, List<T> result)
+  Object[] getFlattened()
   {
-    if (region.getBegin() <= to && region.getEnd() >= from)
+    Object[] entries = flattened;
+    if (entries == null)
     {
-      result.add(region);
-      if (subregions != null)
-      {
-        subregions.findOverlaps(from, to, result);
-      }
+      List<T> list = new ArrayList<>(size());
+      getEntries(list);
+      entries = list.toArray();
+      flattened = entries;
     }
+    return entries;
+  }
+
+  /**
+   * Answers true if this node holds an array of its subtree's regions, else
+   * false
+   * 
+   * @return
+   */
+  boolean isFlattened()
+  {
+    return flattened != null;
   }
 
   /**
@@ -191,12 +237,7 @@ class NCNode<T extends IntervalI> implements IntervalI
                       entry.getBegin(), entry.getEnd(), region.getBegin(),
                       region.getEnd()));
     }
-    if (subregions == null)
-    {
-      subregions = new NCList<>();
-    }
-
-    subregions.addNode(entry);
+    getOrCreateSubRegions().addNode(entry);
   }
 
   /**
@@ -214,18 +255,19 @@ class NCNode<T extends IntervalI> implements IntervalI
     {
       return false;
     }
-    if (subregions == null)
+    NCList<T> subRegions = getSubRegions();
+    if (subRegions == null)
     {
       return true;
     }
-    if (subregions.isEmpty())
+    if (subRegions.isEmpty())
     {
       /*
        * we expect empty subregions to be nulled
        */
       return false;
     }
-    return subregions.isValid(getBegin(), getEnd());
+    return subRegions.isValid(getBegin(), getEnd());
   }
 
   /**
@@ -236,9 +278,19 @@ class NCNode<T extends IntervalI> implements IntervalI
   void getEntries(List<T> entries)
   {
     entries.add(region);
-    if (subregions != null)
+    List<T> contained = unbuilt;
+    if (contained != null)
+    {
+      /*
+       * unbuilt regions are already in depth-first order
+       */
+      entries.addAll(contained);
+      return;
+    }
+    NCList<T> subRegions = getSubRegions();
+    if (subRegions != null)
     {
-      subregions.getEntries(entries);
+      subRegions.getEntries(entries);
     }
   }
 
@@ -259,7 +311,8 @@ class NCNode<T extends IntervalI> implements IntervalI
     {
       return true;
     }
-    return subregions == null ? false : subregions.contains(entry);
+    NCList<T> subRegions = getSubRegions();
+    return subRegions == null ? false : subRegions.contains(entry);
   }
 
   /**
@@ -273,74 +326,137 @@ class NCNode<T extends IntervalI> implements IntervalI
   }
 
   /**
-   * Answers the (possibly null) contained regions within this object
+   * Answers the (possibly null) contained regions within this object, first
+   * building them if the node was built lazily
    * 
    * @return
    */
   NCList<T> getSubRegions()
   {
+    if (unbuilt != null)
+    {
+      buildSubRegions();
+    }
     return subregions;
   }
 
   /**
-   * Answers the (deep) size of this node i.e. the number of intervals it models
+   * Builds the top level of the subregions from the unbuilt contained regions,
+   * if not already done by another thread, each of its nodes again holding its
+   * own contained regions unbuilt
+   */
+  private synchronized void buildSubRegions()
+  {
+    List<T> contained = unbuilt;
+    if (contained != null)
+    {
+      subregions = NCList.buildLevel(contained);
+
+      /*
+       * the volatile write publishes subregions to other threads
+       */
+      unbuilt = null;
+    }
+  }
+
+  /**
+   * Answers true if this node holds contained regions not yet built into
+   * subregions, else false
    * 
    * @return
    */
-  int size()
+  boolean isBuilt()
   {
-    return subregions == null ? 1 : 1 + subregions.size();
+    return unbuilt == null;
   }
 
   /**
-   * Answers the depth of NCNode / NCList nesting in the data tree
+   * Answers the contained regions within this object, first creating an empty
+   * NCList for them if there are none. As this is for adding to them, any chain
+   * summary or flattened subtree held by this node is discarded.
    * 
    * @return
    */
-  int getDepth()
+  NCList<T> getOrCreateSubRegions()
   {
-    return subregions == null ? 1 : 1 + subregions.getDepth();
+    clearCaches();
+    if (getSubRegions() == null)
+    {
+      subregions = new NCList<>();
+    }
+    return subregions;
   }
 
   /**
-   * Answers a depth-first iterator over the intervals stored in this node
+   * Answers the only node in this node's subregions, or null if there is not
+   * exactly one
    * 
    * @return
    */
-  public Iterator<T> iterator()
+  NCNode<T> getOnlySubRegion()
   {
-    return new NCNodeIterator();
+    NCList<T> subRegions = getSubRegions();
+    return subRegions == null ? null : subRegions.getOnlySubrange();
   }
 
   /**
-   * Removes the first interval found equal to the given entry. Answers true if
-   * a matching interval is found and removed, else false.
+   * Answers the summary of the chain of single nested nodes starting at this
+   * node, or null if none is held
    * 
-   * @param entry
    * @return
    */
-  boolean remove(T entry)
+  NCChain<T> getChain()
   {
-    if (region.equals(entry))
-    {
-      /*
-       * this case must be handled by NCList, to allow any
-       * children of a deleted interval to be promoted
-       */
-      throw new IllegalArgumentException("NCNode can't remove self");
-    }
-    if (subregions == null)
+    return chain;
+  }
+
+  /**
+   * Sets (or clears, if null) the summary of the chain of single nested nodes
+   * starting at this node
+   * 
+   * @param chain
+   */
+  void setChain(NCChain<T> chain)
+  {
+    this.chain = chain;
+  }
+
+  /**
+   * Answers the (deep) size of this node i.e. the number of intervals it models
+   * 
+   * @return
+   */
+  int size()
+  {
+    List<T> contained = unbuilt;
+    if (contained != null)
     {
-      return false;
+      return 1 + contained.size();
     }
-    if (subregions.remove(entry))
+    return subregions == null ? 1 : 1 + subregions.size();
+  }
+
+  /**
+   * Discards any chain summary or flattened subtree held by this node, as its
+   * subregions have been (or are about to be) modified
+   */
+  void clearCaches()
+  {
+    chain = null;
+    flattened = null;
+  }
+
+  /**
+   * Discards the contained regions of this node if they are now empty, and any
+   * chain summary or flattened subtree (as they have been modified)
+   */
+  void pruneSubRegions()
+  {
+    clearCaches();
+    NCList<T> subRegions = getSubRegions();
+    if (subRegions != null && subRegions.isEmpty())
     {
-      if (subregions.isEmpty())
-      {
-        subregions = null;
-      }
-      return true;
+      subregions = null;
     }
-    return false;
   }
 }
@@ -0,0 +1,145 @@
+package nclist.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only file whose contents are read by position, a page at a time,
+ * through a <code>BufferPool</code>. Values may span page boundaries.
+ */
+class PagedFile implements Closeable
+{
+  private final FileChannel channel;
+
+  private final BufferPool pool;
+
+  private final int pageSize;
+
+  private final long length;
+
+  /**
+   * Constructor, which opens the file for reading
+   *
+   * @param file
+   * @param pool
+   * @throws IOException
+   */
+  PagedFile(File file, BufferPool pool) throws IOException
+  {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.pool = pool;
+    pageSize = pool.getPageSize();
+    length = channel.size();
+  }
+
+  long length()
+  {
+    return length;
+  }
+
+  /**
+   * Answers the page holding the given file position
+   *
+   * @param position
+   * @return
+   * @throws IOException
+   */
+  private ByteBuffer getPage(long position) throws IOException
+  {
+    if (position < 0 || position >= length)
+    {
+      throw new IOException("Position " + position + " outside file length "
+              + length);
+    }
+    return pool.getPage(this, channel, position / pageSize);
+  }
+
+  int readInt(long position) throws IOException
+  {
+    ByteBuffer page = getPage(position);
+    int offset = (int) (position % pageSize);
+    if (offset + Integer.BYTES <= page.limit())
+    {
+      return page.getInt(offset);
+    }
+    return (int) readSpanning(position, Integer.BYTES);
+  }
+
+  long readLong(long position) throws IOException
+  {
+    ByteBuffer page = getPage(position);
+    int offset = (int) (position % pageSize);
+    if (offset + Long.BYTES <= page.limit())
+    {
+      return page.getLong(offset);
+    }
+    return readSpanning(position, Long.BYTES);
+  }
+
+  /**
+   * Reads a big-endian value of the given number of bytes which spans pages,
+   * or runs past the end of the file (which is an error)
+   *
+   * @param position
+   * @param bytes
+   * @return
+   * @throws IOException
+   */
+  private long readSpanning(long position, int bytes) throws IOException
+  {
+    long value = 0;
+    for (int i = 0; i < bytes; i++)
+    {
+      long pos = position + i;
+      ByteBuffer page = getPage(pos);
+      int offset = (int) (pos % pageSize);
+      if (offset >= page.limit())
+      {
+        throw new IOException("Read past end of file at " + pos);
+      }
+      value = (value << 8) | (page.get(offset) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Reads bytes from the given position to fill the array
+   *
+   * @param position
+   * @param bytes
+   * @throws IOException
+   */
+  void readBytes(long position, byte[] bytes) throws IOException
+  {
+    int done = 0;
+    while (done < bytes.length)
+    {
+      long pos = position + done;
+      ByteBuffer page = getPage(pos);
+      int offset = (int) (pos % pageSize);
+      int n = Math.min(bytes.length - done, page.limit() - offset);
+      if (n <= 0)
+      {
+        throw new IOException("Read past end of file at " + pos);
+      }
+      ByteBuffer view = page.duplicate();
+      view.position(offset);
+      view.get(bytes, done, n);
+      done += n;
+    }
+  }
+
+  /**
+   * Closes the file, and removes its pages from the buffer pool
+   */
+  @Override
+  public void close() throws IOException
+  {
+    pool.invalidate(this);
+    channel.close();
+  }
+}
@@ -0,0 +1,524 @@
+package nclist.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+import nclist.api.IntervalI;
+
+/**
+ * A store of zero-length (point) intervals, such as single nucleotide
+ * variants, held in order of position. Each block holds a primitive array of
+ * positions and a parallel array of the intervals, so a point costs two array
+ * slots, rather than a list entry or NCList node. As a point can't contain
+ * anything, no nesting structure is needed: the points overlapping a range
+ * are a contiguous run, found by binary search and read by a sequential scan.
+ * <p>
+ * Blocks hold at most a few hundred points (as for <code>ChunkedList</code>),
+ * so that insertion and removal shift at most one block. Points at the same
+ * position are held in the order added. Not thread-safe for concurrent
+ * modification.
+ *
+ * @param <T>
+ */
+class PointList<T extends IntervalI>
+{
+  /*
+   * the maximum number of points held in a block
+   */
+  static final int MAX_BLOCK_SIZE = 512;
+
+  /*
+   * the initial capacity of a new block
+   */
+  private static final int INITIAL_BLOCK_CAPACITY = 16;
+
+  /**
+   * A block of points, in position order
+   */
+  private static final class Block
+  {
+    int[] positions;
+
+    Object[] items;
+
+    int size;
+
+    Block(int capacity)
+    {
+      positions = new int[capacity];
+      items = new Object[capacity];
+    }
+
+    /**
+     * Inserts a point at the given offset in the block, which must have room
+     * for it
+     *
+     * @param offset
+     * @param position
+     * @param item
+     */
+    void insert(int offset, int position, Object item)
+    {
+      if (size == positions.length)
+      {
+        int capacity = Math.min(MAX_BLOCK_SIZE, 2 * size);
+        positions = Arrays.copyOf(positions, capacity);
+        items = Arrays.copyOf(items, capacity);
+      }
+      System.arraycopy(positions, offset, positions, offset + 1,
+              size - offset);
+      System.arraycopy(items, offset, items, offset + 1, size - offset);
+      positions[offset] = position;
+      items[offset] = item;
+      size++;
+    }
+
+    /**
+     * Removes the point at the given offset in the block
+     *
+     * @param offset
+     */
+    void delete(int offset)
+    {
+      System.arraycopy(positions, offset + 1, positions, offset,
+              size - offset - 1);
+      System.arraycopy(items, offset + 1, items, offset, size - offset - 1);
+      size--;
+      items[size] = null;
+    }
+
+    /**
+     * Answers the offset of the first point in the block at or after the
+     * target position, or the block size if there is none
+     *
+     * @param target
+     * @return
+     */
+    int firstAtOrAfter(long target)
+    {
+      int low = 0;
+      int high = size;
+      while (low < high)
+      {
+        int mid = (low + high) >>> 1;
+        if (positions[mid] < target)
+        {
+          low = mid + 1;
+        }
+        else
+        {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    int last()
+    {
+      return positions[size - 1];
+    }
+  }
+
+  /*
+   * non-empty blocks, in position order
+   */
+  private final List<Block> blocks = new ArrayList<>();
+
+  private int size;
+
+  /**
+   * Adds a point, after any others at the same position
+   *
+   * @param point
+   */
+  void add(T point)
+  {
+    int position = point.getBegin();
+    if (blocks.isEmpty())
+    {
+      Block block = new Block(INITIAL_BLOCK_CAPACITY);
+      block.insert(0, position, point);
+      blocks.add(block);
+      size++;
+      return;
+    }
+
+    /*
+     * find the first block which ends after the position (else the last)
+     */
+    int b = firstBlockEndingAtOrAfter(position + 1L);
+    if (b == blocks.size())
+    {
+      b--;
+    }
+    Block block = blocks.get(b);
+    int offset = block.firstAtOrAfter(position + 1L);
+    if (block.size == MAX_BLOCK_SIZE)
+    {
+      /*
+       * split a full block in half, and insert into the correct half
+       */
+      int half = MAX_BLOCK_SIZE / 2;
+      Block next = new Block(MAX_BLOCK_SIZE);
+      System.arraycopy(block.positions, half, next.positions, 0,
+              MAX_BLOCK_SIZE - half);
+      System.arraycopy(block.items, half, next.items, 0,
+              MAX_BLOCK_SIZE - half);
+      next.size = MAX_BLOCK_SIZE - half;
+      Arrays.fill(block.items, half, MAX_BLOCK_SIZE, null);
+      block.size = half;
+      blocks.add(b + 1, next);
+      if (offset > half)
+      {
+        block = next;
+        offset -= half;
+      }
+    }
+    block.insert(offset, position, point);
+    size++;
+  }
+
+  /**
+   * Removes one point equal to the entry, answering true if found, else false
+   *
+   * @param entry
+   * @return
+   */
+  boolean remove(Object entry)
+  {
+    int[] found = find(entry);
+    if (found == null)
+    {
+      return false;
+    }
+    Block block = blocks.get(found[0]);
+    block.delete(found[1]);
+    if (block.size == 0)
+    {
+      blocks.remove(found[0]);
+    }
+    size--;
+    return true;
+  }
+
+  /**
+   * Answers true if a point equal to the entry is held, else false
+   *
+   * @param entry
+   * @return
+   */
+  boolean contains(Object entry)
+  {
+    return find(entry) != null;
+  }
+
+  /**
+   * Answers the block index and offset of a point equal to the entry, or null
+   * if none is found
+   *
+   * @param entry
+   * @return
+   */
+  private int[] find(Object entry)
+  {
+    if (!(entry instanceof IntervalI))
+    {
+      return null;
+    }
+    int position = ((IntervalI) entry).getBegin();
+    for (int b = firstBlockEndingAtOrAfter(position); b < blocks
+            .size(); b++)
+    {
+      Block block = blocks.get(b);
+      for (int i = block.firstAtOrAfter(position); i < block.size; i++)
+      {
+        if (block.positions[i] != position)
+        {
+          return null;
+        }
+        if (block.items[i].equals(entry))
+        {
+          return new int[] { b, i };
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds points in the from-to range to the result list
+   *
+   * @param from
+   * @param to
+   * @param result
+   */
+  @SuppressWarnings("unchecked")
+  void findOverlaps(long from, long to, List<T> result)
+  {
+    for (int b = firstBlockEndingAtOrAfter(from); b < blocks.size(); b++)
+    {
+      Block block = blocks.get(b);
+      int[] positions = block.positions;
+      Object[] items = block.items;
+      int n = block.size;
+      for (int i = block.firstAtOrAfter(from); i < n; i++)
+      {
+        if (positions[i] > to)
+        {
+          return;
+        }
+        result.add((T) items[i]);
+      }
+    }
+  }
+
+  /**
+   * Removes points in the from-to range which satisfy the filter, adding them
+   * to the <code>removed</code> list, and answers the number removed
+   *
+   * @param from
+   * @param to
+   * @param filter
+   * @param removed
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  int removeIf(long from, long to, Predicate<? super T> filter,
+          List<T> removed)
+  {
+    int count = 0;
+    int b = firstBlockEndingAtOrAfter(from);
+    while (b < blocks.size())
+    {
+      Block block = blocks.get(b);
+      int first = block.firstAtOrAfter(from);
+      if (first < block.size && block.positions[first] > to)
+      {
+        break;
+      }
+
+      /*
+       * compact the block in place
+       */
+      int kept = first;
+      int i = first;
+      for (; i < block.size && block.positions[i] <= to; i++)
+      {
+        T item = (T) block.items[i];
+        if (filter.test(item))
+        {
+          removed.add(item);
+          count++;
+        }
+        else
+        {
+          block.positions[kept] = block.positions[i];
+          block.items[kept++] = item;
+        }
+      }
+      boolean atEnd = i < block.size;
+      int gone = i - kept;
+      System.arraycopy(block.positions, i, block.positions, kept,
+              block.size - i);
+      System.arraycopy(block.items, i, block.items, kept, block.size - i);
+      Arrays.fill(block.items, block.size - gone, block.size,
+              null);
+      block.size -= gone;
+      if (block.size == 0)
+      {
+        blocks.remove(b);
+      }
+      else
+      {
+        b++;
+      }
+      if (atEnd)
+      {
+        break;
+      }
+    }
+    size -= count;
+    return count;
+  }
+
+  /**
+   * Answers the index of the first block whose last position is at or after
+   * the target, or the number of blocks if there is none
+   *
+   * @param target
+   * @return
+   */
+  private int firstBlockEndingAtOrAfter(long target)
+  {
+    int low = 0;
+    int high = blocks.size();
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (blocks.get(mid).last() < target)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  /**
+   * Answers the position of the first point (the list must not be empty)
+   *
+   * @return
+   */
+  int firstPosition()
+  {
+    return blocks.get(0).positions[0];
+  }
+
+  /**
+   * Answers the position of the last point (the list must not be empty)
+   *
+   * @return
+   */
+  int lastPosition()
+  {
+    return blocks.get(blocks.size() - 1).last();
+  }
+
+  boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  void clear()
+  {
+    blocks.clear();
+    size = 0;
+  }
+
+  /**
+   * Answers an iterator over the points, in position order
+   *
+   * @return
+   */
+  Iterator<T> iterator()
+  {
+    return iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Answers an iterator over the points in the from-to range, in position
+   * order. The optional <code>remove</code> operation is not supported.
+   *
+   * @param from
+   * @param to
+   * @return
+   */
+  Iterator<T> iterator(final long from, final long to)
+  {
+    final int firstBlock = firstBlockEndingAtOrAfter(from);
+    return new Iterator<T>()
+    {
+      int b = firstBlock;
+
+      int i = b < blocks.size() ? blocks.get(b).firstAtOrAfter(from) : 0;
+
+      @Override
+      public boolean hasNext()
+      {
+        if (b < blocks.size() && i == blocks.get(b).size)
+        {
+          b++;
+          i = 0;
+        }
+        return b < blocks.size() && blocks.get(b).positions[i] <= to;
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public T next()
+      {
+        if (!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+        return (T) blocks.get(b).items[i++];
+      }
+    };
+  }
+
+  /**
+   * Answers true if every block is non-empty and in position order, each
+   * point is held at its own position, and the size is correct, else false
+   *
+   * @return
+   */
+  boolean isValid()
+  {
+    int count = 0;
+    long lastPosition = Long.MIN_VALUE;
+    for (Block block : blocks)
+    {
+      if (block.size == 0)
+      {
+        System.err.println("PointList empty block");
+        return false;
+      }
+      for (int i = 0; i < block.size; i++)
+      {
+        IntervalI point = (IntervalI) block.items[i];
+        if (point.getBegin() != block.positions[i]
+                || point.getEnd() != block.positions[i])
+        {
+          System.err.println("PointList " + point + " held at position "
+                  + block.positions[i]);
+          return false;
+        }
+        if (block.positions[i] < lastPosition)
+        {
+          System.err.println("PointList " + point + " out of order");
+          return false;
+        }
+        lastPosition = block.positions[i];
+      }
+      count += block.size;
+    }
+    if (count != size)
+    {
+      System.err.println("PointList size " + size + " but found " + count);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Formats the points as a bracketed list e.g. "[10-10, 12-12]"
+   */
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder(10 * size);
+    sb.append("[");
+    Iterator<T> it = iterator();
+    while (it.hasNext())
+    {
+      sb.append(it.next().toString());
+      if (it.hasNext())
+      {
+        sb.append(", ");
+      }
+    }
+    return sb.append("]").toString();
+  }
+}
@@ -0,0 +1,173 @@
+package nclist.impl;
+
+import java.util.List;
+
+import nclist.api.IntervalI;
+
+/**
+ * A read-only index over the end positions of a list of intervals, whose end
+ * positions are in nondecreasing order, that finds the first interval which
+ * ends at or after a given position. This is a snapshot of the list, and must
+ * be discarded if the list is modified.
+ * <p>
+ * An index built from a list of intervals also holds their begin positions.
+ * As none of the intervals encloses another, these are also nondecreasing, so
+ * the intervals overlapping a query are exactly those from
+ * <code>firstAtOrAfter(from)</code> up to <code>firstBeginAfter(to)</code>,
+ * and need not be tested one at a time.
+ */
+abstract class PositionIndex
+{
+  /*
+   * the indexed end positions, in nondecreasing order
+   */
+  protected final int[] keys;
+
+  /*
+   * the begin positions of the intervals, in nondecreasing order, or null
+   * if not recorded
+   */
+  private final int[] begins;
+
+  /**
+   * Constructor
+   * 
+   * @param keys
+   * @param begins
+   *          begin positions, or null
+   */
+  protected PositionIndex(int[] keys, int[] begins)
+  {
+    this.keys = keys;
+    this.begins = begins;
+  }
+
+  /**
+   * Answers an index of the given kind over the end positions of the intervals,
+   * or null for <code>SearchIndex.BINARY</code> (meaning that binary search of
+   * the list should be used)
+   * 
+   * @param kind
+   * @param intervals
+   *          intervals in nondecreasing order of end position
+   * @return
+   */
+  static PositionIndex build(SearchIndex kind,
+          List<? extends IntervalI> intervals)
+  {
+    if (kind == SearchIndex.BINARY)
+    {
+      return null;
+    }
+    int[] keys = new int[intervals.size()];
+    int[] begins = new int[keys.length];
+    int i = 0;
+    for (IntervalI interval : intervals)
+    {
+      begins[i] = interval.getBegin();
+      keys[i++] = interval.getEnd();
+    }
+    switch (kind)
+    {
+    case EYTZINGER:
+      return new EytzingerIndex(keys, begins);
+    case LEARNED:
+    default:
+      return new LearnedIndex(keys, begins);
+    }
+  }
+
+  /**
+   * Answers the index of the first interval whose end position is at or after
+   * the target position, or the number of intervals if there is none. This is
+   * the same result as a binary search with
+   * <code>BinarySearcher.byEnd(target)</code>.
+   * 
+   * @param target
+   * @return
+   */
+  abstract int firstAtOrAfter(long target);
+
+  /**
+   * Answers the index of the first interval, at or after index
+   * <code>start</code>, whose begin position is after the target position, or
+   * the number of intervals if there is none. This searches forward from
+   * <code>start</code> in steps of increasing size, and then by binary search,
+   * so is O(log R) for a run of R intervals. The index must have been built
+   * with begin positions.
+   * 
+   * @param target
+   * @param start
+   * @return
+   */
+  int firstBeginAfter(long target, int start)
+  {
+    int n = begins.length;
+    int low = start;
+    int high = start;
+    int step = 1;
+    while (high < n && begins[high] <= target)
+    {
+      low = high + 1;
+      high += step;
+      step *= 2;
+    }
+    high = Math.min(high, n);
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (begins[mid] <= target)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Answers the kind of this index
+   * 
+   * @return
+   */
+  abstract SearchIndex getKind();
+
+  /**
+   * Answers the number of intervals indexed
+   * 
+   * @return
+   */
+  int size()
+  {
+    return keys.length;
+  }
+
+  /**
+   * Answers the index of the first key at or after the target in the range
+   * [low, high) of the keys array, or high if there is none
+   * 
+   * @param target
+   * @param low
+   * @param high
+   * @return
+   */
+  protected int binarySearch(long target, int low, int high)
+  {
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (keys[mid] < target)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,205 @@
+package nclist.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import nclist.api.IntervalI;
+
+/**
+ * Sorts intervals into the order defined by
+ * <code>RangeComparator.BY_START_POSITION</code> (start position ascending,
+ * then length descending) with a least significant digit radix sort, rather
+ * than a comparison sort.
+ * <p>
+ * Each interval is read once, and packed into a <code>long</code> key of its
+ * start position (in the high 32 bits) and its inverted length (in the low 32
+ * bits), sign bits flipped so that the keys order as unsigned numbers exactly
+ * as the comparator orders the intervals. The keys are sorted, with a parallel
+ * array of list indices, by one pass per byte of the key, skipping any byte
+ * which is the same in all keys (such as the high bytes of start positions
+ * less than 2<sup>24</sup>). As each pass is stable, intervals which compare
+ * equal keep their original order, just as for <code>Collections.sort</code>.
+ */
+final class RadixSorter
+{
+  /*
+   * lists shorter than this are sorted with the comparator
+   */
+  static final int MIN_RADIX_SORT_SIZE = 256;
+
+  private static final int RADIX_BITS = 8;
+
+  private static final int RADIX = 1 << RADIX_BITS;
+
+  private static final int PASSES = Long.SIZE / RADIX_BITS;
+
+  private RadixSorter()
+  {
+  }
+
+  /**
+   * Sorts the list in place into start position order, as defined by
+   * <code>RangeComparator.BY_START_POSITION</code>
+   *
+   * @param ranges
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends IntervalI> void sort(List<T> ranges)
+  {
+    int n = ranges.size();
+    if (n < MIN_RADIX_SORT_SIZE)
+    {
+      Collections.sort(ranges, RangeComparator.BY_START_POSITION);
+      return;
+    }
+
+    Object[] items = ranges.toArray();
+    long[] keys = new long[n];
+    int[] indices = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+      keys[i] = getKey((IntervalI) items[i]);
+      indices[i] = i;
+    }
+    sort(keys, indices);
+
+    boolean sorted = true;
+    for (int i = 0; i < n && sorted; i++)
+    {
+      sorted = indices[i] == i;
+    }
+    if (sorted)
+    {
+      return;
+    }
+
+    for (int i = 0; i < n; i++)
+    {
+      ranges.set(i, (T) items[indices[i]]);
+    }
+  }
+
+  /**
+   * Answers a key for the interval, which orders as an unsigned number in the
+   * same way as <code>RangeComparator.BY_START_POSITION</code> orders
+   * intervals. The length is computed as by the comparator (as
+   * <code>int</code> arithmetic).
+   *
+   * @param range
+   * @return
+   */
+  static long getKey(IntervalI range)
+  {
+    return getKey(range.getBegin(), range.getEnd());
+  }
+
+  /**
+   * Answers the key for an interval with the given begin and end positions
+   *
+   * @param begin
+   * @param end
+   * @return
+   */
+  static long getKey(int begin, int end)
+  {
+    int length = end - begin;
+    long high = (begin ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+    long low = ~(length ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+    return high << Integer.SIZE | low;
+  }
+
+  /**
+   * Answers the begin position of the interval with the given key
+   *
+   * @param key
+   * @return
+   */
+  static int getBegin(long key)
+  {
+    return (int) (key >>> Integer.SIZE) ^ Integer.MIN_VALUE;
+  }
+
+  /**
+   * Answers the end position of the interval with the given key
+   *
+   * @param key
+   * @return
+   */
+  static int getEnd(long key)
+  {
+    int length = ~(int) key ^ Integer.MIN_VALUE;
+    return getBegin(key) + length;
+  }
+
+  /**
+   * Sorts the keys as unsigned numbers, with the parallel array of indices
+   *
+   * @param keys
+   * @param indices
+   */
+  static void sort(long[] keys, int[] indices)
+  {
+    int n = keys.length;
+
+    /*
+     * count the occurrences of each digit value in each pass
+     */
+    int[][] counts = new int[PASSES][RADIX];
+    for (int i = 0; i < n; i++)
+    {
+      long key = keys[i];
+      for (int pass = 0; pass < PASSES; pass++)
+      {
+        counts[pass][(int) (key >>> (pass * RADIX_BITS)) & (RADIX - 1)]++;
+      }
+    }
+
+    long[] keysIn = keys;
+    int[] indicesIn = indices;
+    long[] keysOut = new long[n];
+    int[] indicesOut = new int[n];
+    for (int pass = 0; pass < PASSES; pass++)
+    {
+      int[] count = counts[pass];
+      int shift = pass * RADIX_BITS;
+      if (count[(int) (keysIn[0] >>> shift) & (RADIX - 1)] == n)
+      {
+        /*
+         * all keys have the same digit - nothing to do
+         */
+        continue;
+      }
+
+      /*
+       * convert counts to the offset for each digit value
+       */
+      int offset = 0;
+      for (int d = 0; d < RADIX; d++)
+      {
+        int c = count[d];
+        count[d] = offset;
+        offset += c;
+      }
+      for (int i = 0; i < n; i++)
+      {
+        long key = keysIn[i];
+        int to = count[(int) (key >>> shift) & (RADIX - 1)]++;
+        keysOut[to] = key;
+        indicesOut[to] = indicesIn[i];
+      }
+
+      long[] swapKeys = keysIn;
+      keysIn = keysOut;
+      keysOut = swapKeys;
+      int[] swapIndices = indicesIn;
+      indicesIn = indicesOut;
+      indicesOut = swapIndices;
+    }
+
+    if (keysIn != keys)
+    {
+      System.arraycopy(keysIn, 0, keys, 0, n);
+      System.arraycopy(indicesIn, 0, indices, 0, n);
+    }
+  }
+}
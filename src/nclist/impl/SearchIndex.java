@@ -0,0 +1,26 @@
+package nclist.impl;
+
+/**
+ * The kinds of search index that may be built over the top level of a frozen
+ * (no longer modified) NCList or IntervalStore, to locate the first interval
+ * that may overlap a query
+ */
+public enum SearchIndex
+{
+  /**
+   * no index: binary search of the list of intervals
+   */
+  BINARY,
+
+  /**
+   * a piecewise linear model of position against end coordinate, with bounded
+   * error (see <code>LearnedIndex</code>)
+   */
+  LEARNED,
+
+  /**
+   * a copy of end positions in breadth-first order, for cache-friendly binary
+   * search (see <code>EytzingerIndex</code>)
+   */
+  EYTZINGER
+}
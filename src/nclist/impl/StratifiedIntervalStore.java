@@ -0,0 +1,398 @@
+package nclist.impl;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import nclist.api.IntervalI;
+import nclist.api.IntervalStoreI;
+
+/**
+ * An interval store that holds intervals in classes by length, so that a few
+ * very long intervals (such as scaffolds or large copy number variants) among
+ * many short ones don't nest the short ones, or widen every search.
+ * <p>
+ * Each class up to a maximum length L holds its intervals in a list in start
+ * position order. Any interval overlapping a range from-to must start in the
+ * window [from - L, to], which is found by binary search of start positions,
+ * so the nesting of intervals within the class doesn't matter. Intervals
+ * longer than the largest class maximum are held in an
+ * <code>IntervalStore</code>, which (being few) they are unlikely to nest
+ * deeply.
+ * <p>
+ * Results of <code>findOverlaps</code> are in start position order within each
+ * class, but not overall. The iterator merges the classes in start position
+ * order.
+ *
+ * @param <T>
+ *          any type providing <code>getBegin()</code> and <code>getEnd()</code>
+ */
+public class StratifiedIntervalStore<T extends IntervalI>
+        extends AbstractCollection<T> implements IntervalStoreI<T>
+{
+  /*
+   * default maximum lengths (end - begin) of the bounded length classes
+   */
+  static final int[] DEFAULT_MAX_LENGTHS = { 1 << 6, 1 << 10, 1 << 14,
+      1 << 18 };
+
+  /*
+   * maximum length of intervals in each bounded class, ascending
+   */
+  private final int[] maxLengths;
+
+  /*
+   * the greatest length so far added to each bounded class, which may be
+   * less than its maximum, to narrow the search window
+   */
+  private final int[] longest;
+
+  /*
+   * intervals in each bounded class, in start position order
+   */
+  private final List<List<T>> classes;
+
+  /*
+   * intervals longer than the greatest maximum length
+   */
+  private final IntervalStore<T> unbounded;
+
+  private int size;
+
+  /**
+   * Constructor with default length classes
+   */
+  public StratifiedIntervalStore()
+  {
+    this(DEFAULT_MAX_LENGTHS);
+  }
+
+  /**
+   * Constructor given the maximum length (end - begin) of each class of
+   * interval, in ascending order. Intervals longer than the last are held in a
+   * further class with no maximum.
+   *
+   * @param maxLengths
+   * @throws IllegalArgumentException
+   *           if the lengths are not positive and ascending
+   */
+  public StratifiedIntervalStore(int... maxLengths)
+  {
+    for (int i = 0; i < maxLengths.length; i++)
+    {
+      if (maxLengths[i] < 0 || (i > 0 && maxLengths[i] <= maxLengths[i - 1]))
+      {
+        throw new IllegalArgumentException(
+                "Maximum lengths must be ascending and not negative: "
+                        + Arrays.toString(maxLengths));
+      }
+    }
+    this.maxLengths = maxLengths.clone();
+    longest = new int[maxLengths.length];
+    classes = new ArrayList<>(maxLengths.length);
+    for (int i = 0; i < maxLengths.length; i++)
+    {
+      classes.add(new ChunkedList<T>());
+    }
+    unbounded = new IntervalStore<>();
+  }
+
+  /**
+   * Constructor given a collection of intervals, with default length classes
+   *
+   * @param intervals
+   */
+  public StratifiedIntervalStore(Iterable<? extends T> intervals)
+  {
+    this();
+    for (T interval : intervals)
+    {
+      add(interval);
+    }
+  }
+
+  /**
+   * Answers the index of the bounded class for an interval of the given length,
+   * or -1 if it is longer than any class maximum
+   *
+   * @param length
+   * @return
+   */
+  int getLengthClass(long length)
+  {
+    for (int i = 0; i < maxLengths.length; i++)
+    {
+      if (length <= maxLengths[i])
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int getLengthClass(IntervalI interval)
+  {
+    return getLengthClass((long) interval.getEnd() - interval.getBegin());
+  }
+
+  @Override
+  public synchronized boolean add(T interval)
+  {
+    if (interval == null)
+    {
+      return false;
+    }
+    int c = getLengthClass(interval);
+    if (c == -1)
+    {
+      unbounded.add(interval);
+    }
+    else
+    {
+      List<T> intervals = classes.get(c);
+      int pos = BinarySearcher.binarySearch(intervals, BinarySearcher
+              .byInterval(interval, RangeComparator.BY_START_POSITION));
+      intervals.add(pos, interval);
+      longest[c] = Math.max(longest[c],
+              interval.getEnd() - interval.getBegin());
+    }
+    size++;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean remove(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    IntervalI entry = (IntervalI) o;
+    int c = getLengthClass(entry);
+    boolean removed;
+    if (c == -1)
+    {
+      removed = unbounded.remove(entry);
+    }
+    else
+    {
+      List<T> intervals = classes.get(c);
+      int pos = indexOf(intervals, entry);
+      removed = pos >= 0;
+      if (removed)
+      {
+        intervals.remove(pos);
+      }
+    }
+    if (removed)
+    {
+      size--;
+    }
+    return removed;
+  }
+
+  @Override
+  public boolean contains(Object o)
+  {
+    if (o == null || !(o instanceof IntervalI))
+    {
+      return false;
+    }
+    IntervalI entry = (IntervalI) o;
+    int c = getLengthClass(entry);
+    return c == -1 ? unbounded.contains(entry)
+            : indexOf(classes.get(c), entry) >= 0;
+  }
+
+  /**
+   * Answers the index of an interval equal to the given entry in the sorted
+   * list, or -1 if there is none
+   *
+   * @param intervals
+   * @param entry
+   * @return
+   */
+  private int indexOf(List<T> intervals, IntervalI entry)
+  {
+    int pos = BinarySearcher.binarySearch(intervals, BinarySearcher
+            .byInterval(entry, RangeComparator.BY_START_POSITION));
+    for (int i = pos; i < intervals.size(); i++)
+    {
+      T interval = intervals.get(i);
+      if (RangeComparator.BY_START_POSITION.compare(interval, entry) != 0)
+      {
+        break;
+      }
+      if (interval.equals(entry))
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public List<T> findOverlaps(long from, long to)
+  {
+    List<T> result = new ArrayList<>();
+    for (int c = 0; c < maxLengths.length; c++)
+    {
+      List<T> intervals = classes.get(c);
+      if (intervals.isEmpty())
+      {
+        continue;
+      }
+
+      /*
+       * an overlapping interval can start no earlier than
+       * the longest interval in the class before the range
+       * (clamped, as from may be Long.MIN_VALUE for an unbounded query)
+       */
+      long start = from < Long.MIN_VALUE + longest[c] ? Long.MIN_VALUE
+              : from - longest[c];
+      int i = BinarySearcher.binarySearch(intervals,
+              BinarySearcher.byStart(start));
+      int n = intervals.size();
+      for (; i < n; i++)
+      {
+        T interval = intervals.get(i);
+        if (interval.getBegin() > to)
+        {
+          break;
+        }
+        if (interval.getEnd() >= from)
+        {
+          result.add(interval);
+        }
+      }
+    }
+    if (!unbounded.isEmpty())
+    {
+      result.addAll(unbounded.findOverlaps(from, to));
+    }
+    return result;
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    for (List<T> intervals : classes)
+    {
+      intervals.clear();
+    }
+    Arrays.fill(longest, 0);
+    unbounded.clear();
+    size = 0;
+  }
+
+  /**
+   * Answers an iterator over the intervals in start position order. The
+   * iterator does not support the optional <code>remove</code> operation.
+   */
+  @Override
+  public Iterator<T> iterator()
+  {
+    List<Iterator<? extends T>> iterators = new ArrayList<>();
+    for (List<T> intervals : classes)
+    {
+      if (!intervals.isEmpty())
+      {
+        iterators.add(intervals.iterator());
+      }
+    }
+    iterators.add(unbounded.orderedIterator());
+    return new MergeIterator<>(iterators,
+            RangeComparator.BY_START_POSITION);
+  }
+
+  @Override
+  public String prettyPrint()
+  {
+    return Containment.prettyPrint(iterator());
+  }
+
+  /**
+   * Answers the level of nesting of the intervals, as it would be for an
+   * NCList holding them
+   */
+  @Override
+  public int getDepth()
+  {
+    return Containment.getDepth(iterator());
+  }
+
+  /**
+   * Answers true if every interval is held in the class for its length, each
+   * class is in start position order, and the size is correct, else false
+   */
+  @Override
+  public boolean isValid()
+  {
+    int count = 0;
+    for (int c = 0; c < maxLengths.length; c++)
+    {
+      List<T> intervals = classes.get(c);
+      for (int i = 0; i < intervals.size(); i++)
+      {
+        T interval = intervals.get(i);
+        int length = interval.getEnd() - interval.getBegin();
+        if (getLengthClass(interval) != c || length > longest[c])
+        {
+          System.err.println("StratifiedIntervalStore " + interval
+                  + " in wrong length class " + c);
+          return false;
+        }
+        if (i > 0 && RangeComparator.BY_START_POSITION
+                .compare(intervals.get(i - 1), interval) > 0)
+        {
+          System.err.println("StratifiedIntervalStore " + interval
+                  + " out of order");
+          return false;
+        }
+      }
+      count += intervals.size();
+    }
+    for (T interval : unbounded)
+    {
+      if (getLengthClass(interval) != -1)
+      {
+        System.err.println("StratifiedIntervalStore " + interval
+                + " held as unbounded");
+        return false;
+      }
+    }
+    count += unbounded.size();
+    if (count != size)
+    {
+      System.err.println(
+              "StratifiedIntervalStore size " + size + " but found " + count);
+      return false;
+    }
+    return unbounded.isValid();
+  }
+
+  /**
+   * Answers the number of intervals held in each length class, ending with the
+   * class with no maximum length
+   *
+   * @return
+   */
+  int[] getClassSizes()
+  {
+    int[] sizes = new int[maxLengths.length + 1];
+    for (int c = 0; c < maxLengths.length; c++)
+    {
+      sizes[c] = classes.get(c).size();
+    }
+    sizes[maxLengths.length] = unbounded.size();
+    return sizes;
+  }
+}
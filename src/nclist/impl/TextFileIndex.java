@@ -0,0 +1,838 @@
+package nclist.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import nclist.api.IntervalI;
+
+/**
+ * An index of the intervals in a large text file of delimited records, such as
+ * a BED or CSV file, with one record per line. The file is scanned once, and
+ * an NCList built (per sequence, if the records have a sequence name column)
+ * of lightweight entries of each record's begin and end positions and its
+ * offset and length in the file. The index is saved in a file next to the
+ * data (with suffix <code>INDEX_SUFFIX</code>), recording the data file's
+ * length and last modified time, and the format. It is read from there when
+ * these exactly match the current data file and format, so the scan is only
+ * needed once; otherwise the data file is scanned again.
+ * <p>
+ * A query finds the overlapping entries, and reads and parses only their
+ * records, by positional reads of the file (adjacent records in a single
+ * read). Parsed records are held in a bounded cache, least recently used
+ * first out.
+ * <p>
+ * Positions are taken as given in the file: no adjustment is made for
+ * 0-based or half-open coordinates (as in BED). Blank lines, lines starting
+ * with the comment prefix, and lines whose positions can't be read (such as a
+ * header line) are skipped. Queries are thread-safe.
+ *
+ * @param <T>
+ *          the type of a parsed record
+ */
+public class TextFileIndex<T extends IntervalI> implements Closeable
+{
+  /**
+   * Parses a record of the data file
+   *
+   * @param <T>
+   */
+  public interface LineParser<T extends IntervalI>
+  {
+    /**
+     * Answers the record parsed from the line (without its line terminator).
+     * This must not answer null: every line indexed is a record, and a query
+     * that finds a line parsed as null fails with an
+     * <code>IOException</code>.
+     *
+     * @param line
+     * @return
+     */
+    T parse(String line);
+  }
+
+  /**
+   * The columns (from 0) of the data file which hold each record's sequence
+   * name (or -1 if none), begin and end positions, the delimiter between
+   * columns, and the prefix of comment lines
+   */
+  public static final class Format
+  {
+    /*
+     * BED: tab-delimited chrom, chromStart, chromEnd...
+     */
+    public static final Format BED = new Format('\t', 0, 1, 2, "#");
+
+    final char delimiter;
+
+    final int sequenceColumn;
+
+    final int beginColumn;
+
+    final int endColumn;
+
+    final String commentPrefix;
+
+    /**
+     * Constructor
+     *
+     * @param delimiter
+     * @param sequenceColumn
+     *          the sequence name column, or -1 if there is none
+     * @param beginColumn
+     * @param endColumn
+     * @param commentPrefix
+     */
+    public Format(char delimiter, int sequenceColumn, int beginColumn,
+            int endColumn, String commentPrefix)
+    {
+      if (beginColumn < 0 || endColumn < 0 || sequenceColumn < -1)
+      {
+        throw new IllegalArgumentException("Invalid column");
+      }
+      this.delimiter = delimiter;
+      this.sequenceColumn = sequenceColumn;
+      this.beginColumn = beginColumn;
+      this.endColumn = endColumn;
+      this.commentPrefix = commentPrefix;
+    }
+  }
+
+  /**
+   * The position of a record in the file
+   */
+  static final class IndexEntry implements IntervalI
+  {
+    final int begin;
+
+    final int end;
+
+    final long offset;
+
+    final int length;
+
+    IndexEntry(int begin, int end, long offset, int length)
+    {
+      this.begin = begin;
+      this.end = end;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int getBegin()
+    {
+      return begin;
+    }
+
+    @Override
+    public int getEnd()
+    {
+      return end;
+    }
+
+    @Override
+    public String toString()
+    {
+      return begin + "-" + end + "@" + offset;
+    }
+  }
+
+  public static final String INDEX_SUFFIX = ".ncx";
+
+  /*
+   * default maximum number of parsed records cached
+   */
+  public static final int DEFAULT_CACHE_SIZE = 10000;
+
+  private static final int MAGIC = 0x4E435849; // "NCXI"
+
+  private static final int VERSION = 1;
+
+  /*
+   * the largest read of adjacent records at once
+   */
+  private static final int MAX_READ = 1 << 16;
+
+  private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+  /*
+   * the sequence name used where records have none
+   */
+  private static final String NO_SEQUENCE = "";
+
+  private final Format format;
+
+  private final LineParser<T> parser;
+
+  private final FileChannel channel;
+
+  /*
+   * an NCList of entries for each sequence, in order of first appearance
+   */
+  private final Map<String, NCList<IndexEntry>> entries;
+
+  private final boolean fromIndexFile;
+
+  private final Map<Long, T> cache;
+
+  private long cacheHits;
+
+  private long cacheMisses;
+
+  /**
+   * Answers an index of the data file, read from the index file next to it if
+   * there is a valid one, else by scanning the data file (and then saving the
+   * index file), with the default cache size
+   *
+   * @param data
+   * @param format
+   * @param parser
+   * @return
+   * @throws IOException
+   */
+  public static <T extends IntervalI> TextFileIndex<T> open(File data,
+          Format format, LineParser<T> parser) throws IOException
+  {
+    return open(data, new File(data.getPath() + INDEX_SUFFIX), format,
+            parser, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Answers an index of the data file, read from the given index file if it
+   * is valid for the data file and format, else by scanning the data file
+   * (and then saving the index file)
+   *
+   * @param data
+   * @param indexFile
+   * @param format
+   * @param parser
+   * @param cacheSize
+   *          the maximum number of parsed records to cache
+   * @return
+   * @throws IOException
+   */
+  public static <T extends IntervalI> TextFileIndex<T> open(File data,
+          File indexFile, Format format, LineParser<T> parser,
+          int cacheSize) throws IOException
+  {
+    Map<String, List<IndexEntry>> sorted = readIndex(data, indexFile,
+            format);
+    boolean fromIndexFile = sorted != null;
+    if (!fromIndexFile)
+    {
+      sorted = scan(data, format);
+      for (List<IndexEntry> list : sorted.values())
+      {
+        RadixSorter.sort(list);
+      }
+      writeIndex(data, indexFile, format, sorted);
+    }
+    Map<String, NCList<IndexEntry>> entries = new LinkedHashMap<>();
+    for (Entry<String, List<IndexEntry>> e : sorted.entrySet())
+    {
+      entries.put(e.getKey(), NCList.fromSorted(e.getValue().iterator()));
+    }
+    return new TextFileIndex<>(data, format, parser, entries, fromIndexFile,
+            cacheSize);
+  }
+
+  /**
+   * Private constructor, given the index entries
+   *
+   * @param data
+   * @param format
+   * @param parser
+   * @param entries
+   * @param fromIndexFile
+   * @param cacheSize
+   * @throws IOException
+   */
+  private TextFileIndex(File data, Format format, LineParser<T> parser,
+          Map<String, NCList<IndexEntry>> entries, boolean fromIndexFile,
+          final int cacheSize) throws IOException
+  {
+    this.format = format;
+    this.parser = parser;
+    this.entries = entries;
+    this.fromIndexFile = fromIndexFile;
+    channel = FileChannel.open(data.toPath(), StandardOpenOption.READ);
+    cache = new LinkedHashMap<Long, T>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Entry<Long, T> eldest)
+      {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Scans the data file, answering the index entries for each sequence, in
+   * file order
+   *
+   * @param data
+   * @param format
+   * @return
+   * @throws IOException
+   */
+  static Map<String, List<IndexEntry>> scan(File data, Format format)
+          throws IOException
+  {
+    Map<String, List<IndexEntry>> result = new LinkedHashMap<>();
+    byte[] comment = format.commentPrefix == null ? new byte[0]
+            : format.commentPrefix.getBytes(StandardCharsets.UTF_8);
+    int lastColumn = Math.max(format.sequenceColumn,
+            Math.max(format.beginColumn, format.endColumn));
+    int[] starts = new int[lastColumn + 1];
+    int[] ends = new int[lastColumn + 1];
+    byte[] line = new byte[256];
+    String sequence = null;
+    byte[] sequenceBytes = null;
+    List<IndexEntry> list = null;
+
+    try (InputStream in = new BufferedInputStream(new FileInputStream(data),
+            SCAN_BUFFER_SIZE))
+    {
+      long offset = 0;
+      boolean atEnd = false;
+      while (!atEnd)
+      {
+        /*
+         * read the next line (without its line terminator)
+         */
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1 && b != '\n')
+        {
+          if (length == line.length)
+          {
+            line = Arrays.copyOf(line, 2 * length);
+          }
+          line[length++] = (byte) b;
+        }
+        atEnd = b == -1;
+        long lineOffset = offset;
+        offset += length + (atEnd ? 0 : 1);
+        if (length > 0 && line[length - 1] == '\r')
+        {
+          length--;
+        }
+        if (length == 0 || startsWith(line, length, comment)
+                || !findColumns(line, length, format.delimiter, starts,
+                        ends))
+        {
+          continue;
+        }
+        int begin;
+        int end;
+        try
+        {
+          begin = parseInt(line, starts[format.beginColumn],
+                  ends[format.beginColumn]);
+          end = parseInt(line, starts[format.endColumn],
+                  ends[format.endColumn]);
+        } catch (NumberFormatException e)
+        {
+          continue;
+        }
+        if (end < begin)
+        {
+          continue;
+        }
+
+        String name = NO_SEQUENCE;
+        if (format.sequenceColumn >= 0)
+        {
+          int from = starts[format.sequenceColumn];
+          int to = ends[format.sequenceColumn];
+          /*
+           * records are usually grouped by sequence, so reuse the last name
+           */
+          if (sequence != null && regionEquals(line, from, to, sequenceBytes))
+          {
+            name = sequence;
+          }
+          else
+          {
+            sequenceBytes = Arrays.copyOfRange(line, from, to);
+            name = new String(sequenceBytes, StandardCharsets.UTF_8);
+          }
+        }
+        if (!name.equals(sequence))
+        {
+          sequence = name;
+          list = result.get(name);
+          if (list == null)
+          {
+            list = new ArrayList<>();
+            result.put(name, list);
+          }
+        }
+        list.add(new IndexEntry(begin, end, lineOffset, length));
+      }
+    }
+    return result;
+  }
+
+  private static boolean regionEquals(byte[] line, int from, int to,
+          byte[] bytes)
+  {
+    if (to - from != bytes.length)
+    {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++)
+    {
+      if (line[from + i] != bytes[i])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWith(byte[] line, int length, byte[] prefix)
+  {
+    if (prefix.length == 0 || length < prefix.length)
+    {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++)
+    {
+      if (line[i] != prefix[i])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Finds the start (inclusive) and end (exclusive) of columns 0 to
+   * starts.length-1 of the line, answering false if it has fewer columns
+   *
+   * @param line
+   * @param length
+   * @param delimiter
+   * @param starts
+   * @param ends
+   * @return
+   */
+  private static boolean findColumns(byte[] line, int length,
+          char delimiter, int[] starts, int[] ends)
+  {
+    int column = 0;
+    starts[0] = 0;
+    for (int i = 0; i < length; i++)
+    {
+      if (line[i] == delimiter)
+      {
+        ends[column] = i;
+        if (++column == starts.length)
+        {
+          return true;
+        }
+        starts[column] = i + 1;
+      }
+    }
+    ends[column] = length;
+    return column == starts.length - 1;
+  }
+
+  /**
+   * Parses an integer from the bytes from start (inclusive) to end
+   * (exclusive)
+   *
+   * @param line
+   * @param start
+   * @param end
+   * @return
+   * @throws NumberFormatException
+   */
+  private static int parseInt(byte[] line, int start, int end)
+  {
+    boolean negative = start < end && line[start] == '-';
+    int i = negative ? start + 1 : start;
+    if (i == end || end - i > 10)
+    {
+      throw new NumberFormatException();
+    }
+    long value = 0;
+    for (; i < end; i++)
+    {
+      int digit = line[i] - '0';
+      if (digit < 0 || digit > 9)
+      {
+        throw new NumberFormatException();
+      }
+      value = 10 * value + digit;
+    }
+    value = negative ? -value : value;
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+    {
+      throw new NumberFormatException();
+    }
+    return (int) value;
+  }
+
+  /**
+   * Reads the index file, answering its entries (in start position order) for
+   * each sequence, or null if there is no index file, or it is not for the
+   * current data file and format
+   *
+   * @param data
+   * @param indexFile
+   * @param format
+   * @return
+   * @throws IOException
+   */
+  private static Map<String, List<IndexEntry>> readIndex(File data,
+          File indexFile, Format format) throws IOException
+  {
+    if (!indexFile.exists())
+    {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(indexFile), SCAN_BUFFER_SIZE)))
+    {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION
+              || in.readLong() != data.length()
+              || in.readLong() != data.lastModified()
+              || in.readChar() != format.delimiter
+              || in.readInt() != format.sequenceColumn
+              || in.readInt() != format.beginColumn
+              || in.readInt() != format.endColumn
+              || !in.readUTF().equals(String
+                      .valueOf(format.commentPrefix)))
+      {
+        return null;
+      }
+      Map<String, List<IndexEntry>> result = new LinkedHashMap<>();
+      int sequences = in.readInt();
+      for (int s = 0; s < sequences; s++)
+      {
+        String name = in.readUTF();
+        int count = in.readInt();
+        List<IndexEntry> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+          list.add(new IndexEntry(in.readInt(), in.readInt(), in.readLong(),
+                  in.readInt()));
+        }
+        result.put(name, list);
+      }
+      return result;
+    } catch (IOException e)
+    {
+      /*
+       * unreadable (e.g. truncated) index file - rebuild it
+       */
+      return null;
+    }
+  }
+
+  /**
+   * Writes the index file (via a temporary file, so that it is complete if it
+   * exists), recording the data file's length and modification time and the
+   * format, so that it can be checked when next read
+   *
+   * @param data
+   * @param indexFile
+   * @param format
+   * @param sorted
+   * @throws IOException
+   */
+  private static void writeIndex(File data, File indexFile, Format format,
+          Map<String, List<IndexEntry>> sorted) throws IOException
+  {
+    File temp = new File(indexFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(temp), SCAN_BUFFER_SIZE)))
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(data.length());
+      out.writeLong(data.lastModified());
+      out.writeChar(format.delimiter);
+      out.writeInt(format.sequenceColumn);
+      out.writeInt(format.beginColumn);
+      out.writeInt(format.endColumn);
+      out.writeUTF(String.valueOf(format.commentPrefix));
+      out.writeInt(sorted.size());
+      for (Entry<String, List<IndexEntry>> e : sorted.entrySet())
+      {
+        out.writeUTF(e.getKey());
+        out.writeInt(e.getValue().size());
+        for (IndexEntry entry : e.getValue())
+        {
+          out.writeInt(entry.begin);
+          out.writeInt(entry.end);
+          out.writeLong(entry.offset);
+          out.writeInt(entry.length);
+        }
+      }
+    }
+    Files.move(temp.toPath(), indexFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Answers the parsed records on the given sequence which overlap the
+   * from-to range, in start position order
+   *
+   * @param sequence
+   * @param from
+   * @param to
+   * @return
+   * @throws IOException
+   */
+  public List<T> findOverlaps(String sequence, long from, long to)
+          throws IOException
+  {
+    NCList<IndexEntry> ncl = entries.get(sequence);
+    if (ncl == null)
+    {
+      return new ArrayList<>();
+    }
+    return read(ncl.findOverlaps(from, to));
+  }
+
+  /**
+   * Answers the parsed records (on any sequence) which overlap the from-to
+   * range. This is intended for files with no sequence name column.
+   *
+   * @param from
+   * @param to
+   * @return
+   * @throws IOException
+   */
+  public List<T> findOverlaps(long from, long to) throws IOException
+  {
+    List<IndexEntry> found = new ArrayList<>();
+    for (NCList<IndexEntry> ncl : entries.values())
+    {
+      found.addAll(ncl.findOverlaps(from, to));
+    }
+    return read(found);
+  }
+
+  /**
+   * Answers the parsed records for the given entries, in start position order,
+   * from the cache, or else by reading and parsing their lines
+   *
+   * @param found
+   * @return
+   * @throws IOException
+   */
+  private List<T> read(List<IndexEntry> found) throws IOException
+  {
+    RadixSorter.sort(found);
+    Object[] records = new Object[found.size()];
+    List<Integer> toRead = new ArrayList<>();
+    synchronized (cache)
+    {
+      for (int i = 0; i < records.length; i++)
+      {
+        records[i] = cache.get(found.get(i).offset);
+        if (records[i] == null)
+        {
+          toRead.add(i);
+        }
+      }
+      cacheHits += records.length - toRead.size();
+      cacheMisses += toRead.size();
+    }
+    if (!toRead.isEmpty())
+    {
+      readLines(found, toRead, records);
+    }
+
+    List<T> result = new ArrayList<>(records.length);
+    for (Object record : records)
+    {
+      @SuppressWarnings("unchecked")
+      T t = (T) record;
+      result.add(t);
+    }
+    return result;
+  }
+
+  /**
+   * Reads and parses the lines of the entries at the given indices, in file
+   * order, reading adjacent lines in one read, and adds them to the records
+   * array and the cache
+   *
+   * @param found
+   * @param toRead
+   * @param records
+   * @throws IOException
+   */
+  private void readLines(final List<IndexEntry> found, List<Integer> toRead,
+          Object[] records) throws IOException
+  {
+    Collections.sort(toRead, new Comparator<Integer>()
+    {
+      @Override
+      public int compare(Integer i1, Integer i2)
+      {
+        return Long.compare(found.get(i1).offset, found.get(i2).offset);
+      }
+    });
+    int i = 0;
+    while (i < toRead.size())
+    {
+      /*
+       * extend the read over following lines that are adjacent in the file
+       */
+      IndexEntry first = found.get(toRead.get(i));
+      long spanEnd = first.offset + first.length;
+      int j = i + 1;
+      while (j < toRead.size())
+      {
+        IndexEntry next = found.get(toRead.get(j));
+        long gap = next.offset - spanEnd;
+        if (gap < 0 || gap > 2
+                || next.offset + next.length - first.offset > MAX_READ)
+        {
+          break;
+        }
+        spanEnd = next.offset + next.length;
+        j++;
+      }
+      ByteBuffer buffer = ByteBuffer
+              .allocate((int) (spanEnd - first.offset));
+      long position = first.offset;
+      while (buffer.hasRemaining())
+      {
+        int read = channel.read(buffer, position);
+        if (read < 0)
+        {
+          throw new IOException("Data file changed since indexed");
+        }
+        position += read;
+      }
+      byte[] bytes = buffer.array();
+      for (int k = i; k < j; k++)
+      {
+        IndexEntry entry = found.get(toRead.get(k));
+        T record = parser.parse(new String(bytes,
+                (int) (entry.offset - first.offset), entry.length,
+                StandardCharsets.UTF_8));
+        if (record == null)
+        {
+          throw new IOException(
+                  "Parser answered null for line at offset " + entry.offset);
+        }
+        records[toRead.get(k)] = record;
+        synchronized (cache)
+        {
+          cache.put(entry.offset, record);
+        }
+      }
+      i = j;
+    }
+  }
+
+  /**
+   * Answers the names of the sequences in the file, in order of first
+   * appearance (or just "" if the format has no sequence name column)
+   *
+   * @return
+   */
+  public Set<String> getSequences()
+  {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  /**
+   * Answers the number of records indexed
+   *
+   * @return
+   */
+  public int size()
+  {
+    int size = 0;
+    for (NCList<IndexEntry> ncl : entries.values())
+    {
+      size += ncl.size();
+    }
+    return size;
+  }
+
+  /**
+   * Answers true if the index was read from an index file, false if it was
+   * built by scanning the data file
+   *
+   * @return
+   */
+  public boolean isFromIndexFile()
+  {
+    return fromIndexFile;
+  }
+
+  public long getCacheHits()
+  {
+    synchronized (cache)
+    {
+      return cacheHits;
+    }
+  }
+
+  public long getCacheMisses()
+  {
+    synchronized (cache)
+    {
+      return cacheMisses;
+    }
+  }
+
+  /**
+   * Answers the number of parsed records currently cached
+   *
+   * @return
+   */
+  public int getCacheSize()
+  {
+    synchronized (cache)
+    {
+      return cache.size();
+    }
+  }
+
+  Format getFormat()
+  {
+    return format;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    channel.close();
+  }
+}
@@ -0,0 +1,175 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class AIListStoreTest
+{
+  @Test(groups = "Functional")
+  public void testFindOverlaps()
+  {
+    SimpleFeature sf1 = new SimpleFeature(10, 50, "");
+    SimpleFeature sf2 = new SimpleFeature(1, 15, "");
+    SimpleFeature sf3 = new SimpleFeature(20, 30, "");
+    SimpleFeature sf4 = new SimpleFeature(40, 100, "");
+    SimpleFeature sf5 = new SimpleFeature(60, 100, "");
+    SimpleFeature sf6 = new SimpleFeature(70, 70, "");
+    AIListStore<SimpleFeature> store = new AIListStore<>(
+            Arrays.asList(sf1, sf2, sf3, sf4, sf5, sf6));
+    assertTrue(store.isValid());
+    assertEquals(store.size(), 6);
+    assertEquals(store.getComponentCount(), 1);
+
+    assertTrue(store.findOverlaps(200, 200).isEmpty());
+    assertEquals(store.findOverlaps(1, 9), Arrays.asList(sf2));
+    assertEquals(store.findOverlaps(30, 40), Arrays.asList(sf1, sf3, sf4));
+    assertEquals(store.findOverlaps(68, 70), Arrays.asList(sf4, sf5, sf6));
+  }
+
+  @Test(groups = "Functional")
+  public void testFindOverlaps_empty()
+  {
+    AIListStore<SimpleFeature> store = new AIListStore<>(
+            new ArrayList<SimpleFeature>());
+    assertTrue(store.isEmpty());
+    assertTrue(store.findOverlaps(1, 100).isEmpty());
+    assertFalse(store.iterator().hasNext());
+    assertTrue(store.isValid());
+    assertEquals(store.getComponentCount(), 0);
+  }
+
+  @Test(groups = "Functional")
+  public void testContains()
+  {
+    List<SimpleFeature> ranges = generateNested(new Random(3), 500);
+    AIListStore<SimpleFeature> store = new AIListStore<>(ranges);
+    assertTrue(store.getComponentCount() > 1);
+    for (SimpleFeature sf : ranges)
+    {
+      assertTrue(store.contains(new SimpleFeature(sf)));
+    }
+    assertFalse(store.contains(new SimpleFeature(10, 20, "Pfam")));
+    assertFalse(store.contains(null));
+    assertFalse(store.contains("rubbish"));
+  }
+
+  @Test(groups = "Functional")
+  public void testImmutable()
+  {
+    SimpleFeature sf1 = new SimpleFeature(10, 20, "");
+    AIListStore<SimpleFeature> store = new AIListStore<>(
+            Arrays.asList(sf1));
+    try
+    {
+      store.add(new SimpleFeature(30, 40, ""));
+      fail("expected exception");
+    } catch (UnsupportedOperationException e)
+    {
+      // expected
+    }
+    try
+    {
+      store.remove(sf1);
+      fail("expected exception");
+    } catch (UnsupportedOperationException e)
+    {
+      // expected
+    }
+    assertEquals(store.size(), 1);
+  }
+
+  /**
+   * Iteration should be in start position order even when the intervals are
+   * split over several components
+   */
+  @Test(groups = "Functional")
+  public void testIterator()
+  {
+    List<SimpleFeature> ranges = generateNested(new Random(5), 1000);
+    AIListStore<SimpleFeature> store = new AIListStore<>(ranges);
+    assertTrue(store.getComponentCount() > 1);
+    Collections.sort(ranges, RangeComparator.BY_START_POSITION);
+    Iterator<SimpleFeature> it = store.iterator();
+    for (SimpleFeature sf : ranges)
+    {
+      assertEquals(RangeComparator.BY_START_POSITION.compare(it.next(), sf),
+              0);
+    }
+    assertFalse(it.hasNext());
+    assertEquals(store.getDepth(), new NCList<>(ranges).getDepth());
+  }
+
+  /**
+   * Checks query results against a brute force search, for deeply nested and
+   * for sparsely nested data
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_randomised()
+  {
+    Random random = new Random(113);
+    for (int n : new int[] { 10, 100, 1000, 5000 })
+    {
+      List<SimpleFeature> nested = generateNested(random, n);
+      List<SimpleFeature> flat = new ArrayList<>();
+      for (int i = 0; i < n; i++)
+      {
+        int from = random.nextInt(4 * n);
+        flat.add(new SimpleFeature(from, from + random.nextInt(20), ""));
+      }
+      for (List<SimpleFeature> ranges : Arrays.asList(nested, flat))
+      {
+        AIListStore<SimpleFeature> store = new AIListStore<>(ranges);
+        assertTrue(store.isValid());
+        assertEquals(store.size(), n);
+        for (int q = 0; q < 100; q++)
+        {
+          int from = random.nextInt(4 * n);
+          int to = from + random.nextInt(50);
+          List<SimpleFeature> expected = new ArrayList<>();
+          for (SimpleFeature sf : ranges)
+          {
+            if (sf.getBegin() <= to && sf.getEnd() >= from)
+            {
+              expected.add(sf);
+            }
+          }
+          List<SimpleFeature> actual = store.findOverlaps(from, to);
+          assertEquals(actual.size(), expected.size());
+          assertTrue(actual.containsAll(expected));
+        }
+      }
+    }
+  }
+
+  /**
+   * Generates intervals whose lengths are spread evenly over orders of
+   * magnitude up to the full range, so are deeply nested
+   *
+   * @param random
+   * @param count
+   * @return
+   */
+  static List<SimpleFeature> generateNested(Random random, int count)
+  {
+    int maxPos = 4 * count;
+    List<SimpleFeature> ranges = new ArrayList<>();
+    for (int i = 0; i < count; i++)
+    {
+      int from = 1 + random.nextInt(maxPos);
+      int length = (int) Math.pow(maxPos, random.nextDouble());
+      ranges.add(new SimpleFeature(from, from + length, "desc" + i));
+    }
+    return ranges;
+  }
+}
@@ -0,0 +1,275 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import nclist.api.IntervalStoreI;
+
+public class AugmentedIntervalTreeTest
+{
+  /**
+   * Helper method to add a feature of no particular type
+   *
+   * @param store
+   * @param from
+   * @param to
+   * @return
+   */
+  SimpleFeature add(IntervalStoreI<SimpleFeature> store, int from, int to)
+  {
+    SimpleFeature sf1 = new SimpleFeature(from, to, "desc");
+    store.add(sf1);
+    return sf1;
+  }
+
+  @Test(groups = "Functional")
+  public void testFindFeatures_nonNested()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+    store.add(new SimpleFeature(10, 20, ""));
+    // same range different description
+    store.add(new SimpleFeature(10, 20, "desc"));
+    store.add(new SimpleFeature(15, 25, ""));
+    store.add(new SimpleFeature(20, 35, ""));
+
+    List<SimpleFeature> overlaps = store.findOverlaps(1, 9);
+    assertTrue(overlaps.isEmpty());
+
+    overlaps = store.findOverlaps(8, 10);
+    assertEquals(overlaps.size(), 2);
+    assertEquals(overlaps.get(0).getEnd(), 20);
+    assertEquals(overlaps.get(1).getEnd(), 20);
+
+    overlaps = store.findOverlaps(12, 16);
+    assertEquals(overlaps.size(), 3);
+    assertEquals(overlaps.get(0).getEnd(), 20);
+    assertEquals(overlaps.get(1).getEnd(), 20);
+    assertEquals(overlaps.get(2).getEnd(), 25);
+
+    overlaps = store.findOverlaps(33, 33);
+    assertEquals(overlaps.size(), 1);
+    assertEquals(overlaps.get(0).getEnd(), 35);
+    assertTrue(store.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testFindFeatures_mixed()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+    SimpleFeature sf1 = add(store, 10, 50);
+    SimpleFeature sf2 = add(store, 1, 15);
+    SimpleFeature sf3 = add(store, 20, 30);
+    SimpleFeature sf4 = add(store, 40, 100);
+    SimpleFeature sf5 = add(store, 60, 100);
+    SimpleFeature sf6 = add(store, 70, 70);
+
+    List<SimpleFeature> overlaps = store.findOverlaps(200, 200);
+    assertTrue(overlaps.isEmpty());
+
+    overlaps = store.findOverlaps(1, 9);
+    assertEquals(overlaps.size(), 1);
+    assertTrue(overlaps.contains(sf2));
+
+    overlaps = store.findOverlaps(30, 40);
+    assertEquals(overlaps.size(), 3);
+    assertTrue(overlaps.contains(sf1));
+    assertTrue(overlaps.contains(sf3));
+    assertTrue(overlaps.contains(sf4));
+
+    overlaps = store.findOverlaps(68, 70);
+    assertEquals(overlaps.size(), 3);
+    assertTrue(overlaps.contains(sf4));
+    assertTrue(overlaps.contains(sf5));
+    assertTrue(overlaps.contains(sf6));
+  }
+
+  @Test(groups = "Functional")
+  public void testAdd()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+
+    assertFalse(store.add(null));
+
+    SimpleFeature sf1 = new SimpleFeature(10, 20, "Cath");
+    SimpleFeature sf2 = new SimpleFeature(10, 20, "Cath");
+
+    assertTrue(store.add(sf1));
+    assertEquals(store.size(), 1);
+    assertTrue(store.contains(sf1));
+    assertTrue(store.contains(sf2));
+
+    /*
+     * duplicates are accepted
+     */
+    assertTrue(store.add(sf2));
+    assertEquals(store.size(), 2);
+    assertTrue(store.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testContains()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+    assertFalse(store.contains(null));
+    assertFalse(store.contains("rubbish"));
+
+    /*
+     * several intervals at the same position, so the match
+     * may be in either subtree of the first one found
+     */
+    for (int i = 0; i < 20; i++)
+    {
+      store.add(new SimpleFeature(10, 20, "desc" + i));
+    }
+    for (int i = 0; i < 20; i++)
+    {
+      assertTrue(store.contains(new SimpleFeature(10, 20, "desc" + i)));
+    }
+    assertFalse(store.contains(new SimpleFeature(10, 20, "Pfam")));
+    assertFalse(store.contains(new SimpleFeature(10, 21, "desc0")));
+  }
+
+  @Test(groups = "Functional")
+  public void testRemove()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+    SimpleFeature sf1 = add(store, 10, 20);
+    assertTrue(store.remove(sf1));
+    assertTrue(store.isEmpty());
+    assertFalse(store.remove(sf1));
+
+    SimpleFeature sf4 = add(store, 20, 30);
+    SimpleFeature sf5 = add(store, 22, 26);
+    SimpleFeature sf6 = add(store, 23, 24);
+    SimpleFeature sf7 = add(store, 25, 25);
+    SimpleFeature sf8 = add(store, 24, 24);
+    SimpleFeature sf9 = add(store, 23, 23);
+    assertEquals(store.size(), 6);
+
+    assertTrue(store.remove(sf6));
+    assertEquals(store.size(), 5);
+    assertFalse(store.contains(sf6));
+    assertTrue(store.isValid());
+    assertEquals(store.findOverlaps(24, 24).size(), 3);
+
+    assertTrue(store.remove(sf5));
+    assertTrue(store.remove(sf4));
+    assertTrue(store.remove(sf9));
+    assertTrue(store.remove(sf7));
+    assertTrue(store.isValid());
+    assertEquals(store.size(), 1);
+    assertTrue(store.contains(sf8));
+    assertTrue(store.remove(sf8));
+    assertTrue(store.isEmpty());
+  }
+
+  @Test(groups = "Functional")
+  public void testRemove_samePosition()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+    for (int i = 0; i < 20; i++)
+    {
+      store.add(new SimpleFeature(10, 20, "desc" + i));
+    }
+    for (int i = 19; i >= 0; i -= 2)
+    {
+      assertTrue(store.remove(new SimpleFeature(10, 20, "desc" + i)));
+      assertTrue(store.isValid());
+    }
+    assertEquals(store.size(), 10);
+    assertFalse(store.remove(new SimpleFeature(10, 20, "desc19")));
+    assertTrue(store.contains(new SimpleFeature(10, 20, "desc0")));
+  }
+
+  @Test(groups = "Functional")
+  public void testIterator()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+    assertFalse(store.iterator().hasNext());
+    add(store, 30, 40);
+    add(store, 10, 20);
+    add(store, 10, 50);
+    add(store, 15, 15);
+    Iterator<SimpleFeature> it = store.iterator();
+    assertEquals(it.next().toString(), "10:50:desc");
+    assertEquals(it.next().toString(), "10:20:desc");
+    assertEquals(it.next().toString(), "15:15:desc");
+    assertEquals(it.next().toString(), "30:40:desc");
+    assertFalse(it.hasNext());
+    assertEquals(store.toString(),
+            "[10:50:desc, 10:20:desc, 15:15:desc, 30:40:desc]");
+  }
+
+  @Test(groups = "Functional")
+  public void testPrettyPrint_getDepth()
+  {
+    AugmentedIntervalTree<SimpleFeature> store = new AugmentedIntervalTree<>();
+    assertEquals(store.getDepth(), 0);
+    add(store, 10, 50);
+    add(store, 10, 20);
+    add(store, 15, 15);
+    add(store, 30, 60);
+    add(store, 40, 45);
+    assertEquals(store.getDepth(), 3);
+    String nl = System.lineSeparator();
+    assertEquals(store.prettyPrint(),
+            "10:50:desc" + nl + "  10:20:desc" + nl + "    15:15:desc" + nl
+                    + "30:60:desc" + nl + "  40:45:desc" + nl);
+  }
+
+  /**
+   * Adds and removes random intervals, checking after each step that the tree
+   * is valid and gives the same query results as an NCList based store
+   */
+  @Test(groups = "Functional")
+  public void testRandomised()
+  {
+    Random random = new Random(107);
+    AugmentedIntervalTree<SimpleFeature> tree = new AugmentedIntervalTree<>();
+    IntervalStore<SimpleFeature> store = new IntervalStore<>();
+    List<SimpleFeature> added = new ArrayList<>();
+    for (int i = 0; i < 2000; i++)
+    {
+      if (!added.isEmpty() && random.nextInt(3) == 0)
+      {
+        SimpleFeature sf = added.remove(random.nextInt(added.size()));
+        assertTrue(tree.remove(sf));
+        assertTrue(store.remove(sf));
+      }
+      else
+      {
+        int from = random.nextInt(1000);
+        int to = from + random.nextInt(100);
+        SimpleFeature sf = new SimpleFeature(from, to, "desc" + i % 5);
+        tree.add(sf);
+        store.add(sf);
+        added.add(sf);
+      }
+      if (i % 50 == 0)
+      {
+        assertTrue(tree.isValid());
+        assertEquals(tree.size(), store.size());
+        int from = random.nextInt(1100);
+        int to = from + random.nextInt(50);
+        List<SimpleFeature> expected = store.findOverlaps(from, to);
+        List<SimpleFeature> actual = tree.findOverlaps(from, to);
+        Collections.sort(expected, RangeComparator.BY_START_POSITION);
+        assertEquals(actual.size(), expected.size());
+        for (int j = 0; j < actual.size(); j++)
+        {
+          assertEquals(RangeComparator.BY_START_POSITION
+                  .compare(actual.get(j), expected.get(j)), 0);
+        }
+      }
+    }
+  }
+}
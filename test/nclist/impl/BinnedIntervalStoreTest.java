@@ -0,0 +1,178 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class BinnedIntervalStoreTest
+{
+  @Test(groups = "Functional")
+  public void testReg2bin()
+  {
+    /*
+     * smallest bins are 16kb
+     */
+    assertEquals(BinnedIntervalStore.reg2bin(0, 0), 4681);
+    assertEquals(BinnedIntervalStore.reg2bin(0, 16383), 4681);
+    assertEquals(BinnedIntervalStore.reg2bin(16384, 16384), 4682);
+
+    /*
+     * spanning a 16kb boundary goes to the enclosing 128kb bin
+     */
+    assertEquals(BinnedIntervalStore.reg2bin(16383, 16384), 585);
+    assertEquals(BinnedIntervalStore.reg2bin(147455, 147456), 586);
+    assertEquals(BinnedIntervalStore.reg2bin(0, (1 << 20) - 1), 73);
+    assertEquals(BinnedIntervalStore.reg2bin(0, 1 << 20), 9);
+    assertEquals(BinnedIntervalStore.reg2bin(0, 1 << 23), 1);
+    assertEquals(BinnedIntervalStore.reg2bin(0, 1 << 26), 0);
+
+    /*
+     * out of range
+     */
+    assertEquals(BinnedIntervalStore.reg2bin(-1, 10), 0);
+    assertEquals(BinnedIntervalStore.reg2bin(1 << 29, 1 << 29), 0);
+  }
+
+  @Test(groups = "Functional")
+  public void testReg2bins()
+  {
+    assertEquals(BinnedIntervalStore.reg2bins(0, 0),
+            Arrays.asList(0, 1, 9, 73, 585, 4681));
+    assertEquals(BinnedIntervalStore.reg2bins(16000, 17000),
+            Arrays.asList(0, 1, 9, 73, 585, 4681, 4682));
+    assertEquals(BinnedIntervalStore.reg2bins(-100, -1), Arrays.asList(0));
+  }
+
+  @Test(groups = "Functional")
+  public void testAdd_findOverlaps()
+  {
+    BinnedIntervalStore<SimpleFeature> store = new BinnedIntervalStore<>();
+    assertFalse(store.add(null));
+    SimpleFeature sf1 = new SimpleFeature(10, 50, "");
+    SimpleFeature sf2 = new SimpleFeature(1, 15, "");
+    SimpleFeature sf3 = new SimpleFeature(20, 30, "");
+    SimpleFeature sf4 = new SimpleFeature(16000, 17000, "");
+    SimpleFeature sf5 = new SimpleFeature(-10, 20, "");
+    SimpleFeature sf6 = new SimpleFeature(16500, 16500, "");
+    for (SimpleFeature sf : Arrays.asList(sf1, sf2, sf3, sf4, sf5, sf6))
+    {
+      assertTrue(store.add(sf));
+    }
+    assertEquals(store.size(), 6);
+    assertTrue(store.isValid());
+
+    assertTrue(store.findOverlaps(100, 200).isEmpty());
+    List<SimpleFeature> overlaps = store.findOverlaps(1, 9);
+    assertEquals(overlaps.size(), 2);
+    assertTrue(overlaps.containsAll(Arrays.asList(sf2, sf5)));
+    overlaps = store.findOverlaps(25, 16384);
+    assertEquals(overlaps.size(), 3);
+    assertTrue(overlaps.containsAll(Arrays.asList(sf1, sf3, sf4)));
+    overlaps = store.findOverlaps(16400, 16500);
+    assertEquals(overlaps.size(), 2);
+    assertTrue(overlaps.containsAll(Arrays.asList(sf4, sf6)));
+  }
+
+  @Test(groups = "Functional")
+  public void testRemove_contains()
+  {
+    BinnedIntervalStore<SimpleFeature> store = new BinnedIntervalStore<>();
+    SimpleFeature sf1 = new SimpleFeature(10, 20, "Cath");
+    SimpleFeature sf2 = new SimpleFeature(10, 20, "Pfam");
+    store.add(sf1);
+    store.add(sf2);
+    store.add(new SimpleFeature(sf1)); // duplicate
+    assertTrue(store.contains(new SimpleFeature(sf2)));
+    assertFalse(store.contains(new SimpleFeature(10, 21, "Cath")));
+    assertFalse(store.contains(null));
+
+    assertTrue(store.remove(new SimpleFeature(sf1)));
+    assertTrue(store.contains(sf1));
+    assertTrue(store.remove(sf1));
+    assertFalse(store.contains(sf1));
+    assertFalse(store.remove(sf1));
+    assertEquals(store.size(), 1);
+    assertTrue(store.remove(sf2));
+    assertTrue(store.isEmpty());
+    assertTrue(store.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testIterator_prettyPrint()
+  {
+    BinnedIntervalStore<SimpleFeature> store = new BinnedIntervalStore<>();
+    store.add(new SimpleFeature(30, 60, "desc"));
+    store.add(new SimpleFeature(15, 15, "desc"));
+    store.add(new SimpleFeature(10, 20, "desc"));
+    store.add(new SimpleFeature(10, 50000, "desc"));
+    Iterator<SimpleFeature> it = store.iterator();
+    assertEquals(it.next().toString(), "10:50000:desc");
+    assertEquals(it.next().toString(), "10:20:desc");
+    assertEquals(it.next().toString(), "15:15:desc");
+    assertEquals(it.next().toString(), "30:60:desc");
+    assertFalse(it.hasNext());
+    assertEquals(store.getDepth(), 3);
+    String nl = System.lineSeparator();
+    assertEquals(store.prettyPrint(), "10:50000:desc" + nl + "  10:20:desc"
+            + nl + "    15:15:desc" + nl + "  30:60:desc" + nl);
+    store.clear();
+    assertTrue(store.isEmpty());
+    assertFalse(store.iterator().hasNext());
+  }
+
+  /**
+   * Adds and removes random intervals (enough to use large bins), checking
+   * query results against a brute force search
+   */
+  @Test(groups = "Functional")
+  public void testRandomised()
+  {
+    IntervalStoreChecker.checkRandomised(new BinnedIntervalStore<>(), new Random(127), 200000,
+            50000);
+  }
+
+  /**
+   * Intervals ending exactly on, or spanning, bin boundaries at each level
+   * are found by queries touching the boundary from either side
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_binBoundaries()
+  {
+    BinnedIntervalStore<SimpleFeature> store = new BinnedIntervalStore<>();
+    List<SimpleFeature> added = new ArrayList<>();
+    for (int shift = 14; shift <= 29; shift += 3)
+    {
+      int boundary = 1 << shift;
+      for (SimpleFeature sf : Arrays.asList(
+              new SimpleFeature(boundary - 10, boundary - 1, "before"),
+              new SimpleFeature(boundary, boundary + 10, "after"),
+              new SimpleFeature(boundary - 1, boundary, "spanning")))
+      {
+        store.add(sf);
+        added.add(sf);
+      }
+    }
+    assertTrue(store.isValid());
+    for (int shift = 14; shift <= 29; shift += 3)
+    {
+      long boundary = 1L << shift;
+      for (long from = boundary - 2; from <= boundary + 1; from++)
+      {
+        IntervalStoreChecker.checkQuery(store, added, from, from);
+        IntervalStoreChecker.checkQuery(store, added, from, from + 5);
+      }
+      IntervalStoreChecker.checkQuery(store, added, Long.MIN_VALUE,
+              boundary);
+      IntervalStoreChecker.checkQuery(store, added, boundary,
+              Long.MAX_VALUE);
+    }
+  }
+}
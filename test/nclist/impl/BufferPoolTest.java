@@ -0,0 +1,185 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import nclist.impl.BufferPool.EvictionPolicy;
+
+public class BufferPoolTest
+{
+  private File file;
+
+  private FileChannel channel;
+
+  /**
+   * Writes a file of 10 pages of 16 bytes, and a last page of 4 bytes, each
+   * byte holding its page number
+   */
+  @BeforeClass(alwaysRun = true)
+  public void setUp() throws IOException
+  {
+    file = File.createTempFile("pages", ".bin");
+    byte[] bytes = new byte[164];
+    for (int i = 0; i < bytes.length; i++)
+    {
+      bytes[i] = (byte) (i / 16);
+    }
+    Files.write(file.toPath(), bytes);
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void tearDown() throws IOException
+  {
+    channel.close();
+    file.delete();
+  }
+
+  @Test(groups = "Functional")
+  public void testGetPage() throws IOException
+  {
+    BufferPool pool = new BufferPool(16, 64, EvictionPolicy.LRU);
+    assertEquals(pool.getCapacity(), 4);
+    ByteBuffer page = pool.getPage(file, channel, 3);
+    assertEquals(page.limit(), 16);
+    assertEquals(page.get(0), 3);
+    assertEquals(page.get(15), 3);
+    assertSame(pool.getPage(file, channel, 3), page);
+    assertEquals(pool.getMisses(), 1);
+    assertEquals(pool.getHits(), 1);
+
+    /*
+     * the last page is short
+     */
+    page = pool.getPage(file, channel, 10);
+    assertEquals(page.limit(), 4);
+    assertEquals(page.get(3), 10);
+
+    pool.resetCounts();
+    assertEquals(pool.getHits(), 0);
+    assertEquals(pool.getMisses(), 0);
+  }
+
+  @Test(groups = "Functional")
+  public void testEviction_lru() throws IOException
+  {
+    BufferPool pool = new BufferPool(16, 48, EvictionPolicy.LRU);
+    pool.getPage(file, channel, 0);
+    pool.getPage(file, channel, 1);
+    pool.getPage(file, channel, 2);
+    pool.getPage(file, channel, 0); // hit, so 1 is least recently used
+    pool.getPage(file, channel, 3); // evicts 1
+    assertEquals(pool.getEvictions(), 1);
+    assertEquals(pool.getPageCount(), 3);
+    pool.getPage(file, channel, 0);
+    pool.getPage(file, channel, 2);
+    assertEquals(pool.getHits(), 3);
+    pool.getPage(file, channel, 1); // miss, evicts 3
+    assertEquals(pool.getMisses(), 5);
+    pool.getPage(file, channel, 0);
+    assertEquals(pool.getHits(), 4);
+  }
+
+  @Test(groups = "Functional")
+  public void testEviction_clock() throws IOException
+  {
+    BufferPool pool = new BufferPool(16, 48, EvictionPolicy.CLOCK);
+    pool.getPage(file, channel, 0);
+    pool.getPage(file, channel, 1);
+    pool.getPage(file, channel, 2);
+
+    /*
+     * all used: the hand clears every flag, and evicts page 0 in slot 0
+     */
+    pool.getPage(file, channel, 3);
+    assertEquals(pool.getEvictions(), 1);
+
+    /*
+     * page 1 is used again, so the hand passes it and evicts page 2
+     */
+    pool.getPage(file, channel, 1);
+    assertEquals(pool.getHits(), 1);
+    pool.getPage(file, channel, 4);
+    assertEquals(pool.getEvictions(), 2);
+    pool.getPage(file, channel, 1);
+    pool.getPage(file, channel, 3);
+    assertEquals(pool.getHits(), 3);
+    pool.getPage(file, channel, 2);
+    assertEquals(pool.getMisses(), 6);
+    assertEquals(pool.getPageCount(), 3);
+  }
+
+  @Test(groups = "Functional")
+  public void testInvalidate() throws IOException
+  {
+    for (EvictionPolicy policy : EvictionPolicy.values())
+    {
+      BufferPool pool = new BufferPool(16, 48, policy);
+      Object other = new Object();
+      pool.getPage(file, channel, 0);
+      pool.getPage(other, channel, 0);
+      pool.getPage(file, channel, 1);
+      pool.invalidate(file);
+      assertEquals(pool.getPageCount(), 1);
+      pool.getPage(other, channel, 0);
+      assertEquals(pool.getHits(), 1);
+      pool.getPage(file, channel, 0);
+      pool.getPage(file, channel, 1);
+      assertEquals(pool.getPageCount(), 3);
+      assertEquals(pool.getEvictions(), 0);
+    }
+  }
+
+  /**
+   * Values are read across page boundaries, and reading past the end of the
+   * file (in the short last page) is an IOException
+   *
+   * @throws IOException
+   */
+  @Test(groups = "Functional")
+  public void testPagedFile_read() throws IOException
+  {
+    BufferPool pool = new BufferPool(16, 64, EvictionPolicy.CLOCK);
+    try (PagedFile paged = new PagedFile(file, pool))
+    {
+      assertEquals(paged.length(), 164);
+      assertEquals(paged.readInt(160), 0x0A0A0A0A);
+      assertEquals(paged.readInt(14), 0x00000101);
+      assertEquals(paged.readLong(156), 0x090909090A0A0A0AL);
+      for (long position : new long[] { 161, 164 })
+      {
+        try
+        {
+          paged.readInt(position);
+          fail("expected exception");
+        } catch (IOException e)
+        {
+          // expected
+        }
+      }
+      for (long position : new long[] { 157, 160 })
+      {
+        try
+        {
+          paged.readLong(position);
+          fail("expected exception");
+        } catch (IOException e)
+        {
+          // expected
+        }
+      }
+    }
+  }
+}
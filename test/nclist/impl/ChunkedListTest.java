@@ -0,0 +1,201 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import nclist.api.IntervalI;
+
+public class ChunkedListTest
+{
+  /*
+   * use a fixed random seed for reproducible test behaviour
+   */
+  private Random random = new Random(3);
+
+  @Test(groups = "Functional")
+  public void testAddGetRemove()
+  {
+    ChunkedList<Integer> list = new ChunkedList<>();
+    assertTrue(list.isEmpty());
+    list.add(1);
+    list.add(0, 0);
+    list.add(2);
+    assertEquals(list.size(), 3);
+    assertEquals(list.toString(), "[0, 1, 2]");
+    assertEquals(list.remove(1).intValue(), 1);
+    assertEquals(list.toString(), "[0, 2]");
+    assertEquals(list.set(1, 3).intValue(), 2);
+    assertEquals(list.get(1).intValue(), 3);
+    list.clear();
+    assertTrue(list.isEmpty());
+    assertFalse(list.iterator().hasNext());
+  }
+
+  @Test(
+    groups = "Functional",
+    expectedExceptions = IndexOutOfBoundsException.class)
+  public void testGet_outOfBounds()
+  {
+    ChunkedList<Integer> list = new ChunkedList<>();
+    list.add(1);
+    list.get(1);
+  }
+
+  /**
+   * Appends enough elements one at a time to add many blocks (extending the
+   * block index incrementally), then checks positional access, search and
+   * updates in the middle
+   */
+  @Test(groups = "Functional")
+  public void testAdd_append()
+  {
+    ChunkedList<Integer> list = new ChunkedList<>();
+    int count = 37 * ChunkedList.MAX_BLOCK_SIZE + 5;
+    for (int i = 0; i < count; i++)
+    {
+      list.add(2 * i);
+      assertEquals(list.get(i / 2).intValue(), 2 * (i / 2));
+    }
+    assertEquals(list.size(), count);
+    for (int i = 0; i < count; i++)
+    {
+      assertEquals(list.get(i).intValue(), 2 * i);
+    }
+    assertEquals(list.binarySearch(new Comparable<Integer>()
+    {
+      @Override
+      public int compareTo(Integer o)
+      {
+        return Integer.compare(o, 1001);
+      }
+    }), 501);
+    list.add(501, 1001);
+    assertEquals(list.get(501).intValue(), 1001);
+    assertEquals(list.get(count).intValue(), 2 * (count - 1));
+    assertEquals(list.remove(0).intValue(), 0);
+    list.add(-1);
+    assertEquals(list.get(count).intValue(), -1);
+    assertEquals(list.size(), count + 1);
+  }
+
+  /**
+   * Performs random inserts and deletes on a ChunkedList and an ArrayList,
+   * checking they stay the same, with enough entries to split and merge blocks
+   */
+  @Test(groups = "Functional")
+  public void testRandomUpdates()
+  {
+    ChunkedList<Integer> list = new ChunkedList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 20000; i++)
+    {
+      int op = random.nextInt(10);
+      if (op < 6 || expected.isEmpty())
+      {
+        int pos = random.nextInt(expected.size() + 1);
+        list.add(pos, i);
+        expected.add(pos, i);
+      }
+      else if (op < 9)
+      {
+        int pos = random.nextInt(expected.size());
+        assertEquals(list.remove(pos), expected.remove(pos));
+      }
+      else
+      {
+        int from = random.nextInt(expected.size());
+        int to = Math.min(expected.size(), from + random.nextInt(1000));
+        list.subList(from, to).clear();
+        expected.subList(from, to).clear();
+      }
+      if (i % 1000 == 0)
+      {
+        assertEquals(list, expected);
+      }
+    }
+    assertEquals(list, expected);
+    assertEquals(list.size(), expected.size());
+
+    /*
+     * bulk insert in the middle, then iterate
+     */
+    List<Integer> inserted = new ArrayList<>();
+    for (int i = 0; i < 3000; i++)
+    {
+      inserted.add(-i);
+    }
+    int pos = expected.size() / 3;
+    list.addAll(pos, inserted);
+    expected.addAll(pos, inserted);
+    Iterator<Integer> it = list.iterator();
+    for (Integer i : expected)
+    {
+      assertEquals(it.next(), i);
+    }
+    assertFalse(it.hasNext());
+  }
+
+  @Test(groups = "Functional")
+  public void testBinarySearch()
+  {
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 10000; i++)
+    {
+      int from = random.nextInt(50000);
+      ranges.add(new Range(from, from + 10));
+    }
+    Collections.sort(ranges, RangeComparator.BY_START_POSITION);
+    ChunkedList<IntervalI> list = new ChunkedList<>(ranges);
+
+    for (int i = 0; i < 1000; i++)
+    {
+      long pos = random.nextInt(50100) - 50;
+      assertEquals(
+              BinarySearcher.binarySearch(list, BinarySearcher.byEnd(pos)),
+              BinarySearcher.binarySearch(ranges,
+                      BinarySearcher.byEnd(pos)));
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testScalable()
+  {
+    List<Integer> list = new ArrayList<>();
+    assertTrue(ChunkedList.scalable(list) == list);
+    for (int i = 0; i < ChunkedList.THRESHOLD; i++)
+    {
+      list.add(i);
+    }
+    List<Integer> scalable = ChunkedList.scalable(list);
+    assertTrue(scalable instanceof ChunkedList);
+    assertEquals(scalable, list);
+    assertTrue(ChunkedList.scalable(scalable) == scalable);
+  }
+
+  @Test(groups = "Functional")
+  public void testToArray()
+  {
+    ChunkedList<Integer> list = new ChunkedList<>();
+    assertEquals(list.toArray().length, 0);
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 3 * ChunkedList.MAX_BLOCK_SIZE; i++)
+    {
+      int pos = random.nextInt(expected.size() + 1);
+      list.add(pos, i);
+      expected.add(pos, i);
+    }
+    assertTrue(Arrays.equals(list.toArray(), expected.toArray()));
+    List<Integer> copy = new ArrayList<>(list);
+    assertEquals(copy, expected);
+  }
+}
@@ -0,0 +1,199 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import nclist.impl.BufferPool.EvictionPolicy;
+import nclist.impl.DiskIntervalStore.Codec;
+
+public class DiskIntervalStoreTest
+{
+  /*
+   * stores the description of a SimpleFeature as the payload
+   */
+  static final Codec<SimpleFeature> CODEC = new Codec<SimpleFeature>()
+  {
+    @Override
+    public byte[] encode(SimpleFeature sf)
+    {
+      return sf.getDescription().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public SimpleFeature decode(int begin, int end, byte[] payload)
+    {
+      return new SimpleFeature(begin, end,
+              new String(payload, StandardCharsets.UTF_8));
+    }
+  };
+
+  @Test(groups = "Functional")
+  public void testFindOverlaps() throws IOException
+  {
+    File dir = Files.createTempDirectory("disk").toFile();
+    File index = new File(dir, "test.ncl");
+    File payloads = new File(dir, "test.dat");
+    try
+    {
+      Random r = new Random(49);
+      List<SimpleFeature> features = new ArrayList<>();
+      for (int i = 0; i < 3000; i++)
+      {
+        int from = r.nextInt(10000);
+        int to = from + r.nextInt(i % 20 == 0 ? 1000 : 30);
+        features.add(new SimpleFeature(from, to, "feature" + i));
+      }
+      try (ExternalNCListBuilder builder = new ExternalNCListBuilder(
+              1 << 16, 2, dir))
+      {
+        assertEquals(DiskIntervalStore.write(features.iterator(), CODEC,
+                index, payloads, builder), features.size());
+      }
+      NCList<SimpleFeature> ncl = new NCList<>(new ArrayList<>(features));
+
+      /*
+       * a small buffer pool (of 20 pages of 100 bytes, so values span pages)
+       */
+      for (EvictionPolicy policy : EvictionPolicy.values())
+      {
+        BufferPool pool = new BufferPool(100, 2000, policy);
+        try (DiskIntervalStore<SimpleFeature> store = new DiskIntervalStore<>(
+                index, payloads, CODEC, pool))
+        {
+          assertEquals(store.size(), features.size());
+          assertEquals(store.getDepth(), ncl.getDepth());
+          assertTrue(store.isValid());
+
+          for (int q = 0; q < 200; q++)
+          {
+            int from = r.nextInt(11000);
+            int to = from + r.nextInt(100);
+            List<SimpleFeature> found = store.findOverlaps(from, to);
+            for (int i = 1; i < found.size(); i++)
+            {
+              assertTrue(RangeComparator.BY_START_POSITION
+                      .compare(found.get(i - 1), found.get(i)) <= 0);
+            }
+            List<SimpleFeature> expected = ncl.findOverlaps(from, to);
+            Collections.sort(expected, RangeComparator.BY_START_POSITION);
+            Collections.sort(found, RangeComparator.BY_START_POSITION);
+            assertEquals(found.size(), expected.size());
+            assertTrue(found.containsAll(expected));
+          }
+          assertTrue(pool.getHits() > 0);
+          assertTrue(pool.getMisses() > 0);
+          assertTrue(pool.getEvictions() > 0);
+          assertTrue(pool.getPageCount() <= 20);
+
+          /*
+           * iteration is in start position order
+           */
+          Iterator<SimpleFeature> it = store.iterator();
+          List<SimpleFeature> all = new ArrayList<>();
+          while (it.hasNext())
+          {
+            all.add(it.next());
+          }
+          List<SimpleFeature> sorted = new ArrayList<>(features);
+          Collections.sort(sorted, RangeComparator.BY_START_POSITION);
+          assertEquals(all.size(), sorted.size());
+          for (int i = 1; i < all.size(); i++)
+          {
+            assertTrue(RangeComparator.BY_START_POSITION
+                    .compare(all.get(i - 1), all.get(i)) <= 0);
+          }
+          assertTrue(all.containsAll(features));
+
+          assertTrue(store.contains(new SimpleFeature(features.get(7))));
+          assertFalse(store.contains(new SimpleFeature(
+                  features.get(7).getBegin(), features.get(7).getEnd(),
+                  "missing")));
+          long misses = pool.getMisses();
+          List<SimpleFeature> some = features.subList(0, 2);
+          for (Runnable mutator : Arrays.<Runnable> asList(
+                  () -> store.add(new SimpleFeature(1, 2, "a")),
+                  () -> store.addAll(some), () -> store.remove(some.get(0)),
+                  () -> store.removeAll(some), () -> store.retainAll(some),
+                  () -> store.removeIf(sf -> true), () -> store.clear()))
+          {
+            try
+            {
+              mutator.run();
+              fail("expected exception");
+            } catch (UnsupportedOperationException e)
+            {
+              // expected
+            }
+          }
+
+          /*
+           * mutators fail without reading the file
+           */
+          assertEquals(pool.getMisses(), misses);
+        }
+        assertEquals(pool.getPageCount(), 0);
+      }
+    } finally
+    {
+      index.delete();
+      payloads.delete();
+      dir.delete();
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testEmpty() throws IOException
+  {
+    File index = File.createTempFile("empty", ".ncl");
+    File payloads = File.createTempFile("empty", ".dat");
+    try
+    {
+      DiskIntervalStore.write(new ArrayList<SimpleFeature>().iterator(),
+              CODEC, index, payloads);
+      try (DiskIntervalStore<SimpleFeature> store = new DiskIntervalStore<>(
+              index, payloads, CODEC,
+              new BufferPool(4096, 1 << 16, EvictionPolicy.CLOCK)))
+      {
+        assertTrue(store.isEmpty());
+        assertTrue(store.findOverlaps(0, 100).isEmpty());
+        assertFalse(store.iterator().hasNext());
+        assertTrue(store.isValid());
+        assertEquals(store.prettyPrint(), System.lineSeparator());
+      }
+    } finally
+    {
+      index.delete();
+      payloads.delete();
+    }
+  }
+
+  @Test(groups = "Functional", expectedExceptions = IOException.class)
+  public void testOpen_notNCListFile() throws IOException
+  {
+    File index = File.createTempFile("bad", ".ncl");
+    try
+    {
+      Files.write(index.toPath(), new byte[100]);
+      new DiskIntervalStore<>(index, index, CODEC,
+              new BufferPool(4096, 1 << 16, EvictionPolicy.LRU));
+    } finally
+    {
+      index.delete();
+    }
+  }
+}
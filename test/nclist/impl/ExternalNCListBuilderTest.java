@@ -0,0 +1,180 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class ExternalNCListBuilderTest
+{
+  /**
+   * Reads the entries overlapping from-to in the given group of an NCList
+   * file, and all groups nested within them, as "begin-end:id" strings
+   */
+  private static void findOverlaps(ByteBuffer file, long group, long from,
+          long to, List<String> result)
+  {
+    long directory = file.getLong(ExternalNCListBuilder.DIRECTORY_OFFSET);
+    int dirPos = (int) (directory + group * ExternalNCListBuilder.GROUP_SIZE);
+    long first = file.getLong(dirPos);
+    long count = file.getLong(dirPos + 8);
+    for (long i = first; i < first + count; i++)
+    {
+      int pos = (int) (ExternalNCListBuilder.HEADER_SIZE
+              + i * ExternalNCListBuilder.ENTRY_SIZE);
+      int begin = file.getInt(pos);
+      int end = file.getInt(pos + 4);
+      if (begin <= to && end >= from)
+      {
+        result.add(begin + "-" + end + ":" + file.getLong(pos + 8));
+        long subranges = file.getLong(pos + 16);
+        if (subranges != -1)
+        {
+          findOverlaps(file, subranges, from, to, result);
+        }
+      }
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testBuild() throws IOException
+  {
+    File tempDir = Files.createTempDirectory("ncl").toFile();
+    File file = new File(tempDir, "test.ncl");
+    try
+    {
+      Random r = new Random(48);
+      List<Range> ranges = new ArrayList<>();
+      for (int i = 0; i < 5000; i++)
+      {
+        int from = r.nextInt(20000);
+        ranges.add(new Range(from,
+                from + r.nextInt(i % 20 == 0 ? 2000 : 30)));
+      }
+
+      /*
+       * little enough memory to spill many runs
+       */
+      try (ExternalNCListBuilder builder = new ExternalNCListBuilder(8000, 2,
+              tempDir))
+      {
+        for (int i = 0; i < ranges.size(); i++)
+        {
+          Range range = ranges.get(i);
+          builder.add(range.getBegin(), range.getEnd(), i);
+        }
+        assertEquals(builder.size(), ranges.size());
+        assertEquals(builder.build(file), ranges.size());
+        try
+        {
+          builder.add(1, 2, 3);
+          fail("expected exception");
+        } catch (IllegalStateException e)
+        {
+          // expected
+        }
+      }
+      assertEquals(tempDir.list().length, 1);
+
+      ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      assertEquals(bytes.getInt(0), ExternalNCListBuilder.MAGIC);
+      assertEquals(bytes.getInt(4), ExternalNCListBuilder.VERSION);
+      assertEquals(bytes.getLong(ExternalNCListBuilder.ENTRY_COUNT_OFFSET),
+              ranges.size());
+      NCList<Range> ncl = new NCList<>(new ArrayList<>(ranges));
+      assertEquals(bytes.getInt(ExternalNCListBuilder.DEPTH_OFFSET),
+              ncl.getDepth());
+
+      /*
+       * every group is in start and end position order
+       */
+      long groups = bytes.getLong(ExternalNCListBuilder.GROUP_COUNT_OFFSET);
+      long directory = bytes.getLong(ExternalNCListBuilder.DIRECTORY_OFFSET);
+      assertEquals(bytes.capacity(),
+              directory + groups * ExternalNCListBuilder.GROUP_SIZE);
+      for (int g = 0; g < groups; g++)
+      {
+        int dirPos = (int) (directory + g * ExternalNCListBuilder.GROUP_SIZE);
+        long first = bytes.getLong(dirPos);
+        long count = bytes.getLong(dirPos + 8);
+        assertTrue(count > 0);
+        for (long i = first + 1; i < first + count; i++)
+        {
+          int pos = (int) (ExternalNCListBuilder.HEADER_SIZE
+                  + i * ExternalNCListBuilder.ENTRY_SIZE);
+          int prev = pos - ExternalNCListBuilder.ENTRY_SIZE;
+          assertTrue(bytes.getInt(prev) <= bytes.getInt(pos));
+          assertTrue(bytes.getInt(prev + 4) <= bytes.getInt(pos + 4));
+        }
+      }
+
+      /*
+       * queries find the same intervals as a brute force search
+       */
+      List<String> all = new ArrayList<>();
+      findOverlaps(bytes, 0, Long.MIN_VALUE, Long.MAX_VALUE, all);
+      assertEquals(all.size(), ranges.size());
+      for (int q = 0; q < 200; q++)
+      {
+        int from = r.nextInt(22000);
+        int to = from + r.nextInt(100);
+        List<String> found = new ArrayList<>();
+        findOverlaps(bytes, 0, from, to, found);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++)
+        {
+          Range range = ranges.get(i);
+          if (range.getBegin() <= to && range.getEnd() >= from)
+          {
+            expected.add(range.getBegin() + "-" + range.getEnd() + ":" + i);
+          }
+        }
+        Collections.sort(found);
+        Collections.sort(expected);
+        assertEquals(found, expected);
+      }
+    } finally
+    {
+      file.delete();
+      tempDir.delete();
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testBuild_empty() throws IOException
+  {
+    File file = File.createTempFile("empty", ".ncl");
+    try (ExternalNCListBuilder builder = new ExternalNCListBuilder())
+    {
+      assertEquals(builder.build(file), 0);
+      ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      assertEquals(bytes.capacity(), ExternalNCListBuilder.HEADER_SIZE);
+      assertEquals(bytes.getLong(ExternalNCListBuilder.GROUP_COUNT_OFFSET), 0);
+      assertEquals(bytes.getInt(ExternalNCListBuilder.DEPTH_OFFSET), 0);
+    } finally
+    {
+      file.delete();
+    }
+  }
+
+  @Test(
+    groups = "Functional",
+    expectedExceptions = IllegalArgumentException.class)
+  public void testAdd_reverseRange() throws IOException
+  {
+    try (ExternalNCListBuilder builder = new ExternalNCListBuilder())
+    {
+      builder.add(20, 10, 0);
+    }
+  }
+}
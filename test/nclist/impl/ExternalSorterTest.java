@@ -0,0 +1,104 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import nclist.impl.ExternalSorter.RecordIterator;
+
+public class ExternalSorterTest
+{
+  /**
+   * Verify records are read back in unsigned key order, with equal keys in the
+   * order added, both when sorted in memory and when merged from runs
+   */
+  @Test(groups = "Functional")
+  public void testSort() throws IOException
+  {
+    File tempDir = Files.createTempDirectory("sorter").toFile();
+    try
+    {
+      /*
+       * 3 buffers of 40 records each (16 bytes data + 24 sort);
+       * 10000 records make 250 runs, more than can be merged at once
+       */
+      long[] memories = { 3 * 40 * 40, 4 << 20 };
+      for (long memory : memories)
+      {
+        Random r = new Random(48);
+        int n = 10000;
+        try (ExternalSorter sorter = new ExternalSorter(2, memory, 2,
+                tempDir))
+        {
+          long[] record = new long[2];
+          for (int i = 0; i < n; i++)
+          {
+            record[0] = r.nextInt(100) - 50 + (r.nextBoolean() ? 0
+                    : Long.MAX_VALUE);
+            record[1] = i;
+            sorter.add(record);
+          }
+          assertEquals(sorter.size(), n);
+          if (memory < memories[1])
+          {
+            assertTrue(sorter.getRunCount() > ExternalSorter.MAX_FAN_IN);
+          }
+          else
+          {
+            assertEquals(sorter.getRunCount(), 0);
+          }
+
+          RecordIterator it = sorter.sort();
+          long lastKey = 0;
+          long lastValue = -1;
+          for (int i = 0; i < n; i++)
+          {
+            assertTrue(it.next());
+            long key = it.get(0);
+            int order = Long.compareUnsigned(lastKey, key);
+            assertTrue(order <= 0);
+            if (i > 0 && order == 0)
+            {
+              assertTrue(it.get(1) > lastValue);
+            }
+            lastKey = key;
+            lastValue = it.get(1);
+          }
+          assertFalse(it.next());
+        }
+
+        /*
+         * temporary files are deleted on close
+         */
+        assertEquals(tempDir.list().length, 0);
+      }
+    } finally
+    {
+      tempDir.delete();
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testSort_empty() throws IOException
+  {
+    try (ExternalSorter sorter = new ExternalSorter(3, 1 << 16, 1, null))
+    {
+      assertFalse(sorter.sort().next());
+    }
+  }
+
+  @Test(
+    groups = "Functional",
+    expectedExceptions = IllegalArgumentException.class)
+  public void testConstructor_tooLittleMemory()
+  {
+    new ExternalSorter(2, 100, 4, null);
+  }
+}
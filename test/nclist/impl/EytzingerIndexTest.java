@@ -0,0 +1,82 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class EytzingerIndexTest
+{
+  @Test(groups = "Functional")
+  public void testFirstAtOrAfter()
+  {
+    int[] keys = new int[] { 3, 5, 5, 5, 9, 20, 21, 22, 100 };
+    EytzingerIndex index = new EytzingerIndex(keys);
+    assertEquals(index.size(), 9);
+    assertEquals(index.getKind(), SearchIndex.EYTZINGER);
+    assertEquals(index.firstAtOrAfter(-10), 0);
+    assertEquals(index.firstAtOrAfter(3), 0);
+    assertEquals(index.firstAtOrAfter(4), 1);
+    assertEquals(index.firstAtOrAfter(5), 1);
+    assertEquals(index.firstAtOrAfter(6), 4);
+    assertEquals(index.firstAtOrAfter(21), 6);
+    assertEquals(index.firstAtOrAfter(23), 8);
+    assertEquals(index.firstAtOrAfter(100), 8);
+    assertEquals(index.firstAtOrAfter(101), 9);
+  }
+
+  @Test(groups = "Functional")
+  public void testFirstAtOrAfter_empty()
+  {
+    EytzingerIndex index = new EytzingerIndex(new int[0]);
+    assertEquals(index.firstAtOrAfter(1), 0);
+
+    index = new EytzingerIndex(new int[] { 7 });
+    assertEquals(index.firstAtOrAfter(6), 0);
+    assertEquals(index.firstAtOrAfter(7), 0);
+    assertEquals(index.firstAtOrAfter(8), 1);
+  }
+
+  /**
+   * Compares results with a binary search, for all sizes up to a complete
+   * tree and beyond, and for random keys with runs of duplicates
+   */
+  @Test(groups = "Functional")
+  public void testFirstAtOrAfter_randomised()
+  {
+    Random random = new Random(137);
+    for (int n = 1; n < 70; n++)
+    {
+      verify(random, n);
+    }
+    verify(random, 1000);
+    verify(random, 65535);
+    verify(random, 100000);
+  }
+
+  private static void verify(Random random, int n)
+  {
+    int[] keys = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+      keys[i] = random.nextInt(2 * n) - n / 2;
+    }
+    Arrays.sort(keys);
+    EytzingerIndex index = new EytzingerIndex(keys);
+    long min = keys[0] - 10L;
+    long max = keys[n - 1] + 10L;
+    for (int q = 0; q < 500; q++)
+    {
+      long target = min + (long) (random.nextDouble() * (max - min));
+      assertEquals(index.firstAtOrAfter(target),
+              index.binarySearch(target, 0, n), "target " + target);
+    }
+    for (int i = 0; i < n; i += Math.max(1, n / 500))
+    {
+      assertEquals(index.firstAtOrAfter(keys[i]),
+              index.binarySearch(keys[i], 0, n));
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class ImplicitIntervalTreeTest
+{
+  @Test(groups = "Functional")
+  public void testFindOverlaps()
+  {
+    List<SimpleFeature> ranges = new ArrayList<>();
+    SimpleFeature sf1 = new SimpleFeature(10, 50, "");
+    SimpleFeature sf2 = new SimpleFeature(1, 15, "");
+    SimpleFeature sf3 = new SimpleFeature(20, 30, "");
+    SimpleFeature sf4 = new SimpleFeature(40, 100, "");
+    SimpleFeature sf5 = new SimpleFeature(60, 100, "");
+    SimpleFeature sf6 = new SimpleFeature(70, 70, "");
+    ranges.addAll(Arrays.asList(sf1, sf2, sf3, sf4, sf5, sf6));
+    ImplicitIntervalTree<SimpleFeature> store = new ImplicitIntervalTree<>(
+            ranges);
+    assertTrue(store.isValid());
+    assertEquals(store.size(), 6);
+
+    assertTrue(store.findOverlaps(200, 200).isEmpty());
+    assertEquals(store.findOverlaps(1, 9), Arrays.asList(sf2));
+    assertEquals(store.findOverlaps(30, 40), Arrays.asList(sf1, sf3, sf4));
+    assertEquals(store.findOverlaps(68, 70), Arrays.asList(sf4, sf5, sf6));
+
+    /*
+     * the list it was built from is not modified
+     */
+    assertEquals(ranges.get(0), sf1);
+  }
+
+  @Test(groups = "Functional")
+  public void testFindOverlaps_empty()
+  {
+    ImplicitIntervalTree<SimpleFeature> store = new ImplicitIntervalTree<>(
+            new ArrayList<SimpleFeature>());
+    assertTrue(store.isEmpty());
+    assertTrue(store.findOverlaps(1, 100).isEmpty());
+    assertTrue(store.isValid());
+    assertEquals(store.getDepth(), 0);
+  }
+
+  @Test(groups = "Functional")
+  public void testContains()
+  {
+    List<SimpleFeature> ranges = new ArrayList<>();
+    for (int i = 0; i < 20; i++)
+    {
+      ranges.add(new SimpleFeature(10, 20 + i % 3, "desc" + i));
+    }
+    ImplicitIntervalTree<SimpleFeature> store = new ImplicitIntervalTree<>(
+            ranges);
+    for (SimpleFeature sf : ranges)
+    {
+      assertTrue(store.contains(new SimpleFeature(sf)));
+    }
+    assertFalse(store.contains(new SimpleFeature(10, 20, "desc1")));
+    assertFalse(store.contains(new SimpleFeature(11, 20, "desc0")));
+    assertFalse(store.contains(null));
+    assertFalse(store.contains("rubbish"));
+  }
+
+  @Test(groups = "Functional")
+  public void testImmutable()
+  {
+    SimpleFeature sf1 = new SimpleFeature(10, 20, "");
+    ImplicitIntervalTree<SimpleFeature> store = new ImplicitIntervalTree<>(
+            Arrays.asList(sf1));
+    try
+    {
+      store.add(new SimpleFeature(30, 40, ""));
+      fail("expected exception");
+    } catch (UnsupportedOperationException e)
+    {
+      // expected
+    }
+    try
+    {
+      store.remove(sf1);
+      fail("expected exception");
+    } catch (UnsupportedOperationException e)
+    {
+      // expected
+    }
+    assertEquals(store.size(), 1);
+  }
+
+  @Test(groups = "Functional")
+  public void testPrettyPrint_getDepth()
+  {
+    List<SimpleFeature> ranges = new ArrayList<>();
+    ranges.add(new SimpleFeature(30, 60, "desc"));
+    ranges.add(new SimpleFeature(15, 15, "desc"));
+    ranges.add(new SimpleFeature(10, 20, "desc"));
+    ranges.add(new SimpleFeature(10, 50, "desc"));
+    ranges.add(new SimpleFeature(40, 45, "desc"));
+    ImplicitIntervalTree<SimpleFeature> store = new ImplicitIntervalTree<>(
+            ranges);
+    assertEquals(store.getDepth(), 3);
+    String nl = System.lineSeparator();
+    assertEquals(store.prettyPrint(),
+            "10:50:desc" + nl + "  10:20:desc" + nl + "    15:15:desc" + nl
+                    + "30:60:desc" + nl + "  40:45:desc" + nl);
+  }
+
+  /**
+   * Builds trees of all sizes up to a few hundred, so covering complete and
+   * incomplete trees, and checks query results against a brute force search
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_randomised()
+  {
+    Random random = new Random(109);
+    for (int n = 1; n < 300; n++)
+    {
+      List<SimpleFeature> ranges = new ArrayList<>();
+      for (int i = 0; i < n; i++)
+      {
+        int from = random.nextInt(1000);
+        int to = from + (random.nextInt(10) == 0 ? random.nextInt(500)
+                : random.nextInt(20));
+        ranges.add(new SimpleFeature(from, to, "desc" + i));
+      }
+      ImplicitIntervalTree<SimpleFeature> store = new ImplicitIntervalTree<>(
+              ranges);
+      assertTrue(store.isValid());
+      Collections.sort(ranges, RangeComparator.BY_START_POSITION);
+
+      for (int q = 0; q < 20; q++)
+      {
+        int from = random.nextInt(1100);
+        int to = from + random.nextInt(50);
+        List<SimpleFeature> expected = new ArrayList<>();
+        for (SimpleFeature sf : ranges)
+        {
+          if (sf.getBegin() <= to && sf.getEnd() >= from)
+          {
+            expected.add(sf);
+          }
+        }
+        assertEquals(store.findOverlaps(from, to), expected);
+      }
+    }
+  }
+}
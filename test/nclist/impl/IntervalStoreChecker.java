@@ -0,0 +1,98 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import nclist.api.IntervalStoreI;
+
+/**
+ * A differential test of any interval store: adds and removes random
+ * intervals, and periodically checks query results (including queries
+ * unbounded at either end) against a brute force search of the intervals
+ * added
+ */
+final class IntervalStoreChecker
+{
+  private IntervalStoreChecker()
+  {
+  }
+
+  /**
+   * Adds (and sometimes removes) random intervals starting in the range 0 to
+   * span, with lengths from 0 to maxLength (evenly spread on a log scale, so
+   * mostly short), checking the store's contents and queries every 1000
+   * operations
+   *
+   * @param store
+   *          an empty store
+   * @param random
+   * @param span
+   * @param maxLength
+   */
+  static void checkRandomised(IntervalStoreI<SimpleFeature> store,
+          Random random, int span, int maxLength)
+  {
+    List<SimpleFeature> added = new ArrayList<>();
+    for (int i = 0; i < 20000; i++)
+    {
+      if (!added.isEmpty() && random.nextInt(4) == 0)
+      {
+        SimpleFeature sf = added.remove(random.nextInt(added.size()));
+        assertTrue(store.remove(sf));
+      }
+      else
+      {
+        int from = random.nextInt(span) - 1000;
+        int to = from + (int) Math.pow(maxLength + 1, random.nextDouble())
+                - 1;
+        SimpleFeature sf = new SimpleFeature(from, to, "desc" + i);
+        store.add(sf);
+        added.add(sf);
+      }
+      if (i % 1000 == 0)
+      {
+        assertTrue(store.isValid());
+        assertEquals(store.size(), added.size());
+        for (int q = 0; q < 20; q++)
+        {
+          int from = random.nextInt(span + 1000) - 2000;
+          int to = from + random.nextInt(1000);
+          checkQuery(store, added, from, to);
+        }
+        int pos = random.nextInt(span);
+        checkQuery(store, added, Long.MIN_VALUE, pos);
+        checkQuery(store, added, pos, Long.MAX_VALUE);
+        checkQuery(store, added, Long.MIN_VALUE, Long.MAX_VALUE);
+      }
+    }
+  }
+
+  /**
+   * Checks the store's result for a query against a brute force search
+   *
+   * @param store
+   * @param added
+   * @param from
+   * @param to
+   */
+  static void checkQuery(IntervalStoreI<SimpleFeature> store,
+          List<SimpleFeature> added, long from, long to)
+  {
+    List<SimpleFeature> expected = new ArrayList<>();
+    for (SimpleFeature sf : added)
+    {
+      if (sf.getBegin() <= to && sf.getEnd() >= from)
+      {
+        expected.add(sf);
+      }
+    }
+    List<SimpleFeature> actual = store.findOverlaps(from, to);
+    assertEquals(actual.size(), expected.size(),
+            "Query " + from + "-" + to);
+    assertTrue(actual.containsAll(expected));
+  }
+}
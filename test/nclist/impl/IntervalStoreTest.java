@@ -2,10 +2,15 @@ package nclist.impl;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.testng.annotations.Test;
 
@@ -410,6 +415,246 @@ public class IntervalStoreTest
     assertTrue(store.contains(sf3));
   }
 
+  @Test(groups = "Functional")
+  public void testContains_indexed()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>(true);
+    SimpleFeature sf1 = new SimpleFeature(10, 20, "Cath");
+    SimpleFeature sf2 = new SimpleFeature(10, 20, "Pfam");
+
+    store.add(sf1);
+    assertTrue(store.contains(sf1));
+    assertTrue(store.contains(new SimpleFeature(sf1))); // identical feature
+    assertFalse(store.contains(sf2)); // different description
+    assertFalse(store.contains(null));
+    assertFalse(store.contains("sf1"));
+
+    /*
+     * add a nested feature, and a duplicate of it
+     */
+    SimpleFeature sf3 = new SimpleFeature(12, 16, "Cath");
+    store.add(sf3);
+    store.add(new SimpleFeature(sf3));
+    assertTrue(store.contains(sf3));
+    assertEquals(store.size(), 3);
+    assertTrue(store.isValid());
+
+    /*
+     * remove one duplicate - the other is still found
+     */
+    assertTrue(store.remove(sf3));
+    assertTrue(store.contains(sf3));
+    assertTrue(store.remove(new SimpleFeature(sf3)));
+    assertFalse(store.contains(sf3));
+    assertFalse(store.remove(sf3));
+    assertTrue(store.isValid());
+
+    store.clear();
+    assertFalse(store.contains(sf1));
+    assertTrue(store.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testRemove_indexed()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>(true);
+    SimpleFeature sf4 = add(store, 20, 30);
+    SimpleFeature sf5 = add(store, 22, 26); // to NCList
+    SimpleFeature sf6 = add(store, 23, 24); // child of sf5
+    SimpleFeature sf7 = add(store, 25, 25); // sibling of sf6
+    SimpleFeature sf8 = add(store, 24, 24); // child of sf6
+    SimpleFeature sf9 = add(store, 23, 23); // child of sf6
+    SimpleFeature sf10 = add(store, 25, 35); // non-nested
+    assertEquals(store.size(), 7);
+    assertTrue(store.isValid());
+
+    assertFalse(store.remove(new SimpleFeature(20, 30, "other")));
+    assertTrue(store.remove(sf6));
+    assertFalse(store.contains(sf6));
+    assertTrue(store.remove(sf4));
+    assertFalse(store.contains(sf4));
+    assertTrue(store.remove(sf10));
+    assertEquals(store.size(), 4);
+    assertTrue(store.isValid());
+    assertTrue(store.contains(sf5));
+    assertTrue(store.contains(sf7));
+    assertTrue(store.contains(sf8));
+    assertTrue(store.contains(sf9));
+
+    assertTrue(store.remove(sf5));
+    assertTrue(store.remove(sf7));
+    assertTrue(store.remove(sf8));
+    assertTrue(store.remove(sf9));
+    assertTrue(store.isEmpty());
+    assertTrue(store.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testOrderedIterator()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>();
+    assertFalse(store.orderedIterator().hasNext());
+
+    SimpleFeature sf1 = add(store, 20, 30);
+    SimpleFeature sf2 = add(store, 25, 35);
+    SimpleFeature sf3 = add(store, 22, 28); // nested
+    SimpleFeature sf4 = add(store, 24, 26); // nested
+    SimpleFeature sf5 = add(store, 26, 27); // nested
+    SimpleFeature sf6 = add(store, 40, 50);
+
+    Iterator<SimpleFeature> it = store.orderedIterator();
+    assertSame(it.next(), sf1);
+    assertSame(it.next(), sf3);
+    assertSame(it.next(), sf4);
+    assertSame(it.next(), sf2);
+    assertSame(it.next(), sf5);
+    assertSame(it.next(), sf6);
+    assertFalse(it.hasNext());
+
+    it = store.orderedIterator(27, 31);
+    assertSame(it.next(), sf1);
+    assertSame(it.next(), sf3);
+    assertSame(it.next(), sf2);
+    assertSame(it.next(), sf5);
+    assertFalse(it.hasNext());
+
+    it = store.orderedIterator(36, 39);
+    assertFalse(it.hasNext());
+  }
+
+  @Test(groups = "Functional")
+  public void testRemoveRange()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>(true);
+    SimpleFeature sf1 = add(store, 20, 30);
+    SimpleFeature sf2 = add(store, 25, 35);
+    SimpleFeature sf3 = add(store, 22, 28); // nested
+    SimpleFeature sf4 = add(store, 24, 26); // nested
+    SimpleFeature sf5 = add(store, 40, 50);
+
+    assertFalse(store.removeRange(21, 23));
+    assertTrue(store.removeRange(20, 30));
+    assertEquals(store.size(), 2);
+    assertTrue(store.contains(sf2));
+    assertTrue(store.contains(sf5));
+    assertFalse(store.contains(sf1));
+    assertFalse(store.contains(sf3));
+    assertFalse(store.contains(sf4));
+    assertTrue(store.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testRemoveOverlapping()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>(true);
+    SimpleFeature sf1 = add(store, 20, 30);
+    SimpleFeature sf2 = add(store, 25, 35);
+    SimpleFeature sf3 = add(store, 22, 28); // nested
+    SimpleFeature sf4 = add(store, 24, 26); // nested
+    SimpleFeature sf5 = add(store, 40, 50);
+
+    assertFalse(store.removeOverlapping(36, 39));
+    assertTrue(store.removeOverlapping(27, 31));
+    assertEquals(store.size(), 2);
+    assertTrue(store.contains(sf4));
+    assertTrue(store.contains(sf5));
+    assertFalse(store.contains(sf1));
+    assertFalse(store.contains(sf2));
+    assertFalse(store.contains(sf3));
+    assertTrue(store.isValid());
+    assertEquals(store.findOverlaps(20, 30).size(), 1);
+  }
+
+  @Test(groups = "Functional")
+  public void testRemoveIf()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>();
+    add(store, 20, 30);
+    SimpleFeature sf2 = new SimpleFeature(25, 35, "Pfam");
+    store.add(sf2);
+    add(store, 22, 28); // nested
+    SimpleFeature sf4 = new SimpleFeature(24, 26, "Pfam");
+    store.add(sf4);
+
+    assertTrue(store.removeIf(sf -> "desc".equals(sf.getDescription())));
+    assertEquals(store.size(), 2);
+    assertTrue(store.contains(sf2));
+    assertTrue(store.contains(sf4));
+    assertTrue(store.isValid());
+    assertFalse(store.removeIf(sf -> "desc".equals(sf.getDescription())));
+  }
+
+  @Test(groups = "Functional")
+  public void testBuildSearchIndex()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>();
+    for (int i = 0; i < 1000; i++)
+    {
+      add(store, 10 * i, 10 * i + 15);
+      add(store, 10 * i + 1, 10 * i + 2); // nested
+    }
+    List<SimpleFeature> expected = store.findOverlaps(4995, 5012);
+    assertEquals(expected.size(), 6);
+    assertEquals(store.getSearchIndex(), SearchIndex.BINARY);
+
+    store.buildSearchIndex(SearchIndex.LEARNED);
+    assertEquals(store.getSearchIndex(), SearchIndex.LEARNED);
+    @SuppressWarnings("unchecked")
+    NCList<SimpleFeature> nested = (NCList<SimpleFeature>) PA
+            .getValue(store, "nested");
+    assertEquals(nested.getSearchIndex(), SearchIndex.LEARNED);
+    assertEquals(store.findOverlaps(4995, 5012), expected);
+
+    /*
+     * modification discards the index
+     */
+    SimpleFeature sf = add(store, 20000, 20001);
+    assertEquals(store.getSearchIndex(), SearchIndex.BINARY);
+    assertEquals(store.findOverlaps(20000, 20000).size(), 1);
+    store.buildSearchIndex(SearchIndex.LEARNED);
+    assertTrue(store.remove(sf));
+    assertEquals(store.getSearchIndex(), SearchIndex.BINARY);
+    store.buildSearchIndex(SearchIndex.LEARNED);
+    assertTrue(store.removeRange(4990, 5030));
+    assertEquals(store.getSearchIndex(), SearchIndex.BINARY);
+    assertTrue(store.isValid());
+  }
+
+  /**
+   * Compares overlap queries with and without each kind of search index, on
+   * random data with some wide queries
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_searchIndex()
+  {
+    Random random = new Random(139);
+    IntervalStore<SimpleFeature> store = new IntervalStore<>();
+    for (int i = 0; i < 5000; i++)
+    {
+      int from = random.nextInt(20000);
+      add(store, from, from + random.nextInt(random.nextInt(10) == 0 ? 2000
+              : 50));
+    }
+    List<int[]> queries = new ArrayList<>();
+    List<List<SimpleFeature>> expected = new ArrayList<>();
+    for (int i = 0; i < 500; i++)
+    {
+      int from = random.nextInt(22000) - 1000;
+      int to = from + random.nextInt(i % 10 == 0 ? 5000 : 100);
+      queries.add(new int[] { from, to });
+      expected.add(store.findOverlaps(from, to));
+    }
+    for (SearchIndex kind : SearchIndex.values())
+    {
+      store.buildSearchIndex(kind);
+      for (int i = 0; i < queries.size(); i++)
+      {
+        int[] q = queries.get(i);
+        assertEquals(store.findOverlaps(q[0], q[1]), expected.get(i));
+      }
+    }
+  }
+
   @Test(groups = "Functional")
   public void testToString()
   {
@@ -425,4 +670,234 @@ public class IntervalStoreTest
     assertEquals(store.toString(),
             "[20:30:desc, 25:35:desc]\n[22:28:desc [24:26:desc], 22:28:desc]");
   }
+
+  @Test(groups = "Functional")
+  public void testPoints()
+  {
+    for (boolean indexed : new boolean[] { false, true })
+    {
+      IntervalStore<SimpleFeature> store = new IntervalStore<>(indexed);
+      SimpleFeature sf1 = add(store, 10, 20);
+      SimpleFeature sf2 = add(store, 15, 15);
+      SimpleFeature sf3 = add(store, 12, 12);
+      SimpleFeature sf4 = add(store, 15, 15);
+      SimpleFeature sf5 = add(store, 30, 30);
+      assertEquals(store.size(), 5);
+      assertTrue(store.isValid());
+
+      /*
+       * points are held in their own tier, so don't nest within sf1
+       */
+      assertEquals(store.getDepth(), 1);
+      assertEquals(store.toString(),
+              "[10:20:desc]\n[12:12:desc, 15:15:desc, 15:15:desc, 30:30:desc]");
+      assertTrue(store.contains(sf3));
+      assertTrue(store.contains(new SimpleFeature(15, 15, "desc")));
+      assertFalse(store.contains(new SimpleFeature(15, 15, "other")));
+      assertFalse(store.contains(new SimpleFeature(16, 16, "desc")));
+
+      List<SimpleFeature> overlaps = store.findOverlaps(12, 15);
+      assertEquals(overlaps.size(), 4);
+      assertSame(overlaps.get(0), sf1);
+      assertSame(overlaps.get(1), sf3);
+      assertSame(overlaps.get(2), sf2);
+      assertSame(overlaps.get(3), sf4);
+      assertTrue(store.findOverlaps(21, 29).isEmpty());
+
+      Iterator<SimpleFeature> it = store.orderedIterator();
+      assertSame(it.next(), sf1);
+      assertSame(it.next(), sf3);
+      assertSame(it.next(), sf2);
+      assertSame(it.next(), sf4);
+      assertSame(it.next(), sf5);
+      assertFalse(it.hasNext());
+
+      assertTrue(store.remove(new SimpleFeature(15, 15, "desc")));
+      assertTrue(store.contains(sf4));
+      assertTrue(store.remove(sf4));
+      assertFalse(store.contains(sf2));
+      assertFalse(store.remove(sf2));
+      assertEquals(store.size(), 3);
+      assertTrue(store.isValid());
+
+      assertTrue(store.removeRange(25, 35));
+      assertFalse(store.contains(sf5));
+      assertEquals(store.size(), 2);
+      assertTrue(store.isValid());
+
+      store.clear();
+      assertTrue(store.isEmpty());
+      assertTrue(store.isValid());
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testGetExtent()
+  {
+    IntervalStore<SimpleFeature> store = new IntervalStore<>();
+    assertEquals(store.getExtent(), null);
+    assertTrue(store.findOverlaps(0, 100).isEmpty());
+    add(store, 20, 30);
+    assertEquals(store.getExtent(), new long[] { 20, 30 });
+    add(store, 22, 28); // nested
+    add(store, 10, 10); // point
+    assertEquals(store.getExtent(), new long[] { 10, 30 });
+    add(store, 5, 40); // nests the others
+    add(store, 50, 50);
+    assertEquals(store.getExtent(), new long[] { 5, 50 });
+    store.clear();
+    assertEquals(store.getExtent(), null);
+  }
+
+  /**
+   * Test that queries covering the whole store, or none of it, give the same
+   * results, in the same order, as searching
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_planned()
+  {
+    Random random = new Random(157);
+    IntervalStore<SimpleFeature> store = new IntervalStore<>();
+    for (int i = 0; i < 3000; i++)
+    {
+      int from = random.nextInt(10000);
+      add(store, from, from + (i % 3 == 0 ? 0
+              : (int) Math.pow(1000, random.nextDouble())));
+    }
+    long[] extent = store.getExtent();
+    List<SimpleFeature> all = store.findOverlaps(extent[0], extent[1]);
+    assertEquals(all.size(), store.size());
+    assertEquals(store.findOverlaps(Long.MIN_VALUE, Long.MAX_VALUE), all);
+
+    /*
+     * widen the extent with a remote point, so the same query is searched,
+     * which should give the same results in the same order
+     */
+    SimpleFeature remote = add(store, (int) extent[1] + 1000,
+            (int) extent[1] + 1000);
+    assertEquals(store.findOverlaps(extent[0], extent[1]), all);
+    store.remove(remote);
+
+    assertTrue(store.findOverlaps(extent[1] + 1, extent[1] + 100).isEmpty());
+    assertTrue(store.findOverlaps(extent[0] - 100, extent[0] - 1).isEmpty());
+
+    for (int i = 0; i < 100; i++)
+    {
+      int from = random.nextInt(12000) - 1000;
+      int to = from + random.nextInt(i % 10 == 0 ? 10000 : 100);
+      List<SimpleFeature> expected = new ArrayList<>();
+      for (SimpleFeature sf : all)
+      {
+        if (sf.getBegin() <= to && sf.getEnd() >= from)
+        {
+          expected.add(sf);
+        }
+      }
+      List<SimpleFeature> actual = store.findOverlaps(from, to);
+      assertEquals(actual.size(), expected.size());
+      assertTrue(actual.containsAll(expected));
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testFromSorted()
+  {
+    Random random = new Random(167);
+    List<SimpleFeature> features = new ArrayList<>();
+    for (int i = 0; i < 2000; i++)
+    {
+      int from = random.nextInt(10000);
+      int length = i % 4 == 0 ? 0
+              : random.nextInt(i % 10 == 0 ? 1000 : 30);
+      features.add(new SimpleFeature(from, from + length, "desc" + i % 5));
+    }
+    Collections.sort(features, RangeComparator.BY_START_POSITION);
+    for (boolean indexed : new boolean[] { false, true })
+    {
+      IntervalStore<SimpleFeature> expected = new IntervalStore<>(indexed);
+      expected.addAll(features);
+      IntervalStore<SimpleFeature> store = IntervalStore
+              .fromSorted(features.iterator(), indexed);
+      assertTrue(store.isValid());
+      assertEquals(store.size(), features.size());
+
+      /*
+       * the same intervals are non-nested, but a nested interval contained
+       * by two others may be placed in either
+       */
+      String nl = System.lineSeparator();
+      assertEquals(store.toString().split(nl)[0],
+              expected.toString().split(nl)[0]);
+      assertEquals(store.findOverlaps(0, 20000).size(), features.size());
+      assertTrue(store.containsAll(features));
+      assertTrue(store.remove(features.get(100)));
+      assertTrue(store.isValid());
+
+      /*
+       * out of order input is sorted and then routed
+       */
+      List<SimpleFeature> unsorted = new ArrayList<>(features);
+      Collections.swap(unsorted, 1000, 1500);
+      store = IntervalStore.fromSorted(unsorted.iterator(), indexed);
+      assertTrue(store.isValid());
+      assertEquals(store.size(), features.size());
+      for (int q = 0; q < 20; q++)
+      {
+        int from = random.nextInt(10000);
+        List<SimpleFeature> overlaps = store.findOverlaps(from, from + 50);
+        assertEquals(overlaps.size(),
+                expected.findOverlaps(from, from + 50).size());
+      }
+    }
+  }
+
+  /**
+   * Reversed input is sorted and routed in one pass, giving the same tiers as
+   * sorted input
+   */
+  @Test(groups = "Functional")
+  public void testFromSorted_reversed()
+  {
+    Random random = new Random(173);
+    List<SimpleFeature> features = new ArrayList<>();
+    for (int i = 0; i < 3000; i++)
+    {
+      int from = random.nextInt(10000);
+      int length = i % 3 == 0 ? 0 : random.nextInt(i % 10 == 0 ? 500 : 20);
+      features.add(new SimpleFeature(from, from + length, "desc" + i));
+    }
+    Collections.sort(features, RangeComparator.BY_START_POSITION);
+    List<SimpleFeature> reversed = new ArrayList<>(features);
+    Collections.reverse(reversed);
+    reversed.add(1000, null);
+
+    for (boolean indexed : new boolean[] { false, true })
+    {
+      IntervalStore<SimpleFeature> expected = IntervalStore
+              .fromSorted(features.iterator(), indexed);
+      IntervalStore<SimpleFeature> store = IntervalStore
+              .fromSorted(reversed.iterator(), indexed);
+      assertTrue(store.isValid());
+      assertEquals(store.size(), features.size());
+      assertTrue(store.containsAll(features));
+      assertEquals(getTierSizes(store), getTierSizes(expected));
+      assertEquals(store.findOverlaps(0, 20000).size(), features.size());
+    }
+  }
+
+  /**
+   * Answers the number of intervals held in the non-nested, nested and point
+   * tiers of the store
+   * 
+   * @param store
+   * @return
+   */
+  private static List<Integer> getTierSizes(IntervalStore<?> store)
+  {
+    List<?> nonNested = (List<?>) PA.getValue(store, "nonNested");
+    NCList<?> nested = (NCList<?>) PA.getValue(store, "nested");
+    PointList<?> points = (PointList<?>) PA.getValue(store, "points");
+    return Arrays.asList(nonNested.size(),
+            nested == null ? 0 : nested.size(), points.size());
+  }
 }
@@ -0,0 +1,182 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import nclist.api.IntervalStoreI;
+import nclist.impl.IntervalStores.Engine;
+import nclist.impl.IntervalStores.Statistics;
+
+public class IntervalStoresTest
+{
+  @Test(groups = "Functional")
+  public void testAnalyse()
+  {
+    List<SimpleFeature> ranges = new ArrayList<>();
+    ranges.add(new SimpleFeature(10, 10, ""));
+    ranges.add(new SimpleFeature(10, 50, ""));
+    ranges.add(new SimpleFeature(20, 30, ""));
+    ranges.add(new SimpleFeature(25, 25, ""));
+    Statistics stats = IntervalStores.analyse(ranges, true);
+    assertEquals(stats.getSize(), 4);
+    assertEquals(stats.getSampleSize(), 4);
+    assertEquals(stats.getPointFraction(), 0.5d);
+    assertEquals(stats.getMedianLength(), 10);
+    assertEquals(stats.getMaxLength(), 40);
+    assertEquals(stats.getEstimatedDepth(), 3);
+    assertTrue(stats.isBinnable());
+    assertTrue(stats.isMutable());
+    assertEquals(stats.getEngine(), Engine.NCLIST);
+    assertTrue(stats.toString().contains("engine=NCLIST"));
+
+    stats = IntervalStores.analyse(new ArrayList<SimpleFeature>(), false);
+    assertEquals(stats.getSize(), 0);
+    assertEquals(stats.getEstimatedDepth(), 0);
+    assertEquals(stats.getEngine(), Engine.IMPLICIT_TREE);
+  }
+
+  @Test(groups = "Functional")
+  public void testAnalyse_sampled()
+  {
+    List<SimpleFeature> ranges = generate(new Random(7), 50000, false);
+    Statistics stats = IntervalStores.analyse(ranges, true);
+    assertEquals(stats.getSize(), 50000);
+    assertEquals(stats.getSampleSize(), 10000);
+  }
+
+  @Test(groups = "Functional")
+  public void testChoose()
+  {
+    Random random = new Random(11);
+    List<SimpleFeature> shallow = generate(random, 2000, false);
+    List<SimpleFeature> deep = generate(random, 2000, true);
+
+    assertEquals(IntervalStores.analyse(shallow, true).getEngine(),
+            Engine.NCLIST);
+    assertEquals(IntervalStores.analyse(shallow, false).getEngine(),
+            Engine.IMPLICIT_TREE);
+    assertEquals(IntervalStores.analyse(deep, true).getEngine(),
+            Engine.AUGMENTED_TREE);
+    assertEquals(IntervalStores.analyse(deep, false).getEngine(),
+            Engine.AILIST);
+
+    /*
+     * short intervals with a few very long ones
+     */
+    List<SimpleFeature> mixed = new ArrayList<>(shallow);
+    for (int i = 0; i < 10; i++)
+    {
+      mixed.add(new SimpleFeature(40000 * i, 40000 * i + 100000, ""));
+    }
+    assertEquals(IntervalStores.analyse(mixed, true).getEngine(),
+            Engine.STRATIFIED);
+    assertEquals(IntervalStores.analyse(mixed, false).getEngine(),
+            Engine.IMPLICIT_TREE);
+
+    /*
+     * mostly point features (such as SNVs) go to IntervalStore's point tier
+     */
+    List<SimpleFeature> points = new ArrayList<>();
+    for (int i = 0; i < 1000; i++)
+    {
+      int pos = random.nextInt(100000);
+      points.add(new SimpleFeature(pos, pos + (i % 3 == 0 ? 5 : 0), ""));
+    }
+    assertEquals(IntervalStores.analyse(points, true).getEngine(),
+            Engine.NCLIST);
+    points.add(new SimpleFeature(-5, -5, ""));
+    assertEquals(IntervalStores.analyse(points, true).getEngine(),
+            Engine.NCLIST);
+
+    /*
+     * deeply nested short intervals are binned, unless out of the range
+     * for binning
+     */
+    List<SimpleFeature> nested = new ArrayList<>();
+    for (int i = 0; i < 100; i++)
+    {
+      int centre = 1000 + 500 * i;
+      for (int j = 1; j <= 20; j++)
+      {
+        nested.add(new SimpleFeature(centre - 10 * j, centre + 10 * j, ""));
+      }
+    }
+    assertEquals(IntervalStores.analyse(nested, true).getEngine(),
+            Engine.BINNED);
+    nested.add(new SimpleFeature(-5, -1, ""));
+    assertEquals(IntervalStores.analyse(nested, true).getEngine(),
+            Engine.AUGMENTED_TREE);
+  }
+
+  @Test(groups = "Functional")
+  public void testCreate()
+  {
+    Random random = new Random(13);
+    List<SimpleFeature> ranges = generate(random, 1000, true);
+    for (Engine engine : Engine.values())
+    {
+      IntervalStoreI<SimpleFeature> store = IntervalStores.create(ranges,
+              engine);
+      assertEquals(store.size(), ranges.size());
+      assertTrue(store.isValid());
+      assertEquals(store.findOverlaps(100, 200).size(),
+              countOverlaps(ranges, 100, 200));
+      if (engine.isMutable())
+      {
+        assertTrue(store.remove(ranges.get(0)));
+        assertFalse(store.contains(ranges.get(0)));
+      }
+    }
+
+    IntervalStoreI<SimpleFeature> store = IntervalStores.create(ranges);
+    assertTrue(store instanceof AugmentedIntervalTree);
+    store = IntervalStores.create(ranges, false);
+    assertTrue(store instanceof AIListStore);
+  }
+
+  private static int countOverlaps(List<SimpleFeature> ranges, long from,
+          long to)
+  {
+    int count = 0;
+    for (SimpleFeature sf : ranges)
+    {
+      if (sf.getBegin() <= to && sf.getEnd() >= from)
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Generates intervals starting in the range [0, 200 * count), either of
+   * length 10 to 59, so rarely nested, or of lengths spread over orders of
+   * magnitude up to the full range, so deeply nested
+   *
+   * @param random
+   * @param count
+   * @param deep
+   * @return
+   */
+  private static List<SimpleFeature> generate(Random random, int count,
+          boolean deep)
+  {
+    int maxPos = 200 * count;
+    List<SimpleFeature> ranges = new ArrayList<>();
+    for (int i = 0; i < count; i++)
+    {
+      int from = random.nextInt(maxPos);
+      int length = deep ? (int) Math.pow(maxPos, random.nextDouble())
+              : 10 + random.nextInt(50);
+      ranges.add(new SimpleFeature(from, from + length, "desc" + i));
+    }
+    return ranges;
+  }
+}
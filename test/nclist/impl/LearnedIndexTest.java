@@ -0,0 +1,144 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class LearnedIndexTest
+{
+  @Test(groups = "Functional")
+  public void testFirstAtOrAfter()
+  {
+    int[] keys = new int[] { 3, 5, 5, 5, 9, 20, 21, 22, 100 };
+    LearnedIndex index = new LearnedIndex(keys);
+    assertEquals(index.size(), 9);
+    assertEquals(index.firstAtOrAfter(-10), 0);
+    assertEquals(index.firstAtOrAfter(3), 0);
+    assertEquals(index.firstAtOrAfter(4), 1);
+    assertEquals(index.firstAtOrAfter(5), 1);
+    assertEquals(index.firstAtOrAfter(6), 4);
+    assertEquals(index.firstAtOrAfter(21), 6);
+    assertEquals(index.firstAtOrAfter(23), 8);
+    assertEquals(index.firstAtOrAfter(100), 8);
+    assertEquals(index.firstAtOrAfter(101), 9);
+  }
+
+  @Test(groups = "Functional")
+  public void testFirstBeginAfter()
+  {
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 100; i++)
+    {
+      ranges.add(new Range(10 * i, 10 * i + 15));
+    }
+    PositionIndex index = PositionIndex.build(SearchIndex.LEARNED, ranges);
+    assertEquals(index.firstBeginAfter(-1, 0), 0);
+    assertEquals(index.firstBeginAfter(0, 0), 1);
+    assertEquals(index.firstBeginAfter(9, 0), 1);
+    assertEquals(index.firstBeginAfter(10, 0), 2);
+    assertEquals(index.firstBeginAfter(500, 0), 51);
+    assertEquals(index.firstBeginAfter(500, 40), 51);
+    assertEquals(index.firstBeginAfter(500, 60), 60);
+    assertEquals(index.firstBeginAfter(990, 0), 100);
+    assertEquals(index.firstBeginAfter(5000, 99), 100);
+
+    /*
+     * overlaps of 495-512 are intervals 48 to 51 (480-495 to 510-525)
+     */
+    int first = index.firstAtOrAfter(495);
+    assertEquals(first, 48);
+    assertEquals(index.firstBeginAfter(512, first), 52);
+  }
+
+  @Test(groups = "Functional")
+  public void testFirstAtOrAfter_empty()
+  {
+    LearnedIndex index = new LearnedIndex(new int[0]);
+    assertEquals(index.firstAtOrAfter(1), 0);
+    assertEquals(index.getSegmentCount(), 0);
+  }
+
+  /**
+   * Evenly spaced keys should be modelled by one segment
+   */
+  @Test(groups = "Functional")
+  public void testGetSegmentCount_uniform()
+  {
+    int[] keys = new int[100000];
+    for (int i = 0; i < keys.length; i++)
+    {
+      keys[i] = 7 * i + 3;
+    }
+    LearnedIndex index = new LearnedIndex(keys);
+    assertEquals(index.getSegmentCount(), 1);
+    assertEquals(index.firstAtOrAfter(7 * 5000 + 3), 5000);
+    assertEquals(index.firstAtOrAfter(7 * 5000 + 4), 5001);
+  }
+
+  /**
+   * Compares results with a binary search, on random keys that are clustered,
+   * and include long runs of duplicates
+   */
+  @Test(groups = "Functional")
+  public void testFirstAtOrAfter_randomised()
+  {
+    Random random = new Random(131);
+    for (int n : new int[] { 1, 2, 10, 1000, 100000 })
+    {
+      int[] keys = new int[n];
+      int key = random.nextInt(100) - 50;
+      for (int i = 0; i < n; i++)
+      {
+        int r = random.nextInt(100);
+        if (r < 2)
+        {
+          key += random.nextInt(1000000); // a big gap
+        }
+        else if (r < 40)
+        {
+          key += random.nextInt(20);
+        }
+        else if (r == 40)
+        {
+          /*
+           * a run of duplicates
+           */
+          int run = Math.min(n - 1 - i, random.nextInt(500));
+          Arrays.fill(keys, i, i + run, key);
+          i += run;
+        }
+        keys[i] = key;
+      }
+      LearnedIndex index = new LearnedIndex(keys);
+      assertTrue(index.getSegmentCount() <= n);
+      long min = keys[0] - 10L;
+      long max = keys[n - 1] + 10L;
+      for (int q = 0; q < 2000; q++)
+      {
+        long target = min + (long) (random.nextDouble() * (max - min));
+        assertEquals(index.firstAtOrAfter(target),
+                expected(keys, target), "target " + target);
+      }
+      for (int i = 0; i < n; i += Math.max(1, n / 500))
+      {
+        assertEquals(index.firstAtOrAfter(keys[i]), expected(keys, keys[i]));
+      }
+    }
+  }
+
+  private static int expected(int[] keys, long target)
+  {
+    int i = 0;
+    while (i < keys.length && keys[i] < target)
+    {
+      i++;
+    }
+    return i;
+  }
+}
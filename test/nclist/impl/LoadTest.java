@@ -1,5 +1,6 @@
 package nclist.impl;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -8,7 +9,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
 
 import org.testng.annotations.Test;
 
@@ -32,6 +37,16 @@ public class LoadTest
    */
   private static final String GENES_FILENAME = "test/nclist/impl/humanGenes.csv";
 
+  /*
+   * fixed random seed for repeatable query positions
+   */
+  private static final int RANDOM_SEED = 732;
+
+  /*
+   * width of query ranges used in timing queries
+   */
+  private static final int QUERY_WIDTH = 1000;
+
   /**
    * This 'test' loads a file of variants interval data to an NCList then
    * queries the list to report its greatest depth, and number of single-locus
@@ -251,4 +266,145 @@ public class LoadTest
   
     System.out.println("testIntervalStoreDepth_genes: end\n");
   }
+
+  /**
+   * This 'test' loads the variants, and the genes on each chromosome, into an
+   * NCList, an ImplicitIntervalTree and an AIListStore, and reports the time
+   * taken to build each, and to run a number of random overlap queries on each
+   * 
+   * @throws IOException
+   */
+  @Test(groups = "Functional")
+  public void testQueryTiming_datasets() throws IOException
+  {
+    System.out.println("\ntestQueryTiming_datasets: start");
+    System.out.println("Data\tsize\tncl build ms\tiit build ms"
+            + "\tail build ms\tncl query ms\tiit query ms\tail query ms");
+    timeQueries("Variants", readIntervals(VARIANTS_FILENAME, 0, -1));
+    Map<String, List<SimpleFeature>> genes = new LinkedHashMap<>();
+    for (SimpleFeature sf : readIntervals(GENES_FILENAME, 1, 3))
+    {
+      String chr = sf.getDescription();
+      if (!genes.containsKey(chr))
+      {
+        genes.put(chr, new ArrayList<SimpleFeature>());
+      }
+      genes.get(chr).add(sf);
+    }
+    for (Entry<String, List<SimpleFeature>> chr : genes.entrySet())
+    {
+      timeQueries("chr" + chr.getKey(), chr.getValue());
+    }
+    System.out.println("testQueryTiming_datasets: end\n");
+  }
+
+  /**
+   * Helper method that reads intervals from a csv data file, given the column
+   * number of the start position (followed by the end position), and of the
+   * column to use as the interval description (or -1 for the column after
+   * the end position)
+   * 
+   * @param filename
+   * @param fromColumn
+   * @param descColumn
+   * @return
+   * @throws IOException
+   */
+  protected List<SimpleFeature> readIntervals(String filename,
+          int fromColumn, int descColumn) throws IOException
+  {
+    File f = new File(filename);
+    if (!f.exists())
+    {
+      fail(filename + " not found - please unzip " + filename + ".zip");
+    }
+    List<SimpleFeature> intervals = new ArrayList<>();
+    try (BufferedReader br = new BufferedReader(new FileReader(f)))
+    {
+      String line = br.readLine();
+      while (line != null)
+      {
+        if (!line.startsWith("#"))
+        {
+          String[] tokens = line.split("\\,");
+          int from = Integer.parseInt(tokens[fromColumn]);
+          int to = Integer.parseInt(tokens[fromColumn + 1]);
+          String desc = tokens[descColumn < 0 ? fromColumn + 2 : descColumn];
+          intervals.add(new SimpleFeature(from, to, desc));
+        }
+        line = br.readLine();
+      }
+    }
+    return intervals;
+  }
+
+  /**
+   * Helper method that builds an NCList, an ImplicitIntervalTree and an
+   * AIListStore from the intervals, runs the same random queries on each,
+   * checks they give the same number of results, and reports the times taken
+   * 
+   * @param title
+   * @param intervals
+   */
+  protected void timeQueries(String title, List<SimpleFeature> intervals)
+  {
+    int queryCount = 10000;
+    long now = System.nanoTime();
+    NCList<SimpleFeature> ncl = new NCList<>(intervals);
+    long nclBuild = System.nanoTime() - now;
+    now = System.nanoTime();
+    ImplicitIntervalTree<SimpleFeature> iit = new ImplicitIntervalTree<>(
+            intervals);
+    long iitBuild = System.nanoTime() - now;
+    assertTrue(iit.isValid());
+    now = System.nanoTime();
+    AIListStore<SimpleFeature> ail = new AIListStore<>(intervals);
+    long ailBuild = System.nanoTime() - now;
+    assertTrue(ail.isValid());
+
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (SimpleFeature sf : intervals)
+    {
+      min = Math.min(min, sf.getBegin());
+      max = Math.max(max, sf.getEnd());
+    }
+    long span = Math.max(1L, (long) max - min);
+    Random random = new Random(RANDOM_SEED);
+    long[] queries = new long[queryCount];
+    for (int i = 0; i < queryCount; i++)
+    {
+      queries[i] = min + (long) (random.nextDouble() * span);
+    }
+
+    long nclCount = 0;
+    now = System.nanoTime();
+    for (long from : queries)
+    {
+      nclCount += ncl.findOverlaps(from, from + QUERY_WIDTH).size();
+    }
+    long nclQuery = System.nanoTime() - now;
+    long iitCount = 0;
+    now = System.nanoTime();
+    for (long from : queries)
+    {
+      iitCount += iit.findOverlaps(from, from + QUERY_WIDTH).size();
+    }
+    long iitQuery = System.nanoTime() - now;
+    assertEquals(iitCount, nclCount);
+    long ailCount = 0;
+    now = System.nanoTime();
+    for (long from : queries)
+    {
+      ailCount += ail.findOverlaps(from, from + QUERY_WIDTH).size();
+    }
+    long ailQuery = System.nanoTime() - now;
+    assertEquals(ailCount, nclCount);
+
+    System.out.println(String.format(
+            "%s\t%d\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f", title,
+            intervals.size(), nclBuild / 1000000f, iitBuild / 1000000f,
+            ailBuild / 1000000f, nclQuery / 1000000f, iitQuery / 1000000f,
+            ailQuery / 1000000f));
+  }
 }
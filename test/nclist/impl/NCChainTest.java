@@ -0,0 +1,64 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class NCChainTest
+{
+  /**
+   * Answers a node with a chain of single nested ranges 0-2n, 1-(2n-1), ...
+   * 
+   * @param n
+   * @return
+   */
+  private static NCNode<Range> onion(int n)
+  {
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < n; i++)
+    {
+      ranges.add(new Range(i, 2 * n - i));
+    }
+    return new NCNode<>(ranges);
+  }
+
+  @Test(groups = "Functional")
+  public void testDetect()
+  {
+    assertNull(NCChain.detect(onion(NCChain.MIN_LENGTH - 1)));
+
+    NCNode<Range> head = onion(20);
+    NCChain<Range> chain = NCChain.detect(head);
+    assertEquals(chain.length(), 20);
+    assertSame(chain.getLayer(0), head);
+    assertEquals(chain.getLayer(19).getRegion().toString(), "19-21");
+
+    /*
+     * a second subregion ends the chain
+     */
+    head.addNode(new NCNode<>(new Range(11, 12)));
+    chain = NCChain.detect(head);
+    assertEquals(chain.length(), 12);
+    assertEquals(chain.getLayer(11).getRegion().toString(), "11-29");
+  }
+
+  @Test(groups = "Functional")
+  public void testCountOverlaps()
+  {
+    NCChain<Range> chain = NCChain.detect(onion(20)); // 0-40 to 19-21
+    assertEquals(chain.countOverlaps(20, 20), 20);
+    assertEquals(chain.countOverlaps(19, 21), 20);
+    assertEquals(chain.countOverlaps(5, 5), 6);
+    assertEquals(chain.countOverlaps(35, 50), 6);
+    assertEquals(chain.countOverlaps(-10, 0), 1);
+    assertEquals(chain.countOverlaps(40, 41), 1);
+    assertEquals(chain.countOverlaps(-10, -1), 0);
+    assertEquals(chain.countOverlaps(41, 50), 0);
+    assertEquals(chain.countOverlaps(-10, 50), 20);
+  }
+}
@@ -7,6 +7,7 @@ import static org.testng.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
@@ -69,6 +70,54 @@ public class NCListRandomisedTest
     testDelete_pseudoRandom(ncl, features);
   }
 
+  @Test(groups = "Functional", dataProvider = "scalesOfLife")
+  public void test_pseudoRandom_removeOverlapping(Integer scale)
+  {
+    NCList<SimpleFeature> ncl = new NCList<>();
+    List<SimpleFeature> features = new ArrayList<>(scale);
+
+    testAdd_pseudoRandom(scale, ncl, features);
+
+    /*
+     * remove features in randomly chosen ranges until all are gone,
+     * verifying the result by brute force at each stage
+     */
+    while (!features.isEmpty())
+    {
+      int r1 = random.nextInt(scale + 1);
+      int r2 = random.nextInt(scale + 1);
+      final int from = Math.min(r1, r2);
+      final int to = Math.max(r1, r2);
+      boolean overlapping = random.nextBoolean();
+      String pp = ncl.prettyPrint();
+      List<SimpleFeature> expected = new ArrayList<>();
+      for (SimpleFeature sf : features)
+      {
+        boolean remove = overlapping ? sf.getBegin() <= to && sf.getEnd() >= from
+                : sf.getBegin() >= from && sf.getEnd() <= to;
+        if (!remove)
+        {
+          expected.add(sf);
+        }
+      }
+      boolean removed = overlapping ? ncl.removeOverlapping(from, to)
+              : ncl.removeRange(from, to);
+      assertEquals(removed, expected.size() < features.size());
+      features = expected;
+
+      boolean valid = ncl.isValid();
+      if (!valid)
+      {
+        System.err.println(String.format("Before\n%s\nAfter\n%s\n", pp,
+                ncl.prettyPrint()));
+      }
+      assertTrue(valid, String.format("NCList invalid after removing %d-%d",
+              from, to));
+      assertEquals(ncl.size(), features.size());
+      assertTrue(ncl.getEntries().containsAll(features));
+    }
+  }
+
   /**
    * Pick randomly selected entries to delete in turn, checking the NCList size
    * and validity at each stage, until it is empty
@@ -292,5 +341,23 @@ public class NCListRandomisedTest
                         begin, end, from, to));
       }
     }
+
+    /*
+     * check the ordered iterator returns the same entries, in start order
+     */
+    List<SimpleFeature> ordered = new ArrayList<>();
+    Iterator<SimpleFeature> it = ncl.orderedIterator(from, to);
+    while (it.hasNext())
+    {
+      SimpleFeature sf = it.next();
+      if (!ordered.isEmpty())
+      {
+        assertTrue(sorter.compare(ordered.get(ordered.size() - 1), sf) <= 0,
+                "orderedIterator out of order at " + sf.toString());
+      }
+      ordered.add(sf);
+    }
+    assertEquals(ordered.size(), overlaps.size());
+    assertTrue(ordered.containsAll(overlaps));
   }
 }
@@ -12,6 +12,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import org.testng.annotations.Test;
 
@@ -73,6 +74,395 @@ public class NCListTest
     assertEquals(((IntervalI) overlaps.get(0)).getEnd(), 120);
   }
 
+  @Test(groups = "Functional")
+  public void testBuildSearchIndex()
+  {
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 1000; i++)
+    {
+      ranges.add(new Range(10 * i, 10 * i + 15));
+      ranges.add(new Range(10 * i + 1, 10 * i + 2));
+    }
+    NCList<Range> ncl = new NCList<>(ranges);
+    assertEquals(ncl.getSearchIndex(), SearchIndex.BINARY);
+    List<Range> expected = ncl.findOverlaps(4995, 5012);
+    assertEquals(expected.size(), 6);
+
+    ncl.buildSearchIndex(SearchIndex.LEARNED);
+    assertEquals(ncl.getSearchIndex(), SearchIndex.LEARNED);
+    assertEquals(ncl.findOverlaps(4995, 5012), expected);
+    assertTrue(ncl.findOverlaps(-10, -1).isEmpty());
+    assertEquals(ncl.findOverlaps(9999, 20000).size(), 1);
+
+    ncl.buildSearchIndex(SearchIndex.EYTZINGER);
+    assertEquals(ncl.getSearchIndex(), SearchIndex.EYTZINGER);
+    assertEquals(ncl.findOverlaps(4995, 5012), expected);
+    assertTrue(ncl.findOverlaps(-10, -1).isEmpty());
+    assertEquals(ncl.findOverlaps(9999, 20000).size(), 1);
+
+    /*
+     * modification discards the index
+     */
+    Range r = new Range(5011, 5011);
+    ncl.add(r);
+    assertEquals(ncl.getSearchIndex(), SearchIndex.BINARY);
+    assertEquals(ncl.findOverlaps(4995, 5012).size(), 7);
+    ncl.buildSearchIndex(SearchIndex.LEARNED);
+
+    /*
+     * removing a nested interval leaves the top level (and its index)
+     * unchanged; removing a top level interval discards it
+     */
+    assertTrue(ncl.remove(r));
+    assertEquals(ncl.getSearchIndex(), SearchIndex.LEARNED);
+    assertEquals(ncl.findOverlaps(4995, 5012), expected);
+    assertTrue(ncl.remove(new Range(5000, 5015)));
+    assertEquals(ncl.getSearchIndex(), SearchIndex.BINARY);
+    ncl.buildSearchIndex(SearchIndex.LEARNED);
+    ncl.clear();
+    assertEquals(ncl.getSearchIndex(), SearchIndex.BINARY);
+  }
+
+  /**
+   * A chain of nested intervals too deep for recursive traversal
+   */
+  @Test(groups = "Functional")
+  public void testDeepNesting()
+  {
+    int n = 100000;
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < n; i++)
+    {
+      ranges.add(new Range(i, 2 * n - i));
+    }
+    Collections.reverse(ranges);
+    NCList<Range> ncl = new NCList<>(ranges);
+    assertEquals(ncl.size(), n);
+    assertEquals(ncl.getDepth(), n);
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.getEntries().size(), n);
+    assertTrue(ncl.toString().startsWith("[0-200000 [1-199999 [2-199998 ["));
+    assertTrue(ncl.toString().contains(" [99999-100001]]]"));
+
+    assertEquals(ncl.findOverlaps(n - 10, n - 10).size(), n - 9);
+    assertEquals(ncl.findOverlaps(2 * n - 5, 3 * n).size(), 6);
+    assertTrue(ncl.contains(new Range(n - 1, n + 1)));
+    assertFalse(ncl.contains(new Range(n - 1, n + 2)));
+
+    int count = 0;
+    Iterator<Range> it = ncl.iterator();
+    while (it.hasNext())
+    {
+      assertEquals(it.next().getBegin(), count++);
+    }
+    assertEquals(count, n);
+
+    /*
+     * remove from the middle of the chain, and from its innermost end
+     */
+    assertTrue(ncl.remove(new Range(n / 2, 2 * n - n / 2)));
+    assertEquals(ncl.size(), n - 1);
+    assertEquals(ncl.getDepth(), n - 1);
+    assertTrue(ncl.removeRange(n - 100, n + 100));
+    assertEquals(ncl.size(), n - 101);
+    assertEquals(ncl.getDepth(), n - 101);
+
+    /*
+     * add at the innermost end of the chain
+     */
+    ncl.add(new Range(n - 100, n + 100));
+    assertEquals(ncl.size(), n - 100);
+    assertEquals(ncl.getDepth(), n - 100);
+    assertTrue(ncl.isValid());
+  }
+
+  /**
+   * Queries of onion-like nested intervals, which are summarised as chains,
+   * checked against a brute force search as they are added and removed
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_chains()
+  {
+    Random random = new Random(149);
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 500; i++)
+    {
+      ranges.add(new Range(i, 2000 - i));
+      ranges.add(new Range(3000 + i, 4000 - i));
+    }
+    NCList<Range> ncl = new NCList<>(new ArrayList<>(ranges));
+    @SuppressWarnings("unchecked")
+    List<NCNode<Range>> subranges = (List<NCNode<Range>>) PA.getValue(ncl,
+            "subranges");
+    assertEquals(subranges.get(0).getChain().length(), 500);
+    assertEquals(subranges.get(1).getChain().length(), 500);
+
+    for (int i = 0; i < 400; i++)
+    {
+      if (i % 2 == 0)
+      {
+        int from = random.nextInt(4000);
+        Range r = new Range(from, from + random.nextInt(100));
+        ncl.add(r);
+        ranges.add(r);
+      }
+      else
+      {
+        assertTrue(
+                ncl.remove(ranges.remove(random.nextInt(ranges.size()))));
+      }
+      if (i % 20 == 0)
+      {
+        int from = i * 10;
+        int to = from + 5;
+        assertEquals(ncl.removeRange(from, to),
+                ranges.removeIf(r -> r.getBegin() >= from && r.getEnd() <= to));
+      }
+      assertTrue(ncl.isValid());
+      for (int q = 0; q < 10; q++)
+      {
+        int from = random.nextInt(4200) - 100;
+        int to = from + random.nextInt(200);
+        List<Range> expected = new ArrayList<>();
+        for (Range r : ranges)
+        {
+          if (r.getBegin() <= to && r.getEnd() >= from)
+          {
+            expected.add(r);
+          }
+        }
+        List<Range> actual = ncl.findOverlaps(from, to);
+        assertEquals(actual.size(), expected.size());
+        assertTrue(actual.containsAll(expected));
+      }
+    }
+  }
+
+  /**
+   * Test that queries which cover whole subtrees give the same results as
+   * testing each interval, both before and after the subtrees are modified
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_coveredSubtrees()
+  {
+    Random random = new Random(151);
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 2000; i++)
+    {
+      int from = random.nextInt(10000);
+      ranges.add(new Range(from, from + (int) Math.pow(2000,
+              random.nextDouble())));
+    }
+    NCList<Range> ncl = new NCList<>(new ArrayList<>(ranges));
+    @SuppressWarnings("unchecked")
+    List<NCNode<Range>> subranges = (List<NCNode<Range>>) PA.getValue(ncl,
+            "subranges");
+    NCNode<Range> largest = subranges.get(0);
+    for (NCNode<Range> node : subranges)
+    {
+      if (node.size() > largest.size())
+      {
+        largest = node;
+      }
+    }
+    assertTrue(largest.size() >= NCNode.MIN_FLATTEN_SIZE);
+    assertFalse(largest.isFlattened());
+    List<Range> found = ncl.findOverlaps(largest.getBegin(),
+            largest.getEnd());
+    assertTrue(largest.isFlattened());
+    List<Range> entries = new ArrayList<>();
+    largest.getEntries(entries);
+    assertTrue(found.containsAll(entries));
+
+    /*
+     * adding inside the subtree discards its flattened copy
+     */
+    Range r = new Range(largest.getBegin() + 1, largest.getEnd());
+    ncl.add(r);
+    ranges.add(r);
+    assertTrue(largest.contains(r));
+    assertFalse(largest.isFlattened());
+    assertTrue(ncl.findOverlaps(largest.getBegin(), largest.getEnd())
+            .contains(r));
+    assertTrue(largest.isFlattened());
+    assertTrue(ncl.remove(r));
+    ranges.remove(r);
+    assertFalse(largest.isFlattened());
+
+    for (int i = 0; i < 300; i++)
+    {
+      if (i % 3 == 0)
+      {
+        int from = random.nextInt(10000);
+        r = new Range(from, from + random.nextInt(50));
+        ncl.add(r);
+        ranges.add(r);
+      }
+      else if (i % 3 == 1)
+      {
+        assertTrue(
+                ncl.remove(ranges.remove(random.nextInt(ranges.size()))));
+      }
+      else
+      {
+        int from = random.nextInt(10000);
+        int to = from + 20;
+        assertEquals(ncl.removeRange(from, to),
+                ranges.removeIf(x -> x.getBegin() >= from && x.getEnd() <= to));
+      }
+      for (int q = 0; q < 5; q++)
+      {
+        int from = random.nextInt(11000) - 500;
+        int to = from + random.nextInt(3000);
+        List<Range> expected = new ArrayList<>();
+        for (Range x : ranges)
+        {
+          if (x.getBegin() <= to && x.getEnd() >= from)
+          {
+            expected.add(x);
+          }
+        }
+        List<Range> actual = ncl.findOverlaps(from, to);
+        assertEquals(actual.size(), expected.size());
+        assertTrue(actual.containsAll(expected));
+
+        List<Range> visited = new ArrayList<>();
+        ncl.visitOverlaps(from, to, visited::add);
+        assertEquals(visited, actual);
+      }
+    }
+    assertTrue(ncl.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testFromSorted()
+  {
+    Random random = new Random(163);
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 1000; i++)
+    {
+      int from = random.nextInt(5000);
+      ranges.add(new Range(from, from + random.nextInt(i % 10 == 0 ? 500
+              : 20)));
+    }
+    NCList<Range> expected = new NCList<>(new ArrayList<>(ranges));
+    Collections.sort(ranges, RangeComparator.BY_START_POSITION);
+    NCList<Range> ncl = NCList.fromSorted(ranges.iterator());
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.size(), ranges.size());
+    assertEquals(ncl.toString(), expected.toString());
+    assertEquals(ncl.getDepth(), expected.getDepth());
+
+    /*
+     * out of order input falls back to sorting
+     */
+    List<Range> unsorted = new ArrayList<>(ranges);
+    Collections.swap(unsorted, 500, 700);
+    ncl = NCList.fromSorted(unsorted.iterator());
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.toString(), expected.toString());
+
+    Collections.shuffle(unsorted, random);
+    ncl = NCList.fromSorted(unsorted.iterator());
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.toString(), expected.toString());
+
+    ncl = NCList.fromSorted(new ArrayList<Range>().iterator());
+    assertTrue(ncl.isEmpty());
+    assertTrue(ncl.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testLazy()
+  {
+    Random random = new Random(47);
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 2000; i++)
+    {
+      int from = random.nextInt(10000);
+      ranges.add(new Range(from, from + random.nextInt(i % 10 == 0 ? 1000
+              : 20)));
+    }
+    NCList<Range> expected = new NCList<>(new ArrayList<>(ranges));
+    NCList<Range> ncl = NCList.lazy(new ArrayList<>(ranges));
+    assertEquals(ncl.size(), ranges.size());
+
+    /*
+     * queries match those of an NCList built in full
+     */
+    for (int i = 0; i < 200; i++)
+    {
+      int from = random.nextInt(11000);
+      int to = from + random.nextInt(200);
+      List<Range> found = ncl.findOverlaps(from, to);
+      List<Range> wanted = expected.findOverlaps(from, to);
+      Collections.sort(found, RangeComparator.BY_START_POSITION);
+      Collections.sort(wanted, RangeComparator.BY_START_POSITION);
+      assertEquals(found, wanted);
+    }
+
+    /*
+     * as do the iterator, modifications and the full structure
+     */
+    assertEquals(ncl.getEntries(), expected.getEntries());
+    Range r = ranges.get(100);
+    assertTrue(ncl.remove(r));
+    assertTrue(expected.remove(r));
+    ncl.add(new Range(5000, 5010));
+    expected.add(new Range(5000, 5010));
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.toString(), expected.toString());
+    assertEquals(ncl.getDepth(), expected.getDepth());
+
+    ncl = NCList.lazy(new ArrayList<Range>());
+    assertTrue(ncl.isEmpty());
+    assertTrue(ncl.isValid());
+  }
+
+  /**
+   * Verify that concurrent queries which descend into the same unbuilt nodes of
+   * a lazily built NCList all see them correctly built
+   */
+  @Test(groups = "Functional")
+  public void testLazy_concurrentQueries() throws InterruptedException
+  {
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 5000; i++)
+    {
+      ranges.add(new Range(i, 10000 - i));
+      ranges.add(new Range(i, i + 10));
+    }
+    NCList<Range> expected = new NCList<>(new ArrayList<>(ranges));
+    final int expectedCount = expected.findOverlaps(4990, 5010).size();
+
+    for (int repeat = 0; repeat < 5; repeat++)
+    {
+      final NCList<Range> ncl = NCList.lazy(new ArrayList<>(ranges));
+      final List<Integer> counts = Collections
+              .synchronizedList(new ArrayList<Integer>());
+      List<Thread> threads = new ArrayList<>();
+      for (int t = 0; t < 8; t++)
+      {
+        threads.add(new Thread(
+                () -> counts.add(ncl.findOverlaps(4990, 5010).size())));
+      }
+      for (Thread thread : threads)
+      {
+        thread.start();
+      }
+      for (Thread thread : threads)
+      {
+        thread.join();
+      }
+      assertEquals(counts.size(), 8);
+      for (int count : counts)
+      {
+        assertEquals(count, expectedCount);
+      }
+      assertTrue(ncl.isValid());
+    }
+  }
+
   @Test(groups = "Functional")
   public void testAdd_onTheEnd()
   {
@@ -668,6 +1058,202 @@ public class NCListTest
     }
   }
 
+  @Test(groups = "Functional")
+  public void testOrderedIterator()
+  {
+    List<Range> ranges = new ArrayList<>();
+    Range r1 = new Range(1, 100);
+    Range r2 = new Range(10, 30);
+    Range r3 = new Range(10, 20);
+    Range r4 = new Range(15, 30);
+    Range r5 = new Range(20, 20);
+    Range r6 = new Range(25, 110);
+    Range r7 = new Range(26, 40);
+    ranges.add(r7);
+    ranges.add(r6);
+    ranges.add(r5);
+    ranges.add(r4);
+    ranges.add(r3);
+    ranges.add(r2);
+    ranges.add(r1);
+    NCList<Range> ncl = new NCList<>(ranges);
+    // 1-100 [10-30 [10-20, 15-30 [20-20]]], 25-110 [26-40]
+    assertEquals(ncl.toString(),
+            "[1-100 [10-30 [10-20, 15-30 [20-20]]], 25-110 [26-40]]");
+
+    Iterator<Range> it = ncl.orderedIterator();
+    assertSame(it.next(), r1);
+    assertSame(it.next(), r2);
+    assertSame(it.next(), r3);
+    assertSame(it.next(), r4);
+    assertSame(it.next(), r5);
+    assertSame(it.next(), r6);
+    assertSame(it.next(), r7);
+    assertFalse(it.hasNext());
+    try
+    {
+      it.next();
+      fail("expected exception");
+    } catch (NoSuchElementException e)
+    {
+      // expected
+    }
+
+    /*
+     * overlaps of 21-25 in start order
+     */
+    it = ncl.orderedIterator(21, 25);
+    assertSame(it.next(), r1);
+    assertSame(it.next(), r2);
+    assertSame(it.next(), r4);
+    assertSame(it.next(), r6);
+    assertFalse(it.hasNext());
+
+    it = ncl.orderedIterator(101, 120);
+    assertSame(it.next(), r6);
+    assertFalse(it.hasNext());
+
+    assertFalse(ncl.orderedIterator(111, 120).hasNext());
+    assertFalse(new NCList<Range>().orderedIterator().hasNext());
+  }
+
+  /**
+   * Test that removing a node with children promotes them inside a preceding
+   * or following sibling where that encloses them
+   */
+  @Test(groups = "Functional")
+  public void testRemove_promoteInsideSiblings()
+  {
+    List<Range> ranges = new ArrayList<>();
+    Range r2 = new Range(2, 101);
+    ranges.add(new Range(1, 100));
+    ranges.add(r2);
+    ranges.add(new Range(3, 50));
+    ranges.add(new Range(60, 101));
+    ranges.add(new Range(20, 30));
+    NCList<Range> ncl = new NCList<>(ranges);
+    ncl.add(new Range(4, 102));
+    ncl.add(new Range(5, 103));
+    assertEquals(ncl.toString(),
+            "[1-100, 2-101 [3-50 [20-30], 60-101], 4-102, 5-103]");
+
+    /*
+     * 3-50 goes inside 1-100, 60-101 inside 5-103
+     */
+    assertTrue(ncl.remove(r2));
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.size(), 6);
+    assertEquals(ncl.toString(),
+            "[1-100 [3-50 [20-30]], 4-102, 5-103 [60-101]]");
+  }
+
+  @Test(groups = "Functional")
+  public void testRemoveRange()
+  {
+    List<Range> ranges = new ArrayList<>();
+    ranges.add(new Range(1, 100));
+    ranges.add(new Range(2, 50));
+    ranges.add(new Range(5, 10));
+    ranges.add(new Range(30, 40));
+    ranges.add(new Range(60, 70));
+    ranges.add(new Range(80, 120));
+    ranges.add(new Range(90, 95));
+    NCList<Range> ncl = new NCList<>(ranges);
+    assertEquals(ncl.toString(),
+            "[1-100 [2-50 [5-10, 30-40], 60-70], 80-120 [90-95]]");
+
+    assertFalse(ncl.removeRange(3, 4));
+    assertEquals(ncl.size(), 7);
+
+    /*
+     * remove 2-50 and its contents 5-10 and 30-40
+     */
+    assertTrue(ncl.removeRange(2, 50));
+    assertEquals(ncl.size(), 4);
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.toString(), "[1-100 [60-70], 80-120 [90-95]]");
+
+    /*
+     * remove 1-100, 60-70, 90-95; 80-120 not inside the range
+     */
+    assertTrue(ncl.removeRange(0, 100));
+    assertEquals(ncl.size(), 1);
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.toString(), "[80-120]");
+  }
+
+  @Test(groups = "Functional")
+  public void testRemoveOverlapping()
+  {
+    List<Range> ranges = new ArrayList<>();
+    ranges.add(new Range(1, 100));
+    ranges.add(new Range(2, 50));
+    ranges.add(new Range(5, 10));
+    ranges.add(new Range(30, 40));
+    ranges.add(new Range(60, 70));
+    ranges.add(new Range(80, 120));
+    ranges.add(new Range(90, 95));
+    NCList<Range> ncl = new NCList<>(ranges);
+
+    assertFalse(ncl.removeOverlapping(121, 130));
+
+    /*
+     * remove 1-100 and 2-50; 5-10 and 60-70 are promoted
+     */
+    assertTrue(ncl.removeOverlapping(45, 45));
+    assertEquals(ncl.size(), 5);
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.toString(), "[5-10, 30-40, 60-70, 80-120 [90-95]]");
+
+    /*
+     * remove 80-120 - 90-95 is promoted
+     */
+    assertTrue(ncl.removeOverlapping(100, 100));
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.toString(), "[5-10, 30-40, 60-70, 90-95]");
+  }
+
+  /**
+   * Test that removal promotes contained nodes into the right place, including
+   * inside a sibling of the removed node
+   */
+  @Test(groups = "Functional")
+  public void testRemoveIf_promoteInsideSibling()
+  {
+    List<Range> ranges = new ArrayList<>();
+    Range r1 = new Range(1, 100);
+    Range r2 = new Range(2, 101);
+    ranges.add(r1);
+    ranges.add(r2);
+    ranges.add(new Range(3, 50));
+    ranges.add(new Range(60, 101));
+    ranges.add(new Range(20, 30));
+    ranges.add(new Range(102, 110));
+    NCList<Range> ncl = new NCList<>(ranges);
+    assertEquals(ncl.toString(),
+            "[1-100, 2-101 [3-50 [20-30], 60-101], 102-110]");
+
+    /*
+     * removing 2-101 promotes 3-50 inside 1-100
+     */
+    assertTrue(ncl.removeIf(r -> r == r2));
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.size(), 5);
+    assertEquals(ncl.toString(),
+            "[1-100 [3-50 [20-30]], 60-101, 102-110]");
+
+    ncl = new NCList<>(ranges);
+    assertTrue(ncl.removeIf(r -> r.getBegin() == 1 || r.getEnd() == 101));
+    assertTrue(ncl.isValid());
+    assertEquals(ncl.size(), 3);
+    assertEquals(ncl.toString(), "[3-50 [20-30], 102-110]");
+
+    assertFalse(ncl.removeIf(r -> false));
+    assertTrue(ncl.removeIf(r -> true));
+    assertTrue(ncl.isEmpty());
+    assertTrue(ncl.isValid());
+  }
+
   @Test(groups = "Functional")
   public void testFindFirstOverlap()
   {
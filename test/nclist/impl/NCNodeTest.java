@@ -4,9 +4,9 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
-import static org.testng.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.testng.annotations.Test;
@@ -136,34 +136,81 @@ public class NCNodeTest
     assertFalse(node.isValid()); // r3 should precede r2
   }
 
+  /**
+   * Removing the contained regions of a node (which is done through the
+   * NCList holding it) discards its subregions when they are empty
+   */
   @Test(groups = "Functional")
   public void testRemove()
   {
     Range r1 = new Range(10, 20);
     Range r2 = new Range(14, 15);
     Range r3 = new Range(16, 17);
-
-    NCNode<Range> node = new NCNode<>(r1);
-    node.addNode(new NCNode<>(r2));
-    node.addNode(new NCNode<>(r3));
-
-    assertFalse(node.remove(null));
-    assertFalse(node.remove(new Range(10, 21))); // no match
-    try
-    {
-      node.remove(r1); // can't remove root node
-      fail("expected exception");
-    } catch (IllegalArgumentException e)
-    {
-      // expected
-    }
+    NCList<Range> ncl = new NCList<>(
+            new ArrayList<>(Arrays.asList(r1, r2, r3)));
+    @SuppressWarnings("unchecked")
+    NCNode<Range> node = ((List<NCNode<Range>>) PA.getValue(ncl,
+            "subranges")).get(0);
+
+    assertFalse(ncl.remove(null));
+    assertFalse(ncl.remove(new Range(10, 21))); // no match
     assertEquals(node.toString(), "10-20 [14-15, 16-17]");
-    assertTrue(node.remove(new Range(14, 15)));
+    assertTrue(ncl.remove(new Range(14, 15)));
     assertEquals(node.toString(), "10-20 [16-17]");
-    assertTrue(node.remove(new Range(16, 17)));
+    assertTrue(ncl.remove(new Range(16, 17)));
     assertEquals(node.toString(), "10-20");
 
     // enclosed NCList is nulled when empty
     assertNull(node.getSubRegions());
+    assertTrue(node.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testLazyBuild()
+  {
+    Range r1 = new Range(10, 50);
+    List<Range> contained = Arrays.asList(new Range(12, 30),
+            new Range(14, 15), new Range(20, 25), new Range(40, 45));
+    List<Range> all = new ArrayList<>(contained);
+    all.add(0, r1);
+    NCList<Range> ncl = NCList.lazy(all);
+    @SuppressWarnings("unchecked")
+    NCNode<Range> node = ((List<NCNode<Range>>) PA.getValue(ncl,
+            "subranges")).get(0);
+    assertFalse(node.isBuilt());
+
+    /*
+     * size and entries are answered without building the subregions
+     */
+    assertEquals(node.size(), 5);
+    List<Range> entries = new ArrayList<>();
+    node.getEntries(entries);
+    assertEquals(entries.toString(), "[10-50, 12-30, 14-15, 20-25, 40-45]");
+    assertFalse(node.isBuilt());
+
+    /*
+     * a query that descends into the node builds its top level...
+     */
+    List<Range> overlaps = ncl.findOverlaps(41, 42);
+    assertEquals(overlaps.toString(), "[10-50, 40-45]");
+    assertTrue(node.isBuilt());
+
+    /*
+     * ...whose nodes in turn hold their own contained regions unbuilt
+     */
+    @SuppressWarnings("unchecked")
+    List<NCNode<Range>> level = (List<NCNode<Range>>) PA
+            .getValue(node.getSubRegions(), "subranges");
+    assertEquals(level.size(), 2);
+    assertFalse(level.get(0).isBuilt());
+    assertEquals(level.get(0).size(), 3);
+    assertTrue(level.get(1).isBuilt());
+    assertEquals(node.toString(), "10-50 [12-30 [14-15, 20-25], 40-45]");
+    assertTrue(node.isValid());
+
+    node = new NCNode<>(r1, new ArrayList<Range>());
+    assertTrue(node.isBuilt());
+    assertNull(node.getSubRegions());
+    assertEquals(node.size(), 1);
   }
 }
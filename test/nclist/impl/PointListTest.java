@@ -0,0 +1,142 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class PointListTest
+{
+  @Test(groups = "Functional")
+  public void testAdd()
+  {
+    PointList<SimpleFeature> points = new PointList<>();
+    assertTrue(points.isEmpty());
+    assertEquals(points.toString(), "[]");
+    SimpleFeature sf1 = new SimpleFeature(20, 20, "a");
+    SimpleFeature sf2 = new SimpleFeature(10, 10, "b");
+    SimpleFeature sf3 = new SimpleFeature(20, 20, "c");
+    points.add(sf1);
+    points.add(sf2);
+    points.add(sf3);
+    assertEquals(points.size(), 3);
+    assertTrue(points.isValid());
+
+    /*
+     * points at the same position are held in the order added
+     */
+    Iterator<SimpleFeature> it = points.iterator();
+    assertSame(it.next(), sf2);
+    assertSame(it.next(), sf1);
+    assertSame(it.next(), sf3);
+    assertFalse(it.hasNext());
+    assertEquals(points.toString(), "[10:10:b, 20:20:a, 20:20:c]");
+  }
+
+  @Test(groups = "Functional")
+  public void testRemove()
+  {
+    PointList<SimpleFeature> points = new PointList<>();
+    SimpleFeature sf1 = new SimpleFeature(20, 20, "a");
+    SimpleFeature sf2 = new SimpleFeature(20, 20, "b");
+    points.add(sf1);
+    points.add(sf2);
+    assertTrue(points.contains(new SimpleFeature(20, 20, "b")));
+    assertFalse(points.contains(new SimpleFeature(20, 20, "c")));
+    assertFalse(points.contains(new SimpleFeature(21, 21, "a")));
+    assertFalse(points.contains("20"));
+
+    assertFalse(points.remove(new SimpleFeature(19, 19, "a")));
+    assertTrue(points.remove(new SimpleFeature(20, 20, "a")));
+    assertFalse(points.contains(sf1));
+    assertEquals(points.size(), 1);
+    assertTrue(points.remove(sf2));
+    assertTrue(points.isEmpty());
+    assertTrue(points.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testFindOverlaps()
+  {
+    PointList<SimpleFeature> points = new PointList<>();
+    for (int i = 0; i < 10; i++)
+    {
+      points.add(new SimpleFeature(10 * i, 10 * i, "" + i));
+    }
+    List<SimpleFeature> result = new ArrayList<>();
+    points.findOverlaps(15, 40, result);
+    assertEquals(result.toString(), "[20:20:2, 30:30:3, 40:40:4]");
+    result.clear();
+    points.findOverlaps(91, 100, result);
+    assertTrue(result.isEmpty());
+    points.findOverlaps(-5, 0, result);
+    assertEquals(result.toString(), "[0:0:0]");
+
+    Iterator<SimpleFeature> it = points.iterator(85, 95);
+    assertEquals(it.next().toString(), "90:90:9");
+    assertFalse(it.hasNext());
+  }
+
+  /**
+   * Adds, queries and removes enough points to split blocks, verifying
+   * results against a simple list
+   */
+  @Test(groups = "Functional")
+  public void testRandomised()
+  {
+    Random random = new Random(41);
+    PointList<SimpleFeature> points = new PointList<>();
+    List<SimpleFeature> all = new ArrayList<>();
+    for (int i = 0; i < 5 * PointList.MAX_BLOCK_SIZE; i++)
+    {
+      int pos = random.nextInt(1000);
+      SimpleFeature sf = new SimpleFeature(pos, pos, "" + i);
+      points.add(sf);
+      all.add(sf);
+    }
+    assertTrue(points.isValid());
+    for (int i = 0; i < 100; i++)
+    {
+      int from = random.nextInt(1100) - 50;
+      int to = from + random.nextInt(50);
+      List<SimpleFeature> result = new ArrayList<>();
+      points.findOverlaps(from, to, result);
+      int count = 0;
+      for (SimpleFeature sf : all)
+      {
+        if (sf.getBegin() >= from && sf.getBegin() <= to)
+        {
+          assertTrue(result.contains(sf));
+          count++;
+        }
+      }
+      assertEquals(result.size(), count);
+    }
+
+    for (int i = 0; i < all.size(); i += 2)
+    {
+      assertTrue(points.remove(all.get(i)));
+    }
+    assertEquals(points.size(), all.size() / 2);
+    assertTrue(points.isValid());
+
+    List<SimpleFeature> removed = new ArrayList<>();
+    int count = points.removeIf(200, 599, sf -> sf.getBegin() % 2 == 0,
+            removed);
+    assertEquals(removed.size(), count);
+    for (SimpleFeature sf : removed)
+    {
+      assertTrue(sf.getBegin() >= 200 && sf.getBegin() <= 599);
+      assertEquals(sf.getBegin() % 2, 0);
+    }
+    assertEquals(points.size(), all.size() / 2 - count);
+    assertTrue(points.isValid());
+  }
+}
@@ -0,0 +1,133 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class RadixSorterTest
+{
+  @Test(groups = "Functional")
+  public void testGetKey()
+  {
+    /*
+     * keys order as unsigned numbers as the comparator orders intervals
+     */
+    SimpleFeature[] features = { new SimpleFeature(Integer.MIN_VALUE, 0, ""),
+        new SimpleFeature(-10, 20, ""), new SimpleFeature(-10, -10, ""),
+        new SimpleFeature(0, Integer.MAX_VALUE, ""),
+        new SimpleFeature(0, 10, ""), new SimpleFeature(0, 0, ""),
+        new SimpleFeature(0, -5, ""), new SimpleFeature(10, 30, ""),
+        new SimpleFeature(Integer.MAX_VALUE, Integer.MAX_VALUE, "") };
+    for (int i = 1; i < features.length; i++)
+    {
+      long key1 = RadixSorter.getKey(features[i - 1]);
+      long key2 = RadixSorter.getKey(features[i]);
+      assertEquals(Long.signum(Long.compareUnsigned(key1, key2)),
+              Integer.signum(RangeComparator.BY_START_POSITION
+                      .compare(features[i - 1], features[i])),
+              features[i - 1] + " v " + features[i]);
+    }
+    assertEquals(RadixSorter.getKey(new SimpleFeature(3, 7, "a")),
+            RadixSorter.getKey(new SimpleFeature(3, 7, "b")));
+  }
+
+  @Test(groups = "Functional")
+  public void testSort_small()
+  {
+    List<SimpleFeature> features = new ArrayList<>();
+    features.add(new SimpleFeature(20, 30, "a"));
+    features.add(new SimpleFeature(10, 20, "b"));
+    features.add(new SimpleFeature(10, 40, "c"));
+    RadixSorter.sort(features);
+    assertEquals(features.toString(), "[10:40:c, 10:20:b, 20:30:a]");
+  }
+
+  /**
+   * Verify the radix sort gives exactly the order of a (stable) comparison
+   * sort, including the order of intervals which compare equal
+   */
+  @Test(groups = "Functional")
+  public void testSort_matchesComparator()
+  {
+    Random r = new Random(46);
+    int[] sizes = { RadixSorter.MIN_RADIX_SORT_SIZE, 5000, 100000 };
+    for (int size : sizes)
+    {
+      for (int spread : new int[] { 100, 1 << 20, Integer.MAX_VALUE })
+      {
+        List<SimpleFeature> features = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+          int begin = r.nextInt(spread) - spread / 2;
+          int end = r.nextInt(10) == 0 ? begin - r.nextInt(20)
+                  : begin + r.nextInt(spread / 2 + 1);
+          features.add(new SimpleFeature(begin, end, String.valueOf(i)));
+        }
+        features.add(new SimpleFeature(Integer.MIN_VALUE,
+                Integer.MAX_VALUE, "min"));
+        features.add(new SimpleFeature(Integer.MAX_VALUE,
+                Integer.MIN_VALUE, "max"));
+
+        List<SimpleFeature> expected = new ArrayList<>(features);
+        Collections.sort(expected, RangeComparator.BY_START_POSITION);
+        RadixSorter.sort(features);
+        assertEquals(features.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+          assertSame(features.get(i), expected.get(i),
+                  "size " + size + " spread " + spread + " at " + i);
+        }
+      }
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testSort_alreadySorted()
+  {
+    List<Range> ranges = new ArrayList<>();
+    for (int i = 0; i < 1000; i++)
+    {
+      ranges.add(new Range(i, i + 10));
+    }
+    List<Range> sorted = Collections.unmodifiableList(ranges);
+
+    /*
+     * sorted input is left unchanged (not even rewritten)
+     */
+    RadixSorter.sort(sorted);
+    for (int i = 1; i < sorted.size(); i++)
+    {
+      assertTrue(sorted.get(i - 1).getBegin() < sorted.get(i).getBegin());
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testSort_keys()
+  {
+    long[] keys = new long[1000];
+    int[] indices = new int[keys.length];
+    Random r = new Random(46);
+    for (int i = 0; i < keys.length; i++)
+    {
+      keys[i] = r.nextLong();
+      indices[i] = i;
+    }
+    long[] original = keys.clone();
+    RadixSorter.sort(keys, indices);
+    for (int i = 0; i < keys.length; i++)
+    {
+      assertEquals(keys[i], original[indices[i]]);
+      if (i > 0)
+      {
+        assertTrue(Long.compareUnsigned(keys[i - 1], keys[i]) <= 0);
+      }
+    }
+  }
+}
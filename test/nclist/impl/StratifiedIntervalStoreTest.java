@@ -0,0 +1,165 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class StratifiedIntervalStoreTest
+{
+  @Test(groups = "Functional")
+  public void testGetLengthClass()
+  {
+    StratifiedIntervalStore<SimpleFeature> store = new StratifiedIntervalStore<>(
+            10, 100);
+    assertEquals(store.getLengthClass(0), 0);
+    assertEquals(store.getLengthClass(10), 0);
+    assertEquals(store.getLengthClass(11), 1);
+    assertEquals(store.getLengthClass(100), 1);
+    assertEquals(store.getLengthClass(101), -1);
+  }
+
+  @Test(
+    groups = "Functional",
+    expectedExceptions = IllegalArgumentException.class)
+  public void testConstructor_unordered()
+  {
+    new StratifiedIntervalStore<SimpleFeature>(100, 10);
+  }
+
+  @Test(groups = "Functional")
+  public void testAdd_findOverlaps()
+  {
+    StratifiedIntervalStore<SimpleFeature> store = new StratifiedIntervalStore<>(
+            10, 100);
+    assertFalse(store.add(null));
+    SimpleFeature sf1 = new SimpleFeature(10, 50, "");
+    SimpleFeature sf2 = new SimpleFeature(1, 5, "");
+    SimpleFeature sf3 = new SimpleFeature(20, 30, "");
+    SimpleFeature sf4 = new SimpleFeature(0, 100000, "");
+    SimpleFeature sf5 = new SimpleFeature(-10, -5, "");
+    SimpleFeature sf6 = new SimpleFeature(45, 45, "");
+    for (SimpleFeature sf : Arrays.asList(sf1, sf2, sf3, sf4, sf5, sf6))
+    {
+      assertTrue(store.add(sf));
+    }
+    assertEquals(store.size(), 6);
+    assertTrue(store.isValid());
+    assertTrue(
+            Arrays.equals(store.getClassSizes(), new int[] { 4, 1, 1 }));
+
+    assertTrue(store.findOverlaps(100001, 200000).isEmpty());
+    List<SimpleFeature> overlaps = store.findOverlaps(-5, 1);
+    assertEquals(overlaps.size(), 3);
+    assertTrue(overlaps.containsAll(Arrays.asList(sf2, sf4, sf5)));
+
+    /*
+     * sf1 (in the class up to 100 long) starts before the range
+     */
+    overlaps = store.findOverlaps(40, 45);
+    assertEquals(overlaps.size(), 3);
+    assertTrue(overlaps.containsAll(Arrays.asList(sf1, sf4, sf6)));
+  }
+
+  @Test(groups = "Functional")
+  public void testRemove_contains()
+  {
+    StratifiedIntervalStore<SimpleFeature> store = new StratifiedIntervalStore<>(
+            10);
+    SimpleFeature sf1 = new SimpleFeature(10, 20, "Cath");
+    SimpleFeature sf2 = new SimpleFeature(10, 200, "Pfam");
+    store.add(sf1);
+    store.add(sf2);
+    store.add(new SimpleFeature(sf1)); // duplicate
+    assertTrue(store.contains(new SimpleFeature(sf2)));
+    assertFalse(store.contains(new SimpleFeature(10, 21, "Cath")));
+    assertFalse(store.contains(null));
+
+    assertTrue(store.remove(new SimpleFeature(sf1)));
+    assertTrue(store.contains(sf1));
+    assertTrue(store.remove(sf1));
+    assertFalse(store.contains(sf1));
+    assertFalse(store.remove(sf1));
+    assertEquals(store.size(), 1);
+    assertTrue(store.remove(sf2));
+    assertFalse(store.remove(sf2));
+    assertTrue(store.isEmpty());
+    assertTrue(store.isValid());
+  }
+
+  @Test(groups = "Functional")
+  public void testIterator_prettyPrint()
+  {
+    StratifiedIntervalStore<SimpleFeature> store = new StratifiedIntervalStore<>();
+    store.add(new SimpleFeature(30, 60, "desc"));
+    store.add(new SimpleFeature(15, 15, "desc"));
+    store.add(new SimpleFeature(10, 20, "desc"));
+    store.add(new SimpleFeature(10, 5000000, "desc"));
+    Iterator<SimpleFeature> it = store.iterator();
+    assertEquals(it.next().toString(), "10:5000000:desc");
+    assertEquals(it.next().toString(), "10:20:desc");
+    assertEquals(it.next().toString(), "15:15:desc");
+    assertEquals(it.next().toString(), "30:60:desc");
+    assertFalse(it.hasNext());
+    assertEquals(store.getDepth(), 3);
+    String nl = System.lineSeparator();
+    assertEquals(store.prettyPrint(), "10:5000000:desc" + nl
+            + "  10:20:desc" + nl + "    15:15:desc" + nl + "  30:60:desc"
+            + nl);
+    store.clear();
+    assertTrue(store.isEmpty());
+    assertFalse(store.iterator().hasNext());
+  }
+
+  /**
+   * Adds and removes random intervals of widely varying length, checking query
+   * results against a brute force search
+   */
+  @Test(groups = "Functional")
+  public void testRandomised()
+  {
+    IntervalStoreChecker.checkRandomised(new StratifiedIntervalStore<>(), new Random(131), 2000000,
+            1000000);
+  }
+
+  /**
+   * Queries must look back from the query start by the longest interval in
+   * each class, without overflow when the query is unbounded
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_longestWindow()
+  {
+    StratifiedIntervalStore<SimpleFeature> store = new StratifiedIntervalStore<>(
+            10, 100);
+    SimpleFeature sf1 = new SimpleFeature(0, 10, "");
+    SimpleFeature sf2 = new SimpleFeature(5, 100, "");
+    SimpleFeature sf3 = new SimpleFeature(95, 96, "");
+    SimpleFeature sf4 = new SimpleFeature(-1000, 1000, "");
+    List<SimpleFeature> added = Arrays.asList(sf1, sf2, sf3, sf4);
+    store.addAll(added);
+
+    /*
+     * sf2 starts 95 before the query, within the longest (95) of its class
+     */
+    List<SimpleFeature> overlaps = store.findOverlaps(100, 100);
+    assertEquals(overlaps.size(), 2);
+    assertTrue(overlaps.containsAll(Arrays.asList(sf2, sf4)));
+    assertEquals(store.findOverlaps(101, 101), Arrays.asList(sf4));
+
+    for (long pos : new long[] { Long.MIN_VALUE, Long.MIN_VALUE + 1, -1001,
+        0, 100, 1001, Long.MAX_VALUE - 1, Long.MAX_VALUE })
+    {
+      IntervalStoreChecker.checkQuery(store, added, Long.MIN_VALUE, pos);
+      IntervalStoreChecker.checkQuery(store, added, pos, Long.MAX_VALUE);
+      IntervalStoreChecker.checkQuery(store, added, pos, pos);
+    }
+    assertEquals(store.findOverlaps(Long.MIN_VALUE, Long.MAX_VALUE).size(),
+            4);
+  }
+}
@@ -0,0 +1,336 @@
+package nclist.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import nclist.impl.TextFileIndex.Format;
+import nclist.impl.TextFileIndex.LineParser;
+
+public class TextFileIndexTest
+{
+  private static final String GENES_FILENAME = "test/nclist/impl/humanGenes.csv";
+
+  /*
+   * id,start,end,chromosome,name
+   */
+  private static final Format GENES_FORMAT = new Format(',', 3, 1, 2, "#");
+
+  /*
+   * makes a feature with the whole line as its description
+   */
+  private static final LineParser<SimpleFeature> PARSER = new LineParser<SimpleFeature>()
+  {
+    @Override
+    public SimpleFeature parse(String line)
+    {
+      String[] tokens = line.split("[,\t]");
+      return new SimpleFeature(Integer.parseInt(tokens[1]),
+              Integer.parseInt(tokens[2]), line);
+    }
+  };
+
+  @Test(groups = "Functional")
+  public void testFindOverlaps() throws IOException
+  {
+    File dir = Files.createTempDirectory("textindex").toFile();
+    File data = new File(dir, "genes.csv");
+    Files.copy(new File(GENES_FILENAME).toPath(), data.toPath());
+    File indexFile = new File(data.getPath() + TextFileIndex.INDEX_SUFFIX);
+    try
+    {
+      /*
+       * parse the file the slow way for comparison
+       */
+      List<String> chromosomes = new ArrayList<>();
+      List<SimpleFeature> features = new ArrayList<>();
+      for (String line : Files.readAllLines(data.toPath(),
+              StandardCharsets.UTF_8))
+      {
+        if (!line.startsWith("#"))
+        {
+          chromosomes.add(line.split(",")[3]);
+          features.add(PARSER.parse(line));
+        }
+      }
+
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              GENES_FORMAT, PARSER))
+      {
+        assertFalse(index.isFromIndexFile());
+        assertTrue(indexFile.exists());
+        assertEquals(index.size(), features.size());
+        assertEquals(index.getSequences(), new HashSet<>(chromosomes));
+        assertEquals(index.getSequences().iterator().next(), "1");
+
+        Random r = new Random(50);
+        for (int i = 0; i < 200; i++)
+        {
+          String chromosome = chromosomes.get(r.nextInt(chromosomes.size()));
+          int from = r.nextInt(150000000);
+          int to = from + r.nextInt(i % 10 == 0 ? 5000000 : 50000);
+          List<SimpleFeature> expected = new ArrayList<>();
+          for (int j = 0; j < features.size(); j++)
+          {
+            SimpleFeature sf = features.get(j);
+            if (chromosomes.get(j).equals(chromosome) && sf.getBegin() <= to
+                    && sf.getEnd() >= from)
+            {
+              expected.add(sf);
+            }
+          }
+          List<SimpleFeature> found = index.findOverlaps(chromosome, from,
+                  to);
+          assertEquals(found.size(), expected.size());
+          assertEquals(new HashSet<>(found), new HashSet<>(expected));
+          for (int j = 1; j < found.size(); j++)
+          {
+            assertTrue(found.get(j - 1).getBegin() <= found.get(j)
+                    .getBegin());
+          }
+        }
+        assertTrue(index.findOverlaps("nosuchchromosome", 1, 1000000000)
+                .isEmpty());
+      }
+    } finally
+    {
+      indexFile.delete();
+      data.delete();
+      dir.delete();
+    }
+  }
+
+  /**
+   * Verifies that the saved index is reused while the data file is unchanged,
+   * and rebuilt when it changes
+   *
+   * @throws IOException
+   */
+  @Test(groups = "Functional")
+  public void testOpen_indexFile() throws IOException
+  {
+    File dir = Files.createTempDirectory("textindex").toFile();
+    File data = new File(dir, "test.bed");
+    File indexFile = new File(data.getPath() + TextFileIndex.INDEX_SUFFIX);
+    try
+    {
+      Files.write(data.toPath(),
+              ("# comment\nchr1\t10\t20\tf1\nchr1\t15\t30\tf2\n"
+                      + "chr2\t10\t40\tf3\n").getBytes(StandardCharsets.UTF_8));
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              Format.BED, PARSER))
+      {
+        assertFalse(index.isFromIndexFile());
+        assertEquals(index.size(), 3);
+      }
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              Format.BED, PARSER))
+      {
+        assertTrue(index.isFromIndexFile());
+        assertEquals(index.size(), 3);
+        List<SimpleFeature> found = index.findOverlaps("chr1", 18, 22);
+        assertEquals(found.size(), 2);
+        assertEquals(found.get(0).getDescription(), "chr1\t10\t20\tf1");
+        assertEquals(found.get(1).getDescription(), "chr1\t15\t30\tf2");
+      }
+
+      /*
+       * a different format invalidates the index
+       */
+      Format format = new Format('\t', -1, 1, 2, "#");
+      File otherIndex = new File(dir, "other.ncx");
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              otherIndex, format, PARSER, 10))
+      {
+        assertFalse(index.isFromIndexFile());
+        assertEquals(index.findOverlaps(25, 35).size(), 2);
+      }
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              otherIndex, Format.BED, PARSER, 10))
+      {
+        assertFalse(index.isFromIndexFile());
+      }
+      otherIndex.delete();
+
+      /*
+       * changing the data file invalidates the index
+       */
+      Files.write(data.toPath(),
+              "chr2\t50\t60\tf4\n".getBytes(StandardCharsets.UTF_8),
+              StandardOpenOption.APPEND);
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              Format.BED, PARSER))
+      {
+        assertFalse(index.isFromIndexFile());
+        assertEquals(index.size(), 4);
+        assertEquals(index.findOverlaps("chr2", 55, 55).get(0)
+                .getDescription(), "chr2\t50\t60\tf4");
+      }
+
+      /*
+       * a corrupt index is rebuilt
+       */
+      Files.write(indexFile.toPath(), new byte[] { 1, 2, 3 });
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              Format.BED, PARSER))
+      {
+        assertFalse(index.isFromIndexFile());
+        assertEquals(index.size(), 4);
+      }
+    } finally
+    {
+      indexFile.delete();
+      data.delete();
+      dir.delete();
+    }
+  }
+
+  /**
+   * Verifies that header, comment, blank and short lines are skipped, that
+   * Windows line endings and a missing final line ending are handled, and that
+   * only the matching lines are read
+   *
+   * @throws IOException
+   */
+  @Test(groups = "Functional")
+  public void testScan() throws IOException
+  {
+    File dir = Files.createTempDirectory("textindex").toFile();
+    File data = new File(dir, "test.csv");
+    File indexFile = new File(data.getPath() + TextFileIndex.INDEX_SUFFIX);
+    try
+    {
+      Files.write(data.toPath(), ("id,start,end,chrom\r\n" + "#,1,2,3\r\n"
+              + "\r\n" + "a,5,9,X\r\n" + "b,7\r\n" + "c,20,10,X\r\n"
+              + "d,-3,4,Y\r\n" + "e,6,6,X").getBytes(StandardCharsets.UTF_8));
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              GENES_FORMAT, PARSER))
+      {
+        assertEquals(index.size(), 3);
+        assertEquals(new ArrayList<>(index.getSequences()),
+                Arrays.asList("X", "Y"));
+        List<SimpleFeature> found = index.findOverlaps("X", 0, 100);
+        assertEquals(found.size(), 2);
+        assertEquals(found.get(0).getDescription(), "a,5,9,X");
+        assertEquals(found.get(1).getDescription(), "e,6,6,X");
+        found = index.findOverlaps("Y", 0, 0);
+        assertEquals(found.get(0).getDescription(), "d,-3,4,Y");
+      }
+    } finally
+    {
+      indexFile.delete();
+      data.delete();
+      dir.delete();
+    }
+  }
+
+  @Test(groups = "Functional")
+  public void testCache() throws IOException
+  {
+    File dir = Files.createTempDirectory("textindex").toFile();
+    File data = new File(dir, "test.bed");
+    File indexFile = new File(dir, "test.ncx");
+    try
+    {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 100; i++)
+      {
+        sb.append("chr1\t").append(i * 10).append("\t").append(i * 10 + 5)
+                .append("\tf").append(i).append("\n");
+      }
+      Files.write(data.toPath(),
+              sb.toString().getBytes(StandardCharsets.UTF_8));
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              indexFile, Format.BED, PARSER, 5))
+      {
+        List<SimpleFeature> found = index.findOverlaps("chr1", 0, 29);
+        assertEquals(found.size(), 3);
+        assertEquals(index.getCacheHits(), 0);
+        assertEquals(index.getCacheMisses(), 3);
+
+        List<SimpleFeature> again = index.findOverlaps("chr1", 10, 49);
+        assertEquals(again.size(), 4);
+        assertEquals(index.getCacheHits(), 2);
+        assertEquals(index.getCacheMisses(), 5);
+        assertTrue(again.get(0) == found.get(1)); // cached instance
+
+        /*
+         * cache is bounded
+         */
+        assertEquals(index.findOverlaps("chr1", 0, 1000).size(), 100);
+        assertEquals(index.getCacheSize(), 5);
+        assertEquals(index.findOverlaps("chr1", 980, 1000).size(), 2);
+        assertEquals(index.getCacheHits(), 2 + 5 + 2);
+      }
+    } finally
+    {
+      indexFile.delete();
+      data.delete();
+      dir.delete();
+    }
+  }
+
+  /**
+   * A parser answering null for a line is an error, naming the line's offset,
+   * and nothing is cached for the line
+   *
+   * @throws IOException
+   */
+  @Test(groups = "Functional")
+  public void testFindOverlaps_nullRecord() throws IOException
+  {
+    File dir = Files.createTempDirectory("textindex").toFile();
+    File data = new File(dir, "test.bed");
+    File indexFile = new File(dir, "test.ncx");
+    LineParser<SimpleFeature> parser = new LineParser<SimpleFeature>()
+    {
+      @Override
+      public SimpleFeature parse(String line)
+      {
+        return line.endsWith("bad") ? null : PARSER.parse(line);
+      }
+    };
+    try
+    {
+      Files.write(data.toPath(), "chr1\t10\t20\tok\nchr1\t30\t40\tbad\n"
+              .getBytes(StandardCharsets.UTF_8));
+      try (TextFileIndex<SimpleFeature> index = TextFileIndex.open(data,
+              indexFile, Format.BED, parser, 10))
+      {
+        assertEquals(index.findOverlaps("chr1", 15, 15).size(), 1);
+        for (int i = 0; i < 2; i++)
+        {
+          try
+          {
+            index.findOverlaps("chr1", 35, 35);
+            fail("expected exception");
+          } catch (IOException e)
+          {
+            assertEquals(e.getMessage(),
+                    "Parser answered null for line at offset 14");
+          }
+        }
+        assertEquals(index.getCacheSize(), 1);
+      }
+    } finally
+    {
+      indexFile.delete();
+      data.delete();
+      dir.delete();
+    }
+  }
+}
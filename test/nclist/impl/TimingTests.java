@@ -2,7 +2,12 @@ package nclist.impl;
 
 import static org.testng.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -10,6 +15,8 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import nclist.api.IntervalStoreI;
+
 public class TimingTests
 {
   /*
@@ -64,6 +71,143 @@ public class TimingTests
     }
   }
 
+  /**
+   * Timing tests of loading an NCList and an IntervalStore from intervals
+   * already in start position order, in one pass without sorting, compared
+   * with the NCList constructor (which sorts)
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testLoadTiming_fromSorted(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateNestedIntervals(count);
+      Collections.sort(ranges, RangeComparator.BY_START_POSITION);
+
+      long now = System.currentTimeMillis();
+      new NCList<>(new ArrayList<>(ranges));
+      long elapsed = System.currentTimeMillis() - now;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "NCList constructor (sorted input)", count, (i + 1), elapsed,
+              elapsed == 0 ? 0 : count / (float) elapsed));
+
+      now = System.currentTimeMillis();
+      NCList<Range> ncl = NCList.fromSorted(ranges.iterator());
+      elapsed = System.currentTimeMillis() - now;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "NCList fromSorted", count, (i + 1), elapsed,
+              elapsed == 0 ? 0 : count / (float) elapsed));
+      assertTrue(ncl.isValid());
+
+      now = System.currentTimeMillis();
+      IntervalStore<Range> store = IntervalStore
+              .fromSorted(ranges.iterator());
+      elapsed = System.currentTimeMillis() - now;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "IntervalStore fromSorted", count, (i + 1), elapsed,
+              elapsed == 0 ? 0 : count / (float) elapsed));
+      assertTrue(store.isValid());
+    }
+  }
+
+  /**
+   * Timing tests of the time to build an NCList and make one query, with the
+   * NCList built in full, or lazily (only where the query descends)
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testLoadTiming_lazy(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateNestedIntervals(count);
+      int from = rand.nextInt(4 * count);
+
+      long now = System.currentTimeMillis();
+      NCList<Range> ncl = new NCList<>(new ArrayList<>(ranges));
+      int found = ncl.findOverlaps(from, from + 100).size();
+      long elapsed = System.currentTimeMillis() - now;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "NCList first query", count, (i + 1), elapsed,
+              elapsed == 0 ? 0 : count / (float) elapsed));
+
+      now = System.currentTimeMillis();
+      ncl = NCList.lazy(ranges);
+      assertTrue(ncl.findOverlaps(from, from + 100).size() == found);
+      elapsed = System.currentTimeMillis() - now;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "NCList lazy first query", count, (i + 1), elapsed,
+              elapsed == 0 ? 0 : count / (float) elapsed));
+    }
+  }
+
+  /**
+   * Timing tests of building an NCList file with limited memory (so spilling
+   * sorted runs to temporary files), with one thread or one per processor
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testLoadTiming_external(Integer count) throws IOException
+  {
+    File file = File.createTempFile("timing", ".ncl");
+    try
+    {
+      int processors = Runtime.getRuntime().availableProcessors();
+      for (int i = 0; i < REPEATS; i++)
+      {
+        List<Range> ranges = generateNestedIntervals(count);
+        for (int threads : new int[] { 1, processors })
+        {
+          long now = System.currentTimeMillis();
+          try (ExternalNCListBuilder builder = new ExternalNCListBuilder(
+                  1 << 20, threads, null))
+          {
+            for (int j = 0; j < ranges.size(); j++)
+            {
+              Range range = ranges.get(j);
+              builder.add(range.getBegin(), range.getEnd(), j);
+            }
+            builder.build(file);
+          }
+          long elapsed = System.currentTimeMillis() - now;
+          System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                  "External build, threads " + threads, count, (i + 1),
+                  elapsed, elapsed == 0 ? 0 : count / (float) elapsed));
+        }
+      }
+    } finally
+    {
+      file.delete();
+    }
+  }
+
+  /**
+   * Timing tests of sorting intervals into start position order by radix sort
+   * of packed keys, compared with a comparison sort
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testSortTiming_radix(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateNestedIntervals(count);
+      List<Range> copy = new ArrayList<>(ranges);
+
+      long now = System.currentTimeMillis();
+      Collections.sort(copy, RangeComparator.BY_START_POSITION);
+      long elapsed = System.currentTimeMillis() - now;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "Collections.sort", count, (i + 1), elapsed,
+              elapsed == 0 ? 0 : count / (float) elapsed));
+
+      now = System.currentTimeMillis();
+      RadixSorter.sort(ranges);
+      elapsed = System.currentTimeMillis() - now;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "RadixSorter.sort", count, (i + 1), elapsed,
+              elapsed == 0 ? 0 : count / (float) elapsed));
+      assertTrue(ranges.equals(copy));
+    }
+  }
+
   /**
    * Generates a list of <code>count</code> intervals in the range [1, 4*count]
    * 
@@ -83,6 +227,27 @@ public class TimingTests
     return ranges;
   }
 
+  /**
+   * Generates a list of <code>count</code> intervals starting in the range [1,
+   * 4*count], with lengths spread evenly over orders of magnitude up to
+   * 4*count, so giving deeply nested data
+   * 
+   * @param count
+   * @return
+   */
+  protected List<Range> generateNestedIntervals(Integer count)
+  {
+    int maxPos = 4 * count;
+    List<Range> ranges = new ArrayList<>();
+    for (int j = 0; j < count; j++)
+    {
+      int from = 1 + rand.nextInt(maxPos);
+      int length = (int) Math.pow(maxPos, rand.nextDouble());
+      ranges.add(new Range(from, from + length));
+    }
+    return ranges;
+  }
+
   /**
    * Timing tests of loading an NCList, with intervals loaded one at a time
    */
@@ -175,6 +340,80 @@ public class TimingTests
   
   }
 
+  /**
+   * Timing tests of adding and removing intervals in an NCList and a
+   * BinnedIntervalStore: all intervals are added one at a time, then half of
+   * them removed and added again
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testChurnTiming_nclist_binned(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateIntervals(count);
+      List<Range> churned = ranges.subList(0, count / 2);
+      NCList<Range> ncl = new NCList<>();
+      long now = System.currentTimeMillis();
+      ncl.addAll(ranges);
+      for (Range r : churned)
+      {
+        ncl.remove(r);
+      }
+      ncl.addAll(churned);
+      long elapsed = System.currentTimeMillis() - now;
+      float ratio = elapsed == 0 ? 0 : count / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "NCList churn", count, (i + 1), elapsed, ratio));
+      assertTrue(ncl.isValid());
+
+      BinnedIntervalStore<Range> store = new BinnedIntervalStore<>();
+      now = System.currentTimeMillis();
+      store.addAll(ranges);
+      for (Range r : churned)
+      {
+        store.remove(r);
+      }
+      store.addAll(churned);
+      elapsed = System.currentTimeMillis() - now;
+      ratio = elapsed == 0 ? 0 : count / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "Binned churn", count, (i + 1), elapsed, ratio));
+      assertTrue(store.isValid());
+    }
+  }
+
+  /**
+   * Timing tests of loading an IntervalStore, with intervals loaded one at a
+   * time, checking for duplicates, with and without the hashed side-index
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testLoadTiming_intervalStore_incrementalNoDuplicates(
+          Integer count)
+  {
+    for (boolean indexed : new boolean[] { false, true })
+    {
+      for (int i = 0; i < REPEATS; i++)
+      {
+        IntervalStore<Range> store = new IntervalStore<>(indexed);
+        List<Range> ranges = generateIntervals(count);
+        long now = System.currentTimeMillis();
+        for (Range r : ranges)
+        {
+          if (!store.contains(r))
+          {
+            store.add(r);
+          }
+        }
+        long elapsed = System.currentTimeMillis() - now;
+        float ratio = elapsed == 0 ? 0 : count / (float) elapsed;
+        System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                indexed ? "Store indexed incrNoDup" : "Store incrNoDup",
+                count, (i + 1), elapsed, ratio));
+        assertTrue(store.isValid());
+      }
+    }
+  }
+
   /**
    * Timing tests of querying an NCList for overlaps
    */
@@ -200,6 +439,502 @@ public class TimingTests
     }
   }
 
+  /**
+   * Timing tests of querying an NCList for overlaps, on deeply nested data
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_nclist_deep(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateNestedIntervals(count);
+      NCList<Range> ncl = new NCList<>(ranges);
+
+      List<Range> queries = generateIntervals(count);
+      long now = System.currentTimeMillis();
+      for (Range q : queries)
+      {
+        ncl.findOverlaps(q.getBegin(), q.getEnd());
+      }
+      long elapsed = System.currentTimeMillis() - now;
+      float ratio = elapsed == 0 ? 0 : count / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "NCList deep overlaps (depth " + ncl.getDepth() + ")", count,
+              (i + 1), elapsed, ratio));
+    }
+  }
+
+  /**
+   * Timing tests of wide queries (a tenth of the range) of an NCList of deeply
+   * nested data, which cover many whole subtrees. The first pass builds the
+   * flattened copies of covered subtrees, which later passes copy in bulk.
+   * Results are also counted by a visitor, without building a list.
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_nclist_coveredSubtrees(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateNestedIntervals(count);
+      NCList<Range> ncl = new NCList<>(ranges);
+      List<Range> queries = new ArrayList<>();
+      for (int j = 0; j < 200; j++)
+      {
+        int from = 1 + rand.nextInt(4 * count);
+        queries.add(new Range(from, from + (4 * count) / 10));
+      }
+      for (int pass = 1; pass <= 2; pass++)
+      {
+        long total = 0;
+        long now = System.currentTimeMillis();
+        for (Range q : queries)
+        {
+          total += ncl.findOverlaps(q.getBegin(), q.getEnd()).size();
+        }
+        long elapsed = System.currentTimeMillis() - now;
+        float ratio = elapsed == 0 ? 0 : queries.size() / (float) elapsed;
+        System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                "NCList covered subtrees pass " + pass + " (" + total + ")",
+                count, (i + 1), elapsed, ratio));
+      }
+      final long[] visited = new long[1];
+      long now = System.currentTimeMillis();
+      for (Range q : queries)
+      {
+        ncl.visitOverlaps(q.getBegin(), q.getEnd(), r -> visited[0]++);
+      }
+      long elapsed = System.currentTimeMillis() - now;
+      float ratio = elapsed == 0 ? 0 : queries.size() / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "NCList covered subtrees visitor (" + visited[0] + ")", count,
+              (i + 1), elapsed, ratio));
+    }
+  }
+
+  /**
+   * Timing tests of querying an AIListStore for overlaps, on deeply nested
+   * data
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_aiList_deep(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateNestedIntervals(count);
+      AIListStore<Range> store = new AIListStore<>(ranges);
+
+      List<Range> queries = generateIntervals(count);
+      long now = System.currentTimeMillis();
+      for (Range q : queries)
+      {
+        store.findOverlaps(q.getBegin(), q.getEnd());
+      }
+      long elapsed = System.currentTimeMillis() - now;
+      float ratio = elapsed == 0 ? 0 : count / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "AIList deep overlaps (" + store.getComponentCount()
+                      + " components)",
+              count, (i + 1), elapsed, ratio));
+      assertTrue(store.isValid());
+    }
+  }
+
+  /**
+   * Timing tests of querying an IntervalStore for overlaps, with each kind of
+   * search index over the top level intervals
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_intervalStore_searchIndex(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      IntervalStore<Range> store = new IntervalStore<>();
+      store.addAll(generateIntervals(count));
+      List<Range> queries = generateIntervals(count);
+      for (SearchIndex kind : SearchIndex.values())
+      {
+        store.buildSearchIndex(kind);
+        long now = System.currentTimeMillis();
+        for (Range q : queries)
+        {
+          store.findOverlaps(q.getBegin(), q.getEnd());
+        }
+        long elapsed = System.currentTimeMillis() - now;
+        float ratio = elapsed == 0 ? 0 : count / (float) elapsed;
+        System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                "IntervalStore overlaps " + kind, count, (i + 1), elapsed,
+                ratio));
+      }
+    }
+  }
+
+  /**
+   * Timing tests of wide queries of densely packed intervals (around 250
+   * overlaps per query), with each kind of search index. With an index, the
+   * run of overlapping top level intervals is found by searching the begin
+   * positions, rather than by testing each candidate in turn.
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_intervalStore_wideQueries(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      IntervalStore<Range> store = new IntervalStore<>();
+      store.addAll(generateIntervals(count));
+      List<Range> queries = new ArrayList<>();
+      for (int j = 0; j < count / 10; j++)
+      {
+        int from = 1 + rand.nextInt(4 * count);
+        queries.add(new Range(from, from + 1000));
+      }
+      for (SearchIndex kind : SearchIndex.values())
+      {
+        store.buildSearchIndex(kind);
+        long total = 0;
+        long now = System.currentTimeMillis();
+        for (Range q : queries)
+        {
+          total += store.findOverlaps(q.getBegin(), q.getEnd()).size();
+        }
+        long elapsed = System.currentTimeMillis() - now;
+        float ratio = elapsed == 0 ? 0 : queries.size() / (float) elapsed;
+        System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                "IntervalStore wide overlaps (" + total + ") " + kind,
+                count, (i + 1), elapsed, ratio));
+      }
+    }
+  }
+
+  /**
+   * Timing tests of queries that cover all, or half, of a store (as for 'zoom
+   * to fit' or export). A query covering the whole extent is answered with a
+   * copy of the store, and others have their result list presized.
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_intervalStore_wholeStore(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      IntervalStore<Range> store = new IntervalStore<>();
+      store.addAll(generateNestedIntervals(count));
+      long[] extent = store.getExtent();
+      long half = (extent[1] - extent[0]) / 2;
+      for (int pass = 0; pass < 2; pass++)
+      {
+        long total = 0;
+        long now = System.currentTimeMillis();
+        for (int j = 0; j < 50; j++)
+        {
+          total += store.findOverlaps(extent[0] + pass * half / 2,
+                  extent[1] - pass * half / 2).size();
+        }
+        long elapsed = System.currentTimeMillis() - now;
+        float ratio = elapsed == 0 ? 0 : 50 / (float) elapsed;
+        System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                "IntervalStore " + (pass == 0 ? "whole" : "half")
+                        + " store queries (" + total + ")",
+                count, (i + 1), elapsed, ratio));
+      }
+    }
+  }
+
+  /**
+   * Timing tests of loading and querying a store of mostly point (zero length)
+   * intervals, such as variants, scattered among longer ones. Points are held
+   * in their own tier, rather than nested under the intervals that span them.
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_intervalStore_points(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateIntervals(count / 10);
+      for (int j = 0; j < count; j++)
+      {
+        int pos = 1 + rand.nextInt(4 * count);
+        ranges.add(new Range(pos, pos));
+      }
+      long now = System.currentTimeMillis();
+      IntervalStore<Range> store = new IntervalStore<>();
+      store.addAll(ranges);
+      long loaded = System.currentTimeMillis() - now;
+
+      long total = 0;
+      now = System.currentTimeMillis();
+      for (int j = 0; j < count; j++)
+      {
+        int from = 1 + rand.nextInt(4 * count);
+        total += store.findOverlaps(from, from + 100).size();
+      }
+      long elapsed = System.currentTimeMillis() - now;
+      float ratio = elapsed == 0 ? 0 : count / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "IntervalStore points load", count, (i + 1), loaded,
+              loaded == 0 ? 0 : ranges.size() / (float) loaded));
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "IntervalStore points query (" + total + ")", count, (i + 1),
+              elapsed, ratio));
+    }
+  }
+
+  /**
+   * Timing tests of queries of short intervals mixed with a few (0.1%) very
+   * long ones, held in an IntervalStore (where the long intervals nest the
+   * short ones) and in a StratifiedIntervalStore (where they are held apart)
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_stratified(Integer count)
+  {
+    for (int i = 0; i < REPEATS; i++)
+    {
+      List<Range> ranges = generateIntervals(count);
+      for (int j = 0; j < count / 1000; j++)
+      {
+        int from = 1 + rand.nextInt(4 * count);
+        ranges.add(new Range(from, from + 1 + rand.nextInt(2 * count)));
+      }
+      List<IntervalStoreI<Range>> stores = new ArrayList<>();
+      stores.add(new IntervalStore<Range>());
+      stores.get(0).addAll(ranges);
+      stores.add(new StratifiedIntervalStore<>(ranges));
+      List<Range> queries = new ArrayList<>();
+      for (int j = 0; j < count; j++)
+      {
+        int from = 1 + rand.nextInt(4 * count);
+        queries.add(new Range(from, from + 100));
+      }
+      for (IntervalStoreI<Range> store : stores)
+      {
+        long total = 0;
+        long now = System.currentTimeMillis();
+        for (Range q : queries)
+        {
+          total += store.findOverlaps(q.getBegin(), q.getEnd()).size();
+        }
+        long elapsed = System.currentTimeMillis() - now;
+        float ratio = elapsed == 0 ? 0 : queries.size() / (float) elapsed;
+        System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                store.getClass().getSimpleName() + " mixed lengths ("
+                        + total + ")",
+                count, (i + 1), elapsed, ratio));
+      }
+    }
+  }
+
+  /**
+   * Timing tests of queries of a DiskIntervalStore, with a buffer pool able to
+   * hold one tenth of the files, or all of them, for each eviction policy
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_disk(Integer count) throws IOException
+  {
+    File index = File.createTempFile("timing", ".ncl");
+    File payloads = File.createTempFile("timing", ".dat");
+    DiskIntervalStore.Codec<Range> codec = new DiskIntervalStore.Codec<Range>()
+    {
+      @Override
+      public byte[] encode(Range range)
+      {
+        return new byte[0];
+      }
+
+      @Override
+      public Range decode(int begin, int end, byte[] payload)
+      {
+        return new Range(begin, end);
+      }
+    };
+    try
+    {
+      for (int i = 0; i < REPEATS; i++)
+      {
+        List<Range> ranges = generateIntervals(count);
+        DiskIntervalStore.write(ranges.iterator(), codec, index, payloads);
+        long fileSize = index.length() + payloads.length();
+        List<Range> queries = new ArrayList<>();
+        for (int j = 0; j < count / 10; j++)
+        {
+          int from = 1 + rand.nextInt(4 * count);
+          queries.add(new Range(from, from + 100));
+        }
+        for (BufferPool.EvictionPolicy policy : BufferPool.EvictionPolicy
+                .values())
+        {
+          for (long cacheSize : new long[] { fileSize / 10, fileSize })
+          {
+            BufferPool pool = new BufferPool(BufferPool.DEFAULT_PAGE_SIZE,
+                    cacheSize, policy);
+            try (DiskIntervalStore<Range> store = new DiskIntervalStore<>(
+                    index, payloads, codec, pool))
+            {
+              long now = System.currentTimeMillis();
+              for (Range q : queries)
+              {
+                store.findOverlaps(q.getBegin(), q.getEnd());
+              }
+              long elapsed = System.currentTimeMillis() - now;
+              float ratio = elapsed == 0 ? 0
+                      : queries.size() / (float) elapsed;
+              System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                      "DiskIntervalStore " + pool, count, (i + 1), elapsed,
+                      ratio));
+            }
+          }
+        }
+      }
+    } finally
+    {
+      index.delete();
+      payloads.delete();
+    }
+  }
+
+  /**
+   * Timing tests of a TextFileIndex of a generated text file: the first open
+   * (scanning the file and saving the index), a second open (reading the saved
+   * index), and queries (parsing only the lines found)
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testQueryTiming_textIndex(Integer count) throws IOException
+  {
+    File data = File.createTempFile("timing", ".bed");
+    File index = new File(data.getPath() + TextFileIndex.INDEX_SUFFIX);
+    TextFileIndex.LineParser<Range> parser = new TextFileIndex.LineParser<Range>()
+    {
+      @Override
+      public Range parse(String line)
+      {
+        String[] tokens = line.split("\t");
+        return new Range(Integer.parseInt(tokens[1]),
+                Integer.parseInt(tokens[2]));
+      }
+    };
+    try
+    {
+      for (int i = 0; i < REPEATS; i++)
+      {
+        index.delete();
+        try (PrintWriter pw = new PrintWriter(data))
+        {
+          for (Range range : generateIntervals(count))
+          {
+            pw.println("chr1\t" + range.getBegin() + "\t" + range.getEnd());
+          }
+        }
+        List<Range> queries = new ArrayList<>();
+        for (int j = 0; j < count / 10; j++)
+        {
+          int from = 1 + rand.nextInt(4 * count);
+          queries.add(new Range(from, from + 100));
+        }
+
+        for (int pass = 0; pass < 2; pass++)
+        {
+          long now = System.currentTimeMillis();
+          try (TextFileIndex<Range> textIndex = TextFileIndex.open(data,
+                  TextFileIndex.Format.BED, parser))
+          {
+            long opened = System.currentTimeMillis();
+            for (Range q : queries)
+            {
+              textIndex.findOverlaps("chr1", q.getBegin(), q.getEnd());
+            }
+            long elapsed = System.currentTimeMillis() - opened;
+            float ratio = elapsed == 0 ? 0 : queries.size() / (float) elapsed;
+            System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+                    "TextFileIndex open ("
+                            + (textIndex.isFromIndexFile() ? "index file"
+                                    : "scan")
+                            + ") " + (opened - now) + "ms, queries",
+                    count, (i + 1), elapsed, ratio));
+          }
+        }
+      }
+    } finally
+    {
+      index.delete();
+      data.delete();
+    }
+  }
+
+  /**
+   * Timing tests of finding the first of a sorted array of end positions at or
+   * after random targets, by binary search, with a learned index, and by
+   * branch-free search of a copy in Eytzinger (breadth-first) order. As a
+   * proxy for cache misses (which need hardware counters to measure), the
+   * number of probes of the key array is reported: log2(N) for binary search,
+   * against log2(2*EPSILON+1) for the learned index, which also probes its
+   * much smaller (cache resident) table of segments.
+   */
+  @Test(groups = "Timing", dataProvider = "intervalCount")
+  public void testSearchTiming_learnedIndex(Integer count)
+  {
+    int size = 10 * count;
+    int[] keys = new int[size];
+    for (int j = 0; j < size; j++)
+    {
+      keys[j] = rand.nextInt(4 * size);
+    }
+    Arrays.sort(keys);
+    LearnedIndex learned = new LearnedIndex(keys);
+    EytzingerIndex eytzinger = new EytzingerIndex(keys);
+    long[] targets = new long[size];
+    for (int j = 0; j < size; j++)
+    {
+      targets[j] = rand.nextInt(4 * size);
+    }
+    double binaryProbes = Math.ceil(Math.log(size) / Math.log(2));
+    double segmentProbes = Math
+            .ceil(Math.log(learned.getSegmentCount()) / Math.log(2));
+    double windowProbes = Math
+            .ceil(Math.log(2 * LearnedIndex.EPSILON + 1) / Math.log(2));
+    System.out.println(String.format(
+            "Learned index over %d keys: %d segments; key probes %.0f "
+                    + "(+ %.0f in segment table), binary search key probes %.0f",
+            size, learned.getSegmentCount(), windowProbes, segmentProbes,
+            binaryProbes));
+
+    for (int i = 0; i < REPEATS; i++)
+    {
+      long total = 0;
+      long now = System.currentTimeMillis();
+      for (long target : targets)
+      {
+        total += learned.binarySearch(target, 0, size);
+      }
+      long elapsed = System.currentTimeMillis() - now;
+      float ratio = elapsed == 0 ? 0 : size / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "Binary search", size, (i + 1), elapsed, ratio));
+
+      now = System.currentTimeMillis();
+      for (long target : targets)
+      {
+        total -= learned.firstAtOrAfter(target);
+      }
+      elapsed = System.currentTimeMillis() - now;
+      ratio = elapsed == 0 ? 0 : size / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "Learned index search", size, (i + 1), elapsed, ratio));
+      assertTrue(total == 0);
+
+      now = System.currentTimeMillis();
+      for (long target : targets)
+      {
+        total += eytzinger.firstAtOrAfter(target);
+      }
+      elapsed = System.currentTimeMillis() - now;
+      ratio = elapsed == 0 ? 0 : size / (float) elapsed;
+      System.out.println(String.format("%s\t%d\t%d\t%d\t%.1f",
+              "Eytzinger search", size, (i + 1), elapsed, ratio));
+      for (long target : targets)
+      {
+        total -= learned.binarySearch(target, 0, size);
+      }
+      assertTrue(total == 0);
+    }
+  }
+
   /**
    * Timing tests of querying an NCList for overlaps
    */